@@ -382,6 +382,10 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(getOptional("kylin.dictionary.use-forest-trie", "true"));
     }
 
+    public boolean isFrontCodedDictionaryEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.dictionary.front-coded-enabled", "false"));
+    }
+
     public int getTrieDictionaryForestMaxTrieSizeMB() {
         return Integer.parseInt(getOptional("kylin.dictionary.forest-trie-max-mb", "500"));
     }
@@ -390,6 +394,10 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.dictionary.max-cache-entry", "3000"));
     }
 
+    public int getDictionaryCacheMaxMB() {
+        return Integer.parseInt(getOptional("kylin.dictionary.value-cache-max-mb", "256"));
+    }
+
     public boolean isGrowingDictEnabled() {
         return Boolean.parseBoolean(this.getOptional("kylin.dictionary.growing-enabled", "false"));
     }
@@ -406,6 +414,22 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.dictionary.append-version-ttl", "259200000"));
     }
 
+    public boolean isAppendDictSliceCacheEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.dictionary.append-slice-cache.enabled", "false"));
+    }
+
+    public String getAppendDictSliceCacheLocalPath() {
+        return getOptional("kylin.dictionary.append-slice-cache.local-path", "global_dict_cache");
+    }
+
+    public int getAppendDictSliceCacheMaxMB() {
+        return Integer.parseInt(getOptional("kylin.dictionary.append-slice-cache.max-mb", "2048"));
+    }
+
+    public int getAppendDictSliceCachePrefetchSlices() {
+        return Integer.parseInt(getOptional("kylin.dictionary.append-slice-cache.prefetch-slices", "1"));
+    }
+
     public int getCachedSnapshotMaxEntrySize() {
         return Integer.parseInt(getOptional("kylin.snapshot.max-cache-entry", "500"));
     }
@@ -426,6 +450,14 @@ abstract public class KylinConfigBase implements Serializable {
         return Double.parseDouble(getOptional("kylin.snapshot.ext.local.cache.max-size-gb", "200"));
     }
 
+    public boolean isSnapshotMappedLookupEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.snapshot.mapped-lookup.enabled", "false"));
+    }
+
+    public int getSnapshotMappedLookupCacheMaxMB() {
+        return Integer.parseInt(getOptional("kylin.snapshot.mapped-lookup.cache-max-mb", "10240"));
+    }
+
 
     // ============================================================================
     // CUBE
@@ -468,6 +500,14 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.cube.algorithm.inmem-concurrent-threads", "1"));
     }
 
+    public String getCubeAlgorithmInMemStore() {
+        return getOptional("kylin.cube.algorithm.inmem-store", "disk");
+    }
+
+    public boolean isCubeAlgorithmInMemAdaptiveSplit() {
+        return Boolean.parseBoolean(getOptional("kylin.cube.algorithm.inmem-adaptive-split", "false"));
+    }
+
     public boolean isIgnoreCubeSignatureInconsistency() {
         return Boolean.parseBoolean(getOptional("kylin.cube.ignore-signature-inconsistency", "false"));
     }
@@ -986,6 +1026,10 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(this.getOptional("kylin.storage.partition.aggr-spill-enabled", "true"));
     }
 
+    public boolean getQueryCoprocessorFlatAggrEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.storage.partition.aggr-flat-enabled", "false"));
+    }
+
     public long getPartitionMaxScanBytes() {
         long value = Long.parseLong(
                 this.getOptional("kylin.storage.partition.max-scan-bytes", String.valueOf(3L * 1024 * 1024 * 1024)));
@@ -1049,6 +1093,26 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(getOptional("kylin.storage.hbase.endpoint-compress-result", "true"));
     }
 
+    public int getEndpointResultChunkSize() {
+        return Integer.parseInt(getOptional("kylin.storage.hbase.endpoint-result-chunk-size", "4194304"));
+    }
+
+    public String getEndpointResultCodec() {
+        return getOptional("kylin.storage.hbase.endpoint-result-codec", "deflate");
+    }
+
+    public String getEndpointResultCodecDict() {
+        return getOptional("kylin.storage.hbase.endpoint-result-codec-dict", "");
+    }
+
+    public int getEndpointRPCMaxThreads() {
+        return Integer.parseInt(getOptional("kylin.storage.hbase.endpoint-rpc-max-threads", "256"));
+    }
+
+    public int getEndpointRPCMaxThreadsPerQuery() {
+        return Integer.parseInt(getOptional("kylin.storage.hbase.endpoint-rpc-max-threads-per-query", "32"));
+    }
+
     public int getHBaseMaxConnectionThreads() {
         return Integer.parseInt(getOptional("kylin.storage.hbase.max-hconnection-threads", "2048"));
     }
@@ -1172,6 +1236,11 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(getOptional("kylin.engine.mr.build-uhc-dict-in-additional-step", "false"));
     }
 
+    // a global dictionary column of the UHC step is built by up to this many reducers, 1 to disable
+    public int getUHCGlobalDictShards() {
+        return Integer.parseInt(getOptional("kylin.engine.mr.uhc-global-dict-shards", "1"));
+    }
+
     public boolean isBuildDictInReducerEnabled() {
         return Boolean.parseBoolean(getOptional("kylin.engine.mr.build-dict-in-reducer", "true"));
     }
@@ -1216,6 +1285,14 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(getOptional("kylin.engine.spark.sanity-check-enabled", "false"));
     }
 
+    public boolean isSparkInMemCubingEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.engine.spark.inmem-cubing-enabled", "false"));
+    }
+
+    public int getSparkInMemCubingPartitionMB() {
+        return Integer.parseInt(getOptional("kylin.engine.spark.inmem-cubing-partition-mb", "512"));
+    }
+
     // ============================================================================
     // QUERY
     // ============================================================================
@@ -1313,6 +1390,10 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.query.large-query-threshold", String.valueOf(1000000)));
     }
 
+    public boolean isColumnarQueryResultEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.columnar-result-enabled", "true"));
+    }
+
     public int getDerivedInThreshold() {
         return Integer.parseInt(getOptional("kylin.query.derived-filter-translation-threshold", "20"));
     }
@@ -1372,6 +1453,26 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(this.getOptional("kylin.query.cache-enabled", "true"));
     }
 
+    public int getQuerySegmentScanParallelism() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment-scan-parallelism", "1"));
+    }
+
+    public int getQuerySegmentPrefetchSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment-prefetch-size", "1024"));
+    }
+
+    public int getQueryDictionaryDecodeBatchSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.dictionary-decode-batch-size", "256"));
+    }
+
+    public boolean isQuerySegmentCacheEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.segment-cache-enabled", "false"));
+    }
+
+    public long getQuerySegmentCacheMaxBytes() {
+        return Long.parseLong(this.getOptional("kylin.query.segment-cache-max-mb", "512")) * 1024 * 1024;
+    }
+
     public boolean isQueryIgnoreUnknownFunction() {
         return Boolean.parseBoolean(this.getOptional("kylin.query.ignore-unknown-function", "false"));
     }
@@ -52,6 +52,9 @@ public class QueryContext {
     private AtomicLong scannedRows = new AtomicLong();
     private AtomicLong returnedRows = new AtomicLong();
     private AtomicLong scannedBytes = new AtomicLong();
+    private AtomicLong spilledBytes = new AtomicLong();
+    private AtomicLong rpcQueueMillis = new AtomicLong();
+    private AtomicLong segmentWaitMillis = new AtomicLong();
     private Object calcitePlan;
 
     private AtomicBoolean isRunning = new AtomicBoolean(true);
@@ -137,6 +140,32 @@ public class QueryContext {
         return scannedBytes.addAndGet(deltaBytes);
     }
 
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    public long addAndGetSpilledBytes(long deltaBytes) {
+        return spilledBytes.addAndGet(deltaBytes);
+    }
+
+    /** total time the storage rpcs of this query waited for a free thread */
+    public long getRpcQueueMillis() {
+        return rpcQueueMillis.get();
+    }
+
+    public long addAndGetRpcQueueMillis(long deltaMillis) {
+        return rpcQueueMillis.addAndGet(deltaMillis);
+    }
+
+    /** total time the query thread waited for segments scanned in parallel */
+    public long getSegmentWaitMillis() {
+        return segmentWaitMillis.get();
+    }
+
+    public long addAndGetSegmentWaitMillis(long deltaMillis) {
+        return segmentWaitMillis.addAndGet(deltaMillis);
+    }
+
     public void addQueryStopListener(QueryStopListener listener) {
         this.stopListeners.add(listener);
     }
@@ -58,6 +58,21 @@ public class QueryContextFacade {
         }
     }
 
+    /**
+     * make the context of a query current in a thread working for it
+     * @link removeCurrent() should be finally invoked
+     */
+    public static void setCurrent(QueryContext queryContext) {
+        CURRENT_CTX.set(queryContext);
+    }
+
+    /**
+     * remove the context from a thread working for the query, unlike resetCurrent() the query keeps running
+     */
+    public static void removeCurrent() {
+        CURRENT_CTX.remove();
+    }
+
     /**
      * invoked by user to let query stop early
      * @link resetCurrent() should be finally invoked
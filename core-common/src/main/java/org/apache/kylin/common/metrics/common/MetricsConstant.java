@@ -35,4 +35,10 @@ public class MetricsConstant {
     public static final String QUERY_SCAN_ROWCOUNT = "QueryScanRowcount";
     public static final String TOTAL = "total";
 
+    public static final String DICT_CACHE = "DictionaryCache";
+    public static final String DICT_CACHE_HIT_COUNT = "HitCount";
+    public static final String DICT_CACHE_MISS_COUNT = "MissCount";
+    public static final String DICT_CACHE_EVICTION_COUNT = "EvictionCount";
+    public static final String DICT_CACHE_ENTRY_COUNT = "EntryCount";
+
 }
\ No newline at end of file
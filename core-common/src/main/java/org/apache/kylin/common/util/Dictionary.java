@@ -138,6 +138,19 @@ abstract public class Dictionary<T> implements Serializable {
             return getValueFromIdImpl(id);
     }
 
+    /**
+     * Decodes the first count IDs into values in one call, null IDs give null values. The default looks up the IDs
+     * one by one, subclasses decode natively into reused buffers.
+     *
+     * @throws IllegalArgumentException
+     *             if an ID is not found in dictionary
+     */
+    public void getValuesFromIds(int[] ids, int count, T[] values) throws IllegalArgumentException {
+        for (int i = 0; i < count; i++) {
+            values[i] = getValueFromId(ids[i]);
+        }
+    }
+
     /**
      * @return the value bytes corresponds to the given ID
      * @throws IllegalArgumentException
@@ -474,6 +474,11 @@ public class CubeManager implements IRealizationProvider {
         String snapshotResPath = getSnapshotResPath(cubeSegment, tableName, snapshotTableDesc);
         String[] pkCols = join.getPrimaryKey();
 
+        if (config.isSnapshotMappedLookupEnabled()) {
+            TableDesc tableDesc = getMetadataManager().getTableDesc(tableName, cubeSegment.getProject());
+            return LookupProviderFactory.getMappedLookupTable(tableDesc, pkCols, snapshotResPath);
+        }
+
         try {
             SnapshotTable snapshot = getSnapshotManager().getSnapshotTable(snapshotResPath);
             TableDesc tableDesc = getMetadataManager().getTableDesc(tableName, cubeSegment.getProject());
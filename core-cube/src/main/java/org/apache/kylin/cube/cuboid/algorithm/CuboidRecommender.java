@@ -41,6 +41,9 @@ import com.google.common.collect.Maps;
 public class CuboidRecommender {
     private static final Logger logger = LoggerFactory.getLogger(CuboidRecommender.class);
 
+    // cube and segment names can't contain it
+    private static final String FINGERPRINT_SEPARATOR = "@";
+
     private static Cache<String, Map<Long, Long>> cuboidRecommendCache = CacheBuilder.newBuilder()
             .removalListener(new RemovalListener<String, Map<Long, Long>>() {
                 @Override
@@ -60,7 +63,11 @@ public class CuboidRecommender {
         @Override
         public void onEntityChange(Broadcaster broadcaster, String entity, Broadcaster.Event event, String cacheKey)
                 throws IOException {
-            cuboidRecommendCache.invalidate(cacheKey);
+            for (String key : cuboidRecommendCache.asMap().keySet()) {
+                if (key.startsWith(cacheKey + FINGERPRINT_SEPARATOR)) {
+                    cuboidRecommendCache.invalidate(key);
+                }
+            }
         }
     }
 
@@ -76,13 +83,14 @@ public class CuboidRecommender {
     }
 
     /**
-     * Get recommend cuboids with their row count stats with cache
+     * Get recommend cuboids with their row count stats with cache. The cache is keyed by the fingerprint of the
+     * stats as well, so changed stats are recommended again, while unchanged ones reuse the last recommendation.
      */
     public Map<Long, Long> getRecommendCuboidList(final CuboidStats cuboidStats, final KylinConfig kylinConfig) {
         if (cuboidStats == null) {
             return null;
         }
-        final String key = cuboidStats.getKey();
+        final String key = cuboidStats.getKey() + FINGERPRINT_SEPARATOR + cuboidStats.getFingerprint();
         Map<Long, Long> results = cuboidRecommendCache.getIfPresent(key);
         if (results == null) {
             try {
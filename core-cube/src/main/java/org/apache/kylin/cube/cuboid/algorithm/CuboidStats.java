@@ -21,11 +21,15 @@ package org.apache.kylin.cube.cuboid.algorithm;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -123,6 +127,8 @@ public class CuboidStats {
     private ImmutableMap<Long, List<Long>> directChildrenCache;
     private Map<Long, Set<Long>> allDescendantsCache;
 
+    private volatile String fingerprint;
+
     private CuboidStats(String key, long baseCuboidId, Set<Long> mandatoryCuboids, Map<Long, Long> statistics,
                         Map<Long, Double> size, Map<Long, Long> hitFrequencyMap, Map<Long, Map<Long, Long>> scanCountSourceMap) {
 
@@ -283,6 +289,31 @@ public class CuboidStats {
         return key;
     }
 
+    /**
+     * Returns a hash of everything the recommendation depends on, so that stats with the same fingerprint get the
+     * same recommendation.
+     */
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            hasher.putLong(baseCuboid);
+            List<Long> cuboids = Lists.newArrayList(cuboidCountMap.keySet());
+            Collections.sort(cuboids);
+            for (Long cuboid : cuboids) {
+                hasher.putLong(cuboid);
+                hasher.putBoolean(mandatoryCuboidSet.contains(cuboid));
+                hasher.putLong(cuboidCountMap.get(cuboid));
+                Double size = cuboidSizeMap.get(cuboid); // no size for complemented mandatory cuboids
+                hasher.putDouble(size == null ? -1.0 : size);
+                hasher.putDouble(getCuboidHitProbability(cuboid));
+                Long scanCount = cuboidScanCountMap.get(cuboid);
+                hasher.putLong(scanCount == null ? -1L : scanCount);
+            }
+            fingerprint = hasher.hash().toString();
+        }
+        return fingerprint;
+    }
+
     public CuboidBenefitModel.CuboidModel getCuboidModel(long cuboid) {
         return new CuboidBenefitModel.CuboidModel(cuboid, getCuboidCount(cuboid), getCuboidSize(cuboid),
                 getCuboidHitProbability(cuboid), getCuboidQueryCost(cuboid));
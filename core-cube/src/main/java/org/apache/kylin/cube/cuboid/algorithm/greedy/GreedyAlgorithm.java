@@ -29,16 +29,23 @@ import org.apache.kylin.cube.cuboid.algorithm.CuboidStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Future;
 
 /**
  * A simple implementation of the Greedy Algorithm , it chooses the cuboids which give
  * the greatest benefit based on expansion rate and time limitation.
+ * <p>
+ * The benefit of a cuboid never grows as other cuboids are selected, because selecting only lowers the aggregation
+ * cost of descendants. So the benefits of all cuboids are calculated once, in parallel, and then kept in a queue as
+ * upper bounds: each round only recalculates the cuboids on top of the queue until the top one is up to date.
  */
 public class GreedyAlgorithm extends AbstractRecommendAlgorithm {
     private static final Logger logger = LoggerFactory.getLogger(GreedyAlgorithm.class);
@@ -47,7 +54,11 @@ public class GreedyAlgorithm extends AbstractRecommendAlgorithm {
     private ExecutorService executor;
 
     private Set<Long> selected = Sets.newLinkedHashSet();
-    private List<Long> remaining = Lists.newLinkedList();
+    private Set<Long> remaining = Sets.newLinkedHashSet();
+
+    // candidates by their last calculated benefit, greatest first
+    private PriorityQueue<Candidate> candidates;
+    private long benefitCalculations;
 
     public GreedyAlgorithm(final long timeout, BenefitPolicy benefitPolicy, CuboidStats cuboidStats) {
         super(timeout, benefitPolicy, cuboidStats);
@@ -73,44 +84,50 @@ public class GreedyAlgorithm extends AbstractRecommendAlgorithm {
         remaining.addAll(cuboidStats.getAllCuboidsForSelection());
 
         long round = 0;
-        while (true) {
-            if (shouldCancel()) {
-                break;
-            }
-            // Choose one cuboId having the maximum benefit per unit space in all available list
-            CuboidBenefitModel best = recommendBestOne();
-            // If return null, then we should finish the process and return
-            if (best == null) {
-                break;
-            }
-            // If we finally find the cuboid selected does not meet a minimum threshold of benefit (for
-            // example, a cuboid with 0.99M roll up from a parent cuboid with 1M
-            // rows), then we should finish the process and return
-            if (!benefitPolicy.ifEfficient(best)) {
-                break;
-            }
+        benefitCalculations = 0;
+        try {
+            initCandidates(round);
+            while (true) {
+                if (shouldCancel()) {
+                    break;
+                }
+                // Choose one cuboId having the maximum benefit per unit space in all available list
+                CuboidBenefitModel best = recommendBestOne(round);
+                // If return null, then we should finish the process and return
+                if (best == null) {
+                    break;
+                }
+                // If we finally find the cuboid selected does not meet a minimum threshold of benefit (for
+                // example, a cuboid with 0.99M roll up from a parent cuboid with 1M
+                // rows), then we should finish the process and return
+                if (!benefitPolicy.ifEfficient(best)) {
+                    break;
+                }
 
-            remainingSpace -= cuboidStats.getCuboidSize(best.getCuboidId());
-            // If we finally find there is no remaining space,  then we should finish the process and return
-            if (remainingSpace <= 0) {
-                break;
-            }
-            selected.add(best.getCuboidId());
-            remaining.remove(best.getCuboidId());
-            benefitPolicy.propagateAggregationCost(best.getCuboidId(), selected);
-            round++;
-            if (logger.isTraceEnabled()) {
-                logger.trace(String.format("Recommend in round %d : %s", round, best.toString()));
+                remainingSpace -= cuboidStats.getCuboidSize(best.getCuboidId());
+                // If we finally find there is no remaining space,  then we should finish the process and return
+                if (remainingSpace <= 0) {
+                    break;
+                }
+                selected.add(best.getCuboidId());
+                remaining.remove(best.getCuboidId());
+                benefitPolicy.propagateAggregationCost(best.getCuboidId(), selected);
+                round++;
+                if (logger.isTraceEnabled()) {
+                    logger.trace(String.format("Recommend in round %d : %s", round, best.toString()));
+                }
             }
+        } finally {
+            executor.shutdown();
+            candidates = null;
         }
 
-        executor.shutdown();
-
         List<Long> excluded = Lists.newArrayList(remaining);
         remaining.retainAll(selected);
         Preconditions.checkArgument(remaining.size() == 0,
                 "There should be no intersection between excluded list and selected list.");
-        logger.info("Greedy Algorithm finished.");
+        logger.info(String.format("Greedy Algorithm finished after %d rounds and %d benefit calculations.", round,
+                benefitCalculations));
 
         if (logger.isTraceEnabled()) {
             logger.trace("Excluded cuboidId size:" + excluded.size());
@@ -125,37 +142,92 @@ public class GreedyAlgorithm extends AbstractRecommendAlgorithm {
         return Lists.newArrayList(selected);
     }
 
-    private CuboidBenefitModel recommendBestOne() {
-        final int selectedSize = selected.size();
-        final AtomicReference<CuboidBenefitModel> best = new AtomicReference<>();
+    private void initCandidates(long round) {
+        List<Candidate> all = Lists.newArrayListWithCapacity(remaining.size());
+        for (Long cuboid : remaining) {
+            all.add(new Candidate(cuboid));
+        }
+        calculateBenefit(all, round);
+
+        candidates = new PriorityQueue<>(Math.max(1, all.size()), Candidate.GREATEST_BENEFIT_FIRST);
+        candidates.addAll(all);
+    }
+
+    private CuboidBenefitModel recommendBestOne(long round) {
+        while (!candidates.isEmpty()) {
+            Candidate top = candidates.peek();
+            if (top.round == round) {
+                // up to date, and no other cuboid can have a greater benefit
+                candidates.poll();
+                return new CuboidBenefitModel(cuboidStats.getCuboidModel(top.cuboid), top.benefitModel);
+            }
+
+            // recalculate the outdated ones on top, a few at a time to make use of the threads
+            List<Candidate> outdated = Lists.newArrayListWithCapacity(THREAD_NUM);
+            while (outdated.size() < THREAD_NUM && !candidates.isEmpty() && candidates.peek().round != round) {
+                outdated.add(candidates.poll());
+            }
+            calculateBenefit(outdated, round);
+            candidates.addAll(outdated);
+        }
+        return null;
+    }
 
-        final CountDownLatch counter = new CountDownLatch(remaining.size());
-        for (final Long cuboid : remaining) {
-            executor.submit(new Runnable() {
+    /**
+     * Calculates the benefits in up to THREAD_NUM chunks in parallel. The selected cuboids and the aggregation costs
+     * don't change meanwhile.
+     */
+    private void calculateBenefit(final List<Candidate> toCalculate, final long round) {
+        int nChunks = Math.min(THREAD_NUM, toCalculate.size());
+        List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(nChunks);
+        for (int i = 0; i < nChunks; i++) {
+            final List<Candidate> chunk = toCalculate.subList(i * toCalculate.size() / nChunks,
+                    (i + 1) * toCalculate.size() / nChunks);
+            tasks.add(new Callable<Void>() {
                 @Override
-                public void run() {
-                    CuboidBenefitModel currentBest = best.get();
-                    assert (selected.size() == selectedSize);
-                    CuboidBenefitModel.BenefitModel benefitModel = benefitPolicy.calculateBenefit(cuboid, selected);
-                    if (benefitModel != null && (currentBest == null || currentBest.getBenefit() == null
-                            || benefitModel.benefit > currentBest.getBenefit())) {
-                        while (!best.compareAndSet(currentBest,
-                                new CuboidBenefitModel(cuboidStats.getCuboidModel(cuboid), benefitModel))) {
-                            currentBest = best.get();
-                            if (benefitModel.benefit <= currentBest.getBenefit()) {
-                                break;
-                            }
-                        }
+                public Void call() throws Exception {
+                    for (Candidate candidate : chunk) {
+                        candidate.benefitModel = benefitPolicy.calculateBenefit(candidate.cuboid, selected);
+                        candidate.round = round;
                     }
-                    counter.countDown();
+                    return null;
                 }
             });
         }
 
         try {
-            counter.await();
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while calculating benefits", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to calculate benefits", e.getCause());
+        }
+        benefitCalculations += toCalculate.size();
+    }
+
+    private static class Candidate {
+        static final Comparator<Candidate> GREATEST_BENEFIT_FIRST = new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate c1, Candidate c2) {
+                return Double.compare(c2.getBenefit(), c1.getBenefit());
+            }
+        };
+
+        final long cuboid;
+        CuboidBenefitModel.BenefitModel benefitModel;
+        long round = -1; // the round of the last calculation
+
+        Candidate(long cuboid) {
+            this.cuboid = cuboid;
+        }
+
+        double getBenefit() {
+            // NaN, from a cuboid without rows, would otherwise be greater than any benefit
+            return benefitModel == null || Double.isNaN(benefitModel.benefit) ? Double.NEGATIVE_INFINITY
+                    : benefitModel.benefit;
         }
-        return best.get();
     }
 }
@@ -30,29 +30,38 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.IGTScanner;
-import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.gridtable.IGTWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A disk store that allows concurrent read and exclusive write.
+ * <p>
+ * On rebuild, the writer marks the offset of a row every {@link #SPLIT_MARK_ROWS} rows or more, where the first
+ * primary key column changes value. The rows between two marks can then be scanned on their own, and for sorted
+ * rows, no value of the first primary key column crosses a mark.
  */
-public class ConcurrentDiskStore implements IGTStore, Closeable {
+public class ConcurrentDiskStore implements ISplittableStore, Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(MemDiskStore.class);
     private static final boolean debug = false;
 
     private static final int STREAM_BUFFER_SIZE = 8192;
+    static final int SPLIT_MARK_ROWS = 4096;
 
     final private GTInfo info;
     final private Object lock;
@@ -64,6 +73,7 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
     private HashSet<Reader> activeReaders = new HashSet<Reader>();
     private FileChannel writeChannel;
     private FileChannel readChannel; // sharable across multi-threads
+    private List<Long> splitMarks = new ArrayList<Long>();
 
     public ConcurrentDiskStore(GTInfo info) throws IOException {
         this(info, File.createTempFile("ConcurrentDiskStore", ""), true);
@@ -108,7 +118,8 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
                 throw new IllegalStateException();
 
             openWriteChannel(startOffset);
-            activeWriter = new Writer(startOffset);
+            splitMarks.clear(); // rows appended are not known to be sorted, don't split them
+            activeWriter = new Writer(startOffset, startOffset == 0);
             return activeWriter;
         }
     }
@@ -125,16 +136,46 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
 
     @Override
     public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
-        return newReader();
+        return newReader(0, -1);
     }
 
-    private IGTScanner newReader() throws IOException {
+    @Override
+    public IGTScanner scan(long startOffset, long endOffset) throws IOException {
+        return newReader(startOffset, endOffset);
+    }
+
+    /**
+     * Splits the rows into up to maxSplits ranges of about the same bytes, at the marks of the last rebuild.
+     *
+     * @return the start offset of each range, followed by the end offset of the last
+     */
+    @Override
+    public long[] getSplitOffsets(int maxSplits) {
+        synchronized (lock) {
+            if (activeWriter != null)
+                throw new IllegalStateException();
+
+            long fileLen = diskFile.length();
+            long[] result = new long[Math.max(1, Math.min(maxSplits, splitMarks.size() + 1)) + 1];
+            int n = 1;
+            for (int i = 0; i < splitMarks.size() && n < result.length - 1; i++) {
+                long mark = splitMarks.get(i);
+                if (mark >= fileLen * n / (result.length - 1)) {
+                    result[n++] = mark;
+                }
+            }
+            result[n++] = fileLen;
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        }
+    }
+
+    private IGTScanner newReader(long startOffset, long endOffset) throws IOException {
         synchronized (lock) {
             if (activeWriter != null)
                 throw new IllegalStateException();
 
             openReadChannel();
-            Reader r = new Reader(0);
+            Reader r = new Reader(startOffset, endOffset < 0 ? diskFile.length() : endOffset);
             activeReaders.add(r);
             return r;
         }
@@ -157,8 +198,8 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
         long readOffset;
         long count;
 
-        Reader(long startOffset) throws IOException {
-            this.fileLen = diskFile.length();
+        Reader(long startOffset, long endOffset) throws IOException {
+            this.fileLen = endOffset;
             this.readOffset = startOffset;
 
             if (debug)
@@ -272,9 +313,17 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
         final ByteBuffer buf;
         long writeOffset;
 
-        Writer(long startOffset) {
+        final int markCol;
+        byte[] lastMarkValue = new byte[0];
+        int lastMarkValueLen;
+        long rowOffset;
+        long rowsSinceMark;
+
+        Writer(long startOffset, boolean markSplits) {
             this.writeOffset = startOffset;
             this.buf = ByteBuffer.allocate(info.getMaxRecordLength());
+            this.rowOffset = startOffset;
+            this.markCol = markSplits && !info.getPrimaryKey().isEmpty() ? info.getPrimaryKey().trueBitAt(0) : -1;
 
             if (debug)
                 logger.debug(ConcurrentDiskStore.this + " write start @ " + writeOffset);
@@ -303,12 +352,31 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
 
         @Override
         public void write(GTRecord rec) throws IOException {
+            if (markCol >= 0) {
+                markSplit(rec.get(markCol));
+            }
+
             buf.clear();
             rec.exportColumns(info.getAllColumns(), buf);
 
             int len = buf.position();
             dout.writeInt(len);
             dout.write(buf.array(), buf.arrayOffset(), len);
+            rowOffset += 4 + len;
+        }
+
+        private void markSplit(ByteArray value) {
+            if (rowsSinceMark >= SPLIT_MARK_ROWS && !Bytes.equals(value.array(), value.offset(), value.length(), lastMarkValue, 0, lastMarkValueLen)) {
+                splitMarks.add(rowOffset);
+                rowsSinceMark = 0;
+            }
+            if (++rowsSinceMark >= SPLIT_MARK_ROWS) { // the next row may take a mark
+                if (lastMarkValue.length < value.length()) {
+                    lastMarkValue = new byte[value.length()];
+                }
+                System.arraycopy(value.array(), value.offset(), lastMarkValue, 0, value.length());
+                lastMarkValueLen = value.length();
+            }
         }
 
         @Override
@@ -24,16 +24,29 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.PriorityQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.MemoryBudgetController;
 import org.apache.kylin.cube.cuboid.CuboidScheduler;
+import org.apache.kylin.gridtable.GTBuilder;
+import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.GridTable;
 import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.measure.MeasureAggregators;
 import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
@@ -45,12 +58,20 @@ import com.google.common.collect.Lists;
 
 /**
  * When base cuboid does not fit in memory, cut the input into multiple splits and merge the split outputs at last.
+ * <p>
+ * With adaptive split on, each split is sized by the memory headroom and the bytes per row observed in the split
+ * before, and is also cut when the system avail memory drops to the reservation. Finished splits are merged in the
+ * background while the next split builds, so only a few merged outputs are left for the final merge.
  */
 public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
 
     private static Logger logger = LoggerFactory.getLogger(DoggedCubeBuilder.class);
 
+    // the part of the memory headroom a split may take for its base cuboid, the rest is for the child cuboids
+    private static final double SPLIT_HEADROOM_RATIO = 0.5;
+
     private int unitRows = ConsumeBlockingQueueController.DEFAULT_BATCH_SIZE;
+    private boolean adaptiveSplit;
 
     public DoggedCubeBuilder(CuboidScheduler cuboidScheduler, IJoinedFlatTableDesc flatDesc,
             Map<TblColRef, Dictionary<String>> dictionaryMap) {
@@ -59,6 +80,12 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
         // check memory more often if a single row is big
         if (cubeDesc.hasMemoryHungryMeasures())
             unitRows /= 10;
+
+        this.adaptiveSplit = cubeDesc.getConfig().isCubeAlgorithmInMemAdaptiveSplit();
+    }
+
+    public void setAdaptiveSplit(boolean adaptiveSplit) {
+        this.adaptiveSplit = adaptiveSplit;
     }
 
     @Override
@@ -80,11 +107,23 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
             final List<SplitThread> splits = new ArrayList<SplitThread>();
             final Merger merger = new Merger();
 
+            SplitSizer sizer = null;
+            BackgroundMerger backgroundMerger = null;
+            if (adaptiveSplit) {
+                sizer = new SplitSizer();
+                inputController.setSplitCutter(sizer);
+                backgroundMerger = new BackgroundMerger();
+            }
+
             long start = System.currentTimeMillis();
-            logger.info("Dogged Cube Build start");
+            logger.info("Dogged Cube Build start" + (adaptiveSplit ? " with adaptive split" : ""));
 
             try {
                 while (true) {
+                    if (sizer != null) {
+                        inputController.startNewSplit();
+                        inputController.hasNext(); // reach the end if no row is left, not to kick off an empty split
+                    }
                     if (inputController.ifEnd()) {
                         break;
                     }
@@ -99,11 +138,24 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
                     last.join();
 
                     checkException(splits);
+
+                    if (sizer != null) {
+                        sizer.splitDone(inputController.getSplitRowCount(), last.builder.getBaseCuboidMemEstimateMB());
+                        backgroundMerger.add(last.buildResult);
+                    }
                 }
 
                 logger.info("Dogged Cube Build splits complete, took " + (System.currentTimeMillis() - start) + " ms");
 
-                merger.mergeAndOutput(splits, output);
+                List<NavigableMap<Long, CuboidResult>> results = new ArrayList<NavigableMap<Long, CuboidResult>>();
+                if (backgroundMerger != null) {
+                    results.addAll(backgroundMerger.finish());
+                } else {
+                    for (SplitThread split : splits) {
+                        results.add(split.buildResult);
+                    }
+                }
+                merger.mergeAndOutput(results, output);
 
             } catch (Throwable e) {
                 logger.error("Dogged Cube Build error", e);
@@ -115,6 +167,9 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
                     throw new IOException(e);
             } finally {
                 output.close();
+                if (backgroundMerger != null) {
+                    backgroundMerger.close();
+                }
                 closeGirdTables(splits);
                 logger.info("Dogged Cube Build end, totally took " + (System.currentTimeMillis() - start) + " ms");
                 ensureExit(splits);
@@ -124,15 +179,7 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
 
         private void closeGirdTables(List<SplitThread> splits) {
             for (SplitThread split : splits) {
-                if (split.buildResult != null) {
-                    for (CuboidResult r : split.buildResult.values()) {
-                        try {
-                            r.table.close();
-                        } catch (Throwable e) {
-                            logger.error("Error closing grid table " + r.table, e);
-                        }
-                    }
-                }
+                closeCuboidTables(split.buildResult);
             }
         }
 
@@ -190,6 +237,219 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
         }
     }
 
+    private static void closeCuboidTables(Map<Long, CuboidResult> result) {
+        if (result != null) {
+            for (CuboidResult r : result.values()) {
+                try {
+                    r.table.close();
+                } catch (Throwable e) {
+                    logger.error("Error closing grid table " + r.table, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts a split when it reaches the target rows, or when the system avail memory drops to the reservation. The
+     * target rows are worked out after each split, from the bytes per row of its base cuboid and the headroom left.
+     */
+    private class SplitSizer implements RecordConsumeBlockingQueueController.ISplitCutter {
+
+        long targetRows = Long.MAX_VALUE; // only the memory decides before the first split is done
+
+        @Override
+        public boolean shouldCut(long splitRowCount) {
+            if (splitRowCount >= targetRows) {
+                logger.info("Split cut due to hitting target rows " + targetRows);
+                return true;
+            }
+            int systemAvailMB = MemoryBudgetController.getSystemAvailMB();
+            if (systemAvailMB <= reserveMemoryMB) {
+                logger.info("Split cut due to hitting memory threshold, system avail " + systemAvailMB + " MB <= reserve " + reserveMemoryMB + " MB, " + splitRowCount + " rows");
+                return true;
+            }
+            return false;
+        }
+
+        void splitDone(long splitRows, int baseCuboidMemMB) {
+            if (splitRows <= 0 || baseCuboidMemMB <= 0) {
+                return; // nothing observed, keep the last target
+            }
+
+            double bytesPerRow = (double) baseCuboidMemMB * MemoryBudgetController.ONE_MB / splitRows;
+            int headroomMB = Math.max(MemoryBudgetController.gcAndGetSystemAvailMB() - reserveMemoryMB, 0);
+            long fitRows = (long) (headroomMB * SPLIT_HEADROOM_RATIO * MemoryBudgetController.ONE_MB / bytesPerRow);
+
+            // grow or shrink by at most 2 times a split, the observation of one split is rough
+            long rows = Math.min(Math.max(fitRows, splitRows / 2), splitRows * 2);
+            targetRows = Math.max(rows, unitRows);
+            logger.info("Split of " + splitRows + " rows took " + baseCuboidMemMB + " MB for base cuboid, " + headroomMB + " MB headroom, next split targets " + targetRows + " rows");
+        }
+    }
+
+    /**
+     * Merges the results of finished splits in a background thread, one merge at a time, into grid tables that are
+     * merged again in the end.
+     * <p>
+     * Results are tiered by the number of splits they cover, tier i holding those of 2^i to 2^(i+1)-1 splits, and
+     * only results of the same tier are merged. A merge result lands in a higher tier, so a split is rewritten at
+     * most log2(splits) times, rather than once for every split after it.
+     */
+    private class BackgroundMerger {
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+        final List<List<NavigableMap<Long, CuboidResult>>> tiers = new ArrayList<List<NavigableMap<Long, CuboidResult>>>();
+        final List<List<Integer>> tierSplits = new ArrayList<List<Integer>>(); // the splits covered by each result
+        final List<NavigableMap<Long, CuboidResult>> merged = new ArrayList<NavigableMap<Long, CuboidResult>>();
+        Future<NavigableMap<Long, CuboidResult>> running;
+        int runningSplits;
+
+        void add(NavigableMap<Long, CuboidResult> splitResult) throws IOException {
+            if (!splitResult.isEmpty()) {
+                addToTier(splitResult, 1);
+            }
+            if (running != null && running.isDone()) {
+                addToTier(getRunning(), runningSplits);
+            }
+            if (running == null) {
+                for (int i = 0; i < tiers.size(); i++) {
+                    if (tiers.get(i).size() >= 2) {
+                        submit(i);
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void addToTier(NavigableMap<Long, CuboidResult> result, int splits) {
+            int tier = 31 - Integer.numberOfLeadingZeros(splits);
+            while (tiers.size() <= tier) {
+                tiers.add(new ArrayList<NavigableMap<Long, CuboidResult>>());
+                tierSplits.add(new ArrayList<Integer>());
+            }
+            tiers.get(tier).add(result);
+            tierSplits.get(tier).add(splits);
+        }
+
+        private void submit(int tier) {
+            final List<NavigableMap<Long, CuboidResult>> sources = new ArrayList<NavigableMap<Long, CuboidResult>>(tiers.get(tier));
+            tiers.get(tier).clear();
+            runningSplits = 0;
+            for (int splits : tierSplits.get(tier)) {
+                runningSplits += splits;
+            }
+            tierSplits.get(tier).clear();
+            running = executor.submit(new Callable<NavigableMap<Long, CuboidResult>>() {
+                @Override
+                public NavigableMap<Long, CuboidResult> call() throws Exception {
+                    return merge(sources);
+                }
+            });
+        }
+
+        private NavigableMap<Long, CuboidResult> merge(List<NavigableMap<Long, CuboidResult>> sources) throws IOException {
+            long start = System.currentTimeMillis();
+            GridTableCuboidWriter writer = new GridTableCuboidWriter();
+            try {
+                new Merger().mergeAndOutput(sources, writer);
+            } finally {
+                writer.close();
+                synchronized (merged) {
+                    merged.add(writer.result);
+                }
+            }
+            for (NavigableMap<Long, CuboidResult> source : sources) {
+                closeCuboidTables(source);
+            }
+            logger.info("Merged " + sources.size() + " split results in background, took " + (System.currentTimeMillis() - start) + " ms");
+            return writer.result;
+        }
+
+        private NavigableMap<Long, CuboidResult> getRunning() throws IOException {
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException("Exception during background merge of splits", e.getCause());
+            } finally {
+                running = null;
+            }
+        }
+
+        /** waits for the running merge, and returns all results left to merge */
+        List<NavigableMap<Long, CuboidResult>> finish() throws IOException {
+            if (running != null) {
+                addToTier(getRunning(), runningSplits);
+            }
+            List<NavigableMap<Long, CuboidResult>> results = new ArrayList<NavigableMap<Long, CuboidResult>>();
+            for (List<NavigableMap<Long, CuboidResult>> tier : tiers) {
+                results.addAll(tier);
+            }
+            return results;
+        }
+
+        void close() {
+            executor.shutdownNow();
+            try {
+                // a failed build may leave a merge running, wait for it before closing what it wrote
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (merged) {
+                for (NavigableMap<Long, CuboidResult> result : merged) {
+                    closeCuboidTables(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the merged records of each cuboid into a new grid table.
+     */
+    private class GridTableCuboidWriter implements ICuboidWriter {
+
+        final ConcurrentNavigableMap<Long, CuboidResult> result = new ConcurrentSkipListMap<Long, CuboidResult>();
+
+        long cuboidId;
+        GridTable table;
+        GTBuilder builder;
+        int nRows;
+
+        @Override
+        public void write(long cuboidId, GTRecord record) throws IOException {
+            if (builder == null || cuboidId != this.cuboidId) {
+                endCuboid();
+                GTInfo info = record.getInfo();
+                this.cuboidId = cuboidId;
+                this.table = new GridTable(info, newGTStore(info));
+                this.builder = table.rebuild();
+                this.nRows = 0;
+            }
+            builder.write(record);
+            nRows++;
+        }
+
+        private void endCuboid() throws IOException {
+            if (builder != null) {
+                builder.close();
+                builder = null;
+                result.put(cuboidId, new CuboidResult(cuboidId, table, nRows, 0, 0));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+            endCuboid();
+        }
+    }
+
     private class SplitThread extends Thread {
         final RecordConsumeBlockingQueueController<?> inputController;
         final InMemCubeBuilder builder;
@@ -233,9 +493,9 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
             reuseMetricsArray = new Object[cubeDesc.getMeasures().size()];
         }
 
-        public void mergeAndOutput(List<SplitThread> splits, ICuboidWriter output) throws IOException {
-            if (splits.size() == 1) {
-                for (CuboidResult cuboidResult : splits.get(0).buildResult.values()) {
+        public void mergeAndOutput(List<NavigableMap<Long, CuboidResult>> results, ICuboidWriter output) throws IOException {
+            if (results.size() == 1) {
+                for (CuboidResult cuboidResult : results.get(0).values()) {
                     outputCuboid(cuboidResult.cuboidId, cuboidResult.table, output);
                     cuboidResult.table.close();
                 }
@@ -243,8 +503,8 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
             }
 
             LinkedList<MergeSlot> open = Lists.newLinkedList();
-            for (SplitThread split : splits) {
-                open.add(new MergeSlot(split));
+            for (NavigableMap<Long, CuboidResult> result : results) {
+                open.add(new MergeSlot(result));
             }
 
             PriorityQueue<MergeSlot> heap = new PriorityQueue<MergeSlot>();
@@ -321,8 +581,8 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
         long currentCuboidId;
         GTRecord currentRecord;
 
-        public MergeSlot(SplitThread split) {
-            cuboidIterator = split.buildResult.values().iterator();
+        public MergeSlot(NavigableMap<Long, CuboidResult> result) {
+            cuboidIterator = result.values().iterator();
         }
 
         public boolean fetchNext() throws IOException {
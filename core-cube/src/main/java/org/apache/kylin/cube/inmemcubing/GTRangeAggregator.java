@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTAggregateScanner;
+import org.apache.kylin.gridtable.GTBuilder;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GridTable;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates a grid table into another grid table of the group by and metrics columns, like a child cuboid from
+ * its parent.
+ * <p>
+ * Given an executor, a parent in an {@link ISplittableStore} is split into row ranges that are
+ * aggregated in parallel, the first range by the calling thread and the others by the executor. This requires the
+ * group by to keep the first primary key column of the parent. Then no group crosses two ranges, and the sorted
+ * results of the ranges are written one after another, with no merge.
+ * <p>
+ * The executor must not be a fork join pool whose workers call this. The caller waits for the ranges with a plain
+ * Future.get(), so a thread that holds a memory reservation never runs other cuboid tasks while it waits, as a
+ * helping join of a fork join pool would.
+ * <p>
+ * Each range, the first one too, holds a permit of the given semaphore while it aggregates, and so does the caller
+ * while it writes the results. Sharing the semaphore among the callers keeps their busy threads within one limit,
+ * whichever pool they are in.
+ */
+public class GTRangeAggregator {
+
+    private static Logger logger = LoggerFactory.getLogger(GTRangeAggregator.class);
+
+    private final GridTable table;
+    private final GTScanRequest req;
+    private final boolean[] aggrMask;
+    private final ImmutableBitSet allNeededColumns;
+    private final ExecutorService rangeExecutor;
+    private final Semaphore threadPermits;
+
+    /**
+     * @param req an aggregation request on the table
+     * @param aggrMask the metrics to aggregate, null to aggregate all
+     * @param rangeExecutor runs the ranges after the first one, null to aggregate the table as one range
+     * @param threadPermits a permit is held by each range while it aggregates, and by the caller while it writes,
+     *                      null for no limit
+     */
+    public GTRangeAggregator(GridTable table, GTScanRequest req, boolean[] aggrMask, ExecutorService rangeExecutor,
+            Semaphore threadPermits) {
+        this.table = table;
+        this.req = req;
+        this.aggrMask = aggrMask;
+        this.allNeededColumns = req.getAggrGroupBy().or(req.getAggrMetrics());
+        this.rangeExecutor = rangeExecutor;
+        this.threadPermits = threadPermits;
+    }
+
+    /**
+     * Returns the number of ranges the table can be split into, at most maxSplits.
+     */
+    public int getSplitCount(int maxSplits) {
+        return getSplitOffsets(maxSplits).length - 1;
+    }
+
+    private long[] getSplitOffsets(int maxSplits) {
+        GTInfo info = table.getInfo();
+        boolean splittable = maxSplits > 1 && rangeExecutor != null //
+                && table.getStore() instanceof ISplittableStore //
+                && !info.getPrimaryKey().isEmpty() && req.getAggrGroupBy().get(info.getPrimaryKey().trueBitAt(0));
+        if (!splittable) {
+            return new long[] { 0, -1 };
+        }
+        return ((ISplittableStore) table.getStore()).getSplitOffsets(maxSplits);
+    }
+
+    /**
+     * Aggregates the table into the target, whose columns are the group by and metrics columns of the request in
+     * order.
+     *
+     * @return the number of rows written
+     */
+    public int aggregateTo(GridTable target, int maxSplits) throws IOException {
+        long[] offsets = getSplitOffsets(maxSplits);
+        List<RangeTask> tasks = new ArrayList<RangeTask>(offsets.length - 1);
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            tasks.add(new RangeTask(offsets[i], offsets[i + 1]));
+        }
+        if (tasks.size() > 1) {
+            logger.info("Aggregating " + table.getStore() + " in " + tasks.size() + " ranges");
+        }
+
+        GTBuilder builder = target.rebuild();
+        GTRecord newRecord = new GTRecord(target.getInfo());
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+        int count = 0;
+        try {
+            for (int i = 1; i < tasks.size(); i++) {
+                futures.add(rangeExecutor.submit(tasks.get(i)));
+            }
+            tasks.get(0).run();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            acquirePermit();
+            try {
+                for (RangeTask task : tasks) {
+                    Iterator<GTRecord> it = task.result;
+                    while (it.hasNext()) {
+                        GTRecord record = it.next();
+                        count++;
+                        for (int i = 0; i < allNeededColumns.trueBitCount(); i++) {
+                            int c = allNeededColumns.trueBitAt(i);
+                            newRecord.set(i, record.get(c));
+                        }
+                        builder.write(newRecord);
+                    }
+                }
+            } finally {
+                releasePermit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while aggregating " + table.getStore(), e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (RuntimeException e) {
+            throw rethrow(e);
+        } finally {
+            for (Future<?> future : futures) {
+                waitQuietly(future); // other ranges may still run if one fails
+            }
+            for (RangeTask task : tasks) {
+                task.close();
+            }
+            builder.close();
+        }
+        return count;
+    }
+
+    private void acquirePermit() throws InterruptedException {
+        if (threadPermits != null)
+            threadPermits.acquire();
+    }
+
+    private void releasePermit() {
+        if (threadPermits != null)
+            threadPermits.release();
+    }
+
+    // a range fails with its IOException wrapped in a RuntimeException
+    private static RuntimeException rethrow(Throwable e) throws IOException {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException)
+                throw (IOException) t;
+        }
+        throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+    }
+
+    private static void waitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (Exception e) {
+            // a failure is reported by the first get already
+        }
+    }
+
+    private class RangeTask implements Runnable {
+        final long startOffset;
+        final long endOffset;
+
+        GTAggregateScanner scanner;
+        Iterator<GTRecord> result;
+
+        RangeTask(long startOffset, long endOffset) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        @Override
+        public void run() {
+            try {
+                acquirePermit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a thread permit", e);
+            }
+            try {
+                IGTScanner input = endOffset < 0 ? table.getStore().scan(req)
+                        : ((ISplittableStore) table.getStore()).scan(startOffset, endOffset);
+                scanner = (GTAggregateScanner) req.decorateScanner(input);
+                if (aggrMask != null) {
+                    scanner.setAggrMask(aggrMask);
+                }
+                // reads and aggregates all rows of the range, the caller only iterates the aggregation cache
+                result = scanner.iterator();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                releasePermit();
+            }
+        }
+
+        void close() throws IOException {
+            if (scanner != null) {
+                scanner.close();
+                scanner = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.IOException;
+
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStore;
+
+/**
+ * A store whose rows of the last rebuild can be scanned in ranges, split where the first primary key column
+ * changes value. For sorted rows, no value of that column crosses two ranges.
+ */
+public interface ISplittableStore extends IGTStore {
+
+    /**
+     * Splits the rows into up to maxSplits ranges of about the same bytes.
+     *
+     * @return the start offset of each range, followed by the end offset of the last
+     */
+    long[] getSplitOffsets(int maxSplits);
+
+    /**
+     * Scans the rows between two offsets returned by {@link #getSplitOffsets(int)}.
+     */
+    IGTScanner scan(long startOffset, long endOffset) throws IOException;
+}
@@ -24,12 +24,17 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.ImmutableBitSet;
 import org.apache.kylin.common.util.MemoryBudgetController;
@@ -47,6 +52,7 @@ import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
 import org.apache.kylin.gridtable.GridTable;
 import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.measure.topn.Counter;
 import org.apache.kylin.measure.topn.TopNCounter;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
@@ -61,6 +67,15 @@ import com.google.common.collect.Lists;
 /**
  * Build a cube (many cuboids) in memory. Calculating multiple cuboids at the same time as long as memory permits.
  * Assumes base cuboid fits in memory or otherwise OOM exception will occur.
+ * <p>
+ * Cuboids are calculated by a fork join pool. Each cuboid task forks the tasks of its children when done, and the
+ * aggregation of a large parent is split into row ranges by {@link GTRangeAggregator}, which runs them on a separate
+ * fixed pool so the big cuboids don't keep other threads waiting. The ranges are not forked in the fork join pool,
+ * whose helping join would run other cuboid tasks, blocking on memory, while the reservation of the cuboid is held.
+ * <p>
+ * The thread count limit is shared by the two pools. Every range, the one run inline by a cuboid task too, holds
+ * one of taskThreadCount permits while it aggregates, and so does a cuboid task writing the result, so no more than
+ * taskThreadCount threads are busy at a time.
  */
 public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
@@ -70,6 +85,9 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     private static final double DERIVE_AGGR_CACHE_CONSTANT_FACTOR = 0.1;
     private static final double DERIVE_AGGR_CACHE_VARIABLE_FACTOR = 0.9;
 
+    // a parent is split into ranges of at least this many rows
+    private static final int MIN_ROWS_PER_RANGE = 65536;
+
     private final long baseCuboidId;
     private final int totalCuboidCount;
     private final String[] metricsAggrFuncs;
@@ -79,9 +97,9 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     private MemoryBudgetController memBudget;
     private MemoryWaterLevel baseCuboidMemTracker;
 
-    private Thread[] taskThreads;
-    private Throwable[] taskThreadExceptions;
-    private TreeSet<CuboidTask> taskPending;
+    private volatile ForkJoinPool taskPool;
+    private volatile ExecutorService rangePool;
+    private volatile Semaphore rangePermits;
     private AtomicInteger taskCuboidCompleted = new AtomicInteger(0);
 
     private CuboidResult baseResult;
@@ -106,6 +124,13 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         this.metricsAggrFuncs = metricsAggrFuncsList.toArray(new String[metricsAggrFuncsList.size()]);
     }
 
+    /**
+     * The memory taken by aggregating the base cuboid in the last build, 0 if unknown.
+     */
+    public int getBaseCuboidMemEstimateMB() {
+        return baseCuboidMemTracker == null ? 0 : Math.max(baseCuboidMemTracker.getEstimateMB(), 0);
+    }
+
     private GridTable newGridTableByCuboidID(long cuboidID) throws IOException {
         GTInfo info = CubeGridTable.newGTInfo(Cuboid.findForMandatory(cubeDesc, cuboidID),
                 new CubeDimEncMap(cubeDesc, dictionaryMap)
@@ -114,7 +139,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         // Below several store implementation are very similar in performance. The ConcurrentDiskStore is the simplest.
         // MemDiskStore store = new MemDiskStore(info, memBudget == null ? MemoryBudgetController.ZERO_BUDGET : memBudget);
         // MemDiskStore store = new MemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
-        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        IGTStore store = newGTStore(info);
 
         GridTable gridTable = new GridTable(info, store);
         return gridTable;
@@ -161,11 +186,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         baseCuboidMemTracker = new MemoryWaterLevel();
         baseCuboidMemTracker.markLow();
 
-        // multiple threads to compute cuboid in parallel
-        taskPending = new TreeSet<CuboidTask>();
         taskCuboidCompleted.set(0);
-        taskThreads = prepareTaskThreads();
-        taskThreadExceptions = new Throwable[taskThreadCount];
 
         // build base cuboid
         resultCollector = collector;
@@ -178,137 +199,50 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         baseCuboidMemTracker.markLow();
         makeMemoryBudget();
 
-        // kick off N-D cuboid tasks and output
-        addChildTasks(baseResult);
-        start(taskThreads);
-
-        // wait complete
-        join(taskThreads);
+        // kick off N-D cuboid tasks and wait complete
+        taskPool = new ForkJoinPool(taskThreadCount);
+        rangePool = taskThreadCount > 1 ? Executors.newFixedThreadPool(taskThreadCount, new DaemonThreadFactory()) : null;
+        rangePermits = new Semaphore(taskThreadCount);
+        try {
+            taskPool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(newChildTasks(baseResult));
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Exception during in-mem cube build", e);
+            throw new IOException("Exception during in-mem cube build", e);
+        } finally {
+            taskPool.shutdownNow();
+            if (rangePool != null)
+                rangePool.shutdownNow();
+        }
 
         long endTime = System.currentTimeMillis();
         logger.info("In Mem Cube Build end, " + cubeDesc.getName() + ", takes " + (endTime - startTime) + " ms");
-
-        throwExceptionIfAny();
     }
 
     public void abort() {
-        interrupt(taskThreads);
-    }
-
-    private void start(Thread... threads) {
-        for (Thread t : threads)
-            t.start();
-    }
-
-    private void interrupt(Thread... threads) {
-        for (Thread t : threads)
-            t.interrupt();
-    }
-
-    private void join(Thread... threads) throws IOException {
-        try {
-            for (Thread t : threads)
-                t.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("interrupted while waiting task and output complete", e);
-        }
-    }
-
-    private void throwExceptionIfAny() throws IOException {
-        ArrayList<Throwable> errors = new ArrayList<Throwable>();
-        for (int i = 0; i < taskThreadCount; i++) {
-            Throwable t = taskThreadExceptions[i];
-            if (t != null)
-                errors.add(t);
-        }
-        if (errors.isEmpty()) {
-            return;
-        } else if (errors.size() == 1) {
-            Throwable t = errors.get(0);
-            if (t instanceof IOException)
-                throw (IOException) t;
-            else
-                throw new IOException(t);
-        } else {
-            for (Throwable t : errors)
-                logger.error("Exception during in-mem cube build", t);
-            throw new IOException(errors.size() + " exceptions during in-mem cube build, cause set to the first, check log for more", errors.get(0));
-        }
-    }
-
-    private Thread[] prepareTaskThreads() {
-        Thread[] result = new Thread[taskThreadCount];
-        for (int i = 0; i < taskThreadCount; i++) {
-            result[i] = new CuboidTaskThread(i);
-        }
-        return result;
+        ForkJoinPool pool = taskPool;
+        if (pool != null)
+            pool.shutdownNow();
+        ExecutorService ranges = rangePool;
+        if (ranges != null)
+            ranges.shutdownNow();
     }
 
     public boolean isAllCuboidDone() {
         return taskCuboidCompleted.get() == totalCuboidCount;
     }
 
-    private class CuboidTaskThread extends Thread {
-        private int id;
-
-        CuboidTaskThread(int id) {
-            super("CuboidTask-" + id);
-            this.id = id;
-        }
-
-        @Override
-        public void run() {
-            try {
-                while (!isAllCuboidDone()) {
-                    CuboidTask task = null;
-                    synchronized (taskPending) {
-                        while (task == null && taskHasNoException()) {
-                            task = taskPending.pollFirst();
-                            if (task == null)
-                                taskPending.wait(60000);
-                        }
-                    }
-                    // if task error occurs
-                    if (task == null)
-                        break;
-
-                    CuboidResult newCuboid = buildCuboid(task.parent, task.childCuboidId);
-                    addChildTasks(newCuboid);
-
-                    if (isAllCuboidDone()) {
-                        for (Thread t : taskThreads) {
-                            if (t != Thread.currentThread())
-                                t.interrupt();
-                        }
-                    }
-                }
-            } catch (Throwable ex) {
-                if (!isAllCuboidDone()) {
-                    logger.error("task thread exception", ex);
-                    taskThreadExceptions[id] = ex;
-                }
-            }
-        }
-    }
-
-    private boolean taskHasNoException() {
-        for (int i = 0; i < taskThreadExceptions.length; i++)
-            if (taskThreadExceptions[i] != null)
-                return false;
-        return true;
-    }
-
-    private void addChildTasks(CuboidResult parent) {
+    private List<CuboidTask> newChildTasks(CuboidResult parent) {
         List<Long> children = cuboidScheduler.getSpanningCuboid(parent.cuboidId);
-        if (!children.isEmpty()) {
-            synchronized (taskPending) {
-                for (Long child : children) {
-                    taskPending.add(new CuboidTask(parent, child));
-                }
-                taskPending.notifyAll();
-            }
+        List<CuboidTask> result = new ArrayList<CuboidTask>(children.size());
+        for (Long child : children) {
+            result.add(new CuboidTask(parent, child));
         }
+        return result;
     }
 
     private void makeMemoryBudget() {
@@ -401,7 +335,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
             }
         };
 
-        // reserve memory for aggregation cache, can't be larger than the parent
+        // reserve memory for aggregation cache, can't be larger than the parent, and shared by the ranges of the parent
         memBudget.reserveInsist(consumer, parent.aggrCacheMB);
         try {
             return aggregateCuboid(parent, cuboidId);
@@ -412,17 +346,16 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
     private CuboidResult aggregateCuboid(CuboidResult parent, long cuboidId) throws IOException {
         final Pair<ImmutableBitSet, ImmutableBitSet> allNeededColumns = InMemCubeBuilderUtils.getDimensionAndMetricColumnBitSet(parent.cuboidId, cuboidId, measureCount);
-        return scanAndAggregateGridTable(parent.table, parent.cuboidId, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond());
+        return scanAndAggregateGridTable(parent, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond());
     }
 
-    private GTAggregateScanner prepareGTAggregationScanner(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) throws IOException {
-        GTInfo info = gridTable.getInfo();
-        GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setAggrGroupBy(aggregationColumns).setAggrMetrics(measureColumns).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).createGTScanRequest();
-        GTAggregateScanner scanner = (GTAggregateScanner) gridTable.scan(req);
+    private GTRangeAggregator prepareGTRangeAggregator(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) {
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(gridTable.getInfo()).setRanges(null).setDimensions(null).setAggrGroupBy(aggregationColumns).setAggrMetrics(measureColumns).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).createGTScanRequest();
 
         // for child cuboid, some measures don't need aggregation.
+        boolean[] aggrMask = null;
         if (parentId != cuboidId) {
-            boolean[] aggrMask = new boolean[measureDescs.length];
+            aggrMask = new boolean[measureDescs.length];
             for (int i = 0; i < measureDescs.length; i++) {
                 aggrMask[i] = !measureDescs[i].getFunction().getMeasureType().onlyAggrInBaseCuboid();
 
@@ -430,41 +363,21 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
                     logger.info(measureDescs[i].toString() + " doesn't need aggregation.");
                 }
             }
-            scanner.setAggrMask(aggrMask);
         }
 
-        return scanner;
+        return new GTRangeAggregator(gridTable, req, aggrMask, rangePool, rangePermits);
     }
 
-    private CuboidResult scanAndAggregateGridTable(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) throws IOException {
+    private CuboidResult scanAndAggregateGridTable(CuboidResult parent, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) throws IOException {
         long startTime = System.currentTimeMillis();
         logger.info("Calculating cuboid " + cuboidId);
 
-        GTAggregateScanner scanner = prepareGTAggregationScanner(gridTable, parentId, cuboidId, aggregationColumns, measureColumns);
+        GTRangeAggregator aggregator = prepareGTRangeAggregator(parent.table, parent.cuboidId, cuboidId, aggregationColumns, measureColumns);
         GridTable newGridTable = newGridTableByCuboidID(cuboidId);
-        GTBuilder builder = newGridTable.rebuild();
 
-        ImmutableBitSet allNeededColumns = aggregationColumns.or(measureColumns);
-
-        GTRecord newRecord = new GTRecord(newGridTable.getInfo());
-        int count = 0;
-        try {
-            for (GTRecord record : scanner) {
-                count++;
-                for (int i = 0; i < allNeededColumns.trueBitCount(); i++) {
-                    int c = allNeededColumns.trueBitAt(i);
-                    newRecord.set(i, record.get(c));
-                }
-                builder.write(newRecord);
-            }
-
-            //long t = System.currentTimeMillis();
-            //sanityCheck(parentId, cuboidId, scanner.getTotalSumForSanityCheck());
-            //logger.info("sanity check for Cuboid " + cuboidId + " cost " + (System.currentTimeMillis() - t) + "ms");
-        } finally {
-            scanner.close();
-            builder.close();
-        }
+        // more ranges than threads, to balance the uneven ranges
+        int maxRanges = taskThreadCount > 1 ? Math.min(taskThreadCount * 2, parent.nRows / MIN_ROWS_PER_RANGE) : 1;
+        int count = aggregator.aggregateTo(newGridTable, maxRanges);
 
         long timeSpent = System.currentTimeMillis() - startTime;
         logger.info("Cuboid " + cuboidId + " has " + count + " rows, build takes " + timeSpent + "ms");
@@ -507,7 +420,8 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
     // ===========================================================================
 
-    private static class CuboidTask implements Comparable<CuboidTask> {
+    @SuppressWarnings("serial")
+    private class CuboidTask extends RecursiveAction {
         final CuboidResult parent;
         final long childCuboidId;
 
@@ -517,9 +431,14 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         }
 
         @Override
-        public int compareTo(CuboidTask o) {
-            long comp = this.childCuboidId - o.childCuboidId;
-            return comp < 0 ? -1 : (comp > 0 ? 1 : 0);
+        protected void compute() {
+            CuboidResult newCuboid;
+            try {
+                newCuboid = buildCuboid(parent, childCuboidId);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            invokeAll(newChildTasks(newCuboid));
         }
     }
 }
@@ -0,0 +1,604 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk store of columnar, compressed chunks, that allows concurrent read and exclusive write like
+ * {@link ConcurrentDiskStore}.
+ * <p>
+ * The writer buffers up to {@link #CHUNK_ROWS} rows and writes them as a chunk, holding the lengths of each column,
+ * then the values of each column. A chunk is deflated if that makes it smaller. Readers map the file into memory,
+ * inflate a chunk at a time into a buffer, and return records whose columns point into the buffer, without copying
+ * row by row.
+ * <p>
+ * On rebuild, a chunk that starts where the first primary key column changes value is marked, and the rows can be
+ * split into ranges of whole chunks at the marks. The offsets of {@link #getSplitOffsets(int)} are chunk indexes.
+ * <p>
+ * The mapped regions are unmapped on close and on the next write, so that the disk space of a deleted file is freed
+ * at once. Where the JVM does not allow that, the space is held until the regions are garbage collected.
+ * <p>
+ * The bytes and time of the chunk I/O of all stores in the process are summed in {@link #getTotalStats()}.
+ */
+public class MappedChunkStore implements ISplittableStore, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedChunkStore.class);
+
+    static final int CHUNK_ROWS = 4096;
+    private static final int MAX_CHUNK_BYTES = 8 * 1024 * 1024; // a chunk ends early when its values are large
+    private static final long MAX_REGION_BYTES = 1L << 30; // a mapped region holds whole chunks
+
+    private static final AtomicLong totalRawBytes = new AtomicLong();
+    private static final AtomicLong totalWrittenBytes = new AtomicLong();
+    private static final AtomicLong totalWriteNanos = new AtomicLong();
+    private static final AtomicLong totalReadBytes = new AtomicLong();
+    private static final AtomicLong totalReadNanos = new AtomicLong();
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // Java 8 and before, unmap by the cleaner of the buffer
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    public static IOStats getTotalStats() {
+        return new IOStats(totalRawBytes.get(), totalWrittenBytes.get(), totalWriteNanos.get() / 1000000, //
+                totalReadBytes.get(), totalReadNanos.get() / 1000000);
+    }
+
+    public static class IOStats {
+        public final long rawBytes;
+        public final long writtenBytes;
+        public final long writeMillis;
+        public final long readBytes;
+        public final long readMillis;
+
+        IOStats(long rawBytes, long writtenBytes, long writeMillis, long readBytes, long readMillis) {
+            this.rawBytes = rawBytes;
+            this.writtenBytes = writtenBytes;
+            this.writeMillis = writeMillis;
+            this.readBytes = readBytes;
+            this.readMillis = readMillis;
+        }
+
+        /**
+         * Returns the stats since an earlier snapshot of the same totals.
+         */
+        public IOStats since(IOStats earlier) {
+            return new IOStats(rawBytes - earlier.rawBytes, writtenBytes - earlier.writtenBytes,
+                    writeMillis - earlier.writeMillis, readBytes - earlier.readBytes, readMillis - earlier.readMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "IOStats[raw=" + rawBytes + ", written=" + writtenBytes + ", writeMillis=" + writeMillis + ", read="
+                    + readBytes + ", readMillis=" + readMillis + "]";
+        }
+    }
+
+    // ============================================================================
+
+    final private GTInfo info;
+    final private Object lock;
+
+    final private File diskFile;
+    final private boolean delOnClose;
+
+    private Writer activeWriter;
+    private int activeReaders;
+    private List<Chunk> chunks = new ArrayList<Chunk>();
+    private boolean chunksSorted; // rows appended are not known to be sorted, don't split them
+    private List<Long> regionStarts = new ArrayList<Long>();
+    private ByteBuffer[] regions; // mapped on the first read after write, sharable across multi-threads
+
+    public MappedChunkStore(GTInfo info) throws IOException {
+        this(info, File.createTempFile("MappedChunkStore", ""), true);
+    }
+
+    public MappedChunkStore(GTInfo info, File diskFile) throws IOException {
+        this(info, diskFile, false);
+    }
+
+    private MappedChunkStore(GTInfo info, File diskFile, boolean delOnClose) throws IOException {
+        this.info = info;
+        this.lock = this;
+        this.diskFile = diskFile;
+        this.delOnClose = delOnClose;
+
+        // in case user forget to call close()
+        if (delOnClose)
+            diskFile.deleteOnExit();
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return info;
+    }
+
+    @Override
+    public IGTWriter rebuild() throws IOException {
+        return newWriter(false);
+    }
+
+    @Override
+    public IGTWriter append() throws IOException {
+        return newWriter(true);
+    }
+
+    private IGTWriter newWriter(boolean append) throws IOException {
+        synchronized (lock) {
+            if (activeWriter != null || activeReaders > 0)
+                throw new IllegalStateException();
+
+            unmapRegions();
+            if (!append) {
+                chunks.clear();
+                regionStarts.clear();
+                diskFile.delete();
+            }
+            chunksSorted = !append;
+            activeWriter = new Writer(FileChannel.open(diskFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE), !append);
+            return activeWriter;
+        }
+    }
+
+    private void closeWriter(Writer w) {
+        synchronized (lock) {
+            if (activeWriter != w)
+                throw new IllegalStateException();
+
+            activeWriter = null;
+        }
+    }
+
+    @Override
+    public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
+        return newReader(0, -1);
+    }
+
+    @Override
+    public IGTScanner scan(long startOffset, long endOffset) throws IOException {
+        return newReader(startOffset, endOffset);
+    }
+
+    /**
+     * Splits the chunks into up to maxSplits ranges of about the same stored bytes, at the marked chunks of the last
+     * rebuild.
+     *
+     * @return the index of the first chunk of each range, followed by the chunk count
+     */
+    @Override
+    public long[] getSplitOffsets(int maxSplits) {
+        synchronized (lock) {
+            if (activeWriter != null)
+                throw new IllegalStateException();
+
+            long totalBytes = 0;
+            for (Chunk chunk : chunks) {
+                totalBytes += chunk.storedLen;
+            }
+            long[] result = new long[Math.max(1, Math.min(maxSplits, chunks.size())) + 1];
+            int n = 1;
+            long bytes = 0;
+            for (int i = 0; i < chunks.size() && n < result.length - 1; i++) {
+                if (chunksSorted && chunks.get(i).marked && bytes >= totalBytes * n / (result.length - 1)) {
+                    result[n++] = i;
+                }
+                bytes += chunks.get(i).storedLen;
+            }
+            result[n++] = chunks.size();
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        }
+    }
+
+    private IGTScanner newReader(long startOffset, long endOffset) throws IOException {
+        synchronized (lock) {
+            if (activeWriter != null)
+                throw new IllegalStateException();
+
+            if (regions == null) {
+                regions = mapRegions();
+            }
+            activeReaders++;
+            int end = endOffset < 0 ? chunks.size() : (int) endOffset;
+            return new Reader(new ArrayList<Chunk>(chunks.subList((int) startOffset, end)), regions);
+        }
+    }
+
+    private ByteBuffer[] mapRegions() throws IOException {
+        ByteBuffer[] result = new ByteBuffer[regionStarts.size()];
+        if (result.length == 0)
+            return result;
+
+        FileChannel channel = FileChannel.open(diskFile.toPath(), StandardOpenOption.READ);
+        try {
+            for (int i = 0; i < result.length; i++) {
+                long start = regionStarts.get(i);
+                long end = i + 1 < result.length ? regionStarts.get(i + 1) : channel.size();
+                result[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            }
+        } finally {
+            IOUtils.closeQuietly(channel); // the mapping stays valid
+        }
+        return result;
+    }
+
+    // called with no active reader, a read from an unmapped region would crash the JVM
+    private void unmapRegions() {
+        if (regions == null)
+            return;
+
+        for (ByteBuffer region : regions) {
+            if (!unmap(region)) {
+                logger.debug("Cannot unmap {}, its disk space is freed after GC", diskFile);
+                break;
+            }
+        }
+        regions = null;
+    }
+
+    private static boolean unmap(ByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void closeReader() {
+        synchronized (lock) {
+            if (activeReaders <= 0)
+                throw new IllegalStateException();
+
+            activeReaders--;
+        }
+    }
+
+    private static class Chunk {
+        final int region;
+        final int regionOffset;
+        final int storedLen;
+        final int rawLen;
+        final int nRows;
+        final boolean compressed;
+        final boolean marked; // the first primary key column of the first row differs from the row before
+
+        Chunk(int region, int regionOffset, int storedLen, int rawLen, int nRows, boolean compressed, boolean marked) {
+            this.region = region;
+            this.regionOffset = regionOffset;
+            this.storedLen = storedLen;
+            this.rawLen = rawLen;
+            this.nRows = nRows;
+            this.compressed = compressed;
+            this.marked = marked;
+        }
+    }
+
+    private class Reader implements IGTScanner {
+        final List<Chunk> chunkList;
+        final ByteBuffer[] regionList;
+        final Inflater inflater = new Inflater();
+
+        byte[] stored = new byte[0];
+        byte[] raw = new byte[0];
+        boolean closed;
+
+        Reader(List<Chunk> chunkList, ByteBuffer[] regionList) {
+            this.chunkList = chunkList;
+            this.regionList = regionList;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            inflater.end();
+            closeReader();
+        }
+
+        private void loadChunk(Chunk chunk) {
+            if (closed)
+                throw new IllegalStateException("Reader of " + MappedChunkStore.this + " is closed");
+
+            long start = System.nanoTime();
+            ByteBuffer region = regionList[chunk.region].duplicate();
+            region.position(chunk.regionOffset);
+            if (raw.length < chunk.rawLen) {
+                raw = new byte[chunk.rawLen];
+            }
+            if (chunk.compressed) {
+                if (stored.length < chunk.storedLen) {
+                    stored = new byte[chunk.storedLen];
+                }
+                region.get(stored, 0, chunk.storedLen);
+                inflater.reset();
+                inflater.setInput(stored, 0, chunk.storedLen);
+                try {
+                    int n = inflater.inflate(raw, 0, chunk.rawLen);
+                    if (n != chunk.rawLen)
+                        throw new IllegalStateException("Chunk of " + chunk.rawLen + " bytes is inflated to " + n + " bytes");
+                } catch (DataFormatException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                region.get(raw, 0, chunk.rawLen);
+            }
+            totalReadBytes.addAndGet(chunk.storedLen);
+            totalReadNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public Iterator<GTRecord> iterator() {
+            return new Iterator<GTRecord>() {
+                final int nCols = info.getColumnCount();
+                final GTRecord record = new GTRecord(info);
+                final int[] valueOffsets = new int[nCols];
+                int iChunk = -1;
+                Chunk chunk;
+                ByteBuffer lengths;
+                int row;
+
+                @Override
+                public boolean hasNext() {
+                    while (chunk == null || row >= chunk.nRows) {
+                        if (iChunk + 1 >= chunkList.size())
+                            return false;
+
+                        chunk = chunkList.get(++iChunk);
+                        loadChunk(chunk);
+                        lengths = ByteBuffer.wrap(raw, 0, chunk.rawLen);
+                        row = 0;
+
+                        // values of the first column follow the lengths of all columns
+                        int offset = nCols * chunk.nRows * 4;
+                        for (int c = 0; c < nCols; c++) {
+                            valueOffsets[c] = offset;
+                            for (int r = 0; r < chunk.nRows; r++) {
+                                offset += lengths.getInt((c * chunk.nRows + r) * 4);
+                            }
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public GTRecord next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+
+                    for (int c = 0; c < nCols; c++) {
+                        int len = lengths.getInt((c * chunk.nRows + row) * 4);
+                        record.get(c).reset(raw, valueOffsets[c], len);
+                        valueOffsets[c] += len;
+                    }
+                    row++;
+                    return record;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public GTInfo getInfo() {
+            return info;
+        }
+    }
+
+    private class Writer implements IGTWriter {
+        final FileChannel channel;
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final int nCols = info.getColumnCount();
+        final int[][] lengths = new int[nCols][CHUNK_ROWS];
+        final byte[][] values = new byte[nCols][];
+        final int[] valueLens = new int[nCols];
+        int nRows;
+        int nValueBytes;
+
+        byte[] raw = new byte[0];
+        byte[] stored = new byte[0];
+        long writeOffset;
+
+        final int markCol;
+        byte[] lastMarkValue = new byte[0]; // of the last row of the chunk before
+        int lastMarkValueLen = -1;
+        boolean chunkMarked;
+
+        Writer(FileChannel channel, boolean markSplits) throws IOException {
+            this.channel = channel;
+            this.writeOffset = channel.size();
+            this.markCol = markSplits && !info.getPrimaryKey().isEmpty() ? info.getPrimaryKey().trueBitAt(0) : -1;
+            for (int c = 0; c < nCols; c++) {
+                values[c] = new byte[256];
+            }
+        }
+
+        @Override
+        public void write(GTRecord rec) throws IOException {
+            if (nRows == 0 && markCol >= 0) {
+                ByteArray v = rec.get(markCol);
+                chunkMarked = lastMarkValueLen < 0 || !Bytes.equals(v.array(), v.offset(), v.length(), lastMarkValue, 0, lastMarkValueLen);
+            }
+            for (int c = 0; c < nCols; c++) {
+                ByteArray v = rec.get(c);
+                int len = v.length();
+                if (valueLens[c] + len > values[c].length) {
+                    values[c] = Arrays.copyOf(values[c], Math.max(values[c].length * 2, valueLens[c] + len));
+                }
+                System.arraycopy(v.array(), v.offset(), values[c], valueLens[c], len);
+                valueLens[c] += len;
+                lengths[c][nRows] = len;
+                nValueBytes += len;
+            }
+            nRows++;
+
+            if (nRows == CHUNK_ROWS || nValueBytes >= MAX_CHUNK_BYTES) {
+                flushChunk();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (nRows == 0)
+                return;
+
+            long start = System.nanoTime();
+            int rawLen = nCols * nRows * 4 + nValueBytes;
+            if (raw.length < rawLen) {
+                raw = new byte[rawLen];
+            }
+            ByteBuffer buf = ByteBuffer.wrap(raw);
+            for (int c = 0; c < nCols; c++) {
+                for (int r = 0; r < nRows; r++) {
+                    buf.putInt(lengths[c][r]);
+                }
+            }
+            for (int c = 0; c < nCols; c++) {
+                buf.put(values[c], 0, valueLens[c]);
+            }
+
+            // keep the chunk raw if deflate does not make it smaller
+            if (stored.length < rawLen) {
+                stored = new byte[rawLen];
+            }
+            deflater.reset();
+            deflater.setInput(raw, 0, rawLen);
+            deflater.finish();
+            int storedLen = deflater.deflate(stored, 0, rawLen);
+            boolean compressed = deflater.finished() && storedLen < rawLen;
+            if (!compressed) {
+                storedLen = rawLen;
+            }
+
+            int region = regionStarts.size() - 1;
+            if (region < 0 || writeOffset + storedLen - regionStarts.get(region) > MAX_REGION_BYTES) {
+                regionStarts.add(writeOffset);
+                region++;
+            }
+            chunks.add(new Chunk(region, (int) (writeOffset - regionStarts.get(region)), storedLen, rawLen, nRows, compressed, chunkMarked));
+            if (markCol >= 0) {
+                int len = lengths[markCol][nRows - 1];
+                if (lastMarkValue.length < len) {
+                    lastMarkValue = new byte[len];
+                }
+                System.arraycopy(values[markCol], valueLens[markCol] - len, lastMarkValue, 0, len);
+                lastMarkValueLen = len;
+            }
+
+            ByteBuffer out = ByteBuffer.wrap(compressed ? stored : raw, 0, storedLen);
+            while (out.hasRemaining()) {
+                writeOffset += channel.write(out, writeOffset);
+            }
+
+            nRows = 0;
+            nValueBytes = 0;
+            Arrays.fill(valueLens, 0);
+            totalRawBytes.addAndGet(rawLen);
+            totalWrittenBytes.addAndGet(storedLen);
+            totalWriteNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushChunk();
+            } finally {
+                deflater.end();
+                IOUtils.closeQuietly(channel);
+                closeWriter(this);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (activeWriter != null || activeReaders > 0)
+                throw new IllegalStateException();
+
+            unmapRegions();
+            if (delOnClose) {
+                diskFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedChunkStore@" + (info.getTableName() == null ? this.hashCode() : info.getTableName());
+    }
+
+}
@@ -24,22 +24,55 @@ public class RecordConsumeBlockingQueueController<T> extends ConsumeBlockingQueu
 
     public final InputConverterUnit<T> inputConverterUnit;
 
+    private final int batchSize;
+
     private RecordConsumeBlockingQueueController(InputConverterUnit<T> inputConverterUnit, BlockingQueue<T> input, int batchSize) {
         super(input, batchSize);
         this.inputConverterUnit = inputConverterUnit;
+        this.batchSize = batchSize;
     }
    
     private T currentObject = null;
     private volatile boolean ifEnd = false;
 
+    private ISplitCutter splitCutter = null;
+    private boolean splitCut = false;
+    private long splitRowCount = 0;
+
+    /**
+     * Decides whether to cut the current split before the next row, asked every batch of rows.
+     */
+    public interface ISplitCutter {
+        boolean shouldCut(long splitRowCount);
+    }
+
+    public void setSplitCutter(ISplitCutter splitCutter) {
+        this.splitCutter = splitCutter;
+    }
+
+    /** continue with a new split after the last one is cut by the split cutter */
+    public void startNewSplit() {
+        splitCut = false;
+        splitRowCount = 0;
+    }
+
+    public long getSplitRowCount() {
+        return splitRowCount;
+    }
+
     @Override
     public boolean hasNext() { // should be idempotent
-        if (ifEnd) {
+        if (ifEnd || splitCut) {
             return false;
         }
         if (currentObject != null) {
             return true;
         }
+        if (splitCutter != null && splitRowCount > 0 && splitRowCount % batchSize == 0
+                && splitCutter.shouldCut(splitRowCount)) {
+            splitCut = true;
+            return false;
+        }
         if (!super.hasNext()) {
             return false;
         }
@@ -63,6 +96,7 @@ public class RecordConsumeBlockingQueueController<T> extends ConsumeBlockingQueu
 
         T result = currentObject;
         currentObject = null;
+        splitRowCount++;
         return result;
     }
 
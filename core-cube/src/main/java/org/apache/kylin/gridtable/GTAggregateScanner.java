@@ -18,6 +18,8 @@
 
 package org.apache.kylin.gridtable;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
@@ -38,6 +40,10 @@ import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.kylin.common.exceptions.ResourceLimitExceededException;
@@ -68,7 +74,7 @@ import com.google.common.collect.Maps;
 public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
 
     private static final Logger logger = LoggerFactory.getLogger(GTAggregateScanner.class);
-    private static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+    private static final int DUMP_IO_BUFFER_SIZE = 64 * 1024;
 
     final GTInfo info;
     final ImmutableBitSet dimensions; // dimensions to return, can be more than group by
@@ -78,6 +84,7 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
     final IGTScanner inputScanner;
     final BufferedMeasureCodec measureCodec;
     final AggregationCache aggrCache;
+    GTFlatAggregationTable flatAggrTable; // null if not applicable or after falling back to aggrCache
     long spillThreshold; // 0 means no memory control && no spill
     final int storagePushDownLimit;//default to be Int.MAX
     final StorageLimitLevel storageLimitLevel;
@@ -87,6 +94,8 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
     private long inputRowCount = 0L;
     private MemoryWaterLevel memTracker;
     private boolean[] aggrMask;
+    private byte[] flatKey;
+    private Object[] flatValues;
 
     public GTAggregateScanner(IGTScanner inputScanner, GTScanRequest req) {
         this(inputScanner, req, true);
@@ -119,10 +128,49 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
         this.havingFilter = req.getHavingFilterPushDown();
 
         this.aggrCache = new AggregationCache();
+        if (req.isFlatAggregationEnabled()) {
+            this.flatAggrTable = createFlatAggrTable();
+        }
 
         Arrays.fill(aggrMask, true);
     }
 
+    private GTFlatAggregationTable createFlatAggrTable() {
+        // limit and having filter rely on the sorted buffer of AggregationCache
+        if (storageLimitLevel != StorageLimitLevel.NO_LIMIT || havingFilter != null) {
+            logger.info("flat aggregation is skipped because of storage limit or having filter");
+            return null;
+        }
+
+        GTFlatAggregationTable.FlatMeasure[] layout = GTFlatAggregationTable.layoutOf(aggrCache.newAggregators());
+        if (layout == null) {
+            logger.info("flat aggregation is skipped because measures {} cannot be laid out flat",
+                    Arrays.toString(metricsAggrFuncs));
+            return null;
+        }
+
+        int[] groupByOffsets = new int[groupBy.trueBitCount()];
+        int[] groupByLengths = new int[groupBy.trueBitCount()];
+        int p = 0;
+        int idx = 0;
+        for (int i = 0; i < dimensions.trueBitCount(); i++) {
+            int c = dimensions.trueBitAt(i);
+            int l = info.codeSystem.maxCodeLength(c);
+            if (groupBy.get(c)) {
+                groupByOffsets[idx] = p;
+                groupByLengths[idx] = l;
+                idx++;
+            }
+            p += l;
+        }
+
+        this.flatKey = new byte[aggrCache.keyLength];
+        this.flatValues = new Object[metricsAggrFuncs.length];
+        logger.info("using flat aggregation table for measures {}", Arrays.toString(layout));
+        return new GTFlatAggregationTable(aggrCache.keyLength, groupByOffsets, groupByLengths, layout,
+                spillThreshold);
+    }
+
     public static long estimateSizeOfAggrCache(byte[] keySample, MeasureAggregator<?>[] aggrSample, int size) {
         // Aggregation cache is basically a tree map. The tree map entry overhead is
         // - 40 according to http://java-performance.info/memory-consumption-of-java-data-types-2/
@@ -164,16 +212,30 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
     public void close() throws IOException {
         inputScanner.close();
         aggrCache.close();
+        if (flatAggrTable != null) {
+            flatAggrTable.close();
+        }
     }
 
     @Override
     public Iterator<GTRecord> iterator() {
+        long count = inputScanner instanceof GTFilterScanner && ((GTFilterScanner) inputScanner).isBlockScan()
+                ? aggregateBlocks((GTFilterScanner) inputScanner)
+                : aggregateRows();
+        logger.info("GTAggregateScanner input rows: " + count);
+        if (flatAggrTable != null) {
+            return aggrCache.iterator(flatAggrTable.sortedIterator());
+        }
+        return aggrCache.iterator();
+    }
+
+    private long aggregateRows() {
         long count = 0;
 
         for (GTRecord r : inputScanner) {
 
             //check limit
-            boolean ret = aggrCache.aggregate(r);
+            boolean ret = flatAggrTable != null ? aggregateFlat(r) : aggrCache.aggregate(r);
 
             if (!ret) {
                 logger.info("abort reading inputScanner because storage push down limit is hit");
@@ -182,21 +244,84 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
 
             count++;
         }
-        logger.info("GTAggregateScanner input rows: " + count);
-        return aggrCache.iterator();
+        return count;
+    }
+
+    private long aggregateBlocks(GTFilterScanner input) {
+        long count = 0;
+
+        GTRecordBlock block = new GTRecordBlock(info);
+        while (input.nextBlock(block)) {
+            for (int i = 0, n = block.getSelectedCount(); i < n; i++) {
+                GTRecord r = block.getSelected(i);
+
+                //check limit
+                boolean ret = flatAggrTable != null ? aggregateFlat(r) : aggrCache.aggregate(r);
+
+                if (!ret) {
+                    logger.info("abort reading inputScanner because storage push down limit is hit");
+                    return count;//limit is hit
+                }
+
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean aggregateFlat(GTRecord r) {
+        aggrCache.fillKey(r, flatKey);
+        for (int i = 0; i < flatValues.length; i++) {
+            if (aggrMask[i]) {
+                int col = metrics.trueBitAt(i);
+                flatValues[i] = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
+            }
+        }
+
+        if (!flatAggrTable.aggregate(flatKey, flatValues, aggrMask)) {
+            fallbackToAggrCache();
+            return aggrCache.aggregate(r);
+        }
+
+        if (++inputRowCount % 100000 == 0 && memTracker != null) {
+            memTracker.markHigh();
+        }
+        return true;
+    }
+
+    private void fallbackToAggrCache() {
+        logger.info("flat aggregation table (size={} mem_bytes={}) cannot grow, falling back to AggregationCache",
+                flatAggrTable.size(), flatAggrTable.memBytes());
+
+        Iterator<GTFlatAggregationTable.FlatEntry> it = flatAggrTable.unsortedIterator();
+        while (it.hasNext()) {
+            GTFlatAggregationTable.FlatEntry entry = it.next();
+            aggrCache.aggregateStates(entry.key, entry.values);
+        }
+        flatAggrTable.close();
+        flatAggrTable = null;
     }
 
     public int getNumOfSpills() {
         return aggrCache.dumps.size();
     }
 
+    /** return the bytes (deflated) of aggregation states written to disk */
+    public long getSpilledBytes() {
+        return aggrCache.spilledBytes;
+    }
+
     public void setAggrMask(boolean[] aggrMask) {
         this.aggrMask = aggrMask;
     }
 
     /** return the estimate memory size of aggregation cache */
     public long getEstimateSizeOfAggrCache() {
-        return aggrCache.estimatedMemSize();
+        return aggrCache.estimatedMemSize() + (flatAggrTable == null ? 0 : flatAggrTable.memBytes());
+    }
+
+    boolean isFlatAggregating() {
+        return flatAggrTable != null;
     }
 
     public boolean shouldBypass(GTRecord record) {
@@ -287,6 +412,7 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
         final boolean[] compareMask;
         boolean compareAll = true;
         long sumSpilledSize = 0;
+        long spilledBytes = 0;
         ByPassChecker byPassChecker = null;
 
         final Comparator<byte[]> bytesComparator = new Comparator<byte[]>() {
@@ -380,6 +506,35 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             return result;
         }
 
+        /** like createKey() but writes into a reused buffer, so the unused tail of each column must be cleared */
+        void fillKey(GTRecord record, byte[] result) {
+            int offset = 0;
+            for (int i = 0; i < dimensions.trueBitCount(); i++) {
+                int c = dimensions.trueBitAt(i);
+                final ByteArray byteArray = record.cols[c];
+                final int columnLength = info.codeSystem.maxCodeLength(c);
+                System.arraycopy(byteArray.array(), byteArray.offset(), result, offset, byteArray.length());
+                if (byteArray.length() < columnLength) {
+                    Arrays.fill(result, offset + byteArray.length(), offset + columnLength, (byte) 0);
+                }
+                offset += columnLength;
+            }
+        }
+
+        /** merge already aggregated states of a group, e.g. from the flat aggregation table */
+        void aggregateStates(byte[] key, Object[] states) {
+            MeasureAggregator[] aggrs = aggBufMap.get(key);
+            if (aggrs == null) {
+                aggrs = newAggregators();
+                aggBufMap.put(key, aggrs);
+            }
+            for (int i = 0; i < aggrs.length; i++) {
+                if (states[i] != null) {
+                    aggrs[i].aggregate(states[i]);
+                }
+            }
+        }
+
         boolean aggregate(GTRecord r) {
             if (++inputRowCount % 100000 == 0) {
                 if (memTracker != null) {
@@ -414,8 +569,12 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             for (int i = 0; i < aggrs.length; i++) {
                 if (aggrMask[i]) {
                     int col = metrics.trueBitAt(i);
-                    Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
-                    aggrs[i].aggregate(metrics);
+                    if (aggrs[i].supportAggregateSerialized()) {
+                        aggrs[i].aggregateSerialized(r.cols[col].asBuffer());
+                    } else {
+                        Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
+                        aggrs[i].aggregate(metrics);
+                    }
                 }
             }
 
@@ -465,7 +624,7 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             }
         }
 
-        private MeasureAggregator[] newAggregators() {
+        MeasureAggregator[] newAggregators() {
             return info.codeSystem.newMetricsAggregators(metrics, metricsAggrFuncs);
         }
 
@@ -485,11 +644,15 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
                 // the all-in-mem case
                 it = aggBufMap.entrySet().iterator();
             } else {
-                // the spill case
+                // the spill case, k-way merge the spilled dumps together with what is still in memory
+                List<Iterator<Pair<byte[], Object[]>>> sources = Lists.newArrayListWithCapacity(dumps.size() + 1);
+                for (Dump dump : dumps) {
+                    sources.add(dump.iterator());
+                }
                 if (!aggBufMap.isEmpty()) {
-                    spillBuffMap(getEstimateSizeOfAggrCache()); // TODO allow merge in-mem map with spilled dumps
+                    sources.add(inMemStates(aggBufMap));
                 }
-                DumpMerger merger = new DumpMerger(dumps);
+                DumpMerger merger = new DumpMerger(sources);
                 it = merger.iterator();
             }
 
@@ -526,6 +689,54 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             };
         }
 
+        private Iterator<Pair<byte[], Object[]>> inMemStates(SortedMap<byte[], MeasureAggregator[]> buffMap) {
+            final Iterator<Entry<byte[], MeasureAggregator[]>> it = buffMap.entrySet().iterator();
+            return new Iterator<Pair<byte[], Object[]>>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Pair<byte[], Object[]> next() {
+                    Entry<byte[], MeasureAggregator[]> entry = it.next();
+                    Object[] states = new Object[metrics.trueBitCount()];
+                    new MeasureAggregators(entry.getValue()).collectStates(states);
+                    return new Pair<>(entry.getKey(), states);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        /** emit the groups of flat aggregation table, which come sorted already */
+        public Iterator<GTRecord> iterator(final Iterator<GTFlatAggregationTable.FlatEntry> input) {
+            return new Iterator<GTRecord>() {
+
+                final ReturningRecord returningRecord = new ReturningRecord();
+
+                @Override
+                public boolean hasNext() {
+                    return input.hasNext();
+                }
+
+                @Override
+                public GTRecord next() {
+                    GTFlatAggregationTable.FlatEntry entry = input.next();
+                    returningRecord.load(entry.key, entry.values);
+                    return returningRecord.record;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
         class HavingFilterChecker {
 
             final HavingFilterTuple tuple = new HavingFilterTuple();
@@ -634,6 +845,13 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             final Object[] tmpValues = new Object[metrics.trueBitCount()];
 
             void load(byte[] key, MeasureAggregator[] value) {
+                for (int i = 0; i < value.length; i++) {
+                    tmpValues[i] = value[i].getState();
+                }
+                load(key, tmpValues);
+            }
+
+            void load(byte[] key, Object[] states) {
                 int offset = 0;
                 for (int i = 0; i < dimensions.trueBitCount(); i++) {
                     int c = dimensions.trueBitAt(i);
@@ -642,14 +860,10 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
                     offset += columnLength;
                 }
 
-                for (int i = 0; i < value.length; i++) {
-                    tmpValues[i] = value[i].getState();
-                }
-
-                byte[] bytes = measureCodec.encode(tmpValues).array();
+                byte[] bytes = measureCodec.encode(states).array();
                 int[] sizes = measureCodec.getMeasureSizes();
                 offset = 0;
-                for (int i = 0; i < value.length; i++) {
+                for (int i = 0; i < states.length; i++) {
                     int col = metrics.trueBitAt(i);
                     record.cols[col].reset(bytes, offset, sizes[i]);
                     offset += sizes[i];
@@ -657,12 +871,17 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             }
         }
 
-        class Dump implements Iterable<Pair<byte[], byte[]>> {
+        /**
+         * A sorted run of aggregation states. Entries are deflated as they are written, the buffer
+         * is kept in memory until spill() moves it to a temp file, and is read back sequentially.
+         */
+        class Dump implements Iterable<Pair<byte[], Object[]>> {
             final File dumpedFile;
             SortedMap<byte[], MeasureAggregator[]> buffMap;
             final long estMemSize;
             byte[] spillBuffer;
             DataInputStream dis;
+            Inflater inflater;
 
             public Dump(SortedMap<byte[], MeasureAggregator[]> buffMap, long estMemSize) throws IOException {
                 this.dumpedFile = File.createTempFile("KYLIN_SPILL_", ".tmp");
@@ -671,21 +890,26 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             }
 
             @Override
-            public Iterator<Pair<byte[], byte[]>> iterator() {
+            public Iterator<Pair<byte[], Object[]>> iterator() {
                 try {
                     if (dumpedFile == null || !dumpedFile.exists()) {
                         throw new RuntimeException("Dumped file cannot be found at: "
                                 + (dumpedFile == null ? "<null>" : dumpedFile.getAbsolutePath()));
                     }
 
-                    if(spillBuffer == null) {
-                        dis = new DataInputStream(new FileInputStream(dumpedFile));
+                    InputStream in;
+                    if (spillBuffer == null) {
+                        in = new FileInputStream(dumpedFile);
                     } else {
-                        dis = new DataInputStream(new ByteArrayInputStream(spillBuffer));
+                        in = new ByteArrayInputStream(spillBuffer);
                     }
+                    inflater = new Inflater();
+                    dis = new DataInputStream(new BufferedInputStream(
+                            new InflaterInputStream(in, inflater, DUMP_IO_BUFFER_SIZE), DUMP_IO_BUFFER_SIZE));
                     final int count = dis.readInt();
-                    return new Iterator<Pair<byte[], byte[]>>() {
+                    return new Iterator<Pair<byte[], Object[]>>() {
                         int cursorIdx = 0;
+                        byte[] value = new byte[0];
 
                         @Override
                         public boolean hasNext() {
@@ -693,16 +917,20 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
                         }
 
                         @Override
-                        public Pair<byte[], byte[]> next() {
+                        public Pair<byte[], Object[]> next() {
                             try {
                                 cursorIdx++;
                                 int keyLen = dis.readInt();
                                 byte[] key = new byte[keyLen];
-                                dis.read(key);
+                                dis.readFully(key);
                                 int valueLen = dis.readInt();
-                                byte[] value = new byte[valueLen];
-                                dis.read(value);
-                                return new Pair<>(key, value);
+                                if (value.length < valueLen) {
+                                    value = new byte[valueLen];
+                                }
+                                dis.readFully(value, 0, valueLen);
+                                Object[] metricValues = new Object[metrics.trueBitCount()];
+                                measureCodec.decode(ByteBuffer.wrap(value, 0, valueLen), metricValues);
+                                return new Pair<>(key, metricValues);
                             } catch (Exception e) {
                                 throw new RuntimeException(
                                         "Cannot read AggregationCache from dumped file: " + e.getMessage());
@@ -722,11 +950,13 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             public void spill() throws IOException {
                 if(spillBuffer == null) return;
                 OutputStream ops = new FileOutputStream(dumpedFile);
-                InputStream ips = new ByteArrayInputStream(spillBuffer);
-                IOUtils.copy(ips, ops);
+                try {
+                    ops.write(spillBuffer);
+                } finally {
+                    IOUtils.closeQuietly(ops);
+                }
+                spilledBytes += spillBuffer.length;
                 spillBuffer = null;
-                IOUtils.closeQuietly(ips);
-                IOUtils.closeQuietly(ops);
 
                 logger.info("Spill buffer to disk, location: {}, size = {}.", dumpedFile.getAbsolutePath(),
                     dumpedFile.length());
@@ -739,16 +969,17 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
             public void flush() throws IOException {
                 logger.info("AggregationCache(size={} est_mem_size={} threshold={}) will spill to {}", buffMap.size(),
                         estMemSize, spillThreshold, dumpedFile.getAbsolutePath());
-                ByteArrayOutputStream baos = new ByteArrayOutputStream(MAX_BUFFER_SIZE);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(DUMP_IO_BUFFER_SIZE);
                 if (buffMap != null) {
-                    DataOutputStream bos = new DataOutputStream(baos);
-                    Object[] aggrResult = null;
+                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                    DataOutputStream bos = new DataOutputStream(new BufferedOutputStream(
+                            new DeflaterOutputStream(baos, deflater, DUMP_IO_BUFFER_SIZE), DUMP_IO_BUFFER_SIZE));
+                    Object[] aggrResult = new Object[metrics.trueBitCount()];
                     try {
                         bos.writeInt(buffMap.size());
 
                         for (Entry<byte[], MeasureAggregator[]> entry : buffMap.entrySet()) {
                             MeasureAggregators aggs = new MeasureAggregators(entry.getValue());
-                            aggrResult = new Object[metrics.trueBitCount()];
                             aggs.collectStates(aggrResult);
                             ByteBuffer metricsBuf = measureCodec.encode(aggrResult);
 
@@ -760,43 +991,47 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
                     } finally {
                         buffMap = null;
                         IOUtils.closeQuietly(bos);
+                        deflater.end();
                     }
                 }
                 spillBuffer = baos.toByteArray();
                 IOUtils.closeQuietly(baos);
-                logger.info("Accurately spill data size = {}", spillBuffer.length);
+                logger.info("Accurately spill data size = {} (deflated)", spillBuffer.length);
             }
 
             public void terminate() throws IOException {
                 buffMap = null;
                 if (dis != null)
                     IOUtils.closeQuietly(dis);
+                if (inflater != null)
+                    inflater.end();
                 if (dumpedFile != null && dumpedFile.exists())
                     dumpedFile.delete();
                 spillBuffer = null;
             }
         }
 
+        /** merge sorted sources of (key, measure states), which are the spilled dumps and the in-mem buffer */
         class DumpMerger implements Iterable<Entry<byte[], MeasureAggregator[]>> {
             final PriorityQueue<Entry<byte[], Integer>> minHeap;
-            final List<Iterator<Pair<byte[], byte[]>>> dumpIterators;
+            final List<Iterator<Pair<byte[], Object[]>>> dumpIterators;
             final List<Object[]> dumpCurrentValues;
             final MeasureAggregator[] resultMeasureAggregators = newAggregators();
             final MeasureAggregators resultAggrs = new MeasureAggregators(resultMeasureAggregators);
 
-            public DumpMerger(List<Dump> dumps) {
-                minHeap = new PriorityQueue<>(dumps.size(), new Comparator<Entry<byte[], Integer>>() {
+            public DumpMerger(List<Iterator<Pair<byte[], Object[]>>> sources) {
+                minHeap = new PriorityQueue<>(sources.size(), new Comparator<Entry<byte[], Integer>>() {
                     @Override
                     public int compare(Entry<byte[], Integer> o1, Entry<byte[], Integer> o2) {
                         return bytesComparator.compare(o1.getKey(), o2.getKey());
                     }
                 });
-                dumpIterators = Lists.newArrayListWithCapacity(dumps.size());
-                dumpCurrentValues = Lists.newArrayListWithCapacity(dumps.size());
+                dumpIterators = Lists.newArrayListWithCapacity(sources.size());
+                dumpCurrentValues = Lists.newArrayListWithCapacity(sources.size());
 
-                Iterator<Pair<byte[], byte[]>> it;
-                for (int i = 0; i < dumps.size(); i++) {
-                    it = dumps.get(i).iterator();
+                Iterator<Pair<byte[], Object[]>> it;
+                for (int i = 0; i < sources.size(); i++) {
+                    it = sources.get(i);
                     dumpCurrentValues.add(i, null);
                     if (it.hasNext()) {
                         dumpIterators.add(i, it);
@@ -809,11 +1044,9 @@ public class GTAggregateScanner implements IGTScanner, IGTBypassChecker {
 
             private void enqueueFromDump(int index) {
                 if (dumpIterators.get(index) != null && dumpIterators.get(index).hasNext()) {
-                    Pair<byte[], byte[]> pair = dumpIterators.get(index).next();
+                    Pair<byte[], Object[]> pair = dumpIterators.get(index).next();
                     minHeap.offer(new SimpleEntry(pair.getFirst(), index));
-                    Object[] metricValues = new Object[metrics.trueBitCount()];
-                    measureCodec.decode(ByteBuffer.wrap(pair.getSecond()), metricValues);
-                    dumpCurrentValues.set(index, metricValues);
+                    dumpCurrentValues.set(index, pair.getSecond());
                 }
             }
 
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.gridtable;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A push down filter compiled against the columns of a grid table, which evaluates a GTRecord on its bytes, with no
+ * IEvaluatableTuple wrapping and no walk of the TupleFilter tree per row.
+ * <p>
+ * AND, OR, NOT, constants, and comparisons of a column with constants are compiled into nodes specialized by
+ * operator, on the byte order of {@link DefaultGTComparator}. A filter with any other part, like a function or a
+ * comparison of two columns, is not compiled and stays with the interpreter. Compiled filters hold no state, so they
+ * are cached by the serialized filter and shared by the scans in the same JVM.
+ */
+public abstract class GTCompiledFilter {
+
+    public static boolean ENABLED = true; // compile filters by default
+
+    private static final GTCompiledFilter NOT_COMPILABLE = new ConstantFilter(false);
+
+    private static final Cache<ByteArray, GTCompiledFilter> cache = CacheBuilder.newBuilder().maximumSize(1000)
+            .expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    public abstract boolean evaluate(GTRecord record);
+
+    /**
+     * Returns the compiled filter, or null if the filter can only be interpreted.
+     */
+    public static GTCompiledFilter compile(TupleFilter filter, GTInfo info) {
+        if (!ENABLED || filter == null || !(info.codeSystem.getComparator() instanceof DefaultGTComparator))
+            return null;
+
+        ByteArray key = new ByteArray(GTUtil.serializeGTFilter(filter, info));
+        GTCompiledFilter result = cache.getIfPresent(key);
+        if (result == null) {
+            result = compileNode(filter);
+            if (result == null)
+                result = NOT_COMPILABLE;
+            cache.put(key, result);
+        }
+        return result == NOT_COMPILABLE ? null : result;
+    }
+
+    private static GTCompiledFilter compileNode(TupleFilter filter) {
+        if (filter instanceof ConstantTupleFilter) {
+            return new ConstantFilter(filter.evaluate(null, null));
+        } else if (filter instanceof LogicalTupleFilter) {
+            return compileLogical((LogicalTupleFilter) filter);
+        } else if (filter instanceof CompareTupleFilter) {
+            return compileCompare((CompareTupleFilter) filter);
+        } else {
+            return null;
+        }
+    }
+
+    private static GTCompiledFilter compileLogical(LogicalTupleFilter filter) {
+        List<? extends TupleFilter> children = filter.getChildren();
+        GTCompiledFilter[] compiled = new GTCompiledFilter[children.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compileNode(children.get(i));
+            if (compiled[i] == null)
+                return null;
+        }
+
+        switch (filter.getOperator()) {
+        case AND:
+            return compiled.length == 1 ? compiled[0] : new AndFilter(compiled);
+        case OR:
+            return compiled.length == 1 ? compiled[0] : new OrFilter(compiled);
+        case NOT:
+            return compiled.length == 1 ? new NotFilter(compiled[0]) : null;
+        default:
+            return null;
+        }
+    }
+
+    private static GTCompiledFilter compileCompare(CompareTupleFilter filter) {
+        // only COLUMN {op} CONSTANTS, as the interpreter evaluates
+        int col = -1;
+        for (TupleFilter child : filter.getChildren()) {
+            if (child instanceof ColumnTupleFilter) {
+                if (col >= 0)
+                    return null;
+                col = ((ColumnTupleFilter) child).getColumn().getColumnDesc().getZeroBasedIndex();
+            } else if (!(child instanceof ConstantTupleFilter)) {
+                return null;
+            }
+        }
+        if (col < 0 || filter.getFunction() != null)
+            return null;
+
+        FilterOperatorEnum op = filter.getOperator();
+        if (op == FilterOperatorEnum.ISNULL || op == FilterOperatorEnum.ISNOTNULL)
+            return new NullFilter(col, op == FilterOperatorEnum.ISNULL);
+
+        Set<ByteArray> values = new HashSet<ByteArray>();
+        for (Object v : filter.getValues()) {
+            if (!(v instanceof ByteArray))
+                return null;
+            values.add((ByteArray) v);
+        }
+        ByteArray first = (ByteArray) filter.getFirstValue();
+        if (first == null)
+            return null;
+        if (isNull(first))
+            return new ConstantFilter(false); // nothing compares to null
+
+        switch (op) {
+        case IN:
+        case NOTIN:
+            return new InFilter(col, values, op == FilterOperatorEnum.IN);
+        case EQ:
+        case NEQ:
+        case LT:
+        case LTE:
+        case GT:
+        case GTE:
+            return new CompareFilter(col, first, op);
+        default:
+            return null;
+        }
+    }
+
+    // the null check of DefaultGTComparator, without the interface call
+    private static boolean isNull(ByteArray code) {
+        return DimensionEncoding.isNull(code.array(), code.offset(), code.length());
+    }
+
+    // ============================================================================
+
+    private static final class ConstantFilter extends GTCompiledFilter {
+        final boolean value;
+
+        ConstantFilter(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            return value;
+        }
+    }
+
+    private static final class AndFilter extends GTCompiledFilter {
+        final GTCompiledFilter[] children;
+
+        AndFilter(GTCompiledFilter[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            for (GTCompiledFilter child : children) {
+                if (!child.evaluate(record))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class OrFilter extends GTCompiledFilter {
+        final GTCompiledFilter[] children;
+
+        OrFilter(GTCompiledFilter[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            for (GTCompiledFilter child : children) {
+                if (child.evaluate(record))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class NotFilter extends GTCompiledFilter {
+        final GTCompiledFilter child;
+
+        NotFilter(GTCompiledFilter child) {
+            this.child = child;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            return !child.evaluate(record);
+        }
+    }
+
+    private static final class NullFilter extends GTCompiledFilter {
+        final int col;
+        final boolean isNull;
+
+        NullFilter(int col, boolean isNull) {
+            this.col = col;
+            this.isNull = isNull;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            return isNull(record.cols[col]) == isNull;
+        }
+    }
+
+    private static final class CompareFilter extends GTCompiledFilter {
+        final int col;
+        final ByteArray value;
+        final boolean lt, eq, gt; // the results of value < , = and > the constant
+
+        CompareFilter(int col, ByteArray value, FilterOperatorEnum op) {
+            this.col = col;
+            this.value = value;
+            this.lt = op == FilterOperatorEnum.LT || op == FilterOperatorEnum.LTE || op == FilterOperatorEnum.NEQ;
+            this.eq = op == FilterOperatorEnum.EQ || op == FilterOperatorEnum.LTE || op == FilterOperatorEnum.GTE;
+            this.gt = op == FilterOperatorEnum.GT || op == FilterOperatorEnum.GTE || op == FilterOperatorEnum.NEQ;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            ByteArray v = record.cols[col];
+            if (isNull(v))
+                return false;
+            int comp = v.compareTo(value);
+            return comp < 0 ? lt : comp == 0 ? eq : gt;
+        }
+    }
+
+    private static final class InFilter extends GTCompiledFilter {
+        final int col;
+        final Set<ByteArray> values;
+        final boolean in;
+
+        InFilter(int col, Set<ByteArray> values, boolean in) {
+            this.col = col;
+            this.values = values;
+            this.in = in;
+        }
+
+        @Override
+        public boolean evaluate(GTRecord record) {
+            ByteArray v = record.cols[col];
+            if (isNull(v))
+                return false;
+            return values.contains(v) == in;
+        }
+    }
+}
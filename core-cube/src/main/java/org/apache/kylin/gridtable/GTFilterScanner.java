@@ -35,17 +35,22 @@ import org.apache.kylin.metadata.tuple.IEvaluatableTuple;
 public class GTFilterScanner extends GTForwardingScanner {
 
     private TupleFilter filter;
+    private GTCompiledFilter compiledFilter; // null if the filter can only be interpreted
     private IFilterCodeSystem<ByteArray> filterCodeSystem;
     private IEvaluatableTuple oneTuple; // avoid instance creation
+    private FilterResultCache resultCache;
 
     private GTRecord next = null;
+    private GTRecord evaluating = null;
     private long inputRowCount = 0L;
 
     private IGTBypassChecker checker = null;
+    private IGTBlockScanner blockInput; // null if the input reads by rows only
 
     public GTFilterScanner(IGTScanner delegated, GTScanRequest req, IGTBypassChecker checker) {
         super(delegated);
         this.checker = checker;
+        this.blockInput = GTRecordBlock.ENABLED ? asBlockScanner(delegated) : null;
 
         if (req != null) {
             this.filter = req.getFilterPushDown();
@@ -53,13 +58,78 @@ public class GTFilterScanner extends GTForwardingScanner {
             this.oneTuple = new IEvaluatableTuple() {
                 @Override
                 public Object getValue(TblColRef col) {
-                    return next.get(col.getColumnDesc().getZeroBasedIndex());
+                    return evaluating.get(col.getColumnDesc().getZeroBasedIndex());
                 }
             };
 
             if (!TupleFilter.isEvaluableRecursively(filter))
                 throw new IllegalArgumentException();
+
+            this.compiledFilter = GTCompiledFilter.compile(filter, getInfo());
+        }
+    }
+
+    // a plain forwarding scanner, as GTScanRequest puts when there is no filter, passes blocks through
+    private static IGTBlockScanner asBlockScanner(IGTScanner scanner) {
+        while (scanner.getClass() == GTForwardingScanner.class) {
+            scanner = ((GTForwardingScanner) scanner).delegated;
+        }
+        return scanner instanceof IGTBlockScanner ? (IGTBlockScanner) scanner : null;
+    }
+
+    /** whether nextBlock() can be called, i.e. the input reads by blocks */
+    public boolean isBlockScan() {
+        return blockInput != null;
+    }
+
+    /**
+     * Reads the next block of input and leaves only the rows passing the filter selected. Blocks with no row left
+     * are skipped.
+     *
+     * @return false if no row is left
+     */
+    public boolean nextBlock(GTRecordBlock block) {
+        while (blockInput.nextBlock(block)) {
+            inputRowCount += block.size();
+
+            int[] selection = block.getSelection();
+            int n = 0;
+            for (int i = 0, count = block.getSelectedCount(); i < count; i++) {
+                if (evaluate(block.get(selection[i]))) {
+                    selection[n++] = selection[i];
+                }
+            }
+            block.setSelectedCount(n);
+
+            if (n > 0)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean evaluate(GTRecord record) {
+        if (checker != null && checker.shouldBypass(record)) {
+            return false;
         }
+
+        if (filter == null)
+            return true;
+
+        if (compiledFilter != null)
+            return compiledFilter.evaluate(record);
+
+        if (resultCache == null)
+            resultCache = new FilterResultCache(getInfo(), filter);
+
+        // 'evaluating' and 'oneTuple' are referring to the same record
+        boolean[] cachedResult = resultCache.checkCache(record);
+        if (cachedResult != null)
+            return cachedResult[0];
+
+        evaluating = record;
+        boolean result = filter.evaluate(oneTuple, filterCodeSystem);
+        resultCache.setLastResult(result);
+        return result;
     }
 
     public void setChecker(IGTBypassChecker checker) {
@@ -72,10 +142,13 @@ public class GTFilterScanner extends GTForwardingScanner {
 
     @Override
     public Iterator<GTRecord> iterator() {
+        if (blockInput != null) {
+            return new BlockIterator();
+        }
+
         return new Iterator<GTRecord>() {
 
             private Iterator<GTRecord> inputIterator = delegated.iterator();
-            private FilterResultCache resultCache = new FilterResultCache(getInfo(), filter);
 
             @Override
             public boolean hasNext() {
@@ -85,7 +158,7 @@ public class GTFilterScanner extends GTForwardingScanner {
                 while (inputIterator.hasNext()) {
                     next = inputIterator.next();
                     inputRowCount++;
-                    if (!evaluate()) {
+                    if (!evaluate(next)) {
                         continue;
                     }
                     return true;
@@ -94,24 +167,6 @@ public class GTFilterScanner extends GTForwardingScanner {
                 return false;
             }
 
-            private boolean evaluate() {
-                if (checker != null && checker.shouldBypass(next)) {
-                    return false;
-                }
-
-                if (filter == null)
-                    return true;
-
-                // 'next' and 'oneTuple' are referring to the same record
-                boolean[] cachedResult = resultCache.checkCache(next);
-                if (cachedResult != null)
-                    return cachedResult[0];
-
-                boolean result = filter.evaluate(oneTuple, filterCodeSystem);
-                resultCache.setLastResult(result);
-                return result;
-            }
-
             @Override
             public GTRecord next() {
                 // fetch next record
@@ -134,6 +189,37 @@ public class GTFilterScanner extends GTForwardingScanner {
         };
     }
 
+    // hands out the selected rows of filtered blocks, for consumers reading by rows
+    private class BlockIterator implements Iterator<GTRecord> {
+        final GTRecordBlock block = new GTRecordBlock(getInfo());
+        int i = 0;
+        boolean end = false;
+
+        @Override
+        public boolean hasNext() {
+            if (i < block.getSelectedCount())
+                return true;
+            if (end)
+                return false;
+
+            i = 0;
+            end = !nextBlock(block);
+            return !end;
+        }
+
+        @Override
+        public GTRecord next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return block.getSelected(i++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     // cache the last one input and result, can reuse because rowkey are ordered, and same input could come in small group
     public static class FilterResultCache {
         static final int CHECKPOINT = 10000;
@@ -0,0 +1,440 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.measure.basic.DoubleMaxAggregator;
+import org.apache.kylin.measure.basic.DoubleMinAggregator;
+import org.apache.kylin.measure.basic.DoubleSumAggregator;
+import org.apache.kylin.measure.basic.LongMaxAggregator;
+import org.apache.kylin.measure.basic.LongMinAggregator;
+import org.apache.kylin.measure.basic.LongSumAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An open-addressing hash table living in a direct (off-heap) buffer, used by GTAggregateScanner
+ * as an alternative to the TreeMap based aggregation cache.
+ *
+ * Every group is a fixed-width slot holding the group key and one primitive long/double per measure,
+ * so only basic SUM/COUNT/MIN/MAX measures can be laid out flat (see {@link #layoutOf}). Groups are
+ * unordered while aggregating; sorting happens only once when the table is emitted.
+ *
+ * Slot layout: [occupied:1][key:keyLength][hasValue:1 x nMeasures][value:8 x nMeasures]
+ */
+@SuppressWarnings("rawtypes")
+class GTFlatAggregationTable implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GTFlatAggregationTable.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double LOAD_FACTOR = 0.75;
+
+    enum FlatMeasure {
+        LONG_SUM, LONG_MIN, LONG_MAX, DOUBLE_SUM, DOUBLE_MIN, DOUBLE_MAX
+    }
+
+    /**
+     * @return the flat layout of given aggregators, or null if any of them cannot be held in a primitive slot
+     */
+    static FlatMeasure[] layoutOf(MeasureAggregator[] aggrs) {
+        FlatMeasure[] result = new FlatMeasure[aggrs.length];
+        for (int i = 0; i < aggrs.length; i++) {
+            // exact class match, subclasses may carry extra state
+            Class<?> clz = aggrs[i] == null ? null : aggrs[i].getClass();
+            if (clz == LongSumAggregator.class)
+                result[i] = FlatMeasure.LONG_SUM;
+            else if (clz == LongMinAggregator.class)
+                result[i] = FlatMeasure.LONG_MIN;
+            else if (clz == LongMaxAggregator.class)
+                result[i] = FlatMeasure.LONG_MAX;
+            else if (clz == DoubleSumAggregator.class)
+                result[i] = FlatMeasure.DOUBLE_SUM;
+            else if (clz == DoubleMinAggregator.class)
+                result[i] = FlatMeasure.DOUBLE_MIN;
+            else if (clz == DoubleMaxAggregator.class)
+                result[i] = FlatMeasure.DOUBLE_MAX;
+            else
+                return null;
+        }
+        return result;
+    }
+
+    private final int keyLength;
+    private final int[] groupByOffsets;
+    private final int[] groupByLengths;
+    private final FlatMeasure[] measures;
+    private final int slotSize;
+    private final int hasValueOffset;
+    private final int valueOffset;
+    private final long memLimit;
+
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+
+    /**
+     * @param keyLength      total fixed width of the key
+     * @param groupByOffsets offsets of the group by columns inside the key, other bytes do not take part in grouping
+     * @param groupByLengths lengths of the group by columns inside the key
+     * @param measures       flat layout of the measures, as returned by {@link #layoutOf}
+     * @param memLimit       max bytes of the off-heap buffer, 0 means no limit
+     */
+    GTFlatAggregationTable(int keyLength, int[] groupByOffsets, int[] groupByLengths, FlatMeasure[] measures,
+            long memLimit) {
+        this.keyLength = keyLength;
+        this.groupByOffsets = groupByOffsets;
+        this.groupByLengths = groupByLengths;
+        this.measures = measures;
+        this.hasValueOffset = 1 + keyLength;
+        this.valueOffset = hasValueOffset + measures.length;
+        this.slotSize = valueOffset + 8 * measures.length;
+        this.memLimit = memLimit > 0 ? memLimit : Long.MAX_VALUE;
+
+        int initialCapacity = INITIAL_CAPACITY;
+        while (!allocate(initialCapacity)) {
+            if (initialCapacity <= 2)
+                throw new IllegalStateException("Cannot allocate flat aggregation table within " + memLimit + " bytes");
+            initialCapacity /= 2;
+        }
+    }
+
+    private boolean allocate(int newCapacity) {
+        long bytes = (long) newCapacity * slotSize;
+        if (bytes > memLimit || bytes > Integer.MAX_VALUE)
+            return false;
+
+        try {
+            slots = ByteBuffer.allocateDirect((int) bytes);
+        } catch (OutOfMemoryError e) {
+            logger.warn("Failed to allocate {} bytes of direct memory for flat aggregation", bytes);
+            return false;
+        }
+        // direct buffers are not guaranteed to be zeroed on every platform
+        for (int i = 0; i < newCapacity; i++) {
+            slots.put(i * slotSize, (byte) 0);
+        }
+        capacity = newCapacity;
+        return true;
+    }
+
+    /**
+     * Aggregates one row into the table.
+     *
+     * @param values decoded measure values, null values are ignored
+     * @param mask   measures to aggregate, false ones are left untouched
+     * @return false if the key is new and the table cannot grow any more, in which case nothing is aggregated
+     */
+    boolean aggregate(byte[] key, Object[] values, boolean[] mask) {
+        int hash = hash(key);
+        int slot = find(slots, capacity, key, hash);
+        int base = slot * slotSize;
+
+        if (slots.get(base) == 0) {
+            if (size + 1 > capacity * LOAD_FACTOR) {
+                if (!grow())
+                    return false;
+                slot = find(slots, capacity, key, hash);
+                base = slot * slotSize;
+            }
+            slots.put(base, (byte) 1);
+            for (int i = 0; i < keyLength; i++) {
+                slots.put(base + 1 + i, key[i]);
+            }
+            for (int i = 0; i < measures.length; i++) {
+                slots.put(base + hasValueOffset + i, (byte) 0);
+                slots.putLong(base + valueOffset + 8 * i, 0L);
+            }
+            size++;
+        }
+
+        for (int i = 0; i < measures.length; i++) {
+            if (mask[i] && values[i] != null) {
+                aggregate(base, i, (Number) values[i]);
+            }
+        }
+        return true;
+    }
+
+    private void aggregate(int base, int i, Number value) {
+        int flagPos = base + hasValueOffset + i;
+        int pos = base + valueOffset + 8 * i;
+        boolean hasValue = slots.get(flagPos) != 0;
+
+        switch (measures[i]) {
+        case LONG_SUM:
+            slots.putLong(pos, slots.getLong(pos) + value.longValue());
+            break;
+        case LONG_MIN:
+            if (!hasValue || value.longValue() < slots.getLong(pos))
+                slots.putLong(pos, value.longValue());
+            break;
+        case LONG_MAX:
+            if (!hasValue || value.longValue() > slots.getLong(pos))
+                slots.putLong(pos, value.longValue());
+            break;
+        case DOUBLE_SUM:
+            slots.putDouble(pos, slots.getDouble(pos) + value.doubleValue());
+            break;
+        case DOUBLE_MIN:
+            if (!hasValue || value.doubleValue() < slots.getDouble(pos))
+                slots.putDouble(pos, value.doubleValue());
+            break;
+        case DOUBLE_MAX:
+            if (!hasValue || value.doubleValue() > slots.getDouble(pos))
+                slots.putDouble(pos, value.doubleValue());
+            break;
+        default:
+            throw new IllegalStateException("Unknown flat measure " + measures[i]);
+        }
+        slots.put(flagPos, (byte) 1);
+    }
+
+    private boolean grow() {
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        if (!allocate(oldCapacity * 2))
+            return false;
+
+        byte[] key = new byte[keyLength];
+        for (int s = 0; s < oldCapacity; s++) {
+            int oldBase = s * slotSize;
+            if (oldSlots.get(oldBase) == 0)
+                continue;
+            readKey(oldSlots, oldBase, key);
+            int newBase = find(slots, capacity, key, hash(key)) * slotSize;
+            for (int i = 0; i < slotSize; i++) {
+                slots.put(newBase + i, oldSlots.get(oldBase + i));
+            }
+        }
+        return true;
+    }
+
+    private int find(ByteBuffer buf, int cap, byte[] key, int hash) {
+        int mask = cap - 1;
+        int slot = hash & mask;
+        while (true) {
+            int base = slot * slotSize;
+            if (buf.get(base) == 0 || keyEquals(buf, base, key))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(ByteBuffer buf, int base, byte[] key) {
+        for (int c = 0; c < groupByOffsets.length; c++) {
+            int offset = groupByOffsets[c];
+            for (int i = offset, end = offset + groupByLengths[c]; i < end; i++) {
+                if (buf.get(base + 1 + i) != key[i])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(byte[] key) {
+        int h = 1;
+        for (int c = 0; c < groupByOffsets.length; c++) {
+            int offset = groupByOffsets[c];
+            for (int i = offset, end = offset + groupByLengths[c]; i < end; i++) {
+                h = 31 * h + key[i];
+            }
+        }
+        // murmur3 finalizer, spread the bits before masking
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int compareSlots(int slotA, int slotB) {
+        int baseA = slotA * slotSize + 1;
+        int baseB = slotB * slotSize + 1;
+        for (int c = 0; c < groupByOffsets.length; c++) {
+            int offset = groupByOffsets[c];
+            for (int i = offset, end = offset + groupByLengths[c]; i < end; i++) {
+                int a = slots.get(baseA + i) & 0xff;
+                int b = slots.get(baseB + i) & 0xff;
+                if (a != b)
+                    return a - b;
+            }
+        }
+        return 0;
+    }
+
+    private void readKey(ByteBuffer buf, int base, byte[] key) {
+        for (int i = 0; i < keyLength; i++) {
+            key[i] = buf.get(base + 1 + i);
+        }
+    }
+
+    private void readValues(int base, Object[] values) {
+        for (int i = 0; i < measures.length; i++) {
+            boolean hasValue = slots.get(base + hasValueOffset + i) != 0;
+            int pos = base + valueOffset + 8 * i;
+            switch (measures[i]) {
+            case LONG_SUM:
+                values[i] = slots.getLong(pos);
+                break;
+            case DOUBLE_SUM:
+                values[i] = slots.getDouble(pos);
+                break;
+            case LONG_MIN:
+            case LONG_MAX:
+                values[i] = hasValue ? (Object) slots.getLong(pos) : null;
+                break;
+            case DOUBLE_MIN:
+            case DOUBLE_MAX:
+                values[i] = hasValue ? (Object) slots.getDouble(pos) : null;
+                break;
+            default:
+                throw new IllegalStateException("Unknown flat measure " + measures[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memBytes() {
+        return (long) capacity * slotSize;
+    }
+
+    /**
+     * Iterates groups in the order of group by bytes. The returned key and values are reused between calls.
+     */
+    Iterator<FlatEntry> sortedIterator() {
+        int[] order = new int[size];
+        int n = 0;
+        for (int s = 0; s < capacity; s++) {
+            if (slots.get(s * slotSize) != 0)
+                order[n++] = s;
+        }
+        mergeSort(order, new int[n], 0, n);
+        return new EntryIterator(order, true);
+    }
+
+    /**
+     * Iterates groups in no particular order. Every returned key is a new array, while values are reused.
+     */
+    Iterator<FlatEntry> unsortedIterator() {
+        int[] order = new int[size];
+        int n = 0;
+        for (int s = 0; s < capacity; s++) {
+            if (slots.get(s * slotSize) != 0)
+                order[n++] = s;
+        }
+        return new EntryIterator(order, false);
+    }
+
+    private void mergeSort(int[] a, int[] tmp, int from, int to) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= from && compareSlots(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid);
+        mergeSort(a, tmp, mid, to);
+        if (compareSlots(a[mid - 1], a[mid]) <= 0)
+            return;
+
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            a[k++] = compareSlots(tmp[i], tmp[j]) <= 0 ? tmp[i++] : tmp[j++];
+        }
+        while (i < mid) {
+            a[k++] = tmp[i++];
+        }
+        while (j < to) {
+            a[k++] = tmp[j++];
+        }
+    }
+
+    @Override
+    public void close() {
+        // let GC reclaim the direct buffer
+        slots = null;
+        capacity = 0;
+        size = 0;
+    }
+
+    static class FlatEntry {
+        byte[] key;
+        final Object[] values;
+
+        FlatEntry(int nMeasures) {
+            this.values = new Object[nMeasures];
+        }
+    }
+
+    private class EntryIterator implements Iterator<FlatEntry> {
+        final int[] order;
+        final boolean reuseKey;
+        final FlatEntry entry = new FlatEntry(measures.length);
+        int next = 0;
+
+        EntryIterator(int[] order, boolean reuseKey) {
+            this.order = order;
+            this.reuseKey = reuseKey;
+            if (reuseKey)
+                entry.key = new byte[keyLength];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < order.length;
+        }
+
+        @Override
+        public FlatEntry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            int base = order[next++] * slotSize;
+            if (!reuseKey)
+                entry.key = new byte[keyLength];
+            readKey(slots, base, entry.key);
+            readValues(base, entry.values);
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
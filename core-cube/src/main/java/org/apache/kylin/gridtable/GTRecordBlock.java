@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.gridtable;
+
+/**
+ * A block of rows read by an {@link IGTBlockScanner}. The column ByteArrays of the rows slice the buffers of the
+ * store, with no copy, and stay valid until the next block is read into the same GTRecordBlock.
+ * <p>
+ * A selection vector lists the rows still selected. A filter drops rows by compacting the selection, not by moving
+ * the rows.
+ */
+public class GTRecordBlock {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public static boolean ENABLED = true; // scan by blocks where the store supports it
+
+    private final GTRecord[] records;
+    private final int[] selection;
+    private int size;
+    private int selectedCount;
+
+    public GTRecordBlock(GTInfo info) {
+        this(info, DEFAULT_CAPACITY);
+    }
+
+    public GTRecordBlock(GTInfo info, int capacity) {
+        this.records = new GTRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new GTRecord(info);
+        }
+        this.selection = new int[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+        selectedCount = 0;
+    }
+
+    public boolean isFull() {
+        return size == records.length;
+    }
+
+    /** returns the record to load the next row into, the row is selected */
+    public GTRecord append() {
+        selection[selectedCount++] = size;
+        return records[size++];
+    }
+
+    /** the number of rows read into the block, selected or not */
+    public int size() {
+        return size;
+    }
+
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    public GTRecord getSelected(int i) {
+        return records[selection[i]];
+    }
+
+    /** the row numbers of the selected rows, in the first getSelectedCount() elements */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    public void setSelectedCount(int selectedCount) {
+        this.selectedCount = selectedCount;
+    }
+
+    public GTRecord get(int row) {
+        return records[row];
+    }
+}
@@ -88,6 +88,7 @@ public class GTScanRequest {
     //valid value iff GTCubeStorageQueryBase.enableStorageLimitIfPossible is true
     private int storagePushDownLimit;
     private StorageLimitLevel storageLimitLevel;
+    private boolean flatAggregationEnabled;
 
     // runtime computed fields
     private transient boolean doingStorageAggregation = false;
@@ -97,8 +98,8 @@ public class GTScanRequest {
             ImmutableBitSet dynamicCols, Map<Integer, TupleExpression> tupleExpressionMap, //
             TupleFilter filterPushDown, TupleFilter havingFilterPushDown, //
             boolean allowStorageAggregation, double aggCacheMemThreshold, int storageScanRowNumThreshold, //
-            int storagePushDownLimit, StorageLimitLevel storageLimitLevel, String storageBehavior, long startTime,
-            long timeout) {
+            int storagePushDownLimit, StorageLimitLevel storageLimitLevel, boolean flatAggregationEnabled,
+            String storageBehavior, long startTime, long timeout) {
         this.info = info;
         if (ranges == null) {
             this.ranges = Lists.newArrayList(new GTScanRange(new GTRecord(info), new GTRecord(info)));
@@ -126,6 +127,7 @@ public class GTScanRequest {
         this.storageScanRowNumThreshold = storageScanRowNumThreshold;
         this.storagePushDownLimit = storagePushDownLimit;
         this.storageLimitLevel = storageLimitLevel;
+        this.flatAggregationEnabled = flatAggregationEnabled;
 
         validate(info);
     }
@@ -377,6 +379,14 @@ public class GTScanRequest {
         return storageLimitLevel;
     }
 
+    /**
+     * whether GTAggregateScanner may aggregate into the off-heap GTFlatAggregationTable,
+     * it still falls back to the sorted aggregation cache when measures cannot be laid out flat
+     */
+    public boolean isFlatAggregationEnabled() {
+        return flatAggregationEnabled;
+    }
+
     public String getStorageBehavior() {
         return storageBehavior;
     }
@@ -406,10 +416,32 @@ public class GTScanRequest {
         return Arrays.copyOf(byteBuffer.array(), byteBuffer.position());
     }
 
+    /**
+     * Same as toByteArray() but leaves out start time and timeout, so equal keys mean the request
+     * returns the same records whenever it runs.
+     */
+    public byte[] toResultKey() {
+        ByteBuffer byteBuffer = SerializeToByteBuffer.retrySerialize(new SerializeToByteBuffer.IWriter() {
+            @Override
+            public void write(ByteBuffer byteBuffer) throws BufferOverflowException {
+                new Serializer(false).serialize(GTScanRequest.this, byteBuffer);
+            }
+        });
+        return Arrays.copyOf(byteBuffer.array(), byteBuffer.position());
+    }
+
     private static final int SERIAL_0_BASE = 0;
     private static final int SERIAL_1_HAVING_FILTER = 1;
 
-    public static final BytesSerializer<GTScanRequest> serializer = new BytesSerializer<GTScanRequest>() {
+    public static final BytesSerializer<GTScanRequest> serializer = new Serializer(true);
+
+    private static class Serializer implements BytesSerializer<GTScanRequest> {
+        private final boolean withTiming;
+
+        Serializer(boolean withTiming) {
+            this.withTiming = withTiming;
+        }
+
         @Override
         public void serialize(GTScanRequest value, ByteBuffer out) {
             final int serialLevel = KylinConfig.getInstanceFromEnv().getGTScanRequestSerializationLevel();
@@ -442,8 +474,8 @@ public class GTScanRequest {
             BytesUtil.writeUTFString(value.getStorageLimitLevel().name(), out);
             BytesUtil.writeVInt(value.storageScanRowNumThreshold, out);
             BytesUtil.writeVInt(value.storagePushDownLimit, out);
-            BytesUtil.writeVLong(value.startTime, out);
-            BytesUtil.writeVLong(value.timeout, out);
+            BytesUtil.writeVLong(withTiming ? value.startTime : 0, out);
+            BytesUtil.writeVLong(withTiming ? value.timeout : 0, out);
             BytesUtil.writeUTFString(value.storageBehavior, out);
 
             // for dynamic related info
@@ -457,6 +489,7 @@ public class GTScanRequest {
                         GTUtil.wrap(value.info.codeSystem.getComparator())), out);
             }
             ImmutableBitSet.serializer.serialize(value.rtAggrMetrics, out);
+            BytesUtil.writeVInt(value.flatAggregationEnabled ? 1 : 0, out);
         }
 
         @Override
@@ -511,6 +544,8 @@ public class GTScanRequest {
                 sTupleExpressionMap.put(sC, sTupleExpr);
             }
             ImmutableBitSet aRuntimeAggrMetrics = ImmutableBitSet.serializer.deserialize(in);
+            // tolerate requests from clients that do not send the flag yet
+            boolean sFlatAggr = in.hasRemaining() && BytesUtil.readVInt(in) == 1;
 
             return new GTScanRequestBuilder().setInfo(sInfo).setRanges(sRanges).setDimensions(sColumns)
                     .setAggrGroupBy(sAggGroupBy).setAggrMetrics(sAggrMetrics).setAggrMetricsFuncs(sAggrMetricFuncs)
@@ -520,7 +555,7 @@ public class GTScanRequest {
                     .setAllowStorageAggregation(sAllowPreAggr).setAggCacheMemThreshold(sAggrCacheGB)
                     .setStorageScanRowNumThreshold(storageScanRowNumThreshold)
                     .setStoragePushDownLimit(storagePushDownLimit).setStorageLimitLevel(storageLimitLevel)
-                    .setStartTime(startTime).setTimeout(timeout).setStorageBehavior(storageBehavior)
+                    .setFlatAggregationEnabled(sFlatAggr).setStartTime(startTime).setTimeout(timeout).setStorageBehavior(storageBehavior)
                     .createGTScanRequest();
         }
 
@@ -540,5 +575,5 @@ public class GTScanRequest {
             return new GTRecord(sInfo, sCols);
         }
 
-    };
+    }
 }
@@ -46,6 +46,7 @@ public class GTScanRequestBuilder {
     private int storageScanRowNumThreshold = Integer.MAX_VALUE;// storage should terminate itself when $storageScanRowNumThreshold cuboid rows are scanned, and throw exception.   
     private int storagePushDownLimit = Integer.MAX_VALUE;// storage can quit scanning safely when $toragePushDownLimit aggregated rows are produced. 
     private StorageLimitLevel storageLimitLevel = StorageLimitLevel.NO_LIMIT;
+    private boolean flatAggregationEnabled = false;
     private long startTime = -1;
     private long timeout = -1;
     private String storageBehavior = null;
@@ -130,6 +131,11 @@ public class GTScanRequestBuilder {
         return this;
     }
 
+    public GTScanRequestBuilder setFlatAggregationEnabled(boolean flatAggregationEnabled) {
+        this.flatAggregationEnabled = flatAggregationEnabled;
+        return this;
+    }
+
     public GTScanRequestBuilder setStartTime(long startTime) {
         this.startTime = startTime;
         return this;
@@ -182,6 +188,6 @@ public class GTScanRequestBuilder {
         return new GTScanRequest(info, ranges, dimensions, aggrGroupBy, aggrMetrics, aggrMetricsFuncs, rtAggrMetrics,
                 dynamicColumns, exprsPushDown, filterPushDown, havingFilterPushDown, allowStorageAggregation,
                 aggCacheMemThreshold, storageScanRowNumThreshold, storagePushDownLimit, storageLimitLevel,
-                storageBehavior, startTime, timeout);
+                flatAggregationEnabled, storageBehavior, startTime, timeout);
     }
 }
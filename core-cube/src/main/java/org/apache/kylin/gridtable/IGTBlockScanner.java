@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.gridtable;
+
+/**
+ * A store scanner that can also read its rows a block at a time, so the filter and aggregation above it take one call
+ * per block instead of a chain of iterator calls per row.
+ * <p>
+ * A scan reads either by iterator() or by nextBlock(), not both.
+ */
+public interface IGTBlockScanner extends IGTScanner {
+
+    /**
+     * Clears the block and reads the next rows into it, all selected.
+     *
+     * @return false if no row is left
+     */
+    boolean nextBlock(GTRecordBlock block);
+}
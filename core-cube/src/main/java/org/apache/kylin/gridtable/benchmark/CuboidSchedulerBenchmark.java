@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.gridtable.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.cube.inmemcubing.ConcurrentDiskStore;
+import org.apache.kylin.cube.inmemcubing.GTRangeAggregator;
+import org.apache.kylin.gridtable.GTBuilder;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTInfo.Builder;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.GridTable;
+import org.apache.kylin.metadata.datatype.DataType;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark of building all cuboids of one split of 2 million rows, on a fork join pool as InMemCubeBuilder does.
+ * 5 dimensions of type int4, and 2 measures of type long8.
+ *
+ * Compares cuboid tasks only, like the former fixed task threads, with cuboid tasks whose parents are split into
+ * row ranges run by a separate pool of the same size.
+ */
+public class CuboidSchedulerBenchmark {
+
+    final int nDims = 5;
+    final String[] aggrFuncs = new String[] { "SUM", "SUM" };
+    final DataType tint = DataType.getType("int4");
+    final DataType tlong = DataType.getType("long8");
+
+    final long N = 2000000; // 2M
+    final GridTable base;
+    // shared by the cuboid tasks and the range pool of a split
+    Semaphore rangePermits;
+
+    public CuboidSchedulerBenchmark() throws IOException {
+        GTInfo info = newInfo(nDims);
+        SortedGTRecordGenerator gen = new SortedGTRecordGenerator(info);
+        gen.addDimension(1000, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(100, 4, null);
+        gen.addMeasure(8);
+        gen.addMeasure(8);
+
+        base = new GridTable(info, new ConcurrentDiskStore(info));
+        GTBuilder builder = base.rebuild();
+        for (GTRecord rec : gen.generate(N)) {
+            builder.write(rec);
+        }
+        builder.close();
+    }
+
+    private GTInfo newInfo(int nDimsKept) {
+        Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        DataType[] types = new DataType[nDimsKept + 2];
+        for (int i = 0; i < nDimsKept; i++) {
+            types[i] = tint;
+        }
+        types[nDimsKept] = tlong;
+        types[nDimsKept + 1] = tlong;
+        builder.setColumns(types);
+        builder.setPrimaryKey(new ImmutableBitSet(0, nDimsKept));
+        return builder.build();
+    }
+
+    public void testSplit(final int threads, final boolean splitRanges) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        final ExecutorService rangePool = splitRanges ? Executors.newFixedThreadPool(threads) : null;
+        final List<GridTable> tables = Lists.newArrayList();
+        rangePermits = new Semaphore(threads);
+        long t = System.currentTimeMillis();
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(newChildTasks(base, nDims, 0, threads, rangePool, tables));
+                }
+            });
+        } finally {
+            pool.shutdown();
+            if (rangePool != null)
+                rangePool.shutdown();
+        }
+        t = System.currentTimeMillis() - t;
+
+        for (GridTable table : tables) {
+            table.close();
+        }
+        System.out.println(tables.size() + " cuboids with " + threads + " threads" //
+                + (splitRanges ? " and range splits" : "") + ", " + t + " ms per split");
+    }
+
+    // a spanning tree of all cuboids, each child removes a dimension after the one its parent removed
+    private List<CuboidTask> newChildTasks(GridTable parent, int nParentDims, int firstDimToRemove, int threads, ExecutorService rangePool, List<GridTable> tables) {
+        List<CuboidTask> result = Lists.newArrayList();
+        for (int d = firstDimToRemove; d < nParentDims && nParentDims > 1; d++) {
+            result.add(new CuboidTask(parent, nParentDims, d, threads, rangePool, tables));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private class CuboidTask extends RecursiveAction {
+        final GridTable parent;
+        final int nParentDims;
+        final int removedDim;
+        final int threads;
+        final ExecutorService rangePool;
+        final List<GridTable> tables;
+
+        CuboidTask(GridTable parent, int nParentDims, int removedDim, int threads, ExecutorService rangePool, List<GridTable> tables) {
+            this.parent = parent;
+            this.nParentDims = nParentDims;
+            this.removedDim = removedDim;
+            this.threads = threads;
+            this.rangePool = rangePool;
+            this.tables = tables;
+        }
+
+        @Override
+        protected void compute() {
+            GridTable child;
+            try {
+                child = aggregate();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            invokeAll(newChildTasks(child, nParentDims - 1, removedDim, threads, rangePool, tables));
+        }
+
+        private GridTable aggregate() throws IOException {
+            ImmutableBitSet groupBy = new ImmutableBitSet(0, nParentDims).set(removedDim, false);
+            ImmutableBitSet metrics = ImmutableBitSet.valueOf(nParentDims, nParentDims + 1);
+            GTScanRequest req = new GTScanRequestBuilder().setInfo(parent.getInfo()).setRanges(null).setDimensions(null).setAggrGroupBy(groupBy).setAggrMetrics(metrics).setAggrMetricsFuncs(aggrFuncs).setFilterPushDown(null).createGTScanRequest();
+
+            GTInfo childInfo = newInfo(nParentDims - 1);
+            GridTable child = new GridTable(childInfo, new ConcurrentDiskStore(childInfo));
+            new GTRangeAggregator(parent, req, null, rangePool, rangePermits).aggregateTo(child, threads * 2);
+            synchronized (tables) {
+                tables.add(child);
+            }
+            return child;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        CuboidSchedulerBenchmark benchmark = new CuboidSchedulerBenchmark();
+
+        for (int threads : new int[] { 1, 2, 4, 8 }) {
+            benchmark.testSplit(threads, false);
+            benchmark.testSplit(threads, true);
+        }
+        benchmark.base.close();
+    }
+}
@@ -26,14 +26,18 @@ import java.util.Random;
 import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTBuilder;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTInfo.Builder;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTRecordBlock;
 import org.apache.kylin.gridtable.GTSampleCodeSystem;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.GridTable;
 import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator.Randomizer;
+import org.apache.kylin.gridtable.memstore.GTSimpleMemStore;
 import org.apache.kylin.measure.hllc.HLLCounter;
 import org.apache.kylin.metadata.datatype.DataType;
 import org.apache.kylin.metadata.filter.ColumnTupleFilter;
@@ -49,6 +53,8 @@ import com.google.common.collect.Lists;
  * Benchmark of processing 10 million GTRecords. 5 dimensions of type int4, and 2 measures of type long8.
  * 
  * All the same as GTScannerBenchmark except for the last measure is single-value HLLC
+ *
+ * Also compares scanning 2 million rows in memory by rows and by blocks.
  */
 public class GTScannerBenchmark2 {
 
@@ -60,6 +66,7 @@ public class GTScannerBenchmark2 {
     final String[] aggrFuncs = new String[] { "SUM", "COUNT_DISTINCT" };
 
     final long N = 10000000; // 10M
+    final long M = 2000000; // 2M rows kept in memory, to compare row and block scans without the generator
     final long genTime;
 
     public GTScannerBenchmark2() {
@@ -189,6 +196,52 @@ public class GTScannerBenchmark2 {
         System.out.println(N + " records filtered to " + count + ", " + calcSpeed(t) + "K rec/sec");
     }
 
+    //@Test
+    public void testRowVsBlock() throws IOException {
+        GridTable table = new GridTable(info, new GTSimpleMemStore(info));
+        GTBuilder builder = table.rebuild();
+        for (GTRecord rec : gen.generate(M)) {
+            builder.write(rec);
+        }
+        builder.close();
+
+        TupleFilter filter = and(//
+                gt(col(0), 2), //
+                or(//
+                        eq(col(1), 2, 4), //
+                        eq(col(2), 2, 4, 5, 9)));
+
+        // twice each for warm up
+        for (boolean block : new boolean[] { false, true, false, true }) {
+            GTRecordBlock.ENABLED = block;
+            testMemScan(table, filter, null);
+            testMemScan(table, filter, ImmutableBitSet.valueOf(0, 1));
+        }
+        GTRecordBlock.ENABLED = true;
+    }
+
+    @SuppressWarnings("unused")
+    private void testMemScan(GridTable table, TupleFilter filter, ImmutableBitSet groupBy) throws IOException {
+        long t = System.currentTimeMillis();
+        GTScanRequestBuilder reqBuilder = new GTScanRequestBuilder().setInfo(info).setRanges(null).setFilterPushDown(filter);
+        if (groupBy == null) {
+            reqBuilder.setDimensions(info.getAllColumns());
+        } else {
+            reqBuilder.setDimensions(dimensions).setAggrGroupBy(groupBy).setAggrMetrics(metrics).setAggrMetricsFuncs(aggrFuncs);
+        }
+        IGTScanner scanner = table.scan(reqBuilder.createGTScanRequest());
+
+        long count = 0;
+        for (GTRecord rec : scanner) {
+            count++;
+        }
+        scanner.close();
+
+        t = Math.max(System.currentTimeMillis() - t, 1);
+        System.out.println(M + " records " + (groupBy == null ? "filtered" : "filtered and aggregated") + " to " + count //
+                + " by " + (GTRecordBlock.ENABLED ? "blocks" : "rows") + ", " + (M / t) + "K rec/sec");
+    }
+
     private LogicalTupleFilter and(TupleFilter... filters) {
         return logical(FilterOperatorEnum.AND, filters);
     }
@@ -248,5 +301,7 @@ public class GTScannerBenchmark2 {
         benchmark.testAggregate2_();
         benchmark.testAggregate4();
         //benchmark.testAggregate5(); // causes OOM in 4G heap
+
+        benchmark.testRowVsBlock();
     }
 }
@@ -28,7 +28,9 @@ import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.ImmutableBitSet;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTRecordBlock;
 import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTBlockScanner;
 import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.gridtable.IGTWriter;
@@ -97,9 +99,10 @@ public class GTSimpleMemStore implements IGTStore {
     @Override
     public IGTScanner scan(GTScanRequest scanRequest) {
 
-        return new IGTScanner() {
+        return new IGTBlockScanner() {
             @SuppressWarnings("unused")
             long count;
+            Iterator<byte[]> blockIt;
 
             @Override
             public GTInfo getInfo() {
@@ -136,6 +139,21 @@ public class GTSimpleMemStore implements IGTStore {
                     }
                 };
             }
+
+            @Override
+            public boolean nextBlock(GTRecordBlock block) {
+                if (blockIt == null) {
+                    blockIt = rowList.iterator();
+                }
+
+                block.clear();
+                ImmutableBitSet columns = getColumns();
+                while (!block.isFull() && blockIt.hasNext()) {
+                    block.append().loadColumns(columns, ByteBuffer.wrap(blockIt.next()));
+                    count++;
+                }
+                return block.size() > 0;
+            }
         };
     }
 
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.cuboid.algorithm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.kylin.cube.cuboid.algorithm.greedy.GreedyAlgorithm;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Times the greedy recommendation over synthetic stats of a growing number of dimensions. The cuboids are a random
+ * sample of all combinations, like the cuboids of aggregation groups, with row counts derived from random
+ * dimension cardinalities.
+ */
+@Ignore
+public class CuboidRecommenderBenchmark {
+
+    private static final double EXPANSION_RATE = 15.0;
+
+    @Test
+    public void benchmarkGreedy() {
+        System.out.println("dims\tcuboids\trecommended\tfingerprint ms\tgreedy ms");
+        for (int nDims : new int[] { 8, 10, 12, 16, 20, 24 }) {
+            CuboidStats cuboidStats = newCuboidStats(nDims, 8192, new Random(nDims));
+
+            long start = System.currentTimeMillis();
+            cuboidStats.getFingerprint();
+            long fingerprintTime = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            GreedyAlgorithm algorithm = new GreedyAlgorithm(-1, new PBPUSCalculator(cuboidStats), cuboidStats);
+            List<Long> recommended = algorithm.recommend(EXPANSION_RATE);
+            long greedyTime = System.currentTimeMillis() - start;
+
+            System.out.println(nDims + "\t" + cuboidStats.getStatistics().size() + "\t" + recommended.size() + "\t"
+                    + fingerprintTime + "\t" + greedyTime);
+        }
+    }
+
+    private static CuboidStats newCuboidStats(int nDims, int maxCuboids, Random random) {
+        long[] cardinality = new long[nDims];
+        for (int i = 0; i < nDims; i++) {
+            cardinality[i] = 2 + random.nextInt(1000);
+        }
+        long baseCuboid = (1L << nDims) - 1;
+        long baseRows = 100000000L;
+
+        Map<Long, Long> counts = Maps.newHashMap();
+        Map<Long, Double> sizes = Maps.newHashMap();
+        Map<Long, Long> hitFrequency = Maps.newHashMap();
+        addCuboid(baseCuboid, cardinality, baseRows, counts, sizes);
+        for (long cuboid = 1; cuboid < baseCuboid && counts.size() < maxCuboids; cuboid++) {
+            // all cuboids of few dimensions, a random sample of many
+            long c = (1L << nDims) <= maxCuboids ? cuboid : random.nextLong() & baseCuboid;
+            if (c != 0 && !counts.containsKey(c)) {
+                addCuboid(c, cardinality, baseRows, counts, sizes);
+                if (random.nextInt(10) == 0) {
+                    hitFrequency.put(c, (long) random.nextInt(100));
+                }
+            }
+        }
+        return new CuboidStats.Builder("benchmark_" + nDims, baseCuboid, counts, sizes)
+                .setHitFrequencyMap(hitFrequency).build();
+    }
+
+    private static void addCuboid(long cuboid, long[] cardinality, long baseRows, Map<Long, Long> counts,
+            Map<Long, Double> sizes) {
+        long rows = 1;
+        for (int i = 0; i < cardinality.length; i++) {
+            if ((cuboid & (1L << i)) != 0) {
+                rows = Math.min(baseRows, rows * cardinality[i]);
+            }
+        }
+        counts.put(cuboid, rows);
+        sizes.put(cuboid, rows * Long.bitCount(cuboid) * 4.0 / 1024 / 1024);
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.kylin.cube.inmemcubing;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import java.io.IOException;
 import java.util.List;
@@ -67,6 +68,37 @@ public class ConcurrentDiskStoreTest extends LocalFileMetadataTestCase {
         System.out.println("Cost " + (end - start) + " millis");
     }
 
+    @Test
+    public void testSplitRead() throws IOException {
+        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        GridTable table = new GridTable(info, store);
+        GTBuilder builder = table.rebuild();
+        for (GTRecord r : data) {
+            builder.write(r);
+        }
+        builder.close();
+
+        long[] offsets = store.getSplitOffsets(4);
+        assertEquals(5, offsets.length);
+
+        int i = 0;
+        for (int split = 0; split + 1 < offsets.length; split++) {
+            if (split > 0) {
+                // a value of the first primary key column is never split
+                assertNotEquals(data.get(i - 1).get(0), data.get(i).get(0));
+            }
+            IGTScanner scanner = store.scan(offsets[split], offsets[split + 1]);
+            for (GTRecord r : scanner) {
+                assertEquals(data.get(i++), r);
+            }
+            scanner.close();
+        }
+        assertEquals(data.size(), i);
+
+        assertEquals(2, store.getSplitOffsets(1).length);
+        store.close();
+    }
+
     private void verifyOneTableWriteAndRead(int readThreads) throws IOException, InterruptedException {
         ConcurrentDiskStore store = new ConcurrentDiskStore(info);
         GridTable table = new GridTable(info, store);
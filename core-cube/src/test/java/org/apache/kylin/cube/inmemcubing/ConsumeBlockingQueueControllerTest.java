@@ -87,6 +87,52 @@ public class ConsumeBlockingQueueControllerTest {
         Assert.assertEquals(nRecord, nRecordConsumed.get());
     }
 
+    @Test
+    public void testSplitCutter() throws InterruptedException {
+        final int nRecord = 4345;
+        final int nBatch = 60;
+        final int nTarget = 1000;
+
+        final BlockingQueue<String> input = new LinkedBlockingQueue<>();
+        for (int i = 0; i < nRecord; i++) {
+            input.put("test");
+        }
+        input.put(InputConverterUnitTest.END_ROW);
+
+        final RecordConsumeBlockingQueueController<String> inputController = RecordConsumeBlockingQueueController
+                .getQueueController(new InputConverterUnitTest(), input, nBatch);
+        inputController.setSplitCutter(new RecordConsumeBlockingQueueController.ISplitCutter() {
+            @Override
+            public boolean shouldCut(long splitRowCount) {
+                return splitRowCount >= nTarget;
+            }
+        });
+
+        int nRecordConsumed = 0;
+        int nSplit = 0;
+        while (true) {
+            inputController.startNewSplit();
+            inputController.hasNext();
+            if (inputController.ifEnd()) {
+                break;
+            }
+            nSplit++;
+            while (inputController.hasNext()) {
+                inputController.next();
+                nRecordConsumed++;
+            }
+            // cut at the first batch boundary reaching the target
+            if (inputController.ifEnd()) {
+                Assert.assertEquals(nRecord % 1020, inputController.getSplitRowCount());
+            } else {
+                Assert.assertEquals(1020, inputController.getSplitRowCount());
+            }
+        }
+
+        Assert.assertEquals(nRecord, nRecordConsumed);
+        Assert.assertEquals(5, nSplit);
+    }
+
     private static class InputConverterUnitTest implements InputConverterUnit<String> {
         public static final String END_ROW = new String();
         public static final String CUT_ROW = "0";
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.gridtable.GTBuilder;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.GridTable;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MappedChunkStoreTest extends LocalFileMetadataTestCase {
+
+    final GTInfo info = UnitTestSupport.advancedInfo();
+    final List<GTRecord> data = UnitTestSupport.mockupData(info, 100000); // converts to about 3.4 MB data
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testSingleThreadRead() throws IOException, InterruptedException {
+        verifyWriteAndRead(1);
+    }
+
+    @Test
+    public void testMultiThreadRead() throws IOException, InterruptedException {
+        verifyWriteAndRead(5);
+    }
+
+    @Test
+    public void testRebuild() throws IOException {
+        MappedChunkStore store = new MappedChunkStore(info);
+        GridTable table = new GridTable(info, store);
+        write(table, data.subList(0, 10000));
+        assertEquals(10000, read(table, data.subList(0, 10000)));
+
+        List<GTRecord> rest = data.subList(10000, data.size());
+        write(table, rest);
+        assertEquals(rest.size(), read(table, rest));
+        store.close();
+    }
+
+    @Test
+    public void testSplitRead() throws IOException {
+        MappedChunkStore store = new MappedChunkStore(info);
+        GridTable table = new GridTable(info, store);
+        write(table, data);
+
+        long[] offsets = store.getSplitOffsets(4);
+        assertEquals(5, offsets.length);
+
+        int i = 0;
+        for (int split = 0; split + 1 < offsets.length; split++) {
+            if (split > 0) {
+                // a value of the first primary key column is never split
+                assertNotEquals(data.get(i - 1).get(0), data.get(i).get(0));
+            }
+            IGTScanner scanner = store.scan(offsets[split], offsets[split + 1]);
+            for (GTRecord r : scanner) {
+                assertEquals(data.get(i++), r);
+            }
+            scanner.close();
+        }
+        assertEquals(data.size(), i);
+
+        assertEquals(2, store.getSplitOffsets(1).length);
+        store.close();
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        MappedChunkStore.IOStats before = MappedChunkStore.getTotalStats();
+
+        MappedChunkStore store = new MappedChunkStore(info);
+        GridTable table = new GridTable(info, store);
+        write(table, data);
+        read(table, data);
+        store.close();
+
+        MappedChunkStore.IOStats after = MappedChunkStore.getTotalStats();
+        long raw = after.rawBytes - before.rawBytes;
+        long written = after.writtenBytes - before.writtenBytes;
+        assertTrue(written < raw / 2); // the mock data repeats a lot
+        assertEquals(written, after.readBytes - before.readBytes);
+    }
+
+    private void verifyWriteAndRead(int readThreads) throws IOException, InterruptedException {
+        MappedChunkStore store = new MappedChunkStore(info);
+        final GridTable table = new GridTable(info, store);
+        write(table, data);
+
+        final AtomicInteger nVerified = new AtomicInteger();
+        Thread[] t = new Thread[readThreads];
+        for (int i = 0; i < readThreads; i++) {
+            t[i] = new Thread() {
+                public void run() {
+                    try {
+                        nVerified.addAndGet(read(table, data));
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i = 0; i < readThreads; i++) {
+            t[i].join();
+        }
+        assertEquals(readThreads * data.size(), nVerified.get());
+
+        store.close();
+    }
+
+    private void write(GridTable table, List<GTRecord> records) throws IOException {
+        GTBuilder builder = table.rebuild();
+        for (GTRecord r : records) {
+            builder.write(r);
+        }
+        builder.close();
+    }
+
+    private int read(GridTable table, List<GTRecord> expected) throws IOException {
+        IGTScanner scanner = table.scan(new GTScanRequestBuilder().setInfo(table.getInfo()).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest());
+        int i = 0;
+        for (GTRecord r : scanner) {
+            assertEquals(expected.get(i++), r);
+        }
+        scanner.close();
+        return i;
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.kylin.gridtable;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -95,6 +96,46 @@ public class AggregationCacheSpillTest extends LocalFileMetadataTestCase {
         scanner.close();
     }
 
+    @Test
+    public void testMergeSpilledWithInMem() throws IOException {
+        // 3 replications, the first spill happens at row 100000 and the rest stays in memory
+        final List<GTRecord> data = Lists.newArrayList(TEST_DATA);
+        data.addAll(TEST_DATA.subList(0, DATA_CARDINALITY));
+
+        IGTScanner inputScanner = new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return data.iterator();
+            }
+        };
+
+        GTScanRequest scanRequest = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(new ImmutableBitSet(0, 3)).setAggrGroupBy(new ImmutableBitSet(0, 3)).setAggrMetrics(new ImmutableBitSet(3, 6)).setAggrMetricsFuncs(new String[] { "SUM", "SUM", "COUNT_DISTINCT" }).setFilterPushDown(null).setAggCacheMemThreshold(0.00001).createGTScanRequest();
+
+        GTAggregateScanner scanner = new GTAggregateScanner(inputScanner, scanRequest);
+
+        int count = 0;
+        for (GTRecord record : scanner) {
+            assertNotNull(record);
+            Object[] returnRecord = record.getValues();
+            assertEquals(30, ((Long) returnRecord[3]).longValue());
+            assertEquals(31, ((BigDecimal) returnRecord[4]).longValue());
+            count++;
+        }
+        assertEquals(DATA_CARDINALITY, count);
+        assertEquals(1, scanner.getNumOfSpills());
+        assertTrue(scanner.getSpilledBytes() > 0);
+        scanner.close();
+    }
+
     @Test
     public void testAggregationCacheInMem() throws IOException {
         IGTScanner inputScanner = new IGTScanner() {
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class GTFlatAggregationTest extends LocalFileMetadataTestCase {
+    final static int DATA_CARDINALITY = 20000;
+    final static List<GTRecord> TEST_DATA = Lists.newArrayList();
+
+    static GTInfo INFO;
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        builder.setColumns(//
+                DataType.getType("varchar(10)"), //
+                DataType.getType("varchar(10)"), //
+                DataType.getType("bigint"), //
+                DataType.getType("double"), //
+                DataType.getType("bigint") //
+        );
+        builder.setPrimaryKey(new ImmutableBitSet(0, 2));
+        builder.setColumnPreferIndex(new ImmutableBitSet(0, 2));
+        INFO = builder.build();
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < DATA_CARDINALITY; i++) {
+                GTRecord rec = new GTRecord(INFO);
+                rec.setValues("k" + i, "v" + round, Long.valueOf(i), Double.valueOf(round + 0.5), Long.valueOf(round));
+                TEST_DATA.add(rec);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    private IGTScanner inputScanner() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return TEST_DATA.iterator();
+            }
+        };
+    }
+
+    private GTScanRequest scanRequest(String[] funcs, boolean flat, double memThresholdGB) {
+        return new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(new ImmutableBitSet(0, 2))
+                .setAggrGroupBy(new ImmutableBitSet(0, 1)).setAggrMetrics(new ImmutableBitSet(2, 5))
+                .setAggrMetricsFuncs(funcs).setAggCacheMemThreshold(memThresholdGB)
+                .setFlatAggregationEnabled(flat).createGTScanRequest();
+    }
+
+    private List<String> scan(GTScanRequest req, boolean expectFlat) throws IOException {
+        GTAggregateScanner scanner = new GTAggregateScanner(inputScanner(), req);
+        assertEquals(expectFlat, scanner.isFlatAggregating());
+
+        List<String> result = Lists.newArrayList();
+        for (GTRecord record : scanner) {
+            Object[] values = record.getValues();
+            result.add(values[0] + "," + values[2] + "," + values[3] + "," + values[4]);
+        }
+        scanner.close();
+        return result;
+    }
+
+    @Test
+    public void testFlatSameAsSorted() throws IOException {
+        String[] funcs = new String[] { "SUM", "MAX", "MIN" };
+        List<String> sorted = scan(scanRequest(funcs, false, 0.5), false);
+        List<String> flat = scan(scanRequest(funcs, true, 0.5), true);
+
+        assertEquals(DATA_CARDINALITY, sorted.size());
+        assertEquals(sorted, flat);
+        assertEquals("k0,0,2.5,0", flat.get(0));
+    }
+
+    @Test
+    public void testFallbackWhenTableCannotGrow() throws IOException {
+        String[] funcs = new String[] { "SUM", "MAX", "MIN" };
+        List<String> sorted = scan(scanRequest(funcs, false, 0), false);
+
+        // ~64KB is far below what 20000 groups need, the scanner must switch to AggregationCache halfway
+        GTScanRequest req = scanRequest(funcs, true, 64.0 / 1024 / 1024);
+        GTAggregateScanner scanner = new GTAggregateScanner(inputScanner(), req);
+        assertTrue(scanner.isFlatAggregating());
+        List<String> result = Lists.newArrayList();
+        for (GTRecord record : scanner) {
+            Object[] values = record.getValues();
+            result.add(values[0] + "," + values[2] + "," + values[3] + "," + values[4]);
+        }
+        assertFalse(scanner.isFlatAggregating());
+        scanner.close();
+
+        assertEquals(sorted, result);
+    }
+
+    @Test
+    public void testSkippedWithStorageLimit() throws IOException {
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(INFO).setRanges(null)
+                .setDimensions(new ImmutableBitSet(0, 2)).setAggrGroupBy(new ImmutableBitSet(0, 1))
+                .setAggrMetrics(new ImmutableBitSet(2, 5)).setAggrMetricsFuncs(new String[] { "SUM", "MAX", "MIN" })
+                .setStorageLimitLevel(StorageLimitLevel.LIMIT_ON_RETURN_SIZE).setStoragePushDownLimit(10)
+                .setFlatAggregationEnabled(true).createGTScanRequest();
+        assertFalse(new GTAggregateScanner(inputScanner(), req).isFlatAggregating());
+    }
+}
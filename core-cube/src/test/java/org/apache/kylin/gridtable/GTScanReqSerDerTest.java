@@ -19,6 +19,7 @@
 package org.apache.kylin.gridtable;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.BytesSerializer;
@@ -100,6 +101,22 @@ public class GTScanReqSerDerTest extends LocalFileMetadataTestCase {
         this.compareTwoGTInfo(info, sInfo);
     }
 
+    @Test
+    public void testResultKey() {
+        GTInfo info = UnitTestSupport.basicInfo();
+        GTScanRequest r1 = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null)
+                .setStartTime(1000L).setTimeout(60000L).createGTScanRequest();
+        GTScanRequest r2 = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null)
+                .setStartTime(2000L).setTimeout(30000L).createGTScanRequest();
+        GTScanRequest r3 = new GTScanRequestBuilder().setInfo(info).setRanges(null)
+                .setDimensions(new ImmutableBitSet(0, 2)).setStartTime(1000L).setTimeout(60000L)
+                .createGTScanRequest();
+
+        Assert.assertFalse(Arrays.equals(r1.toByteArray(), r2.toByteArray()));
+        Assert.assertArrayEquals(r1.toResultKey(), r2.toResultKey());
+        Assert.assertFalse(Arrays.equals(r1.toResultKey(), r3.toResultKey()));
+    }
+
     private void compareTwoGTInfo(GTInfo info, GTInfo sInfo) {
         Assert.assertEquals(info.tableName, sInfo.tableName);
         Assert.assertEquals(info.primaryKey, sInfo.primaryKey);
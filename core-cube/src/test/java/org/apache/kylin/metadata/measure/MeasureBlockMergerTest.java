@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.metadata.measure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.measure.BufferedMeasureCodec;
+import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.measure.MeasureBlockMerger;
+import org.apache.kylin.measure.hllc.HLLCounter;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MeasureBlockMergerTest extends LocalFileMetadataTestCase {
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testMergeAsAggregators() {
+        List<MeasureDesc> descs = Arrays.asList(measure("COUNT", "bigint"), measure("SUM", "bigint"),
+                measure("MIN", "bigint"), measure("MAX", "double"), measure("SUM", "decimal(19,4)"),
+                measure("COUNT_DISTINCT", "hllc(14)"));
+        BufferedMeasureCodec codec = new BufferedMeasureCodec(descs);
+
+        HLLCounter hllc1 = new HLLCounter(14);
+        hllc1.add("a");
+        hllc1.add("b");
+        HLLCounter hllc2 = new HLLCounter(14);
+        hllc2.add("b");
+        hllc2.add("c");
+        Object[] values1 = new Object[] { 3L, -200L, 7L, 1.5, new BigDecimal("1.2345"), hllc1 };
+        Object[] values2 = new Object[] { 5L, 100000L, -8L, 0.5, new BigDecimal("100.0001"), hllc2 };
+        byte[] block1 = encode(codec, values1);
+        byte[] block2 = encode(codec, values2);
+
+        Object[] expected = new Object[values1.length];
+        new MeasureAggregators(descs).aggregate(decode(codec, block1), decode(codec, block2), expected);
+
+        byte[] merged = new MeasureBlockMerger(descs).merge(block1, block2);
+        assertArrayEquals(encode(codec, expected), merged);
+        assertEquals(3L, ((HLLCounter) decode(codec, merged)[5]).getCountEstimate());
+    }
+
+    @Test
+    public void testCopyNotAggregated() {
+        List<MeasureDesc> descs = Arrays.asList(measure("SUM", "bigint"), measure("COUNT_DISTINCT", "hllc(14)"),
+                measure("SUM", "double"));
+        BufferedMeasureCodec codec = new BufferedMeasureCodec(descs);
+
+        HLLCounter hllc1 = new HLLCounter(14);
+        hllc1.add("a");
+        HLLCounter hllc2 = new HLLCounter(14);
+        hllc2.add("b");
+        byte[] block1 = encode(codec, new Object[] { 1L, hllc1, 1.0 });
+        byte[] block2 = encode(codec, new Object[] { 2L, hllc2, 2.0 });
+
+        byte[] merged = new MeasureBlockMerger(descs, new boolean[] { true, false, true }).merge(block1, block2);
+        assertArrayEquals(encode(codec, new Object[] { 3L, hllc1, 3.0 }), merged);
+    }
+
+    private static byte[] encode(BufferedMeasureCodec codec, Object[] values) {
+        ByteBuffer buf = codec.encode(values);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    private static Object[] decode(BufferedMeasureCodec codec, byte[] block) {
+        Object[] values = new Object[codec.getMeasureSizes().length];
+        codec.decode(ByteBuffer.wrap(block), values);
+        return values;
+    }
+
+    private MeasureDesc measure(String expression, String returnType) {
+        MeasureDesc desc = new MeasureDesc();
+        FunctionDesc func = FunctionDesc.newInstance(expression, null, returnType);
+        desc.setFunction(func);
+        return desc;
+    }
+}
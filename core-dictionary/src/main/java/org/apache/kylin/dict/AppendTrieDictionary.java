@@ -30,6 +30,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.dict.global.AppendDictSlice;
+import org.apache.kylin.dict.global.AppendDictSliceCache;
 import org.apache.kylin.dict.global.AppendDictSliceKey;
 import org.apache.kylin.dict.global.GlobalDictHDFSStore;
 import org.apache.kylin.dict.global.GlobalDictMetadata;
@@ -71,6 +72,11 @@ public class AppendTrieDictionary<T> extends CacheDictionary<T> {
     transient private GlobalDictMetadata metadata;
     transient private LoadingCache<AppendDictSliceKey, AppendDictSlice> dictCache;
 
+    // memory mapped slices shared by the dictionaries of a process, replaces dictCache if enabled
+    transient private AppendDictSliceCache sliceCache;
+    transient private GlobalDictStore sliceStore;
+    transient private String sliceDir;
+
     public void init(String baseDir) throws IOException {
         this.baseDir = convertToAbsolutePath(baseDir);
         final GlobalDictStore globalDictStore = new GlobalDictHDFSStore(this.baseDir);
@@ -85,6 +91,15 @@ public class AppendTrieDictionary<T> extends CacheDictionary<T> {
         final Path latestVersionPath = globalDictStore.getVersionDir(latestVersion);
         this.metadata = globalDictStore.getMetadata(latestVersion);
         this.bytesConvert = metadata.bytesConverter;
+
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        if (config.isAppendDictSliceCacheEnabled()) {
+            this.sliceCache = AppendDictSliceCache.getInstance(config);
+            this.sliceStore = globalDictStore;
+            this.sliceDir = latestVersionPath.toString();
+            return;
+        }
+
         this.dictCache = CacheBuilder.newBuilder().softValues().removalListener(new RemovalListener<AppendDictSliceKey, AppendDictSlice>() {
             @Override
             public void onRemoval(RemovalNotification<AppendDictSliceKey, AppendDictSlice> notification) {
@@ -109,7 +124,10 @@ public class AppendTrieDictionary<T> extends CacheDictionary<T> {
         }
         AppendDictSlice slice;
         try {
-            slice = dictCache.get(sliceKey);
+            if (sliceCache != null)
+                slice = sliceCache.getSlice(sliceStore, sliceDir, metadata.sliceFileMap, sliceKey);
+            else
+                slice = dictCache.get(sliceKey);
         } catch (ExecutionException e) {
             throw new RuntimeException("Failed to load slice with key " + sliceKey, e.getCause());
         }
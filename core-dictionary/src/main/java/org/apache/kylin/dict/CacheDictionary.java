@@ -18,22 +18,16 @@
 
 package org.apache.kylin.dict;
 
-import java.lang.ref.SoftReference;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import org.apache.kylin.common.util.Dictionary;
 
 /**
+ * A dictionary whose decoded values and looked up ids are kept in the shared {@link DictionaryCache}.
  */
 public abstract class CacheDictionary<T> extends Dictionary<T> {
     private static final long serialVersionUID = 1L;
 
-    private transient SoftReference<ConcurrentHashMap> valueToIdCache;
-
-    private transient SoftReference<Object[]> idToValueCache;
-
-    public transient SoftReference<byte[][]> idToValueByteCache;
+    // 0 means not cached
+    private transient long cacheId = 0;
 
     protected transient int baseId;
 
@@ -46,18 +40,15 @@ public abstract class CacheDictionary<T> extends Dictionary<T> {
     //value --> id
     @Override
     protected final int getIdFromValueImpl(T value, int roundingFlag) {
-        if (this.valueToIdCache != null && roundingFlag == 0) {
-            Map cache = valueToIdCache.get(); // SoftReference to skip cache gracefully when short of memory
-            if (cache != null) {
-                Integer id;
-                id = (Integer) cache.get(value);
-                if (id != null)
-                    return id.intValue();
-                byte[] valueBytes = bytesConvert.convertToBytes(value);
-                id = getIdFromValueBytesWithoutCache(valueBytes, 0, valueBytes.length, roundingFlag);
-                cache.put(value, id);
-                return id;
-            }
+        if (cacheId != 0 && roundingFlag == 0) {
+            DictionaryCache cache = DictionaryCache.getInstance();
+            Integer id = cache.getByValue(cacheId, value);
+            if (id != null)
+                return id.intValue();
+            byte[] valueBytes = bytesConvert.convertToBytes(value);
+            id = getIdFromValueBytesWithoutCache(valueBytes, 0, valueBytes.length, roundingFlag);
+            cache.putByValue(cacheId, value, id);
+            return id;
         }
         byte[] valueBytes = bytesConvert.convertToBytes(value);
         return getIdFromValueBytesWithoutCache(valueBytes, 0, valueBytes.length, roundingFlag);
@@ -66,17 +57,17 @@ public abstract class CacheDictionary<T> extends Dictionary<T> {
     //id --> value
     @Override
     protected final T getValueFromIdImpl(int id) {
-        if (this.idToValueCache != null) {
-            Object[] cache = idToValueCache.get();
-            if (cache != null) {
-                int seq = calcSeqNoFromId(id);
-                if (cache[seq] != null)
-                    return (T) cache[seq];
-                byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
-                T value = bytesConvert.convertFromBytes(valueBytes, 0, valueBytes.length);
-                cache[seq] = value;
+        if (cacheId != 0) {
+            DictionaryCache cache = DictionaryCache.getInstance();
+            int seq = calcSeqNoFromId(id);
+            T value = (T) cache.getById(cacheId, DictionaryCache.ID_TO_VALUE, seq);
+            if (value != null)
                 return value;
-            }
+            byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
+            value = bytesConvert.convertFromBytes(valueBytes, 0, valueBytes.length);
+            if (value != null)
+                cache.putById(cacheId, DictionaryCache.ID_TO_VALUE, seq, value);
+            return value;
         }
         byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
         return bytesConvert.convertFromBytes(valueBytes, 0, valueBytes.length);
@@ -84,26 +75,57 @@ public abstract class CacheDictionary<T> extends Dictionary<T> {
 
     @Override
     protected byte[] getValueBytesFromIdImpl(int id) {
-        if (idToValueByteCache != null) {
-            byte[][] bytes = idToValueByteCache.get();
+        if (cacheId != 0) {
+            DictionaryCache cache = DictionaryCache.getInstance();
+            int seq = calcSeqNoFromId(id);
+            byte[] bytes = (byte[]) cache.getById(cacheId, DictionaryCache.ID_TO_VALUE_BYTES, seq);
             if (bytes != null) {
-                int seq = calcSeqNoFromId(id);
-                if (bytes[seq] != null) {
-                    cacheHitCount++;
-                    return bytes[seq];
-                }
-                byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
-                byte[] bytes1 = bytesConvert.convertBytesValueFromBytes(valueBytes, 0, valueBytes.length);
-                bytes[seq] = bytes1;
-                cacheMissCount++;
-                return bytes1;
+                cacheHitCount++;
+                return bytes;
             }
+            byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
+            bytes = bytesConvert.convertBytesValueFromBytes(valueBytes, 0, valueBytes.length);
+            if (bytes != null)
+                cache.putById(cacheId, DictionaryCache.ID_TO_VALUE_BYTES, seq, bytes);
+            cacheMissCount++;
+            return bytes;
         }
         byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
         return bytesConvert.convertBytesValueFromBytes(valueBytes, 0, valueBytes.length);
 
     }
 
+    @Override
+    public void getValuesFromIds(int[] ids, int count, T[] values) {
+        DictionaryCache cache = cacheId != 0 ? DictionaryCache.getInstance() : null;
+        byte[] buf = new byte[getSizeOfValue()];
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            if (isNullId(id)) {
+                values[i] = null;
+                continue;
+            }
+            // ids of a block are often sorted, repeats are decoded once
+            if (i > 0 && id == ids[i - 1]) {
+                values[i] = values[i - 1];
+                continue;
+            }
+
+            int seq = calcSeqNoFromId(id);
+            if (cache != null) {
+                T value = (T) cache.getById(cacheId, DictionaryCache.ID_TO_VALUE, seq);
+                if (value != null) {
+                    values[i] = value;
+                    continue;
+                }
+            }
+            int len = getValueBytesFromIdWithoutCache(id, buf);
+            values[i] = bytesConvert.convertFromBytes(buf, 0, len);
+            if (cache != null && values[i] != null)
+                cache.putById(cacheId, DictionaryCache.ID_TO_VALUE, seq, values[i]);
+        }
+    }
+
     protected final int calcSeqNoFromId(int id) {
         int seq = id - baseId;
         if (seq < 0 || seq >= getSize()) {
@@ -113,21 +135,23 @@ public abstract class CacheDictionary<T> extends Dictionary<T> {
     }
 
     public final void enableCache() {
-        if (this.valueToIdCache == null)
-            this.valueToIdCache = new SoftReference<>(new ConcurrentHashMap());
-        if (this.idToValueCache == null)
-            this.idToValueCache = new SoftReference<>(new Object[getSize()]);
-        if (this.idToValueByteCache == null)
-            this.idToValueByteCache = new SoftReference<>(new byte[getSize()][]);
+        if (this.cacheId == 0)
+            this.cacheId = DictionaryCache.newCacheId();
     }
 
     public final void disableCache() {
-        this.valueToIdCache = null;
-        this.idToValueCache = null;
+        this.cacheId = 0;
     }
 
     abstract protected byte[] getValueBytesFromIdWithoutCache(int id);
 
+    /** writes the value bytes into buf, which holds getSizeOfValue() bytes, and returns the length */
+    protected int getValueBytesFromIdWithoutCache(int id, byte[] buf) {
+        byte[] valueBytes = getValueBytesFromIdWithoutCache(id);
+        System.arraycopy(valueBytes, 0, buf, 0, valueBytes.length);
+        return valueBytes.length;
+    }
+
     abstract protected int getIdFromValueBytesWithoutCache(byte[] valueBytes, int offset, int length, int roundingFlag);
 
 }
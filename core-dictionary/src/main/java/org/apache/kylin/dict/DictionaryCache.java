@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.metrics.common.Metrics;
+import org.apache.kylin.common.metrics.common.MetricsConstant;
+import org.apache.kylin.common.metrics.common.MetricsFactory;
+import org.apache.kylin.common.metrics.common.MetricsNameBuilder;
+import org.apache.kylin.common.metrics.common.MetricsVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * The decoded values and looked up ids of all cached dictionaries, within one memory budget.
+ *
+ * Entries are kept by estimated size in a segmented LRU, so under memory pressure the cold values go first,
+ * instead of a whole dictionary being dropped like a soft reference would. Each dictionary gets its own cache
+ * id, entries of unloaded dictionaries simply age out.
+ */
+public class DictionaryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DictionaryCache.class);
+
+    static final int ID_TO_VALUE = 0;
+    static final int ID_TO_VALUE_BYTES = 1;
+    static final int VALUE_TO_ID = 2;
+
+    // object header, fields and the entry in the hash table
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final AtomicLong nextCacheId = new AtomicLong();
+
+    private static volatile DictionaryCache instance = null;
+
+    public static DictionaryCache getInstance() {
+        if (instance != null) {
+            return instance;
+        }
+
+        synchronized (DictionaryCache.class) {
+            if (instance == null) {
+                KylinConfig config = KylinConfig.getInstanceFromEnv();
+                instance = new DictionaryCache(config.getDictionaryCacheMaxMB() * 1024L * 1024L);
+                if (config.getQueryMetrics2Enabled()) {
+                    instance.registerMetrics();
+                }
+            }
+            return instance;
+        }
+    }
+
+    static long newCacheId() {
+        return nextCacheId.incrementAndGet();
+    }
+
+    private final Cache<Key, Object> cache;
+
+    DictionaryCache(long maxBytes) {
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(new Weigher<Key, Object>() {
+            @Override
+            public int weigh(Key key, Object value) {
+                return ENTRY_OVERHEAD + estimateSize(key.value) + estimateSize(value);
+            }
+        }).recordStats().build();
+    }
+
+    static int estimateSize(Object o) {
+        if (o == null || o instanceof Integer) {
+            return 16;
+        } else if (o instanceof String) {
+            return 40 + 2 * ((String) o).length();
+        } else if (o instanceof byte[]) {
+            return 16 + ((byte[]) o).length;
+        } else {
+            return 32;
+        }
+    }
+
+    Object getById(long cacheId, int kind, int id) {
+        return cache.getIfPresent(new Key(cacheId, kind, id, null));
+    }
+
+    void putById(long cacheId, int kind, int id, Object value) {
+        cache.put(new Key(cacheId, kind, id, null), value);
+    }
+
+    Integer getByValue(long cacheId, Object value) {
+        return (Integer) cache.getIfPresent(new Key(cacheId, VALUE_TO_ID, 0, value));
+    }
+
+    void putByValue(long cacheId, Object value, int id) {
+        cache.put(new Key(cacheId, VALUE_TO_ID, 0, value), id);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getEntryCount() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private void registerMetrics() {
+        try {
+            Metrics metrics = MetricsFactory.getInstance();
+            String prefix = MetricsNameBuilder.METRICS + "type=" + MetricsConstant.DICT_CACHE;
+            metrics.addGauge(MetricsNameBuilder.buildMetricName(prefix, MetricsConstant.DICT_CACHE_HIT_COUNT),
+                    new MetricsVariable<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return cache.stats().hitCount();
+                        }
+                    });
+            metrics.addGauge(MetricsNameBuilder.buildMetricName(prefix, MetricsConstant.DICT_CACHE_MISS_COUNT),
+                    new MetricsVariable<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return cache.stats().missCount();
+                        }
+                    });
+            metrics.addGauge(MetricsNameBuilder.buildMetricName(prefix, MetricsConstant.DICT_CACHE_EVICTION_COUNT),
+                    new MetricsVariable<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return cache.stats().evictionCount();
+                        }
+                    });
+            metrics.addGauge(MetricsNameBuilder.buildMetricName(prefix, MetricsConstant.DICT_CACHE_ENTRY_COUNT),
+                    new MetricsVariable<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return cache.size();
+                        }
+                    });
+        } catch (Exception e) {
+            logger.error("Failed to register dictionary cache metrics", e);
+        }
+    }
+
+    private static final class Key {
+        final long cacheId;
+        final int kind;
+        final int id;
+        final Object value;
+
+        Key(long cacheId, int kind, int id, Object value) {
+            this.cacheId = cacheId;
+            this.kind = kind;
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (int) (cacheId ^ (cacheId >>> 32));
+            h = 31 * h + kind;
+            h = 31 * h + (value == null ? id : value.hashCode());
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key that = (Key) obj;
+            return cacheId == that.cacheId && kind == that.kind && id == that.id
+                    && (value == null ? that.value == null : value.equals(that.value));
+        }
+    }
+}
@@ -50,6 +50,8 @@ public class DictionaryGenerator {
                 builder = new DateDictBuilder();
             else
                 builder = new TimeDictBuilder();
+        } else if (KylinConfig.getInstanceFromEnv().isFrontCodedDictionaryEnabled()) {
+            builder = new FrontCodedDictionaryBuilder(dataType.isNumberFamily());
         } else {
             boolean useForest = KylinConfig.getInstanceFromEnv().isUseForestTrieDictionary();
             if (dataType.isNumberFamily())
@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A static string dictionary for the query path, with no need of a cache.
+ *
+ * The sorted values are front coded in blocks of blockSize values: the first value of a block is kept whole, the
+ * others as the length of the prefix shared with the previous value plus the remaining suffix. A lookup binary
+ * searches the first values of the blocks, then scans at most one block. When all values of a number column are
+ * integers, they are kept as a fixed width long[] instead.
+ *
+ * IDs preserve the order of values, by UTF-8 bytes for front coded values and numerically for the fixed width
+ * layout, like TrieDictionary and NumberDictionary do.
+ */
+@SuppressWarnings("serial")
+public class FrontCodedDictionary extends Dictionary<String> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    static final byte LAYOUT_FRONT_CODED = 0;
+    static final byte LAYOUT_FIXED_LONG = 1;
+
+    private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+    private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+
+    private int baseId;
+    private int nValues;
+    private int sizeOfId;
+    private int maxValueLength;
+    private byte layout;
+
+    // front coded layout
+    private int blockSize;
+    private int[] blockOffsets;
+    private byte[] data;
+
+    // fixed width layout
+    private long[] longs;
+
+    // default constructor for Writable interface
+    public FrontCodedDictionary() {
+    }
+
+    /** values must be sorted by unsigned bytes and distinct */
+    FrontCodedDictionary(int baseId, int blockSize, List<byte[]> sortedValues) {
+        this.baseId = baseId;
+        this.nValues = sortedValues.size();
+        this.layout = LAYOUT_FRONT_CODED;
+        this.blockSize = blockSize;
+        this.blockOffsets = new int[(nValues + blockSize - 1) / blockSize];
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] prev = null;
+        for (int i = 0; i < nValues; i++) {
+            byte[] value = sortedValues.get(i);
+            maxValueLength = Math.max(maxValueLength, value.length);
+            if (i % blockSize == 0) {
+                blockOffsets[i / blockSize] = buf.size();
+                writeVInt(buf, value.length);
+                buf.write(value, 0, value.length);
+            } else {
+                int prefix = commonPrefix(prev, value);
+                writeVInt(buf, prefix);
+                writeVInt(buf, value.length - prefix);
+                buf.write(value, prefix, value.length - prefix);
+            }
+            prev = value;
+        }
+        this.data = buf.toByteArray();
+        init();
+    }
+
+    /** values must be sorted and distinct */
+    FrontCodedDictionary(int baseId, long[] sortedValues) {
+        this.baseId = baseId;
+        this.nValues = sortedValues.length;
+        this.layout = LAYOUT_FIXED_LONG;
+        this.longs = sortedValues;
+        for (long v : sortedValues) {
+            maxValueLength = Math.max(maxValueLength, Long.toString(v).length());
+        }
+        init();
+    }
+
+    private void init() {
+        // note baseId could raise 1 byte in ID space, +1 to reserve all 0xFF for NULL case
+        this.sizeOfId = BytesUtil.sizeForValue(baseId + nValues + 1L);
+    }
+
+    @Override
+    public int getMinId() {
+        return baseId;
+    }
+
+    @Override
+    public int getMaxId() {
+        return baseId + nValues - 1;
+    }
+
+    @Override
+    public int getSizeOfId() {
+        return sizeOfId;
+    }
+
+    @Override
+    public int getSizeOfValue() {
+        return maxValueLength;
+    }
+
+    public boolean isFixedWidth() {
+        return layout == LAYOUT_FIXED_LONG;
+    }
+
+    public int getStorageSizeInBytes() {
+        return layout == LAYOUT_FIXED_LONG ? longs.length * 8 : data.length + blockOffsets.length * 4;
+    }
+
+    // ============================================================================
+
+    @Override
+    protected int getIdFromValueImpl(String value, int roundingFlag) {
+        int seq = layout == LAYOUT_FIXED_LONG ? lookupLong(value, roundingFlag)
+                : lookupBytes(value.getBytes(Charsets.UTF_8), roundingFlag, new BlockReader());
+        // throw rather than return -1, so containsValue() tells the missing values
+        if (seq < 0 && roundingFlag == 0)
+            throw new IllegalArgumentException("Value : " + value + " not exists");
+        return seq < 0 ? -1 : baseId + seq;
+    }
+
+    @Override
+    protected String getValueFromIdImpl(int id) {
+        int seq = calcSeqNoFromId(id);
+        if (layout == LAYOUT_FIXED_LONG)
+            return Long.toString(longs[seq]);
+
+        BlockReader reader = new BlockReader();
+        reader.seek(seq);
+        return reader.toValue();
+    }
+
+    @Override
+    protected byte[] getValueBytesFromIdImpl(int id) {
+        int seq = calcSeqNoFromId(id);
+        if (layout == LAYOUT_FIXED_LONG)
+            return Long.toString(longs[seq]).getBytes(Charsets.UTF_8);
+
+        BlockReader reader = new BlockReader();
+        reader.seek(seq);
+        return Arrays.copyOf(reader.buf, reader.len);
+    }
+
+    /**
+     * Consecutive IDs that fall into the same block in ascending order are decoded in a single pass over the block.
+     */
+    @Override
+    public void getValuesFromIds(int[] ids, int count, String[] values) {
+        BlockReader reader = layout == LAYOUT_FIXED_LONG ? null : new BlockReader();
+        for (int i = 0; i < count; i++) {
+            if (isNullId(ids[i])) {
+                values[i] = null;
+                continue;
+            }
+            int seq = calcSeqNoFromId(ids[i]);
+            if (reader == null) {
+                values[i] = Long.toString(longs[seq]);
+            } else {
+                reader.seek(seq);
+                values[i] = reader.toValue();
+            }
+        }
+    }
+
+    /**
+     * Looks up the IDs of the first count values in one call, null values give the null ID.
+     *
+     * @throws IllegalArgumentException if a value is not found
+     */
+    public void getIdsFromValues(String[] values, int count, int[] ids) {
+        BlockReader reader = layout == LAYOUT_FIXED_LONG ? null : new BlockReader();
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) {
+                ids[i] = nullId();
+                continue;
+            }
+            int seq = reader == null ? lookupLong(values[i], 0)
+                    : lookupBytes(values[i].getBytes(Charsets.UTF_8), 0, reader);
+            if (seq < 0)
+                throw new IllegalArgumentException("Value : " + values[i] + " not exists");
+            ids[i] = baseId + seq;
+        }
+    }
+
+    private int calcSeqNoFromId(int id) {
+        int seq = id - baseId;
+        if (seq < 0 || seq >= nValues) {
+            throw new IllegalArgumentException("Not a valid ID: " + id);
+        }
+        return seq;
+    }
+
+    private int lookupBytes(byte[] probe, int roundingFlag, BlockReader reader) {
+        // the last block whose first value is not greater than the probe
+        int lo = 0;
+        int hi = blockOffsets.length - 1;
+        int block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            reader.seekBlock(mid);
+            int c = compare(reader.buf, reader.len, probe);
+            if (c == 0)
+                return reader.seq;
+            if (c < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (block < 0)
+            return roundingFlag > 0 && nValues > 0 ? 0 : -1;
+
+        reader.seekBlock(block);
+        while (reader.seq + 1 < reader.blockEnd) {
+            reader.next();
+            int c = compare(reader.buf, reader.len, probe);
+            if (c == 0)
+                return reader.seq;
+            if (c > 0)
+                return roundingFlag < 0 ? reader.seq - 1 : (roundingFlag > 0 ? reader.seq : -1);
+        }
+        // between the last value of the block and the first of the next
+        if (roundingFlag < 0)
+            return reader.seq;
+        if (roundingFlag > 0)
+            return reader.blockEnd < nValues ? reader.blockEnd : -1;
+        return -1;
+    }
+
+    private int lookupLong(String value, int roundingFlag) {
+        long v;
+        try {
+            v = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            BigDecimal d;
+            try {
+                d = new BigDecimal(value.trim());
+            } catch (NumberFormatException e2) {
+                return -1;
+            }
+            BigDecimal r = d.setScale(0, roundingFlag < 0 ? RoundingMode.FLOOR : RoundingMode.CEILING);
+            if (roundingFlag == 0 && r.compareTo(d) != 0)
+                return -1;
+            if (r.compareTo(MAX_LONG) > 0)
+                return roundingFlag < 0 ? nValues - 1 : -1;
+            if (r.compareTo(MIN_LONG) < 0)
+                return roundingFlag > 0 && nValues > 0 ? 0 : -1;
+            v = r.longValue();
+        }
+
+        int idx = Arrays.binarySearch(longs, v);
+        if (idx >= 0)
+            return idx;
+        int insert = -idx - 1;
+        if (roundingFlag < 0)
+            return insert - 1;
+        if (roundingFlag > 0)
+            return insert < nValues ? insert : -1;
+        return -1;
+    }
+
+    /** decodes the values of the front coded layout */
+    private final class BlockReader {
+        final byte[] buf = new byte[maxValueLength];
+        int len;
+        int seq = -1;
+        int blockEnd;
+        private int pos;
+
+        void seekBlock(int block) {
+            seq = block * blockSize;
+            blockEnd = Math.min(seq + blockSize, nValues);
+            pos = blockOffsets[block];
+            len = readVInt();
+            System.arraycopy(data, pos, buf, 0, len);
+            pos += len;
+        }
+
+        void next() {
+            int prefix = readVInt();
+            int suffix = readVInt();
+            System.arraycopy(data, pos, buf, prefix, suffix);
+            pos += suffix;
+            len = prefix + suffix;
+            seq++;
+        }
+
+        void seek(int target) {
+            if (seq < 0 || target < seq || target >= blockEnd)
+                seekBlock(target / blockSize);
+            while (seq < target)
+                next();
+        }
+
+        String toValue() {
+            return new String(buf, 0, len, Charsets.UTF_8);
+        }
+
+        private int readVInt() {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                v |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+    }
+
+    private static void writeVInt(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i])
+            i++;
+        return i;
+    }
+
+    private static int compare(byte[] a, int alen, byte[] b) {
+        int n = Math.min(alen, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return alen - b.length;
+    }
+
+    // ============================================================================
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println("Total " + nValues + " values");
+        for (int id = getMinId(); id <= getMaxId(); id++) {
+            out.println(id + " (" + Integer.toHexString(id) + "): " + getValueFromId(id));
+        }
+    }
+
+    @Override
+    public boolean contains(Dictionary<?> other) {
+        if (other.getSize() > this.getSize()) {
+            return false;
+        }
+
+        for (int i = other.getMinId(); i <= other.getMaxId(); ++i) {
+            Object v = other.getValueFromId(i);
+            if (v != null && !containsValue(v.toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return layout == LAYOUT_FIXED_LONG ? Arrays.hashCode(longs) : Arrays.hashCode(data);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ((o instanceof FrontCodedDictionary) == false)
+            return false;
+        FrontCodedDictionary that = (FrontCodedDictionary) o;
+        return this.baseId == that.baseId && this.layout == that.layout && this.blockSize == that.blockSize
+                && Arrays.equals(this.data, that.data) && Arrays.equals(this.longs, that.longs);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(baseId);
+        out.writeInt(nValues);
+        out.writeInt(maxValueLength);
+        out.writeByte(layout);
+        if (layout == LAYOUT_FIXED_LONG) {
+            for (long v : longs) {
+                out.writeLong(v);
+            }
+        } else {
+            out.writeInt(blockSize);
+            for (int offset : blockOffsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        baseId = in.readInt();
+        nValues = in.readInt();
+        maxValueLength = in.readInt();
+        layout = in.readByte();
+        if (layout == LAYOUT_FIXED_LONG) {
+            longs = new long[nValues];
+            for (int i = 0; i < nValues; i++) {
+                longs[i] = in.readLong();
+            }
+        } else {
+            blockSize = in.readInt();
+            blockOffsets = new int[(nValues + blockSize - 1) / blockSize];
+            for (int i = 0; i < blockOffsets.length; i++) {
+                blockOffsets[i] = in.readInt();
+            }
+            data = new byte[in.readInt()];
+            in.readFully(data);
+        }
+        init();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Builds a FrontCodedDictionary. Number columns whose values are all integers get the fixed width layout, other
+ * number columns fall back to a NumberDictionary forest to keep the numeric order of IDs.
+ */
+public class FrontCodedDictionaryBuilder implements IDictionaryBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrontCodedDictionaryBuilder.class);
+
+    private int baseId;
+    private boolean number;
+    private Set<String> values = new HashSet<>();
+
+    // for the builder class of a dictionary desc, the type comes from the DictionaryInfo
+    public FrontCodedDictionaryBuilder() {
+    }
+
+    public FrontCodedDictionaryBuilder(boolean number) {
+        this.number = number;
+    }
+
+    @Override
+    public void init(DictionaryInfo info, int baseId, String hdfsDir) throws IOException {
+        this.baseId = baseId;
+        if (info != null && info.getDataType() != null) {
+            this.number = DataType.getType(info.getDataType()).isNumberFamily();
+        }
+    }
+
+    @Override
+    public boolean addValue(String value) {
+        if (value == null)
+            return false;
+        if (number && StringUtils.isBlank(value)) // empty string is treated as null
+            return false;
+
+        values.add(value);
+        return true;
+    }
+
+    @Override
+    public Dictionary<String> build() throws IOException {
+        if (number) {
+            long[] longs = toSortedLongs(values);
+            if (longs != null)
+                return new FrontCodedDictionary(baseId, longs);
+
+            logger.info("Not all of the {} values are integers, build a number dictionary forest", values.size());
+            // the forest takes values in the order of their bytes, or it can't split into more trees
+            List<String> sorted = new ArrayList<>(values);
+            values = null;
+            Collections.sort(sorted, new ByteComparator<String>(new Number2BytesConverter(Number2BytesConverter.MAX_DIGITS_BEFORE_DECIMAL_POINT)));
+            NumberDictionaryForestBuilder builder = new NumberDictionaryForestBuilder(baseId);
+            for (String value : sorted) {
+                builder.addValue(value);
+            }
+            return builder.build();
+        }
+
+        List<byte[]> sorted = new ArrayList<>(values.size());
+        for (String value : values) {
+            sorted.add(value.getBytes(Charsets.UTF_8));
+        }
+        values = null;
+        Collections.sort(sorted, UnsignedBytes.lexicographicalComparator());
+        return new FrontCodedDictionary(baseId, FrontCodedDictionary.DEFAULT_BLOCK_SIZE, sorted);
+    }
+
+    /** returns null unless all values are integers in their canonical form, like "12" but not "012" or "12.0" */
+    private static long[] toSortedLongs(Set<String> values) {
+        long[] longs = new long[values.size()];
+        int i = 0;
+        for (String value : values) {
+            try {
+                longs[i] = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (!Long.toString(longs[i]).equals(value))
+                return null;
+            i++;
+        }
+        Arrays.sort(longs);
+        return longs;
+    }
+}
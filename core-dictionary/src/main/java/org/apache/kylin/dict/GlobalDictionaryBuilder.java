@@ -49,11 +49,7 @@ public class GlobalDictionaryBuilder implements IDictionaryBuilder {
         lock.lock(getLockPath(sourceColumn), Long.MAX_VALUE);
 
         int maxEntriesPerSlice = KylinConfig.getInstanceFromEnv().getAppendDictEntrySize();
-        if (hdfsDir == null) {
-            //build in Kylin job server
-            hdfsDir = KylinConfig.getInstanceFromEnv().getHdfsWorkingDirectory();
-        }
-        String baseDir = hdfsDir + "resources/GlobalDict" + dictInfo.getResourceDir() + "/";
+        String baseDir = getBaseDir(dictInfo, hdfsDir);
 
         try {
             this.builder = new AppendTrieDictionaryBuilder(baseDir, maxEntriesPerSlice, true);
@@ -100,7 +96,19 @@ public class GlobalDictionaryBuilder implements IDictionaryBuilder {
         return new AppendTrieDictionary<>();
     }
 
-    private String getLockPath(String pathName) {
+    public static String getBaseDir(DictionaryInfo dictInfo, String hdfsDir) {
+        if (hdfsDir == null) {
+            //build in Kylin job server
+            hdfsDir = KylinConfig.getInstanceFromEnv().getHdfsWorkingDirectory();
+        }
+        return hdfsDir + "resources/GlobalDict" + dictInfo.getResourceDir() + "/";
+    }
+
+    public static String getLockPath(DictionaryInfo dictInfo) {
+        return getLockPath(dictInfo.getSourceTable() + "_" + dictInfo.getSourceColumn());
+    }
+
+    private static String getLockPath(String pathName) {
         return "/dict/" + pathName + "/lock";
     }
 }
@@ -254,6 +254,11 @@ public class TrieDictionary<T> extends CacheDictionary<T> {
         }
     }
 
+    @Override
+    protected int getValueBytesFromIdWithoutCache(int id, byte[] buf) {
+        return getValueBytesFromIdImpl(id, buf, 0);
+    }
+
     protected int getValueBytesFromIdImpl(int id, byte[] returnValue, int offset) {
         int seq = calcSeqNoFromId(id);
         return lookupValueFromSeqNo(headSize, seq, returnValue, offset);
@@ -139,6 +139,12 @@ public class TrieDictionaryForest<T> extends CacheDictionary<T> {
         return result;
     }
 
+    @Override
+    protected int getValueBytesFromIdWithoutCache(int id, byte[] buf) throws IllegalArgumentException {
+        int index = (trees.size() == 1) ? 0 : findIndexById(id);
+        return trees.get(index).getValueBytesFromIdWithoutCache(getTreeInnerOffset(id, index), buf);
+    }
+
     private int getTreeInnerOffset(int id, int index) {
         id -= baseId;
         id = id - accuOffset.get(index);
@@ -26,8 +26,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 public class AppendDictSlice {
     static final byte[] HEAD_MAGIC = new byte[] { 0x41, 0x70, 0x70, 0x65, 0x63, 0x64, 0x54, 0x72, 0x69, 0x65, 0x44, 0x69, 0x63, 0x74 }; // "AppendTrieDict"
@@ -35,7 +37,8 @@ public class AppendDictSlice {
     static final int BIT_IS_LAST_CHILD = 0x80;
     static final int BIT_IS_END_OF_VALUE = 0x40;
 
-    private byte[] trieBytes;
+    // a heap buffer, or a file mapped by AppendDictSliceCache; read with absolute gets only
+    private final ByteBuffer trieBytes;
 
     // non-persistent part
     transient private int headSize;
@@ -49,30 +52,37 @@ public class AppendDictSlice {
     transient private int firstByteOffset;
 
     public AppendDictSlice(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public AppendDictSlice(ByteBuffer bytes) {
         this.trieBytes = bytes;
         init();
     }
 
     private void init() {
-        if (BytesUtil.compareBytes(HEAD_MAGIC, 0, trieBytes, 0, HEAD_MAGIC.length) != 0)
-            throw new IllegalArgumentException("Wrong file type (magic does not match)");
-
-        try {
-            DataInputStream headIn = new DataInputStream(new ByteArrayInputStream(trieBytes, HEAD_SIZE_I, trieBytes.length - HEAD_SIZE_I));
-            this.headSize = headIn.readShort();
-            this.bodyLen = headIn.readInt();
-            this.nValues = headIn.readInt();
-            this.sizeChildOffset = headIn.read();
-            this.sizeOfId = headIn.read();
-
-            this.childOffsetMask = ~(((long) (BIT_IS_LAST_CHILD | BIT_IS_END_OF_VALUE)) << ((sizeChildOffset - 1) * 8));
-            this.firstByteOffset = sizeChildOffset + 1; // the offset from begin of node to its first value byte
-        } catch (Exception e) {
-            if (e instanceof RuntimeException)
-                throw (RuntimeException) e;
-            else
-                throw new RuntimeException(e);
+        for (int i = 0; i < HEAD_MAGIC.length; i++) {
+            if (trieBytes.get(i) != HEAD_MAGIC[i])
+                throw new IllegalArgumentException("Wrong file type (magic does not match)");
         }
+
+        // same layout as the DataOutputStream that wrote the head, big endian
+        int p = HEAD_SIZE_I;
+        this.headSize = trieBytes.getShort(p);
+        this.bodyLen = trieBytes.getInt(p + 2);
+        this.nValues = trieBytes.getInt(p + 6);
+        this.sizeChildOffset = trieBytes.get(p + 10) & 0xFF;
+        this.sizeOfId = trieBytes.get(p + 11) & 0xFF;
+
+        this.childOffsetMask = ~(((long) (BIT_IS_LAST_CHILD | BIT_IS_END_OF_VALUE)) << ((sizeChildOffset - 1) * 8));
+        this.firstByteOffset = sizeChildOffset + 1; // the offset from begin of node to its first value byte
+    }
+
+    /**
+     * @return the size of the slice in bytes
+     */
+    public int getSizeInBytes() {
+        return headSize + bodyLen;
     }
 
     public static AppendDictSlice deserializeFrom(DataInput in) throws IOException {
@@ -99,12 +109,14 @@ public class AppendDictSlice {
         int nodeOffset = headSize;
         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
         while (true) {
-            int valueLen = BytesUtil.readUnsigned(trieBytes, nodeOffset + firstByteOffset - 1, 1);
-            bytes.write(trieBytes, nodeOffset + firstByteOffset, valueLen);
+            int valueLen = readUnsigned(nodeOffset + firstByteOffset - 1, 1);
+            for (int i = 0; i < valueLen; i++) {
+                bytes.write(trieBytes.get(nodeOffset + firstByteOffset + i));
+            }
             if (checkFlag(nodeOffset, BIT_IS_END_OF_VALUE)) {
                 break;
             }
-            nodeOffset = headSize + (int) (BytesUtil.readLong(trieBytes, nodeOffset, sizeChildOffset) & childOffsetMask);
+            nodeOffset = headSize + (int) (readLong(nodeOffset, sizeChildOffset) & childOffsetMask);
             if (nodeOffset == headSize) {
                 break;
             }
@@ -127,9 +139,9 @@ public class AppendDictSlice {
         while (true) {
             // match the current node
             int p = n + firstByteOffset; // start of node's value
-            int end = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1); // end of node's value
+            int end = p + readUnsigned(p - 1, 1); // end of node's value
             for (; p < end && o < inpEnd; p++, o++) { // note matching start from [0]
-                if (trieBytes[p] != inp[o]) {
+                if (trieBytes.get(p) != inp[o]) {
                     return -1; // mismatch
                 }
             }
@@ -137,25 +149,25 @@ public class AppendDictSlice {
             // node completely matched, is input all consumed?
             boolean isEndOfValue = checkFlag(n, BIT_IS_END_OF_VALUE);
             if (o == inpEnd) {
-                return p == end && isEndOfValue ? BytesUtil.readUnsigned(trieBytes, end, sizeOfId) : -1;
+                return p == end && isEndOfValue ? readUnsigned(end, sizeOfId) : -1;
             }
 
             // find a child to continue
-            int c = headSize + (int) (BytesUtil.readLong(trieBytes, n, sizeChildOffset) & childOffsetMask);
+            int c = headSize + (int) (readLong(n, sizeChildOffset) & childOffsetMask);
             if (c == headSize) // has no children
                 return -1;
             byte inpByte = inp[o];
             int comp;
             while (true) {
                 p = c + firstByteOffset;
-                comp = BytesUtil.compareByteUnsigned(trieBytes[p], inpByte);
+                comp = BytesUtil.compareByteUnsigned(trieBytes.get(p), inpByte);
                 if (comp == 0) { // continue in the matching child, reset n and loop again
                     n = c;
                     break;
                 } else if (comp < 0) { // try next child
                     if (checkFlag(c, BIT_IS_LAST_CHILD))
                         return -1;
-                    c = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1) + (checkFlag(c, BIT_IS_END_OF_VALUE) ? sizeOfId : 0);
+                    c = p + readUnsigned(p - 1, 1) + (checkFlag(c, BIT_IS_END_OF_VALUE) ? sizeOfId : 0);
                 } else { // children are ordered by their first value byte
                     return -1;
                 }
@@ -164,7 +176,25 @@ public class AppendDictSlice {
     }
 
     private boolean checkFlag(int offset, int bit) {
-        return (trieBytes[offset] & bit) > 0;
+        return (trieBytes.get(offset) & bit) > 0;
+    }
+
+    private int readUnsigned(int offset, int size) {
+        int integer = 0;
+        for (int i = offset, n = offset + size; i < n; i++) {
+            integer <<= 8;
+            integer |= (int) trieBytes.get(i) & 0xFF;
+        }
+        return integer;
+    }
+
+    private long readLong(int offset, int size) {
+        long integer = 0;
+        for (int i = offset, n = offset + size; i < n; i++) {
+            integer <<= 8;
+            integer |= (long) trieBytes.get(i) & 0xFF;
+        }
+        return integer;
     }
 
     public int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
@@ -180,16 +210,18 @@ public class AppendDictSlice {
         AppendDictNode root = null;
         while (true) {
             int p = n + firstByteOffset;
-            int childOffset = (int) (BytesUtil.readLong(trieBytes, n, sizeChildOffset) & childOffsetMask);
-            int parLen = BytesUtil.readUnsigned(trieBytes, p - 1, 1);
+            int childOffset = (int) (readLong(n, sizeChildOffset) & childOffsetMask);
+            int parLen = readUnsigned(p - 1, 1);
             boolean isEndOfValue = checkFlag(n, BIT_IS_END_OF_VALUE);
 
             byte[] value = new byte[parLen];
-            System.arraycopy(trieBytes, p, value, 0, parLen);
+            for (int i = 0; i < parLen; i++) {
+                value[i] = trieBytes.get(p + i);
+            }
 
             AppendDictNode node = new AppendDictNode(value, isEndOfValue);
             if (isEndOfValue) {
-                int id = BytesUtil.readUnsigned(trieBytes, p + parLen, sizeOfId);
+                int id = readUnsigned(p + parLen, sizeOfId);
                 node.id = id;
             }
 
@@ -212,12 +244,57 @@ public class AppendDictSlice {
         return root;
     }
 
+    /**
+     * Returns a copy of the slice bytes, where the ids after maxId are moved up by delta. Ids are unsigned and of
+     * fixed size, so the nodes are rewritten in place and the trie keeps its layout.
+     */
+    public byte[] shiftIds(int maxId, int delta) {
+        byte[] bytes = new byte[headSize + bodyLen];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = trieBytes.get(i);
+        }
+
+        int offset = headSize;
+        while (offset < bytes.length) {
+            int p = offset + firstByteOffset;
+            int parLen = readUnsigned(p - 1, 1);
+            boolean isEndOfValue = checkFlag(offset, BIT_IS_END_OF_VALUE);
+            if (isEndOfValue) {
+                int id = readUnsigned(p + parLen, sizeOfId);
+                if ((id & 0xFFFFFFFFL) > (maxId & 0xFFFFFFFFL)) {
+                    BytesUtil.writeUnsigned(id + delta, bytes, p + parLen, sizeOfId);
+                }
+            }
+            offset += firstByteOffset + parLen + (isEndOfValue ? sizeOfId : 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the values whose ids are after maxId, in value order.
+     */
+    public List<byte[]> getValuesAfter(int maxId) {
+        List<byte[]> values = new ArrayList<>();
+        collectValuesAfter(rebuildTrieTree(), new byte[0], maxId & 0xFFFFFFFFL, values);
+        return values;
+    }
+
+    private static void collectValuesAfter(AppendDictNode node, byte[] prefix, long maxId, List<byte[]> values) {
+        byte[] value = Bytes.add(prefix, node.part);
+        if (node.isEndOfValue && (node.id & 0xFFFFFFFFL) > maxId) {
+            values.add(value);
+        }
+        for (AppendDictNode child : node.children) {
+            collectValuesAfter(child, value, maxId, values);
+        }
+    }
+
     public boolean doCheck() {
         int offset = headSize;
         HashSet<Integer> parentSet = new HashSet<>();
         boolean lastChild = false;
 
-        while (offset < trieBytes.length) {
+        while (offset < trieBytes.limit()) {
             if (lastChild) {
                 boolean contained = parentSet.remove(offset - headSize);
                 // Can't find parent, the data is corrupted
@@ -227,18 +304,18 @@ public class AppendDictSlice {
                 lastChild = false;
             }
             int p = offset + firstByteOffset;
-            int childOffset = (int) (BytesUtil.readLong(trieBytes, offset, sizeChildOffset) & childOffsetMask);
-            int parLen = BytesUtil.readUnsigned(trieBytes, p - 1, 1);
+            int childOffset = (int) (readLong(offset, sizeChildOffset) & childOffsetMask);
+            int parLen = readUnsigned(p - 1, 1);
             boolean isEndOfValue = checkFlag(offset, BIT_IS_END_OF_VALUE);
 
             // Copy value overflow, the data is corrupted
-            if (trieBytes.length < p + parLen) {
+            if (trieBytes.limit() < p + parLen) {
                 return false;
             }
 
             // Check id is fine
             if (isEndOfValue) {
-                BytesUtil.readUnsigned(trieBytes, p + parLen, sizeOfId);
+                readUnsigned(p + parLen, sizeOfId);
             }
 
             // Record it if has children
@@ -266,7 +343,7 @@ public class AppendDictSlice {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(trieBytes);
+        return trieBytes.hashCode();
     }
 
     @Override
@@ -278,6 +355,6 @@ public class AppendDictSlice {
             return false;
         }
         AppendDictSlice that = (AppendDictSlice) o;
-        return Arrays.equals(this.trieBytes, that.trieBytes);
+        return this.trieBytes.equals(that.trieBytes);
     }
 }
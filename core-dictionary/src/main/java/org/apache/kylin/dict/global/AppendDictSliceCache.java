@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.global;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Slices of global dictionaries copied to local files and memory mapped, instead of soft referenced byte arrays on
+ * heap. The files are evicted least recently used first once they exceed the configured budget.
+ *
+ * Values of a build task often come in key order, so a slice load also prefetches the next slices in the
+ * background. Eviction only deletes the file, lookups still holding the slice keep reading the mapping.
+ */
+public class AppendDictSliceCache {
+    private static final Logger logger = LoggerFactory.getLogger(AppendDictSliceCache.class);
+
+    // static cached instances
+    private static final ConcurrentMap<KylinConfig, AppendDictSliceCache> SERVICE_CACHE = new ConcurrentHashMap<>();
+
+    public static AppendDictSliceCache getInstance(KylinConfig config) {
+        AppendDictSliceCache r = SERVICE_CACHE.get(config);
+        if (r == null) {
+            synchronized (AppendDictSliceCache.class) {
+                r = SERVICE_CACHE.get(config);
+                if (r == null) {
+                    r = new AppendDictSliceCache(config);
+                    SERVICE_CACHE.put(config, r);
+                    if (SERVICE_CACHE.size() > 1) {
+                        logger.warn("More than one singleton exist");
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    public static void clearCache() {
+        synchronized (SERVICE_CACHE) {
+            for (AppendDictSliceCache r : SERVICE_CACHE.values()) {
+                r.close();
+            }
+            SERVICE_CACHE.clear();
+        }
+    }
+
+    /** stats of all instances in this process, empty if global dictionaries were not read through the cache */
+    public static CacheStats getTotalStats() {
+        CacheStats total = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (AppendDictSliceCache r : SERVICE_CACHE.values()) {
+            total = total.plus(r.getStats());
+        }
+        return total;
+    }
+
+    // ============================================================================
+
+    private final File baseFolder;
+    private final int prefetchSlices;
+    private final Cache<String, MappedSlice> slicesCache;
+    private final ExecutorService prefetchExecutor;
+    private final AtomicLong prefetchCount = new AtomicLong();
+
+    private AppendDictSliceCache(KylinConfig config) {
+        // a folder per process, tasks of other processes on the same node may share the base path
+        this.baseFolder = new File(getCacheBasePath(config), UUID.randomUUID().toString());
+        baseFolder.mkdirs();
+        this.prefetchSlices = config.getAppendDictSliceCachePrefetchSlices();
+        this.prefetchExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+
+        long maxCacheSizeInKB = config.getAppendDictSliceCacheMaxMB() * 1024L;
+        this.slicesCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, MappedSlice>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, MappedSlice> notification) {
+                logger.info("Evict slice {} caused by {}", notification.getKey(), notification.getCause());
+                FileUtils.deleteQuietly(notification.getValue().file);
+            }
+        }).maximumWeight(maxCacheSizeInKB).weigher(new Weigher<String, MappedSlice>() {
+            @Override
+            public int weigh(String key, MappedSlice value) {
+                return value.slice.getSizeInBytes() / 1024;
+            }
+        }).recordStats().build();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                FileUtils.deleteQuietly(baseFolder);
+            }
+        }));
+    }
+
+    private static String getCacheBasePath(KylinConfig config) {
+        String basePath = config.getAppendDictSliceCacheLocalPath();
+        if ((!basePath.startsWith("/")) && (KylinConfig.getKylinHome() != null)) {
+            basePath = KylinConfig.getKylinHome() + File.separator + basePath;
+        }
+        return basePath;
+    }
+
+    /**
+     * Returns the slice of the given key, loading it and prefetching the slices after it if it is not cached.
+     *
+     * @param store the store to copy slice files from
+     * @param versionDir the version directory the slice files are in
+     * @param sliceFileMap all slice files of the version
+     * @param key key of the slice to get, must be in sliceFileMap
+     */
+    public AppendDictSlice getSlice(final GlobalDictStore store, final String versionDir,
+            final NavigableMap<AppendDictSliceKey, String> sliceFileMap, final AppendDictSliceKey key)
+            throws ExecutionException {
+        final String sliceFileName = sliceFileMap.get(key);
+        return slicesCache.get(versionDir + "/" + sliceFileName, new Callable<MappedSlice>() {
+            @Override
+            public MappedSlice call() throws Exception {
+                MappedSlice mapped = load(store, versionDir, sliceFileName);
+                prefetch(store, versionDir, sliceFileMap, key);
+                return mapped;
+            }
+        }).slice;
+    }
+
+    private void prefetch(final GlobalDictStore store, final String versionDir,
+            NavigableMap<AppendDictSliceKey, String> sliceFileMap, AppendDictSliceKey key) {
+        AppendDictSliceKey next = key;
+        for (int i = 0; i < prefetchSlices; i++) {
+            next = sliceFileMap.higherKey(next);
+            if (next == null)
+                break;
+
+            final String sliceFileName = sliceFileMap.get(next);
+            final String cacheKey = versionDir + "/" + sliceFileName;
+            if (slicesCache.asMap().containsKey(cacheKey))
+                continue;
+
+            prefetchExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        slicesCache.get(cacheKey, new Callable<MappedSlice>() {
+                            @Override
+                            public MappedSlice call() throws Exception {
+                                prefetchCount.incrementAndGet();
+                                return load(store, versionDir, sliceFileName);
+                            }
+                        });
+                    } catch (Exception e) {
+                        logger.warn("Failed to prefetch slice " + cacheKey, e);
+                    }
+                }
+            });
+        }
+    }
+
+    private MappedSlice load(GlobalDictStore store, String versionDir, String sliceFileName) throws IOException {
+        File file = new File(baseFolder, UUID.randomUUID().toString() + ".slice");
+        try {
+            store.copySliceToLocal(versionDir, sliceFileName, file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                FileChannel channel = raf.getChannel();
+                AppendDictSlice slice = new AppendDictSlice(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                logger.trace("Load slice {}/{} into {}", versionDir, sliceFileName, file);
+                return new MappedSlice(file, slice);
+            }
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    public CacheStats getStats() {
+        return slicesCache.stats();
+    }
+
+    public long getPrefetchCount() {
+        return prefetchCount.get();
+    }
+
+    public long getTotalCacheSize() {
+        return FileUtils.sizeOfDirectory(baseFolder);
+    }
+
+    private void close() {
+        prefetchExecutor.shutdownNow();
+        slicesCache.invalidateAll();
+        FileUtils.deleteQuietly(baseFolder);
+    }
+
+    private static class MappedSlice {
+        final File file;
+        final AppendDictSlice slice;
+
+        MappedSlice(File file, AppendDictSlice slice) {
+            this.file = file;
+            this.slice = slice;
+        }
+    }
+}
@@ -24,7 +24,9 @@ import org.apache.kylin.dict.BytesConverter;
 import org.apache.kylin.dict.StringBytesConverter;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeMap;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -36,6 +38,13 @@ public class AppendTrieDictionaryBuilder {
     private final int maxEntriesPerSlice;
     private final boolean isAppendDictGlobal;
 
+    // a shard appends the values of [fromKey, toKey) to the given version, toKey is null for no upper bound
+    private final long shardVersion;
+    private final AppendDictSliceKey fromKey;
+    private final AppendDictSliceKey toKey;
+    private String sourceDir; // where the slices not changed yet are read from
+    private final Set<String> writtenSlices = new HashSet<>();
+
     private GlobalDictStore store;
     private int maxId;
     private int maxValueLength;
@@ -47,16 +56,37 @@ public class AppendTrieDictionaryBuilder {
     private AppendDictNode curNode;
 
     public AppendTrieDictionaryBuilder(String baseDir, int maxEntriesPerSlice, boolean isAppendDictGlobal) throws IOException {
+        this(baseDir, baseDir + "working", maxEntriesPerSlice, isAppendDictGlobal, -1, AppendDictSliceKey.START_KEY, null);
+    }
+
+    /**
+     * A shard of {@link AppendTrieDictionaryShards}. Slices are read from the given version until they change, and
+     * changed slices are written to the working dir of the shard, which {@link #buildShard()} completes.
+     */
+    AppendTrieDictionaryBuilder(String baseDir, String workingDir, int maxEntriesPerSlice, long version, AppendDictSliceKey fromKey, AppendDictSliceKey toKey) throws IOException {
+        this(baseDir, workingDir, maxEntriesPerSlice, true, version, fromKey, toKey);
+    }
+
+    private AppendTrieDictionaryBuilder(String baseDir, String workingDir, int maxEntriesPerSlice, boolean isAppendDictGlobal, long shardVersion, AppendDictSliceKey fromKey, AppendDictSliceKey toKey) throws IOException {
         this.baseDir = baseDir;
-        this.workingDir = baseDir + "working";
+        this.workingDir = workingDir;
         this.maxEntriesPerSlice = maxEntriesPerSlice;
         this.isAppendDictGlobal = isAppendDictGlobal;
+        this.shardVersion = shardVersion;
+        this.fromKey = fromKey;
+        this.toKey = toKey;
         init();
     }
 
     public synchronized void init() throws IOException {
         this.store = new GlobalDictHDFSStore(baseDir);
+        if (shardVersion >= 0) {
+            initShard();
+            return;
+        }
+
         store.prepareForWrite(workingDir, isAppendDictGlobal);
+        this.sourceDir = workingDir;
 
         Long[] versions = store.listAllVersions();
 
@@ -76,6 +106,19 @@ public class AppendTrieDictionaryBuilder {
         }
     }
 
+    private void initShard() throws IOException {
+        store.prepareForWrite(workingDir, false); // an empty working dir
+        this.sourceDir = store.getVersionDir(shardVersion).toString();
+
+        GlobalDictMetadata metadata = store.getMetadata(shardVersion);
+        this.maxId = metadata.maxId;
+        this.maxValueLength = metadata.maxValueLength;
+        this.nValues = metadata.nValues;
+        this.bytesConverter = metadata.bytesConverter;
+        this.sliceFileMap = new TreeMap<>(toKey == null ? metadata.sliceFileMap.tailMap(fromKey, true) : metadata.sliceFileMap.subMap(fromKey, true, toKey, false));
+        checkState(!sliceFileMap.isEmpty() && sliceFileMap.firstKey().equals(fromKey), "shard should start at slice \"%s\"", fromKey);
+    }
+
     @SuppressWarnings("unchecked")
     public void addValue(String value) throws IOException {
         byte[] valueBytes = bytesConverter.convertToBytes(value);
@@ -84,9 +127,11 @@ public class AppendTrieDictionaryBuilder {
             curNode = new AppendDictNode(new byte[0], false);
             sliceFileMap.put(AppendDictSliceKey.START_KEY, null);
         }
-        checkState(sliceFileMap.firstKey().equals(AppendDictSliceKey.START_KEY), "first key should be \"\", but got \"%s\"", sliceFileMap.firstKey());
+        checkState(sliceFileMap.firstKey().equals(fromKey), "first key should be \"%s\", but got \"%s\"", fromKey, sliceFileMap.firstKey());
 
-        AppendDictSliceKey nextKey = sliceFileMap.floorKey(AppendDictSliceKey.wrap(valueBytes));
+        AppendDictSliceKey valueKey = AppendDictSliceKey.wrap(valueBytes);
+        checkState(valueKey.compareTo(fromKey) >= 0 && (toKey == null || valueKey.compareTo(toKey) < 0), "value \"%s\" is out of [\"%s\", \"%s\")", valueKey, fromKey, toKey);
+        AppendDictSliceKey nextKey = sliceFileMap.floorKey(valueKey);
 
         if (curKey != null && !nextKey.equals(curKey)) {
             // you may suppose nextKey>=curKey, but nextKey<curKey could happen when a node splits.
@@ -98,7 +143,8 @@ public class AppendTrieDictionaryBuilder {
             curNode = null;
         }
         if (curNode == null) { // read next slice
-            AppendDictSlice slice = store.readSlice(workingDir, sliceFileMap.get(nextKey));
+            String sliceFile = sliceFileMap.get(nextKey);
+            AppendDictSlice slice = store.readSlice(isInWorkingDir(sliceFile) ? workingDir : sourceDir, sliceFile);
             curNode = slice.rebuildTrieTree();
         }
         curKey = nextKey;
@@ -118,6 +164,7 @@ public class AppendTrieDictionaryBuilder {
     }
 
     public AppendTrieDictionary build(int baseId) throws IOException {
+        checkState(shardVersion < 0, "a shard is committed by AppendTrieDictionaryShards");
         if (curNode != null) {
             flushCurrentNode();
         }
@@ -130,14 +177,39 @@ public class AppendTrieDictionaryBuilder {
         return dict;
     }
 
+    /**
+     * Completes the working dir of a shard with the slices it didn't change, and writes the metadata of its slices.
+     * Ids of the new values are counted from the max id of the version, the commit moves them past other shards.
+     */
+    public GlobalDictMetadata buildShard() throws IOException {
+        checkState(shardVersion >= 0, "not a shard");
+        if (curNode != null) {
+            flushCurrentNode();
+        }
+
+        for (String sliceFile : sliceFileMap.values()) {
+            if (!isInWorkingDir(sliceFile)) {
+                store.copySlice(sourceDir, sliceFile, workingDir, false);
+            }
+        }
+        GlobalDictMetadata metadata = new GlobalDictMetadata(0, this.maxId, this.maxValueLength, this.nValues, this.bytesConverter, sliceFileMap);
+        store.writeShardMetadata(workingDir, metadata);
+        return metadata;
+    }
+
     private void flushCurrentNode() throws IOException {
         String newSliceFile = store.writeSlice(workingDir, curKey, curNode);
+        writtenSlices.add(newSliceFile);
         String oldSliceFile = sliceFileMap.put(curKey, newSliceFile);
-        if (oldSliceFile != null) {
+        if (oldSliceFile != null && isInWorkingDir(oldSliceFile)) {
             store.deleteSlice(workingDir, oldSliceFile);
         }
     }
 
+    private boolean isInWorkingDir(String sliceFile) {
+        return sourceDir.equals(workingDir) || writtenSlices.contains(sliceFile);
+    }
+
     private void addValueR(AppendDictNode node, byte[] value, int start) {
         // match the value part of current node
         int i = 0, j = start;
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.global;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ClassUtil;
+import org.apache.kylin.dict.AppendTrieDictionary;
+import org.apache.kylin.dict.BytesConverter;
+import org.apache.kylin.dict.DictionaryInfo;
+import org.apache.kylin.dict.GlobalDictionaryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends values to a global dictionary with several {@link AppendTrieDictionaryBuilder} in parallel.
+ * <p>
+ * The slices of the latest version are split into key ranges, one per shard. Each shard appends the values of its
+ * range without a lock, counting the ids of new values from the max id of the version, and leaves its slices in its
+ * own working dir. The commit then, under the lock of the dictionary, moves the new ids of each shard past those of
+ * the shards before it, and writes all slices as the next version. If another build has committed a version in the
+ * mean time, the new values of the shards are appended to that version by a single builder instead.
+ * <p>
+ * A dictionary needs at least two slices to be sharded, so the first build of a dictionary is never sharded.
+ * <p>
+ * A build that fails should {@link #abort()} its plan. The working dirs of plans older than the version TTL are
+ * deleted by the next plan of the dictionary, in case the abort never came.
+ */
+public class AppendTrieDictionaryShards {
+    private static final Logger logger = LoggerFactory.getLogger(AppendTrieDictionaryShards.class);
+
+    private static final String PLAN_DIR_PREFIX = "working_";
+
+    /**
+     * Plans a sharded build of the latest version, with up to maxShards shards.
+     *
+     * @return null if the dictionary doesn't have enough slices to be sharded
+     */
+    public static AppendTrieDictionaryShards plan(DictionaryInfo dictInfo, String hdfsDir, int maxShards) throws IOException {
+        return plan(GlobalDictionaryBuilder.getBaseDir(dictInfo, hdfsDir), GlobalDictionaryBuilder.getLockPath(dictInfo), maxShards);
+    }
+
+    public static AppendTrieDictionaryShards plan(String baseDir, String lockPath, int maxShards) throws IOException {
+        GlobalDictStore store = new GlobalDictHDFSStore(baseDir);
+        // plans of builds that failed or were discarded without an abort
+        store.deleteExpiredWorkingDirs(PLAN_DIR_PREFIX);
+
+        Long[] versions = store.listAllVersions();
+        if (versions.length == 0 || maxShards < 2) {
+            return null;
+        }
+
+        long version = versions[versions.length - 1];
+        GlobalDictMetadata metadata = store.getMetadata(version);
+        List<AppendDictSliceKey> sliceKeys = new ArrayList<>(metadata.sliceFileMap.keySet());
+        int nShards = Math.min(maxShards, sliceKeys.size());
+        if (nShards < 2) {
+            return null;
+        }
+
+        List<AppendDictSliceKey> fromKeys = new ArrayList<>(nShards);
+        for (int i = 0; i < nShards; i++) {
+            fromKeys.add(sliceKeys.get((int) ((long) i * sliceKeys.size() / nShards)));
+        }
+        logger.info("Plan {} shards for global dict at {} of version {} with {} slices", nShards, baseDir, version, sliceKeys.size());
+        return new AppendTrieDictionaryShards(UUID.randomUUID().toString(), baseDir, lockPath, version, metadata.bytesConverter, fromKeys);
+    }
+
+    public static AppendTrieDictionaryShards deserialize(String str) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decodeBase64(str)))) {
+            String planId = in.readUTF();
+            String baseDir = in.readUTF();
+            String lockPath = in.readUTF();
+            long version = in.readLong();
+            String converterName = in.readUTF();
+            BytesConverter converter;
+            try {
+                converter = ClassUtil.forName(converterName, BytesConverter.class).newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Fail to instantiate BytesConverter: " + converterName, e);
+            }
+            int nShards = in.readInt();
+            List<AppendDictSliceKey> fromKeys = new ArrayList<>(nShards);
+            for (int i = 0; i < nShards; i++) {
+                AppendDictSliceKey key = new AppendDictSliceKey();
+                key.readFields(in);
+                fromKeys.add(key);
+            }
+            return new AppendTrieDictionaryShards(planId, baseDir, lockPath, version, converter, fromKeys);
+        }
+    }
+
+    // ============================================================================
+
+    private final String planId;
+    private final String baseDir;
+    private final String lockPath;
+    private final long version;
+    private final BytesConverter bytesConverter;
+    private final List<AppendDictSliceKey> fromKeys; // the first slice key of each shard
+
+    private AppendTrieDictionaryShards(String planId, String baseDir, String lockPath, long version, BytesConverter bytesConverter, List<AppendDictSliceKey> fromKeys) {
+        this.planId = planId;
+        this.baseDir = baseDir;
+        this.lockPath = lockPath;
+        this.version = version;
+        this.bytesConverter = bytesConverter;
+        this.fromKeys = fromKeys;
+    }
+
+    public String serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(planId);
+            out.writeUTF(baseDir);
+            out.writeUTF(lockPath);
+            out.writeLong(version);
+            out.writeUTF(bytesConverter.getClass().getName());
+            out.writeInt(fromKeys.size());
+            for (AppendDictSliceKey key : fromKeys) {
+                key.write(out);
+            }
+        }
+        return Base64.encodeBase64String(bytes.toByteArray());
+    }
+
+    public int getShardCount() {
+        return fromKeys.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    public int getShard(String value) {
+        int i = Collections.binarySearch(fromKeys, AppendDictSliceKey.wrap(bytesConverter.convertToBytes(value)));
+        return i >= 0 ? i : -i - 2; // the first key is the smallest slice key, no value falls before it
+    }
+
+    public AppendTrieDictionaryBuilder newShardBuilder(int shard) throws IOException {
+        int maxEntriesPerSlice = KylinConfig.getInstanceFromEnv().getAppendDictEntrySize();
+        AppendDictSliceKey toKey = shard + 1 < fromKeys.size() ? fromKeys.get(shard + 1) : null;
+        return new AppendTrieDictionaryBuilder(baseDir, getShardDir(shard), maxEntriesPerSlice, version, fromKeys.get(shard), toKey);
+    }
+
+    public String getLockPath() {
+        return lockPath;
+    }
+
+    /**
+     * Commits the shards built by {@link AppendTrieDictionaryBuilder#buildShard()} as the next version. The caller
+     * should hold the lock of {@link #getLockPath()}, like {@link GlobalDictionaryBuilder} does for a single builder.
+     * Committing again after a success returns the latest version.
+     */
+    public AppendTrieDictionary commit() throws IOException {
+        GlobalDictStore store = new GlobalDictHDFSStore(baseDir);
+        if (!store.existsWorkingDir(getPlanDir())) {
+            logger.info("Shards {} of global dict at {} are committed already", planId, baseDir);
+        } else {
+            Long[] versions = store.listAllVersions();
+            long latest = versions[versions.length - 1];
+            if (latest == version) {
+                doCommit(store);
+            } else {
+                appendToLatest(store, latest);
+            }
+        }
+
+        AppendTrieDictionary dict = new AppendTrieDictionary();
+        dict.init(baseDir);
+        return dict;
+    }
+
+    private void doCommit(GlobalDictStore store) throws IOException {
+        GlobalDictMetadata base = store.getMetadata(version);
+        Set<String> baseSlices = new HashSet<>(base.sliceFileMap.values());
+        long baseMaxId = base.maxId & 0xFFFFFFFFL;
+
+        String workingDir = baseDir + "working";
+        store.prepareForWrite(workingDir, false); // an empty working dir
+
+        TreeMap<AppendDictSliceKey, String> sliceFileMap = new TreeMap<>();
+        long maxId = baseMaxId;
+        int maxValueLength = base.maxValueLength;
+        for (int i = 0; i < fromKeys.size(); i++) {
+            String shardDir = getShardDir(i);
+            GlobalDictMetadata shard = store.readShardMetadata(shardDir);
+            int delta = (int) (maxId - baseMaxId);
+            int nShifted = 0;
+            for (Map.Entry<AppendDictSliceKey, String> entry : shard.sliceFileMap.entrySet()) {
+                String sliceFile = entry.getValue();
+                if (delta != 0 && !baseSlices.contains(sliceFile)) {
+                    // a changed slice, whose new ids are counted from the max id of the version
+                    AppendDictSlice slice = store.readSlice(shardDir, sliceFile);
+                    sliceFile = store.writeSlice(workingDir, entry.getKey(), slice.shiftIds(base.maxId, delta));
+                    nShifted++;
+                } else {
+                    store.copySlice(shardDir, sliceFile, workingDir, true);
+                }
+                sliceFileMap.put(entry.getKey(), sliceFile);
+            }
+
+            long nNewValues = (shard.maxId - base.maxId) & 0xFFFFFFFFL;
+            logger.info("Shard {} of global dict at {} adds {} values, ids shifted by {} in {} slices", i, baseDir, nNewValues, delta, nShifted);
+            maxId += nNewValues;
+            maxValueLength = Math.max(maxValueLength, shard.maxValueLength);
+        }
+
+        // ids run from 1 to 0xFFFFFFFE, leaving 0 and -1, as checked by AppendTrieDictionaryBuilder
+        checkState(maxId <= 0xFFFFFFFEL, "AppendTrieDictionary Id Overflow Unsigned Integer Size 4294967294");
+        int nValues = base.nValues + (int) (maxId - baseMaxId);
+        GlobalDictMetadata metadata = new GlobalDictMetadata(base.baseId, (int) maxId, maxValueLength, nValues, base.bytesConverter, sliceFileMap);
+        store.commit(workingDir, metadata, true);
+        abort(store);
+    }
+
+    // another build committed a version after the plan, so the shifted ids of the shards could clash with its ids.
+    // the values the shards added are appended to the latest version instead, the way GlobalDictionaryBuilder does.
+    @SuppressWarnings("unchecked")
+    private void appendToLatest(GlobalDictStore store, long latest) throws IOException {
+        logger.info("Global dict at {} has version {} newer than {} of shards {}, append their values to it", baseDir, latest, version, planId);
+
+        GlobalDictMetadata base = store.getMetadata(version);
+        Set<String> baseSlices = new HashSet<>(base.sliceFileMap.values());
+        int maxEntriesPerSlice = KylinConfig.getInstanceFromEnv().getAppendDictEntrySize();
+        AppendTrieDictionaryBuilder builder = new AppendTrieDictionaryBuilder(baseDir, maxEntriesPerSlice, true);
+
+        long nValues = 0;
+        for (int i = 0; i < fromKeys.size(); i++) {
+            String shardDir = getShardDir(i);
+            GlobalDictMetadata shard = store.readShardMetadata(shardDir);
+            for (String sliceFile : shard.sliceFileMap.values()) {
+                if (baseSlices.contains(sliceFile)) {
+                    continue; // no new value
+                }
+                for (byte[] value : store.readSlice(shardDir, sliceFile).getValuesAfter(base.maxId)) {
+                    builder.addValue((String) bytesConverter.convertFromBytes(value, 0, value.length));
+                    nValues++;
+                }
+            }
+        }
+        logger.info("Append {} values of shards {} to global dict at {}", nValues, planId, baseDir);
+        builder.build(store.getMetadata(latest).baseId);
+        abort(store);
+    }
+
+    /**
+     * Deletes the working dirs of the shards.
+     */
+    public void abort() throws IOException {
+        abort(new GlobalDictHDFSStore(baseDir));
+    }
+
+    private void abort(GlobalDictStore store) throws IOException {
+        store.deleteWorkingDir(getPlanDir());
+    }
+
+    private String getPlanDir() {
+        return baseDir + PLAN_DIR_PREFIX + planId;
+    }
+
+    private String getShardDir(int shard) {
+        return getPlanDir() + "/shard_" + shard;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AppendTrieDictionaryShards[%s, version=%d, shards=%d]", baseDir, version, fromKeys.size());
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.kylin.dict.global;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
@@ -188,20 +189,45 @@ public class GlobalDictHDFSStore extends GlobalDictStore {
         }
     }
 
+    @Override
+    public void copySliceToLocal(String directory, String sliceFileName, File localFile) throws IOException {
+        Path path = new Path(directory, sliceFileName);
+        logger.trace("copy slice from {} to {}", path, localFile);
+        fileSystem.copyToLocalFile(false, path, new Path(localFile.getAbsolutePath()), true);
+    }
+
     @Override
     public String writeSlice(String workingDir, AppendDictSliceKey key, AppendDictNode slice) throws IOException {
+        return writeSlice(workingDir, key, slice.buildTrieBytes());
+    }
+
+    @Override
+    public String writeSlice(String workingDir, AppendDictSliceKey key, byte[] trieBytes) throws IOException {
         //write new slice
         String sliceFile = IndexFormatV2.sliceFileName(key);
         Path path = new Path(workingDir, sliceFile);
 
         logger.trace("write slice with key {} into file {}", key, path);
         try (FSDataOutputStream out = fileSystem.create(path, true, BUFFER_SIZE)) {
-            byte[] bytes = slice.buildTrieBytes();
-            out.write(bytes);
+            out.write(trieBytes);
         }
         return sliceFile;
     }
 
+    @Override
+    public void copySlice(String fromDir, String sliceFileName, String toDir, boolean deleteSource) throws IOException {
+        Path from = new Path(fromDir, sliceFileName);
+        Path to = new Path(toDir, sliceFileName);
+        logger.trace("{} slice from {} to {}", deleteSource ? "move" : "copy", from, to);
+        if (deleteSource) {
+            if (!fileSystem.rename(from, to)) {
+                throw new IOException("Failed to move slice from " + from + " to " + to);
+            }
+        } else {
+            FileUtil.copy(fileSystem, from, fileSystem, to, false, true, conf);
+        }
+    }
+
     @Override
     public void deleteSlice(String workingDir, String sliceFileName) throws IOException {
         Path path = new Path(workingDir, sliceFileName);
@@ -232,6 +258,53 @@ public class GlobalDictHDFSStore extends GlobalDictStore {
         cleanUp(isAppendDictGlobal);
     }
 
+    @Override
+    public void writeShardMetadata(String workingDir, GlobalDictMetadata shardMetadata) throws IOException {
+        Path workingPath = new Path(workingDir);
+        IndexFormat index = new IndexFormatV2(fileSystem, conf);
+        index.writeIndexFile(workingPath, shardMetadata);
+        index.sanityCheck(workingPath, shardMetadata);
+    }
+
+    @Override
+    public GlobalDictMetadata readShardMetadata(String workingDir) throws IOException {
+        return new IndexFormatV2(fileSystem, conf).readIndexFile(new Path(workingDir));
+    }
+
+    @Override
+    public boolean existsWorkingDir(String workingDir) throws IOException {
+        return fileSystem.exists(new Path(workingDir));
+    }
+
+    @Override
+    public void deleteWorkingDir(String workingDir) throws IOException {
+        Path path = new Path(workingDir);
+        if (fileSystem.exists(path)) {
+            fileSystem.delete(path, true);
+        }
+    }
+
+    @Override
+    public void deleteExpiredWorkingDirs(final String namePrefix) throws IOException {
+        if (!fileSystem.exists(basePath)) {
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        FileStatus[] workingDirs = fileSystem.listStatus(basePath, new PathFilter() {
+            @Override
+            public boolean accept(Path path) {
+                return path.getName().startsWith(namePrefix);
+            }
+        });
+        for (FileStatus status : workingDirs) {
+            if (status.isDirectory() && status.getModificationTime() + versionTTL < timestamp) {
+                logger.info("Delete expired working dir {}", status.getPath());
+                fileSystem.delete(status.getPath(), true);
+            }
+        }
+    }
+
     // Check versions count, delete expired versions
     private void cleanUp(boolean isAppendDictGlobal) throws IOException {
         long timestamp = System.currentTimeMillis();
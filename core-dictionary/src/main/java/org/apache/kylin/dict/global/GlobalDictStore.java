@@ -22,6 +22,7 @@ import com.google.common.base.Preconditions;
 import org.apache.hadoop.fs.Path;
 import org.apache.kylin.common.KylinConfig;
 
+import java.io.File;
 import java.io.IOException;
 
 public abstract class GlobalDictStore {
@@ -65,6 +66,15 @@ public abstract class GlobalDictStore {
      */
     public abstract AppendDictSlice readSlice(String workingDir, String sliceFileName) throws IOException;
 
+    /**
+     * Copy a slice file to a local file, as is.
+     * @param workingDir directory of the slice file
+     * @param sliceFileName file name of the slice
+     * @param localFile the local file to write, will be overwritten
+     * @throws IOException on I/O error
+     */
+    public abstract void copySliceToLocal(String workingDir, String sliceFileName, File localFile) throws IOException;
+
     /**
      * Write a slice with the given key to the specified directory.
      * @param workingDir where to write the slice, should exist
@@ -75,6 +85,26 @@ public abstract class GlobalDictStore {
      */
     public abstract String writeSlice(String workingDir, AppendDictSliceKey key, AppendDictNode slice) throws IOException;
 
+    /**
+     * Write the bytes of a slice with the given key to the specified directory.
+     * @param workingDir where to write the slice, should exist
+     * @param key slice key
+     * @param trieBytes slice bytes, as built by <i>AppendDictNode</i>
+     * @return file name of the new written slice
+     * @throws IOException on I/O error
+     */
+    public abstract String writeSlice(String workingDir, AppendDictSliceKey key, byte[] trieBytes) throws IOException;
+
+    /**
+     * Copy or move a slice file to another directory, keeping its file name.
+     * @param fromDir directory of the slice file
+     * @param sliceFileName file name of the slice
+     * @param toDir where to put the slice, should exist
+     * @param deleteSource move the file instead of copying it
+     * @throws IOException on I/O error
+     */
+    public abstract void copySlice(String fromDir, String sliceFileName, String toDir, boolean deleteSource) throws IOException;
+
     /**
      * Delete a slice with the specified file name.
      * @param workingDir directory of the slice file, should exist
@@ -83,6 +113,45 @@ public abstract class GlobalDictStore {
      */
     public abstract void deleteSlice(String workingDir, String sliceFileName) throws IOException;
 
+    /**
+     * Write the metadata of a shard to its working dir, leaving it there to be merged by a later commit.
+     * @param workingDir working dir of the shard, should exist
+     * @param shardMetadata the metadata of the slices of the shard
+     * @throws IOException on I/O error
+     */
+    public abstract void writeShardMetadata(String workingDir, GlobalDictMetadata shardMetadata) throws IOException;
+
+    /**
+     * Read the metadata written by <i>writeShardMetadata</i>.
+     * @param workingDir working dir of the shard
+     * @return <i>GlobalDictMetadata</i> of the shard
+     * @throws IOException on I/O error
+     */
+    public abstract GlobalDictMetadata readShardMetadata(String workingDir) throws IOException;
+
+    /**
+     * Check whether a working dir exists.
+     * @param workingDir the dir to check
+     * @return true if the dir exists
+     * @throws IOException on I/O error
+     */
+    public abstract boolean existsWorkingDir(String workingDir) throws IOException;
+
+    /**
+     * Delete a working dir and everything in it, if it exists.
+     * @param workingDir the dir to delete
+     * @throws IOException on I/O error
+     */
+    public abstract void deleteWorkingDir(String workingDir) throws IOException;
+
+    /**
+     * Delete the working dirs under the base dir whose names start with the prefix and which are older than the
+     * version TTL, left behind by builds that failed before deleting them.
+     * @param namePrefix name prefix of the dirs
+     * @throws IOException on I/O error
+     */
+    public abstract void deleteExpiredWorkingDirs(String namePrefix) throws IOException;
+
     /**
      * commit the <i>DictSlice</i> and <i>GlobalDictMetadata</i> in workingDir to new versionDir
      * @param workingDir where store the tmp slice and index, should exist
@@ -22,7 +22,9 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.Map;
 
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.dict.lookup.IExtLookupTableCache.CacheState;
+import org.apache.kylin.dict.lookup.cache.MappedLookupTableCache;
 import org.apache.kylin.metadata.model.TableDesc;
 import org.apache.kylin.source.IReadableTable;
 import org.slf4j.Logger;
@@ -63,6 +65,11 @@ public class LookupProviderFactory {
         return new LookupStringTable(tableDesc, pkCols, readableTable);
     }
 
+    public static ILookupTable getMappedLookupTable(TableDesc tableDesc, String[] pkCols, String snapshotResPath) {
+        return MappedLookupTableCache.getInstance(KylinConfig.getInstanceFromEnv()).getLookupTable(tableDesc, pkCols,
+                snapshotResPath);
+    }
+
     public static ILookupTable getExtLookupTable(TableDesc tableDesc, ExtTableSnapshotInfo extTableSnapshot) {
         IExtLookupTableCache extLookupTableCache = getExtLookupProvider(extTableSnapshot.getStorageType()).getLocalCache();
         if (extLookupTableCache == null) {
@@ -27,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 import com.google.common.collect.Lists;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.dict.lookup.cache.MappedLookupTableCache;
 import org.apache.kylin.metadata.TableMetadataManager;
 import org.apache.kylin.metadata.model.TableDesc;
 import org.apache.kylin.source.IReadableTable;
@@ -97,6 +98,14 @@ public class SnapshotManager {
         }
     }
 
+    /**
+     * load the snapshot with data, without putting it into the cache
+     */
+    public SnapshotTable loadSnapshotTable(String resourcePath) throws IOException {
+        SnapshotTable r = snapshotCache.getIfPresent(resourcePath);
+        return r != null ? r : load(resourcePath, true);
+    }
+
     public List<SnapshotTable> getSnapshots(String tableName, TableSignature sourceTableSignature) throws IOException {
         List<SnapshotTable> result = Lists.newArrayList();
         String tableSnapshotsPath = SnapshotTable.getResourceDir(tableName);
@@ -113,6 +122,7 @@ public class SnapshotManager {
         ResourceStore store = getStore();
         store.deleteResource(resourcePath);
         snapshotCache.invalidate(resourcePath);
+        MappedLookupTableCache.removeSnapshot(resourcePath);
     }
 
     public SnapshotTable buildSnapshot(IReadableTable table, TableDesc tableDesc) throws IOException {
@@ -146,6 +156,7 @@ public class SnapshotManager {
 
         save(snapshot);
         snapshotCache.put(snapshot.getResourcePath(), snapshot);
+        MappedLookupTableCache.removeSnapshot(snapshot.getResourcePath());
 
         return snapshot;
     }
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.lookup.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.DateFormat;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.source.IReadableTable;
+import org.apache.kylin.source.IReadableTable.TableReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Writes the rows of a table into the file format of {@link MappedLookupTable}. The rows are streamed to disk,
+ * only two ints per row and the hash slots are kept on heap while building.
+ */
+public class MappedLookupBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(MappedLookupBuilder.class);
+
+    private static final int WRITE_CHUNK_INTS = 64 * 1024;
+
+    private final TableDesc tableDesc;
+    private final int[] keyIndex;
+    private final int lastKeyCol;
+    private final boolean[] colIsDateTime;
+    private final String filePath;
+
+    public MappedLookupBuilder(TableDesc tableDesc, String[] keyColumns, String filePath) {
+        this.tableDesc = tableDesc;
+        this.filePath = filePath;
+        this.keyIndex = new int[keyColumns.length];
+        int last = 0;
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndex[i] = tableDesc.findColumnByName(keyColumns[i]).getZeroBasedIndex();
+            last = Math.max(last, keyIndex[i]);
+        }
+        this.lastKeyCol = last;
+        ColumnDesc[] cols = tableDesc.getColumns();
+        this.colIsDateTime = new boolean[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            colIsDateTime[i] = cols[i].getType().isDateTimeFamily();
+        }
+    }
+
+    public void build(IReadableTable source) throws IOException {
+        File file = new File(filePath);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        logger.info("start to build lookup table:{} to mapped file:{}", tableDesc.getIdentity(), filePath);
+
+        int headerSize = 24 + keyIndex.length * 4 + 8;
+        int[] rowOffsets = new int[1024];
+        int[] hashes = new int[1024];
+        int rowCount = 0;
+        int colCount = -1;
+        long pos = headerSize;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.write(new byte[headerSize]);
+            String[] key = new String[keyIndex.length];
+            TableReader reader = source.getReader();
+            try {
+                while (reader.next()) {
+                    String[] row = convertRow(reader.getRow());
+                    if (colCount < 0) {
+                        colCount = row.length;
+                    } else if (row.length != colCount) {
+                        throw new IllegalStateException("The table: " + tableDesc.getName() + " expect " + colCount
+                                + " columns, but got " + Arrays.toString(row));
+                    }
+                    checkSize(pos);
+
+                    if (rowCount == rowOffsets.length) {
+                        rowOffsets = Arrays.copyOf(rowOffsets, rowCount * 2);
+                        hashes = Arrays.copyOf(hashes, rowCount * 2);
+                    }
+                    for (int k = 0; k < keyIndex.length; k++) {
+                        key[k] = row[keyIndex[k]];
+                    }
+                    rowOffsets[rowCount] = (int) pos;
+                    hashes[rowCount] = MappedLookupTable.hash(key);
+                    rowCount++;
+
+                    for (String cell : row) {
+                        if (cell == null) {
+                            out.writeInt(MappedLookupTable.NULL_LENGTH);
+                            pos += 4;
+                        } else {
+                            byte[] bytes = cell.getBytes(Charsets.UTF_8);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                            pos += 4 + bytes.length;
+                        }
+                    }
+                }
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+        if (colCount < 0) {
+            colCount = tableDesc.getColumnCount();
+        }
+
+        int slotCount = Math.max(1, rowCount * 2);
+        long indexOffset = pos;
+        checkSize(indexOffset + (rowCount + (long) slotCount) * 4);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexOffset);
+
+            int[] slots = new int[slotCount];
+            for (int row = 0; row < rowCount; row++) {
+                int slot = MappedLookupTable.slotOf(hashes[row], slotCount);
+                while (slots[slot] != 0) {
+                    int other = slots[slot] - 1;
+                    if (hashes[other] == hashes[row]) {
+                        String[] rowKey = readKey(rows, rowOffsets[row]);
+                        if (Arrays.equals(rowKey, readKey(rows, rowOffsets[other])))
+                            throw new IllegalStateException("The table: " + tableDesc.getName() + " Dup key found, key="
+                                    + Arrays.toString(rowKey));
+                    }
+                    slot = slot + 1 == slotCount ? 0 : slot + 1;
+                }
+                slots[slot] = row + 1;
+            }
+
+            long end = writeInts(channel, indexOffset, rowOffsets, rowCount);
+            writeInts(channel, end, slots, slotCount);
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.putInt(MappedLookupTable.MAGIC).putInt(MappedLookupTable.VERSION);
+            header.putInt(rowCount).putInt(colCount).putInt(slotCount).putInt(keyIndex.length);
+            for (int k : keyIndex) {
+                header.putInt(k);
+            }
+            header.putLong(indexOffset);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        logger.info("built lookup table:{} with {} rows, {} bytes", tableDesc.getIdentity(), rowCount, file.length());
+    }
+
+    private String[] convertRow(String[] cols) {
+        for (int i = 0; i < cols.length && i < colIsDateTime.length; i++) {
+            if (colIsDateTime[i] && cols[i] != null) {
+                cols[i] = String.valueOf(DateFormat.stringToMillis(cols[i]));
+            }
+        }
+        return cols;
+    }
+
+    private void checkSize(long size) {
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalStateException("The table: " + tableDesc.getName() + " is too large to be mapped, over "
+                    + size + " bytes");
+    }
+
+    private String[] readKey(ByteBuffer rows, int pos) {
+        String[] result = new String[keyIndex.length];
+        for (int col = 0; col <= lastKeyCol; col++) {
+            int len = rows.getInt(pos);
+            pos += 4;
+            for (int k = 0; k < keyIndex.length; k++) {
+                if (keyIndex[k] == col && len != MappedLookupTable.NULL_LENGTH) {
+                    byte[] bytes = new byte[len];
+                    for (int i = 0; i < len; i++) {
+                        bytes[i] = rows.get(pos + i);
+                    }
+                    result[k] = new String(bytes, Charsets.UTF_8);
+                }
+            }
+            if (len > 0)
+                pos += len;
+        }
+        return result;
+    }
+
+    private long writeInts(FileChannel channel, long position, int[] values, int count) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Math.min(count, WRITE_CHUNK_INTS) * 4 + 4);
+        for (int i = 0; i < count;) {
+            buf.clear();
+            for (int n = 0; n < WRITE_CHUNK_INTS && i < count; n++, i++) {
+                buf.putInt(values[i]);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        }
+        return position;
+    }
+}
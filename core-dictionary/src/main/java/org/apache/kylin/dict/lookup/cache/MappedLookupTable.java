@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.lookup.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.common.util.Array;
+import org.apache.kylin.dict.lookup.ILookupTable;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A lookup table read from a memory mapped file written by {@link MappedLookupBuilder}, neither the rows nor
+ * the hash index are on heap.
+ *
+ * File layout, all ints big endian:
+ * <pre>
+ * header:  magic, version, rowCount, colCount, slotCount, keyCount, keyIndex[keyCount], indexOffset (long)
+ * rows:    per cell, the length of its UTF-8 bytes (-1 for null) followed by the bytes
+ * index:   rowOffset[rowCount], slot[slotCount] (row + 1, 0 for an empty slot, linear probing)
+ * </pre>
+ *
+ * The table is shared by all queries using the snapshot and is safe for concurrent reads, closing it does nothing.
+ */
+public class MappedLookupTable implements ILookupTable {
+
+    static final int MAGIC = 0x4b4c4b50;
+    static final int VERSION = 1;
+    static final int NULL_LENGTH = -1;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int rowCount;
+    private final int colCount;
+    private final int slotCount;
+    private final int[] keyIndex;
+    private final int lastKeyCol;
+    private final int rowOffsetsPos;
+    private final int slotsPos;
+
+    public MappedLookupTable(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int pos = 0;
+        if (buffer.getInt(pos) != MAGIC || buffer.getInt(pos + 4) != VERSION)
+            throw new IOException("Not a mapped lookup table: " + file);
+        rowCount = buffer.getInt(pos + 8);
+        colCount = buffer.getInt(pos + 12);
+        slotCount = buffer.getInt(pos + 16);
+        keyIndex = new int[buffer.getInt(pos + 20)];
+        pos += 24;
+        int last = 0;
+        for (int i = 0; i < keyIndex.length; i++, pos += 4) {
+            keyIndex[i] = buffer.getInt(pos);
+            last = Math.max(last, keyIndex[i]);
+        }
+        lastKeyCol = last;
+        rowOffsetsPos = (int) buffer.getLong(pos);
+        slotsPos = rowOffsetsPos + rowCount * 4;
+    }
+
+    static int hash(String[] key) {
+        int h = 1;
+        for (String s : key) {
+            h = 31 * h + (s == null ? 0 : s.hashCode());
+        }
+        return h ^ (h >>> 16);
+    }
+
+    static int slotOf(int hash, int slotCount) {
+        return (hash & Integer.MAX_VALUE) % slotCount;
+    }
+
+    @Override
+    public String[] getRow(Array<String> key) {
+        if (rowCount == 0)
+            return null;
+
+        byte[][] probe = new byte[key.data.length][];
+        for (int i = 0; i < probe.length; i++) {
+            probe[i] = key.data[i] == null ? null : key.data[i].getBytes(Charsets.UTF_8);
+        }
+
+        int slot = slotOf(hash(key.data), slotCount);
+        while (true) {
+            int v = buffer.getInt(slotsPos + slot * 4);
+            if (v == 0)
+                return null;
+            int row = v - 1;
+            if (keyMatches(row, probe))
+                return readRow(row);
+            slot = slot + 1 == slotCount ? 0 : slot + 1;
+        }
+    }
+
+    private boolean keyMatches(int row, byte[][] probe) {
+        int pos = buffer.getInt(rowOffsetsPos + row * 4);
+        for (int col = 0; col <= lastKeyCol; col++) {
+            int len = buffer.getInt(pos);
+            pos += 4;
+            for (int k = 0; k < keyIndex.length; k++) {
+                if (keyIndex[k] == col && !bytesEqual(pos, len, probe[k]))
+                    return false;
+            }
+            if (len > 0)
+                pos += len;
+        }
+        return true;
+    }
+
+    private boolean bytesEqual(int pos, int len, byte[] bytes) {
+        if (bytes == null)
+            return len == NULL_LENGTH;
+        if (len != bytes.length)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (buffer.get(pos + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private String[] readRow(int row) {
+        String[] result = new String[colCount];
+        int pos = buffer.getInt(rowOffsetsPos + row * 4);
+        for (int col = 0; col < colCount; col++) {
+            int len = buffer.getInt(pos);
+            pos += 4;
+            if (len == NULL_LENGTH)
+                continue;
+            byte[] bytes = new byte[len];
+            for (int i = 0; i < len; i++) {
+                bytes[i] = buffer.get(pos + i);
+            }
+            result[col] = new String(bytes, Charsets.UTF_8);
+            pos += len;
+        }
+        return result;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long getSizeInBytes() {
+        return buffer.capacity();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public Iterator<String[]> iterator() {
+        return new Iterator<String[]>() {
+            int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < rowCount;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return readRow(row++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("not support operation");
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        // shared between queries, the mapping is released with the last reference
+    }
+
+    @Override
+    public String toString() {
+        return "MappedLookupTable [file=" + file + "]";
+    }
+}
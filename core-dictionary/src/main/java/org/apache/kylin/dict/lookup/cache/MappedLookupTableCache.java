@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.lookup.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.dict.lookup.ILookupTable;
+import org.apache.kylin.dict.lookup.LookupProviderFactory;
+import org.apache.kylin.dict.lookup.SnapshotManager;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Snapshot lookup tables written to local files and memory mapped, instead of hash maps of String[] on heap.
+ *
+ * A table is built the first time a query needs it and is shared by all cubes using the same snapshot and
+ * primary key. The files are evicted by size once they exceed the configured budget. Eviction only deletes the
+ * file, queries still holding the table keep reading the mapping until they let it go.
+ */
+public class MappedLookupTableCache {
+    private static final Logger logger = LoggerFactory.getLogger(MappedLookupTableCache.class);
+
+    private static final String CACHE_TYPE_MAPPED = "mapped";
+
+    // static cached instances
+    private static final ConcurrentMap<KylinConfig, MappedLookupTableCache> SERVICE_CACHE = new ConcurrentHashMap<>();
+
+    // the cache folders wiped by this process, each only once as instances of other configs may share it
+    private static final Set<String> WIPED_PATHS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public static MappedLookupTableCache getInstance(KylinConfig config) {
+        MappedLookupTableCache r = SERVICE_CACHE.get(config);
+        if (r == null) {
+            synchronized (MappedLookupTableCache.class) {
+                r = SERVICE_CACHE.get(config);
+                if (r == null) {
+                    r = new MappedLookupTableCache(config);
+                    SERVICE_CACHE.put(config, r);
+                    if (SERVICE_CACHE.size() > 1) {
+                        logger.warn("More than one singleton exist");
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    public static void clearCache() {
+        synchronized (SERVICE_CACHE) {
+            SERVICE_CACHE.clear();
+        }
+    }
+
+    /** drop the mapped tables of a snapshot that is rebuilt or removed, from the instances of all configs */
+    public static void removeSnapshot(String snapshotResPath) {
+        for (MappedLookupTableCache r : SERVICE_CACHE.values()) {
+            r.invalidate(snapshotResPath);
+        }
+    }
+
+    // ============================================================================
+
+    private final KylinConfig config;
+    private final String basePath;
+    private final Cache<String, MappedLookupTable> tablesCache;
+
+    private MappedLookupTableCache(KylinConfig config) {
+        this.config = config;
+
+        // files of a previous process may belong to snapshots rebuilt since
+        String cachePath = getCacheBasePath(config);
+        if (WIPED_PATHS.add(cachePath)) {
+            FileUtils.deleteQuietly(new File(cachePath));
+        }
+        // a folder of its own, so the size and eviction of this instance only count its files
+        this.basePath = cachePath + File.separator + UUID.randomUUID().toString();
+        new File(basePath).mkdirs();
+
+        long maxCacheSizeInKB = config.getSnapshotMappedLookupCacheMaxMB() * 1024L;
+        this.tablesCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, MappedLookupTable>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, MappedLookupTable> notification) {
+                logger.info("mapped lookup table {} is removed because of {}", notification.getKey(),
+                        notification.getCause());
+                FileUtils.deleteQuietly(notification.getValue().getFile());
+            }
+        }).maximumWeight(maxCacheSizeInKB).weigher(new Weigher<String, MappedLookupTable>() {
+            @Override
+            public int weigh(String key, MappedLookupTable value) {
+                return (int) (value.getSizeInBytes() / 1024);
+            }
+        }).build();
+    }
+
+    protected static String getCacheBasePath(KylinConfig config) {
+        String basePath = config.getExtTableSnapshotLocalCachePath();
+        if ((!basePath.startsWith("/")) && (KylinConfig.getKylinHome() != null)) {
+            basePath = KylinConfig.getKylinHome() + File.separator + basePath;
+        }
+        return basePath + File.separator + CACHE_TYPE_MAPPED;
+    }
+
+    public ILookupTable getLookupTable(final TableDesc tableDesc, final String[] keyColumns,
+            final String snapshotResPath) {
+        String key = snapshotResPath + "/" + StringUtils.join(keyColumns, ",");
+        try {
+            return tablesCache.get(key, new Callable<MappedLookupTable>() {
+                @Override
+                public MappedLookupTable call() throws Exception {
+                    return build(tableDesc, keyColumns, snapshotResPath);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            logger.warn("failed to map lookup table of snapshot " + snapshotResPath + ", use in heap lookup table",
+                    e.getCause());
+            try {
+                return LookupProviderFactory.getInMemLookupTable(tableDesc, keyColumns,
+                        SnapshotManager.getInstance(config).getSnapshotTable(snapshotResPath));
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to load lookup table from snapshot " + snapshotResPath, ex);
+            }
+        }
+    }
+
+    private MappedLookupTable build(TableDesc tableDesc, String[] keyColumns, String snapshotResPath)
+            throws IOException {
+        File file = new File(basePath + File.separator + tableDesc.getIdentity() + File.separator
+                + UUID.randomUUID().toString() + ".lookup");
+        try {
+            // the snapshot rows are only needed to write the file, keep them out of the snapshot cache
+            new MappedLookupBuilder(tableDesc, keyColumns, file.getPath())
+                    .build(SnapshotManager.getInstance(config).loadSnapshotTable(snapshotResPath));
+            return new MappedLookupTable(file);
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    private void invalidate(String snapshotResPath) {
+        for (String key : tablesCache.asMap().keySet()) {
+            if (key.startsWith(snapshotResPath + "/")) {
+                tablesCache.invalidate(key);
+            }
+        }
+    }
+
+    public long getTotalCacheSize() {
+        return FileUtils.sizeOfDirectory(new File(basePath));
+    }
+}
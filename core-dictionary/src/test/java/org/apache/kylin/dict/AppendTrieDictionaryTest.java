@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
@@ -36,8 +37,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -46,13 +49,16 @@ import java.util.TreeMap;
 import java.util.UUID;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.HadoopUtil;
 import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dict.global.AppendDictSliceCache;
 import org.apache.kylin.dict.global.AppendDictSliceKey;
 import org.apache.kylin.dict.global.AppendTrieDictionaryBuilder;
+import org.apache.kylin.dict.global.AppendTrieDictionaryShards;
 import org.apache.kylin.dict.global.GlobalDictHDFSStore;
 import org.apache.kylin.dict.global.GlobalDictMetadata;
 import org.junit.After;
@@ -459,6 +465,159 @@ public class AppendTrieDictionaryTest extends LocalFileMetadataTestCase {
         assertEquals(2, dir.listFiles(new VersionFilter()).length);
     }
 
+    @Test
+    public void testSliceCache() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.dictionary.append-entry-size", "1000");
+
+        ArrayList<String> str = loadStrings(new FileInputStream("src/test/resources/dict/english-words.80 (scowl-2015.05.18).txt"));
+        AppendTrieDictionaryBuilder builder = createBuilder();
+        for (String s : str) {
+            builder.addValue(s);
+        }
+        AppendTrieDictionary<String> dict = builder.build(0);
+
+        File cacheDir = Files.createTempDirectory("global_dict_cache").toFile();
+        config.setProperty("kylin.dictionary.append-slice-cache.enabled", "true");
+        config.setProperty("kylin.dictionary.append-slice-cache.local-path", cacheDir.getAbsolutePath());
+        config.setProperty("kylin.dictionary.append-slice-cache.max-mb", "1");
+        try {
+            AppendTrieDictionary<String> mapped = new AppendTrieDictionary<>();
+            mapped.init(BASE_DIR);
+            for (String s : str) {
+                assertEquals(dict.getIdFromValue(s), mapped.getIdFromValue(s));
+            }
+            assertTrue(AppendDictSliceCache.getInstance(config).getStats().loadCount() > 1);
+        } finally {
+            AppendDictSliceCache.clearCache();
+            FileUtils.deleteQuietly(cacheDir);
+        }
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        KylinConfig.getInstanceFromEnv().setProperty("kylin.dictionary.append-entry-size", "1000");
+
+        ArrayList<String> str = loadStrings(new FileInputStream("src/test/resources/dict/english-words.80 (scowl-2015.05.18).txt"));
+        ArrayList<String> oldValues = new ArrayList<>();
+        ArrayList<String> newValues = new ArrayList<>();
+        for (int i = 0; i < str.size(); i++) {
+            (i % 2 == 0 ? oldValues : newValues).add(str.get(i));
+        }
+
+        // the first build is never sharded
+        assertNull(AppendTrieDictionaryShards.plan(BASE_DIR, RESOURCE_DIR, 3));
+        AppendTrieDictionaryBuilder builder = createBuilder();
+        for (String s : oldValues) {
+            builder.addValue(s);
+        }
+        AppendTrieDictionary<String> oldDict = builder.build(0);
+
+        AppendTrieDictionaryShards shards = AppendTrieDictionaryShards.plan(BASE_DIR, RESOURCE_DIR, 3);
+        assertEquals(3, shards.getShardCount());
+        shards = AppendTrieDictionaryShards.deserialize(shards.serialize());
+
+        AppendTrieDictionaryBuilder[] shardBuilders = new AppendTrieDictionaryBuilder[shards.getShardCount()];
+        for (int i = 0; i < shardBuilders.length; i++) {
+            shardBuilders[i] = shards.newShardBuilder(i);
+        }
+        Collections.shuffle(str, new Random(0));
+        for (String s : str) {
+            shardBuilders[shards.getShard(s)].addValue(s);
+        }
+        for (AppendTrieDictionaryBuilder shardBuilder : shardBuilders) {
+            shardBuilder.buildShard();
+        }
+        AppendTrieDictionary<String> dict = shards.commit();
+
+        for (String s : oldValues) {
+            assertEquals(oldDict.getIdFromValue(s), dict.getIdFromValue(s));
+        }
+        // new ids follow the old ones without gaps
+        assertEquals(oldDict.getMaxId() + newValues.size(), dict.getMaxId());
+        BitSet newIds = new BitSet();
+        for (String s : newValues) {
+            int id = dict.getIdFromValue(s);
+            assertTrue(id > oldDict.getMaxId() && id <= dict.getMaxId());
+            assertFalse(newIds.get(id));
+            newIds.set(id);
+        }
+
+        // commit again returns the committed version
+        assertEquals(dict.getMaxId(), shards.commit().getMaxId());
+    }
+
+    @Test
+    public void testExpiredShardsDeleted() throws Exception {
+        FileSystem fs = HadoopUtil.getWorkingFileSystem();
+        Path expired = new Path(BASE_DIR + "working_expired");
+        Path recent = new Path(BASE_DIR + "working_recent");
+        fs.mkdirs(expired);
+        fs.mkdirs(recent);
+        fs.setTimes(expired, 0, -1);
+
+        // the plans of failed builds are deleted by the next plan once expired
+        AppendTrieDictionaryShards.plan(BASE_DIR, RESOURCE_DIR, 3);
+        assertFalse(fs.exists(expired));
+        assertTrue(fs.exists(recent));
+    }
+
+    @Test
+    public void testShardsAfterNewerVersion() throws Exception {
+        KylinConfig.getInstanceFromEnv().setProperty("kylin.dictionary.append-entry-size", "1000");
+
+        ArrayList<String> str = loadStrings(new FileInputStream("src/test/resources/dict/english-words.80 (scowl-2015.05.18).txt"));
+        ArrayList<String> oldValues = new ArrayList<>();
+        ArrayList<String> newValues = new ArrayList<>();
+        for (int i = 0; i < str.size(); i++) {
+            (i % 2 == 0 ? oldValues : newValues).add(str.get(i));
+        }
+
+        AppendTrieDictionaryBuilder builder = createBuilder();
+        for (String s : oldValues) {
+            builder.addValue(s);
+        }
+        builder.build(0);
+
+        AppendTrieDictionaryShards shards = AppendTrieDictionaryShards.plan(BASE_DIR, RESOURCE_DIR, 3);
+        AppendTrieDictionaryBuilder[] shardBuilders = new AppendTrieDictionaryBuilder[shards.getShardCount()];
+        for (int i = 0; i < shardBuilders.length; i++) {
+            shardBuilders[i] = shards.newShardBuilder(i);
+        }
+        for (String s : str) {
+            shardBuilders[shards.getShard(s)].addValue(s);
+        }
+        for (AppendTrieDictionaryBuilder shardBuilder : shardBuilders) {
+            shardBuilder.buildShard();
+        }
+
+        // another build commits a version after the plan, with some of the same new values
+        Thread.sleep(10);
+        builder = createBuilder();
+        for (String s : newValues.subList(0, 100)) {
+            builder.addValue(s);
+        }
+        AppendTrieDictionary<String> otherDict = builder.build(0);
+
+        AppendTrieDictionary<String> dict = shards.commit();
+        for (String s : oldValues) {
+            assertEquals(otherDict.getIdFromValue(s), dict.getIdFromValue(s));
+        }
+        for (String s : newValues.subList(0, 100)) {
+            assertEquals(otherDict.getIdFromValue(s), dict.getIdFromValue(s));
+        }
+        assertEquals(otherDict.getMaxId() + newValues.size() - 100, dict.getMaxId());
+        BitSet ids = new BitSet();
+        for (String s : str) {
+            int id = dict.getIdFromValue(s);
+            assertFalse(ids.get(id));
+            ids.set(id);
+        }
+
+        // commit again returns the committed version
+        assertEquals(dict.getMaxId(), shards.commit().getMaxId());
+    }
+
     @Test
     public void testVersionRetention() throws IOException, InterruptedException {
         KylinConfig.getInstanceFromEnv().setProperty("kylin.dictionary.append-entry-size", "4");
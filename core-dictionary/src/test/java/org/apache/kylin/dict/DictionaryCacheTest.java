@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DictionaryCacheTest {
+
+    @Test
+    public void testSeparateDictionaries() {
+        DictionaryCache cache = new DictionaryCache(1024 * 1024);
+        long dict1 = DictionaryCache.newCacheId();
+        long dict2 = DictionaryCache.newCacheId();
+
+        cache.putById(dict1, DictionaryCache.ID_TO_VALUE, 1, "a");
+        cache.putByValue(dict1, "a", 1);
+        cache.putById(dict2, DictionaryCache.ID_TO_VALUE, 1, "b");
+
+        assertEquals("a", cache.getById(dict1, DictionaryCache.ID_TO_VALUE, 1));
+        assertEquals("b", cache.getById(dict2, DictionaryCache.ID_TO_VALUE, 1));
+        assertNull(cache.getById(dict1, DictionaryCache.ID_TO_VALUE_BYTES, 1));
+        assertEquals(Integer.valueOf(1), cache.getByValue(dict1, "a"));
+        assertNull(cache.getByValue(dict2, "a"));
+
+        assertEquals(3, cache.getStats().hitCount());
+        assertEquals(2, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testBudget() {
+        DictionaryCache cache = new DictionaryCache(100 * 1024);
+        long dict = DictionaryCache.newCacheId();
+        for (int i = 0; i < 10000; i++) {
+            cache.putById(dict, DictionaryCache.ID_TO_VALUE_BYTES, i, new byte[100]);
+        }
+        // about 200 bytes per entry
+        assertTrue(cache.getEntryCount() < 1000);
+        assertTrue(cache.getStats().evictionCount() > 9000);
+        // the latest values are kept
+        assertEquals(100, ((byte[]) cache.getById(dict, DictionaryCache.ID_TO_VALUE_BYTES, 9999)).length);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares FrontCodedDictionary with TrieDictionary and TrieDictionaryForest, all without value cache.
+ */
+@Ignore
+public class FrontCodedDictionaryBenchmark {
+
+    private static final int DATA_SIZE = 1000 * 1000;
+    private static final int TEST_TIMES = 5 * 1000 * 1000;
+    private static final int BATCH_SIZE = 1024;
+
+    private ArrayList<String> rawData;
+    private int[] randomIds;
+
+    private TrieDictionary<String> trie;
+    private TrieDictionaryForest<String> forest;
+    private FrontCodedDictionary frontCoded;
+
+    @Before
+    public void before() throws IOException {
+        Random rand = new Random(0);
+        rawData = new ArrayList<>(DATA_SIZE);
+        for (int i = 0; i < DATA_SIZE; i++) {
+            rawData.add(UUID.randomUUID().toString().substring(0, 8 + rand.nextInt(20)));
+        }
+
+        TrieDictionaryBuilder<String> b1 = new TrieDictionaryBuilder<>(new StringBytesConverter());
+        TrieDictionaryForestBuilder<String> b2 = new TrieDictionaryForestBuilder<>(new StringBytesConverter(), 0, 5);
+        FrontCodedDictionaryBuilder b3 = new FrontCodedDictionaryBuilder(false);
+        b3.init(null, 0, null);
+        for (String str : rawData) {
+            b1.addValue(str);
+            b2.addValue(str);
+            b3.addValue(str);
+        }
+        trie = b1.build(0);
+        forest = b2.build();
+        frontCoded = (FrontCodedDictionary) b3.build();
+        trie.disableCache();
+        forest.disableCache();
+
+        randomIds = new int[TEST_TIMES];
+        for (int i = 0; i < TEST_TIMES; i++) {
+            randomIds[i] = rand.nextInt(frontCoded.getSize());
+        }
+    }
+
+    @Test
+    public void benchmark() throws IOException {
+        System.out.println("serialized size, trie : " + serializedSize(trie) + ", forest : " + serializedSize(forest)
+                + ", front coded : " + serializedSize(frontCoded));
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            System.out.println("trie id --> value : " + runQueryValue(trie));
+            System.out.println("forest id --> value : " + runQueryValue(forest));
+            System.out.println("front coded id --> value : " + runQueryValue(frontCoded));
+            System.out.println("front coded id --> value, batch : " + runQueryValueBatch(frontCoded));
+            System.out.println("trie value --> id : " + runQueryId(trie));
+            System.out.println("forest value --> id : " + runQueryId(forest));
+            System.out.println("front coded value --> id : " + runQueryId(frontCoded));
+        }
+    }
+
+    private long runQueryValue(Dictionary<String> dict) {
+        long startTime = System.currentTimeMillis();
+        int step = 1;
+        for (int i = 0; i < TEST_TIMES; i++) {
+            step |= dict.getValueFromId(randomIds[i]).length();
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    // sorted batches of ids, like the ids of a column in a block of rows
+    private long runQueryValueBatch(FrontCodedDictionary dict) {
+        long startTime = System.currentTimeMillis();
+        int[] ids = new int[BATCH_SIZE];
+        String[] values = new String[BATCH_SIZE];
+        int step = 1;
+        for (int i = 0; i + BATCH_SIZE <= TEST_TIMES; i += BATCH_SIZE) {
+            System.arraycopy(randomIds, i, ids, 0, BATCH_SIZE);
+            Arrays.sort(ids);
+            dict.getValuesFromIds(ids, BATCH_SIZE, values);
+            step |= values[0].length();
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private long runQueryId(Dictionary<String> dict) {
+        long startTime = System.currentTimeMillis();
+        int step = 1;
+        for (int i = 0; i < TEST_TIMES; i++) {
+            step |= dict.getIdFromValue(rawData.get(randomIds[i] % DATA_SIZE));
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private static int serializedSize(Dictionary<String> dict) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        dict.write(new DataOutputStream(bout));
+        return bout.size();
+    }
+}
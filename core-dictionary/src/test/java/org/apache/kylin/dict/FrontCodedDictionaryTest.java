@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.junit.Test;
+
+public class FrontCodedDictionaryTest {
+
+    @Test
+    public void testSameAsTrieDictionary() throws IOException {
+        List<String> values = new ArrayList<>();
+        Random rand = new Random(0);
+        for (int i = 0; i < 5000; i++) {
+            values.add("http://kylin.apache.org/" + rand.nextInt(100000) + "/" + (char) ('a' + rand.nextInt(26)));
+        }
+        values.add("");
+        values.add("中文");
+        values.add("ÿþ");
+
+        TrieDictionaryBuilder<String> trieBuilder = new TrieDictionaryBuilder<>(new StringBytesConverter());
+        FrontCodedDictionaryBuilder builder = new FrontCodedDictionaryBuilder(false);
+        builder.init(null, 0, null);
+        for (String v : values) {
+            trieBuilder.addValue(v);
+            builder.addValue(v);
+        }
+        TrieDictionary<String> trie = trieBuilder.build(0);
+        FrontCodedDictionary dict = (FrontCodedDictionary) builder.build();
+
+        assertEquals(trie.getMinId(), dict.getMinId());
+        assertEquals(trie.getMaxId(), dict.getMaxId());
+        assertEquals(trie.getSizeOfId(), dict.getSizeOfId());
+        for (int id = trie.getMinId(); id <= trie.getMaxId(); id++) {
+            String v = trie.getValueFromId(id);
+            assertEquals(v, dict.getValueFromId(id));
+            assertEquals(id, dict.getIdFromValue(v));
+        }
+        assertTrue(dict.contains(trie));
+
+        // rounding of values not in the dictionary
+        for (String probe : new String[] { "a", "http://kylin.apache.org/5", "http://kylin.apache.org/5000/zz", "zzz" }) {
+            for (int roundingFlag : new int[] { -1, 1 }) {
+                assertEquals(probe + " " + roundingFlag, idOrMinusOne(trie, probe, roundingFlag),
+                        idOrMinusOne(dict, probe, roundingFlag));
+            }
+            assertFalse(dict.containsValue(probe));
+        }
+
+        assertEquals(dict, writeAndRead(dict));
+        assertEquals(trie.getValueFromId(100), writeAndRead(dict).getValueFromId(100));
+    }
+
+    @Test
+    public void testFixedWidthNumbers() throws IOException {
+        FrontCodedDictionaryBuilder builder = new FrontCodedDictionaryBuilder(true);
+        builder.init(null, 0, null);
+        for (String v : new String[] { "-100", "3", "20", "100", "20", "", "7" }) {
+            builder.addValue(v);
+        }
+        FrontCodedDictionary dict = (FrontCodedDictionary) builder.build();
+
+        assertTrue(dict.isFixedWidth());
+        assertEquals(5, dict.getSize());
+        assertEquals("-100", dict.getValueFromId(0));
+        assertEquals("100", dict.getValueFromId(4));
+        assertEquals(3, dict.getIdFromValue("20"));
+        assertEquals(3, dict.getIdFromValue("20.0"));
+        assertEquals(2, dict.getIdFromValue("10", -1));
+        assertEquals(3, dict.getIdFromValue("10", 1));
+        assertEquals(2, dict.getIdFromValue("7.5", -1));
+        assertEquals(3, dict.getIdFromValue("7.5", 1));
+        assertFalse(dict.containsValue("7.5"));
+        assertFalse(dict.containsValue("abc"));
+        assertEquals(4, dict.getSizeOfValue());
+
+        assertEquals(dict, writeAndRead(dict));
+    }
+
+    @Test
+    public void testNumbersFallBackToForest() throws IOException {
+        FrontCodedDictionaryBuilder builder = new FrontCodedDictionaryBuilder(true);
+        builder.init(null, 0, null);
+        for (String v : new String[] { "1.5", "2", "10" }) {
+            builder.addValue(v);
+        }
+        Dictionary<String> dict = builder.build();
+
+        assertTrue(dict instanceof TrieDictionaryForest);
+        assertEquals(0, dict.getIdFromValue("1.5"));
+        assertEquals(2, dict.getIdFromValue("10"));
+    }
+
+    @Test
+    public void testUnorderedNumbersFallBackToForest() throws IOException {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            values.add(i / 4 + "." + (i % 4) * 25);
+        }
+        List<String> shuffled = new ArrayList<>(values);
+        Collections.shuffle(shuffled, new Random(0));
+
+        FrontCodedDictionaryBuilder builder = new FrontCodedDictionaryBuilder(true);
+        builder.init(null, 0, null);
+        for (String v : shuffled) {
+            builder.addValue(v);
+        }
+        Dictionary<String> dict = builder.build();
+
+        // the forest is fed in numeric order, so the IDs follow it
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, dict.getIdFromValue(values.get(i)));
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        FrontCodedDictionaryBuilder builder = new FrontCodedDictionaryBuilder(false);
+        builder.init(null, 0, null);
+        for (int i = 0; i < 100; i++) {
+            builder.addValue(String.format("v%03d", i));
+        }
+        FrontCodedDictionary dict = (FrontCodedDictionary) builder.build();
+
+        int[] ids = new int[] { 1, 2, 17, dict.nullId(), 3, 99, 98, 0 };
+        String[] values = new String[ids.length];
+        dict.getValuesFromIds(ids, ids.length, values);
+        assertArrayEquals(new String[] { "v001", "v002", "v017", null, "v003", "v099", "v098", "v000" }, values);
+
+        int[] ids2 = new int[values.length];
+        dict.getIdsFromValues(values, values.length, ids2);
+        assertArrayEquals(ids, ids2);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        FrontCodedDictionaryBuilder builder = new FrontCodedDictionaryBuilder(false);
+        builder.init(null, 0, null);
+        FrontCodedDictionary dict = (FrontCodedDictionary) builder.build();
+
+        assertEquals(0, dict.getSize());
+        assertFalse(dict.containsValue("a"));
+        assertNull(dict.getValueFromId(dict.nullId()));
+        assertEquals(dict, writeAndRead(dict));
+    }
+
+    private static int idOrMinusOne(Dictionary<String> dict, String value, int roundingFlag) {
+        try {
+            return dict.getIdFromValue(value, roundingFlag);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static FrontCodedDictionary writeAndRead(FrontCodedDictionary dict) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        dict.write(new DataOutputStream(bout));
+        FrontCodedDictionary r = new FrontCodedDictionary();
+        r.readFields(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+        assertTrue(Arrays.equals(bout.toByteArray(), toBytes(r)));
+        return r;
+    }
+
+    private static byte[] toBytes(FrontCodedDictionary dict) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        dict.write(new DataOutputStream(bout));
+        return bout.toByteArray();
+    }
+}
@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -84,6 +85,35 @@ public class TrieDictionaryForestTest {
         assertSameBehaviorAsTrie(dict, strs, baseId);
     }
 
+    @Test
+    public void testBatchDecode() {
+        ArrayList<String> strs = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            strs.add("value" + i);
+        }
+        Collections.sort(strs, new ByteComparator<String>(new StringBytesConverter()));
+        int baseId = 5;
+        // small trees, so a batch spans several of them
+        TrieDictionaryForest<String> dict = newDictBuilder(strs, baseId, 0).build();
+
+        int[] ids = new int[] { 5, 5, 6, 50, dict.nullId(), 104, 7, 104 };
+        String[] expected = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            expected[i] = dict.getValueFromId(ids[i]);
+        }
+        String[] values = new String[ids.length + 1];
+        dict.getValuesFromIds(ids, ids.length, values);
+        assertArrayEquals(expected, Arrays.copyOf(values, ids.length));
+        assertNull(values[ids.length]);
+
+        try {
+            dict.getValuesFromIds(new int[] { 105 }, 1, new String[1]);
+            fail("ID out of range");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     @Test //one string one tree
     public void testMultiTree() {
         ArrayList<String> strs = new ArrayList<String>();
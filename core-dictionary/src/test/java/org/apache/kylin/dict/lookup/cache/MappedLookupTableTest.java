@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.lookup.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dict.lookup.LookupStringTable;
+import org.apache.kylin.dict.lookup.SnapshotManager;
+import org.apache.kylin.dict.lookup.SnapshotTable;
+import org.apache.kylin.metadata.TableMetadataManager;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedLookupTableTest extends LocalFileMetadataTestCase {
+
+    private static final String SNAPSHOT_PATH = "/table_snapshot/TEST_CAL_DT.csv/4af48c94-86de-4e22-a4fd-c49b06cbaa4f.snapshot";
+    private static final String FILE_PATH = "lookup_cache/mapped_test/TEST_CAL_DT.lookup";
+
+    private TableDesc tableDesc;
+    private SnapshotTable snapshot;
+
+    @Before
+    public void setup() throws Exception {
+        createTestMetadata();
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        tableDesc = TableMetadataManager.getInstance(config).getTableDesc("EDW.TEST_CAL_DT", "default");
+        snapshot = SnapshotManager.getInstance(config).getSnapshotTable(SNAPSHOT_PATH);
+    }
+
+    @After
+    public void tearDown() {
+        cleanupTestMetadata();
+        FileUtils.deleteQuietly(new File("lookup_cache"));
+    }
+
+    @Test
+    public void testSameAsInHeapTable() throws Exception {
+        String[] pkCols = new String[] { "CAL_DT" };
+        new MappedLookupBuilder(tableDesc, pkCols, FILE_PATH).build(snapshot);
+        MappedLookupTable mapped = new MappedLookupTable(new File(FILE_PATH));
+        LookupStringTable inHeap = new LookupStringTable(tableDesc, pkCols, snapshot);
+
+        Assert.assertEquals(snapshot.getRowCount(), mapped.getRowCount());
+        int count = 0;
+        for (String[] row : inHeap) {
+            String[] key = new String[] { row[tableDesc.findColumnByName("CAL_DT").getZeroBasedIndex()] };
+            Assert.assertArrayEquals(row, mapped.getRow(new Array<String>(key)));
+            count++;
+        }
+        Assert.assertEquals(count, mapped.getRowCount());
+
+        count = 0;
+        for (String[] row : mapped) {
+            Assert.assertNotNull(row);
+            count++;
+        }
+        Assert.assertEquals(mapped.getRowCount(), count);
+
+        Assert.assertNull(mapped.getRow(new Array<String>(new String[] { "1" })));
+        Assert.assertNull(mapped.getRow(new Array<String>(new String[] { null })));
+    }
+
+    @Test
+    public void testMultiColumnKey() throws Exception {
+        String[] pkCols = new String[] { "CAL_DT", "YEAR_BEG_DT" };
+        new MappedLookupBuilder(tableDesc, pkCols, FILE_PATH).build(snapshot);
+        MappedLookupTable mapped = new MappedLookupTable(new File(FILE_PATH));
+        LookupStringTable inHeap = new LookupStringTable(tableDesc, pkCols, snapshot);
+
+        int calDt = tableDesc.findColumnByName("CAL_DT").getZeroBasedIndex();
+        int yearBegDt = tableDesc.findColumnByName("YEAR_BEG_DT").getZeroBasedIndex();
+        for (String[] row : inHeap) {
+            String[] key = new String[] { row[calDt], row[yearBegDt] };
+            Assert.assertArrayEquals(row, mapped.getRow(new Array<String>(key)));
+
+            String[] wrongKey = new String[] { row[calDt], row[calDt] };
+            if (!Arrays.equals(key, wrongKey))
+                Assert.assertNull(mapped.getRow(new Array<String>(wrongKey)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDupKey() throws IOException {
+        new MappedLookupBuilder(tableDesc, new String[] { "YEAR_BEG_DT" }, FILE_PATH).build(snapshot);
+    }
+}
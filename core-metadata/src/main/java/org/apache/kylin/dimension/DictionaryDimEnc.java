@@ -116,6 +116,13 @@ public class DictionaryDimEnc extends DimensionEncoding implements Serializable
         }
     }
 
+    /**
+     * Decodes the first count IDs in one call, like DictionarySerializer.deserialize() does for one.
+     */
+    public void decode(int[] ids, int count, String[] values) {
+        dict.getValuesFromIds(ids, count, values);
+    }
+
     @Override
     public DataTypeSerializer<Object> asDataTypeSerializer() {
         return new DictionarySerializer();
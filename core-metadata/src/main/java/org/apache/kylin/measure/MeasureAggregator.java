@@ -19,6 +19,7 @@
 package org.apache.kylin.measure;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import org.apache.kylin.metadata.datatype.DataType;
 
@@ -75,6 +76,17 @@ abstract public class MeasureAggregator<V> implements Serializable {
 
     abstract public V getState();
 
+    /** If the aggregator can aggregate a value in its serialized form, without deserializing it first */
+    public boolean supportAggregateSerialized() {
+        return false;
+    }
+
+    /** An optional method that aggregates a value written by the DataTypeSerializer of the measure, and moves the
+     *  buffer position past the value as deserialize() does */
+    public void aggregateSerialized(ByteBuffer in) {
+        throw new UnsupportedOperationException();
+    }
+
     // get an estimate of memory consumption UPPER BOUND
     abstract public int getMemBytesEstimate();
 }
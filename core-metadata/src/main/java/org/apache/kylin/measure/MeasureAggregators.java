@@ -19,6 +19,7 @@
 package org.apache.kylin.measure;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -84,6 +85,30 @@ public class MeasureAggregators implements Serializable {
         }
     }
 
+    /**
+     * Aggregates a row of measures encoded by the codec. The aggregators that support serialized values take them from
+     * the buffer directly, the other measures are decoded into values first.
+     *
+     * @param measures the measures to aggregate in ascending order, null for all
+     */
+    public void aggregate(ByteBuffer buf, MeasureCodec codec, Object[] values, int[] measures) {
+        assert values.length == descLength;
+        for (int i = 0, next = 0; i < descLength; i++) {
+            boolean aggr = measures == null || (next < measures.length && measures[next] == i);
+            if (aggr && measures != null)
+                next++;
+
+            if (aggr && aggs[i].supportAggregateSerialized()) {
+                values[i] = null;
+                aggs[i].aggregateSerialized(buf);
+            } else {
+                values[i] = codec.decode(i, buf);
+                if (aggr)
+                    aggs[i].aggregate(values[i]);
+            }
+        }
+    }
+
     public void aggregate(Object[] values1, Object[] values2, Object[] result) {
         assert values1.length == values2.length && values2.length == descLength && values1.length == result.length;
 
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.measure;
+
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.measure.basic.BasicMeasureType;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.datatype.DoubleSerializer;
+import org.apache.kylin.metadata.datatype.LongSerializer;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.MeasureDesc;
+
+/**
+ * Merges two measure blocks encoded by {@link BufferedMeasureCodec} into one, as {@link MeasureAggregators} does for
+ * decoded measures.
+ * <p>
+ * Only measures that need an object to aggregate are deserialized. Count, sum, min and max of long and double are
+ * merged on their encoding, and the measures not to aggregate are copied from the first block.
+ * <p>
+ * This class embeds a reusable byte buffer like {@link BufferedMeasureCodec}, and is not thread-safe.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+public class MeasureBlockMerger implements Serializable {
+
+    private static final int COPY = 0;
+    private static final int LONG_SUM = 1;
+    private static final int LONG_MIN = 2;
+    private static final int LONG_MAX = 3;
+    private static final int DOUBLE_SUM = 4;
+    private static final int DOUBLE_MIN = 5;
+    private static final int DOUBLE_MAX = 6;
+    private static final int OBJECT = 7;
+    private static final int SERIALIZED = 8;
+
+    private final int nMeasures;
+    private final DataTypeSerializer[] serializers;
+    private final MeasureAggregator[] aggs;
+    private final int[] mergeTypes;
+
+    private transient ByteBuffer buf;
+
+    public MeasureBlockMerger(Collection<MeasureDesc> measureDescs) {
+        this(measureDescs, null);
+    }
+
+    /**
+     * @param aggrMask the measures to aggregate, the others are copied from the first block; null to aggregate all
+     */
+    public MeasureBlockMerger(Collection<MeasureDesc> measureDescs, boolean[] aggrMask) {
+        MeasureDesc[] descs = measureDescs.toArray(new MeasureDesc[measureDescs.size()]);
+        this.nMeasures = descs.length;
+        this.serializers = new DataTypeSerializer[nMeasures];
+        this.aggs = new MeasureAggregator[nMeasures];
+        this.mergeTypes = new int[nMeasures];
+
+        Map<String, Integer> measureIndexMap = new HashMap<String, Integer>();
+        for (int i = 0; i < nMeasures; i++) {
+            FunctionDesc func = descs[i].getFunction();
+            serializers[i] = DataTypeSerializer.create(func.getReturnDataType());
+            aggs[i] = func.getMeasureType().newAggregator();
+            mergeTypes[i] = aggrMask != null && !aggrMask[i] ? COPY : getMergeType(func, serializers[i], aggs[i]);
+            measureIndexMap.put(descs[i].getName(), i);
+        }
+        // fill back dependent aggregator, and aggregate both measures as objects
+        for (int i = 0; i < nMeasures; i++) {
+            String depMsrRef = descs[i].getDependentMeasureRef();
+            if (depMsrRef != null) {
+                int index = measureIndexMap.get(depMsrRef);
+                aggs[i].setDependentAggregator(aggs[index]);
+                mergeTypes[i] = mergeTypes[i] == COPY ? COPY : OBJECT;
+                mergeTypes[index] = mergeTypes[index] == COPY ? COPY : OBJECT;
+            }
+        }
+    }
+
+    private static int getMergeType(FunctionDesc func, DataTypeSerializer serializer, MeasureAggregator agg) {
+        if (!(func.getMeasureType() instanceof BasicMeasureType)) {
+            return agg.supportAggregateSerialized() ? SERIALIZED : OBJECT;
+        }
+
+        boolean isSum = func.isSum() || func.isCount();
+        if (serializer instanceof LongSerializer) {
+            return isSum ? LONG_SUM : func.isMin() ? LONG_MIN : func.isMax() ? LONG_MAX : OBJECT;
+        } else if (serializer instanceof DoubleSerializer) {
+            return isSum ? DOUBLE_SUM : func.isMin() ? DOUBLE_MIN : func.isMax() ? DOUBLE_MAX : OBJECT;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    public byte[] merge(byte[] block1, byte[] block2) {
+        if (buf == null) {
+            buf = ByteBuffer.allocate(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);
+        }
+
+        while (true) {
+            try {
+                buf.clear();
+                merge(ByteBuffer.wrap(block1), ByteBuffer.wrap(block2), buf);
+                return Arrays.copyOf(buf.array(), buf.position());
+
+            } catch (BufferOverflowException boe) {
+                if (buf.capacity() >= BufferedMeasureCodec.MAX_BUFFER_SIZE)
+                    throw boe;
+
+                int size = buf.capacity() * 2;
+                buf = null; // release memory for GC
+                buf = ByteBuffer.allocate(size);
+            }
+        }
+    }
+
+    private void merge(ByteBuffer in1, ByteBuffer in2, ByteBuffer out) {
+        for (int i = 0; i < nMeasures; i++) {
+            switch (mergeTypes[i]) {
+            case COPY:
+                int len = serializers[i].peekLength(in1);
+                out.put(in1.array(), in1.arrayOffset() + in1.position(), len);
+                in1.position(in1.position() + len);
+                in2.position(in2.position() + serializers[i].peekLength(in2));
+                break;
+            case LONG_SUM:
+                BytesUtil.writeVLong(BytesUtil.readVLong(in1) + BytesUtil.readVLong(in2), out);
+                break;
+            case LONG_MIN:
+                BytesUtil.writeVLong(Math.min(BytesUtil.readVLong(in1), BytesUtil.readVLong(in2)), out);
+                break;
+            case LONG_MAX:
+                BytesUtil.writeVLong(Math.max(BytesUtil.readVLong(in1), BytesUtil.readVLong(in2)), out);
+                break;
+            case DOUBLE_SUM:
+                out.putDouble(in1.getDouble() + in2.getDouble());
+                break;
+            case DOUBLE_MIN:
+                out.putDouble(Math.min(in1.getDouble(), in2.getDouble()));
+                break;
+            case DOUBLE_MAX:
+                out.putDouble(Math.max(in1.getDouble(), in2.getDouble()));
+                break;
+            case SERIALIZED:
+                aggs[i].reset();
+                aggs[i].aggregateSerialized(in1);
+                aggs[i].aggregateSerialized(in2);
+                serializers[i].serialize(aggs[i].getState(), out);
+                break;
+            default:
+                Object value1 = serializers[i].deserialize(in1);
+                Object value2 = serializers[i].deserialize(in2);
+                serializers[i].serialize(aggs[i].aggregate(value1, value2), out);
+            }
+        }
+    }
+}
@@ -91,6 +91,10 @@ public class MeasureCodec implements java.io.Serializable {
         return length;
     }
 
+    public Object decode(int idx, ByteBuffer buf) {
+        return serializers[idx].deserialize(buf);
+    }
+
     public void decode(ByteBuffer buf, Object[] result) {
         assert result.length == nMeasures;
         for (int i = 0; i < nMeasures; i++) {
@@ -18,6 +18,8 @@
 
 package org.apache.kylin.measure.bitmap;
 
+import java.nio.ByteBuffer;
+
 import org.apache.kylin.measure.MeasureAggregator;
 
 public class BitmapAggregator extends MeasureAggregator<BitmapCounter> {
@@ -43,6 +45,27 @@ public class BitmapAggregator extends MeasureAggregator<BitmapCounter> {
         sum.orWith(value);
     }
 
+    @Override
+    public boolean supportAggregateSerialized() {
+        return true;
+    }
+
+    // ORs a view over the serialized bitmap into the sum, the content of each value is read in place and only
+    // the containers the sum takes are copied
+    @Override
+    public void aggregateSerialized(ByteBuffer in) {
+        if (BitmapSerializer.isResult(in)) {
+            aggregate(BitmapSerializer.readResult(in));
+            return;
+        }
+
+        BitmapCounter value = bitmapFactory.mapBitmap(in);
+        if (sum == null) {
+            sum = bitmapFactory.newBitmap();
+        }
+        sum.orWith(value);
+    }
+
     @Override
     public BitmapCounter aggregate(BitmapCounter value1, BitmapCounter value2) {
         BitmapCounter merged = bitmapFactory.newBitmap();
@@ -20,6 +20,7 @@ package org.apache.kylin.measure.bitmap;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 public interface BitmapCounterFactory {
     BitmapCounter newBitmap();
@@ -29,4 +30,21 @@ public interface BitmapCounterFactory {
     BitmapCounter newBitmap(long counter);
 
     BitmapCounter newBitmap(ByteBuffer in) throws IOException;
+
+    /**
+     * Maps the bitmap serialized at the current position of `in`, without copying its content. The returned bitmap
+     * is only valid while the content of `in` is unchanged, it copies the content before any change to itself.
+     * The position of `in` is moved past the bitmap.
+     */
+    BitmapCounter mapBitmap(ByteBuffer in);
+
+    /**
+     * @return a new bitmap of the union of all the bitmaps, computed in one pass. The bitmaps are not modified.
+     */
+    BitmapCounter union(Collection<BitmapCounter> bitmaps);
+
+    /**
+     * @return the cardinality of the intersection of all the bitmaps. The bitmaps are not modified.
+     */
+    long intersectionCount(Collection<BitmapCounter> bitmaps);
 }
@@ -19,6 +19,7 @@ package org.apache.kylin.measure.bitmap;
 
 import org.apache.kylin.measure.ParamAsMeasureCount;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,7 @@ public class BitmapIntersectDistinctCountAggFunc implements ParamAsMeasureCount
     }
 
     public static class RetentionPartialResult {
+        // the values of a key are ORed into one bitmap as they come, holding no more than the union
         Map<Object, BitmapCounter> map;
         List keyList;
 
@@ -50,11 +52,11 @@ public class BitmapIntersectDistinctCountAggFunc implements ParamAsMeasureCount
                 this.keyList = keyList;
             }
             if (this.keyList != null && this.keyList.contains(key)) {
-                BitmapCounter counter = map.get(key);
-                if (counter == null) {
-                    map.put(key, counter = factory.newBitmap());
+                BitmapCounter union = map.get(key);
+                if (union == null) {
+                    map.put(key, union = factory.newBitmap());
                 }
-                counter.orWith((BitmapCounter) value);
+                union.orWith((BitmapCounter) value);
             }
         }
 
@@ -68,17 +70,11 @@ public class BitmapIntersectDistinctCountAggFunc implements ParamAsMeasureCount
                     return 0;
                 }
             }
-            BitmapCounter counter = null;
+            List<BitmapCounter> unions = new ArrayList<>(keyList.size());
             for (Object key : keyList) {
-                BitmapCounter c = map.get(key);
-                if (counter == null) {
-                    counter = factory.newBitmap();
-                    counter.orWith(c);
-                } else {
-                    counter.andWith(c);
-                }
+                unions.add(map.get(key));
             }
-            return counter.getCount();
+            return factory.intersectionCount(unions);
         }
     }
 
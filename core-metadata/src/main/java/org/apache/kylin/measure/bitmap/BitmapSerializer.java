@@ -49,8 +49,7 @@ public class BitmapSerializer extends DataTypeSerializer<BitmapCounter> {
         try {
             //The length of RoaringBitmap is larger than 12
             if (peekLength(in) == RESULT_SIZE) {
-                int flag = in.getInt();
-                return factory.newBitmap(in.getLong());
+                return readResult(in);
             } else {
                 return factory.newBitmap(in);
             }
@@ -93,14 +92,21 @@ public class BitmapSerializer extends DataTypeSerializer<BitmapCounter> {
     @Override
     public ByteBuffer getFinalResult(ByteBuffer in) {
         ByteBuffer out = ByteBuffer.allocate(RESULT_SIZE);
-        try {
-            BitmapCounter counter = factory.newBitmap(in);
-            out.putInt(IS_RESULT_FLAG);
-            out.putLong(counter.getCount());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        // the count only reads the container headers, so map the bitmap rather than copy it
+        BitmapCounter counter = factory.mapBitmap(in);
+        out.putInt(IS_RESULT_FLAG);
+        out.putLong(counter.getCount());
         out.flip();
         return out;
     }
+
+    // if the value at the position of `in` is a count written by getFinalResult(), rather than a bitmap
+    static boolean isResult(ByteBuffer in) {
+        return in.getInt(in.position()) == IS_RESULT_FLAG;
+    }
+
+    static BitmapCounter readResult(ByteBuffer in) {
+        in.getInt(); // IS_RESULT_FLAG
+        return factory.newBitmap(in.getLong());
+    }
 }
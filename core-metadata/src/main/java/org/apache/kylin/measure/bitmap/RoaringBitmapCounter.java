@@ -50,6 +50,10 @@ public class RoaringBitmapCounter implements BitmapCounter, Serializable {
     }
 
 
+    ImmutableRoaringBitmap getBitmap() {
+        return bitmap;
+    }
+
     private MutableRoaringBitmap getMutableBitmap() {
         if (bitmap instanceof MutableRoaringBitmap) {
             return (MutableRoaringBitmap) bitmap;
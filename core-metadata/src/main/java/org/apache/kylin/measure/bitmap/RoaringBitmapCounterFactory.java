@@ -18,11 +18,14 @@
 
 package org.apache.kylin.measure.bitmap;
 
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 public class RoaringBitmapCounterFactory implements BitmapCounterFactory, Serializable {
     public static final BitmapCounterFactory INSTANCE = new RoaringBitmapCounterFactory();
@@ -50,4 +53,39 @@ public class RoaringBitmapCounterFactory implements BitmapCounterFactory, Serial
         counter.readFields(in);
         return counter;
     }
+
+    @Override
+    public BitmapCounter mapBitmap(ByteBuffer in) {
+        ImmutableRoaringBitmap bitmap = new ImmutableRoaringBitmap(in);
+        in.position(in.position() + bitmap.serializedSizeInBytes());
+        return new RoaringBitmapCounter(bitmap);
+    }
+
+    @Override
+    public BitmapCounter union(Collection<BitmapCounter> bitmaps) {
+        return new RoaringBitmapCounter(BufferFastAggregation.or(toRoaringBitmaps(bitmaps)));
+    }
+
+    @Override
+    public long intersectionCount(Collection<BitmapCounter> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return 0;
+        }
+        if (bitmaps.size() == 1) {
+            return bitmaps.iterator().next().getCount();
+        }
+        return BufferFastAggregation.and(toRoaringBitmaps(bitmaps)).getCardinality();
+    }
+
+    private static ImmutableRoaringBitmap[] toRoaringBitmaps(Collection<BitmapCounter> bitmaps) {
+        ImmutableRoaringBitmap[] result = new ImmutableRoaringBitmap[bitmaps.size()];
+        int i = 0;
+        for (BitmapCounter bitmap : bitmaps) {
+            if (!(bitmap instanceof RoaringBitmapCounter)) {
+                throw new IllegalArgumentException("Unsupported type: " + bitmap.getClass().getCanonicalName());
+            }
+            result[i++] = ((RoaringBitmapCounter) bitmap).getBitmap();
+        }
+        return result;
+    }
 }
@@ -18,8 +18,6 @@
 package org.apache.kylin.measure.hllc;
 
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Map;
 
 /**
  * Created by xiefan on 16-12-9.
@@ -54,10 +52,10 @@ public class DenseRegister implements Register, java.io.Serializable {
             }
         } else if (another.getRegisterType() == RegisterType.SPARSE) {
             SparseRegister sr = (SparseRegister) another;
-            Collection<Map.Entry<Integer, Byte>> allValue = sr.getAllValue();
-            for (Map.Entry<Integer, Byte> entry : allValue) {
-                if (entry.getValue() > register[entry.getKey()])
-                    register[entry.getKey()] = entry.getValue();
+            for (int i = 0, n = sr.getSize(); i < n; i++) {
+                int pos = sr.getPositionAt(i);
+                if (sr.getValueAt(i) > register[pos])
+                    register[pos] = sr.getValueAt(i);
             }
         } else {
             SingleValueRegister sr = (SingleValueRegister) another;
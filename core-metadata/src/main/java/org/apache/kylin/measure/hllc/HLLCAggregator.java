@@ -18,6 +18,9 @@
 
 package org.apache.kylin.measure.hllc;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import org.apache.kylin.measure.MeasureAggregator;
 
 /**
@@ -52,6 +55,26 @@ public class HLLCAggregator extends MeasureAggregator<HLLCounter> {
         return result;
     }
 
+    @Override
+    public boolean supportAggregateSerialized() {
+        return true;
+    }
+
+    // merges the registers from the buffer, with no HLLCounter deserialized per value
+    @Override
+    public void aggregateSerialized(ByteBuffer in) {
+        if (sum == null) {
+            sum = new HLLCounter(precision);
+            try {
+                sum.readRegisters(in);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            sum.mergeRegisters(in);
+        }
+    }
+
     @Override
     public HLLCounter getState() {
         return sum;
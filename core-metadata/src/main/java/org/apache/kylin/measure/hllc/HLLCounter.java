@@ -26,8 +26,6 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Collection;
-import java.util.Map;
 
 @SuppressWarnings("serial")
 public class HLLCounter implements Serializable, Comparable<HLLCounter> {
@@ -289,10 +287,10 @@ public class HLLCounter implements Serializable, Comparable<HLLCounter> {
                     out.put(sr.getValue());
                 }
             } else if (register.getRegisterType() == RegisterType.SPARSE) { //sparse register
-                Collection<Map.Entry<Integer, Byte>> allValue = ((SparseRegister) register).getAllValue();
-                for (Map.Entry<Integer, Byte> entry : allValue) {
-                    writeUnsigned(entry.getKey(), indexLen, out);
-                    out.put(entry.getValue());
+                SparseRegister sr = (SparseRegister) register;
+                for (int i = 0; i < size; i++) {
+                    writeUnsigned(sr.getPositionAt(i), indexLen, out);
+                    out.put(sr.getValueAt(i));
                 }
             } else { //dense register
                 byte[] registers = ((DenseRegister) register).getRawRegister();
@@ -338,6 +336,68 @@ public class HLLCounter implements Serializable, Comparable<HLLCounter> {
             throw new IllegalStateException();
     }
 
+    /**
+     * Merges a counter serialized by writeRegisters() into this one, reading the registers from the buffer directly.
+     * The result is the same as merge() of the deserialized counter, register type included.
+     */
+    public void mergeRegisters(ByteBuffer in) {
+        byte scheme = in.get();
+        if (scheme == 0) { // map scheme
+            int size = BytesUtil.readVInt(in);
+            if (size > m)
+                throw new IllegalArgumentException("register size (" + size + ") cannot be larger than m (" + m + ")");
+            RegisterType anotherType = isDense(size) ? RegisterType.DENSE
+                    : size <= 1 ? RegisterType.SINGLE_VALUE : RegisterType.SPARSE;
+            prepareMerge(anotherType, size);
+            int indexLen = getRegisterIndexSize();
+            for (int i = 0; i < size; i++) {
+                int key = readUnsigned(in, indexLen);
+                setIfBigger(register, key, in.get());
+            }
+            toDenseIfNeeded();
+        } else if (scheme == 1) { // array scheme
+            prepareMerge(RegisterType.DENSE, m);
+            byte[] registers = ((DenseRegister) register).getRawRegister();
+            if (in.hasArray()) {
+                byte[] array = in.array();
+                int offset = in.arrayOffset() + in.position();
+                for (int i = 0; i < m; i++) {
+                    if (array[offset + i] > registers[i])
+                        registers[i] = array[offset + i];
+                }
+                in.position(in.position() + m);
+            } else {
+                for (int i = 0; i < m; i++) {
+                    byte b = in.get();
+                    if (b > registers[i])
+                        registers[i] = b;
+                }
+            }
+        } else
+            throw new IllegalStateException();
+    }
+
+    // converts the register before a merge of another of the given type and size, as merge() does
+    private void prepareMerge(RegisterType anotherType, int anotherSize) {
+        switch (register.getRegisterType()) {
+            case SINGLE_VALUE:
+                if (anotherType == RegisterType.DENSE) {
+                    register = ((SingleValueRegister) register).toDense(p);
+                } else if (anotherType == RegisterType.SPARSE
+                        || (register.getSize() > 0 && anotherSize > 0)) {
+                    register = ((SingleValueRegister) register).toSparse();
+                }
+                break;
+            case SPARSE:
+                if (anotherType == RegisterType.DENSE) {
+                    register = ((SparseRegister) register).toDense(p);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
     public int peekLength(ByteBuffer in) {
         int mark = in.position();
         int len;
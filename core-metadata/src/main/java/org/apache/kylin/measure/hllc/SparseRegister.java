@@ -17,38 +17,71 @@
 */
 package org.apache.kylin.measure.hllc;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Created by xiefan on 16-12-9.
+ *
+ * The positions are kept sorted in an int[] and the values in a parallel byte[], so a set is a binary search and no
+ * boxed entry is allocated. A sparse register holds at most OVERFLOW_FACTOR of the buckets, a few hundreds of them.
  */
 public class SparseRegister implements Register, java.io.Serializable {
 
-    private Map<Integer, Byte> sparseRegister = new TreeMap<>();
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private byte[] values = new byte[INITIAL_CAPACITY];
+    private int size;
 
     public SparseRegister() {
     }
 
     public DenseRegister toDense(int p) {
         DenseRegister dr = new DenseRegister(p);
-        for (Map.Entry<Integer, Byte> entry : sparseRegister.entrySet()) {
-            dr.set(entry.getKey(), entry.getValue());
+        byte[] raw = dr.getRawRegister();
+        for (int i = 0; i < size; i++) {
+            raw[positions[i]] = values[i];
         }
         return dr;
     }
 
     @Override
     public void set(int pos, byte value) {
-        sparseRegister.put(pos, value);
+        int i = Arrays.binarySearch(positions, 0, size, pos);
+        if (i >= 0) {
+            values[i] = value;
+        } else {
+            insert(-i - 1, pos, value);
+        }
+    }
+
+    /** sets the value if it is bigger than the current one */
+    void setIfBigger(int pos, byte value) {
+        int i = Arrays.binarySearch(positions, 0, size, pos);
+        if (i >= 0) {
+            if (value > values[i])
+                values[i] = value;
+        } else if (value > 0) {
+            insert(-i - 1, pos, value);
+        }
+    }
+
+    private void insert(int i, int pos, byte value) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(positions, i, positions, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        positions[i] = pos;
+        values[i] = value;
+        size++;
     }
 
     @Override
     public byte get(int pos) {
-        Byte b = sparseRegister.get(pos);
-        return b == null ? 0 : b;
+        int i = Arrays.binarySearch(positions, 0, size, pos);
+        return i < 0 ? 0 : values[i];
     }
 
     @Override
@@ -56,29 +89,25 @@ public class SparseRegister implements Register, java.io.Serializable {
         assert another.getRegisterType() != RegisterType.DENSE;
         if (another.getRegisterType() == RegisterType.SPARSE) {
             SparseRegister sr = (SparseRegister) another;
-            for (Map.Entry<Integer, Byte> entry : sr.sparseRegister.entrySet()) {
-                byte v = get(entry.getKey());
-                if (entry.getValue() > v)
-                    sparseRegister.put(entry.getKey(), entry.getValue());
+            for (int i = 0; i < sr.size; i++) {
+                setIfBigger(sr.positions[i], sr.values[i]);
             }
         } else if (another.getRegisterType() == RegisterType.SINGLE_VALUE) {
             SingleValueRegister sr = (SingleValueRegister) another;
             if (sr.getSize() > 0) {
-                byte v = get(sr.getSingleValuePos());
-                if (sr.getValue() > v)
-                    sparseRegister.put(sr.getSingleValuePos(), sr.getValue());
+                setIfBigger(sr.getSingleValuePos(), sr.getValue());
             }
         }
     }
 
     @Override
     public void clear() {
-        sparseRegister.clear();
+        size = 0;
     }
 
     @Override
     public int getSize() {
-        return sparseRegister.size();
+        return size;
     }
 
     @Override
@@ -86,11 +115,23 @@ public class SparseRegister implements Register, java.io.Serializable {
         return RegisterType.SPARSE;
     }
 
+    /** the position of the i-th entry, in ascending order of the positions */
+    public int getPositionAt(int i) {
+        return positions[i];
+    }
+
+    public byte getValueAt(int i) {
+        return values[i];
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((sparseRegister == null) ? 0 : sparseRegister.hashCode());
+        for (int i = 0; i < size; i++) {
+            result = prime * result + positions[i];
+            result = prime * result + values[i];
+        }
         return result;
     }
 
@@ -103,16 +144,13 @@ public class SparseRegister implements Register, java.io.Serializable {
         if (getClass() != obj.getClass())
             return false;
         SparseRegister other = (SparseRegister) obj;
-        if (sparseRegister == null) {
-            if (other.sparseRegister != null)
-                return false;
-        } else if (!sparseRegister.equals(other.sparseRegister))
+        if (size != other.size)
             return false;
+        for (int i = 0; i < size; i++) {
+            if (positions[i] != other.positions[i] || values[i] != other.values[i])
+                return false;
+        }
         return true;
     }
 
-    public Collection<Map.Entry<Integer, Byte>> getAllValue() {
-        return Collections.unmodifiableCollection(sparseRegister.entrySet());
-    }
-
 }
@@ -0,0 +1,500 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.measure.topn;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+
+/**
+ * A TopNCounter of the fixed length keys of the TopN measure, kept in parallel primitive arrays instead of a map and a
+ * linked list of Counter objects.
+ * <p>
+ * The keys of all counters are packed in one byte[], the counts in a double[], and an open addressing index finds the
+ * slot of a key. A min-heap of the slots by count gives the smallest counter for the space saving merge and drops the
+ * extra counters when over capacity, so a merge costs O(log n) per counter instead of a full sort. The counters are
+ * only sorted when read in order, e.g. by topK(), iterator() or the serializer.
+ * <p>
+ * The items of the Counters handed out by topK() and iterator() are views of the key array, valid until the counter
+ * is modified.
+ */
+@SuppressWarnings("serial")
+public class ByteArrayTopNCounter extends TopNCounter<ByteArray> {
+
+    private static final int INITIAL_SLOTS = 4;
+
+    private int keyLength = -1; // unknown until the first key comes
+    private byte[] keys; // keyLength bytes per slot
+    private double[] counts;
+    private int size;
+
+    private int[] index; // slot + 1 of the keys by hash, 0 for an empty bucket
+    private int indexMask;
+
+    private int[] heap; // slots, the smallest count at the top
+    private int[] heapPos; // heap position of each slot
+
+    private int[] sorted; // slots in descending count order, valid when ordered
+    private boolean ordered = true;
+
+    public ByteArrayTopNCounter(int capacity) {
+        super();
+        this.capacity = capacity;
+        allocate(INITIAL_SLOTS);
+    }
+
+    private void allocate(int slots) {
+        keys = new byte[slots * Math.max(keyLength, 0)];
+        counts = new double[slots];
+        heap = new int[slots];
+        heapPos = new int[slots];
+        index = new int[Integer.highestOneBit(slots * 2 - 1) << 1];
+        indexMask = index.length - 1;
+    }
+
+    private void grow() {
+        int slots = counts.length * 2;
+        byte[] oldKeys = keys;
+        double[] oldCounts = counts;
+        int[] oldHeap = heap;
+        int[] oldHeapPos = heapPos;
+
+        allocate(slots);
+        System.arraycopy(oldKeys, 0, keys, 0, size * keyLength);
+        System.arraycopy(oldCounts, 0, counts, 0, size);
+        System.arraycopy(oldHeap, 0, heap, 0, size);
+        System.arraycopy(oldHeapPos, 0, heapPos, 0, size);
+        for (int slot = 0; slot < size; slot++) {
+            index[findBucket(keys, slot * keyLength)] = slot + 1;
+        }
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    private void checkKeyLength(int length) {
+        if (keyLength < 0) {
+            keyLength = length;
+            keys = new byte[counts.length * keyLength];
+        } else if (keyLength != length) {
+            throw new IllegalArgumentException("Key length " + length + " differs from " + keyLength);
+        }
+    }
+
+    // ============================================================================
+    // index
+
+    private int hash(byte[] array, int offset) {
+        int h = 1;
+        for (int i = offset, end = offset + keyLength; i < end; i++) {
+            h = 31 * h + array[i];
+        }
+        // nearby dictionary ids differ in the last bytes only, spread them over the buckets
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /** the bucket holding the key, or the empty bucket where it would go */
+    private int findBucket(byte[] array, int offset) {
+        int bucket = hash(array, offset) & indexMask;
+        while (true) {
+            int slot = index[bucket] - 1;
+            if (slot < 0 || Bytes.equals(keys, slot * keyLength, keyLength, array, offset, keyLength))
+                return bucket;
+            bucket = (bucket + 1) & indexMask;
+        }
+    }
+
+    private int findSlot(byte[] array, int offset) {
+        return index[findBucket(array, offset)] - 1;
+    }
+
+    // backward shift deletion of linear probing, no tombstones
+    private void removeFromIndex(int bucket) {
+        int hole = bucket;
+        int next = (hole + 1) & indexMask;
+        while (index[next] != 0) {
+            int home = hash(keys, (index[next] - 1) * keyLength) & indexMask;
+            // move the entry into the hole if the hole lies on its probe path
+            if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & indexMask;
+        }
+        index[hole] = 0;
+    }
+
+    // ============================================================================
+    // heap
+
+    private void siftUp(int pos) {
+        int slot = heap[pos];
+        double count = counts[slot];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (counts[heap[parent]] <= count)
+                break;
+            heap[pos] = heap[parent];
+            heapPos[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = slot;
+        heapPos[slot] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int slot = heap[pos];
+        double count = counts[slot];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]])
+                child++;
+            if (count <= counts[heap[child]])
+                break;
+            heap[pos] = heap[child];
+            heapPos[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = slot;
+        heapPos[slot] = pos;
+    }
+
+    private void setCount(int slot, double count) {
+        double old = counts[slot];
+        counts[slot] = count;
+        if (count > old)
+            siftDown(heapPos[slot]);
+        else if (count < old)
+            siftUp(heapPos[slot]);
+    }
+
+    private double minCount() {
+        return counts[heap[0]];
+    }
+
+    // ============================================================================
+    // slots
+
+    private void add(byte[] array, int offset, double count) {
+        int bucket = findBucket(array, offset);
+        int slot = index[bucket] - 1;
+        if (slot >= 0) {
+            setCount(slot, counts[slot] + count);
+            return;
+        }
+
+        if (size == counts.length) {
+            grow();
+            bucket = findBucket(array, offset);
+        }
+        slot = size++;
+        System.arraycopy(array, offset, keys, slot * keyLength, keyLength);
+        counts[slot] = count;
+        index[bucket] = slot + 1;
+        heap[slot] = slot;
+        siftUp(slot);
+    }
+
+    /** drops the counter of the smallest count */
+    private void removeMin() {
+        int slot = heap[0];
+        int last = size - 1;
+
+        removeFromIndex(findBucket(keys, slot * keyLength));
+
+        // the last heap entry fills the top
+        heap[0] = heap[last];
+        heapPos[heap[0]] = 0;
+
+        // the last slot fills the removed one, to keep the slots dense
+        if (slot != last) {
+            int lastBucket = findBucket(keys, last * keyLength);
+            System.arraycopy(keys, last * keyLength, keys, slot * keyLength, keyLength);
+            counts[slot] = counts[last];
+            index[lastBucket] = slot + 1;
+            heap[heapPos[last]] = slot;
+            heapPos[slot] = heapPos[last];
+        }
+        size--;
+        if (size > 0)
+            siftDown(0);
+    }
+
+    // removing moves the slots, so a previous sort is no longer valid
+    private void retainTop(int n) {
+        if (size <= n)
+            return;
+        while (size > n) {
+            removeMin();
+        }
+        ordered = false;
+    }
+
+    // ============================================================================
+
+    @Override
+    public void offer(ByteArray item, double incrementCount) {
+        checkKeyLength(item.length());
+        add(item.array(), item.offset(), incrementCount);
+        ordered = false;
+    }
+
+    /**
+     * The order is restored by a sort when the counters are read, so the item is not really put at the head.
+     */
+    @Override
+    public void offerToHead(ByteArray item, double count) {
+        checkKeyLength(item.length());
+        int slot = findSlot(item.array(), item.offset());
+        if (slot >= 0)
+            setCount(slot, count);
+        else
+            add(item.array(), item.offset(), count);
+        ordered = false;
+    }
+
+    @Override
+    public TopNCounter<ByteArray> merge(TopNCounter<ByteArray> another) {
+        if (another.size() == 0)
+            return this;
+
+        boolean thisFull = this.size() >= this.capacity;
+        boolean anotherFull = another.size() >= another.capacity;
+        double m1 = thisFull ? minCount() : 0.0;
+
+        if (another instanceof ByteArrayTopNCounter) {
+            ByteArrayTopNCounter that = (ByteArrayTopNCounter) another;
+            double m2 = anotherFull ? that.minCount() : 0.0;
+            mergePrepare(that.keyLength, anotherFull, m2);
+            for (int slot = 0; slot < that.size; slot++) {
+                mergeOne(that.keys, slot * keyLength, that.counts[slot], m1, m2);
+            }
+        } else {
+            LinkedList<Counter<ByteArray>> list = another.getCounterList();
+            double m2 = anotherFull ? list.getLast().getCount() : 0.0;
+            mergePrepare(list.getFirst().getItem().length(), anotherFull, m2);
+            for (Counter<ByteArray> c : list) {
+                checkKeyLength(c.getItem().length());
+                mergeOne(c.getItem().array(), c.getItem().offset(), c.getCount(), m1, m2);
+            }
+        }
+
+        retainTop(capacity);
+        ordered = false;
+        return this;
+    }
+
+    private void mergePrepare(int anotherKeyLength, boolean anotherFull, double m2) {
+        checkKeyLength(anotherKeyLength);
+        if (anotherFull) {
+            // adding the same to all keeps the heap order
+            for (int slot = 0; slot < size; slot++) {
+                counts[slot] += m2;
+            }
+        }
+    }
+
+    private void mergeOne(byte[] array, int offset, double count, double m1, double m2) {
+        int slot = findSlot(array, offset);
+        if (slot >= 0)
+            setCount(slot, counts[slot] + (count - m2));
+        else
+            add(array, offset, count + m1);
+    }
+
+    @Override
+    public void sortAndRetain() {
+        retainTop(capacity);
+        sort();
+    }
+
+    // heap sort of a copy of the heap, popping the smallest to the end
+    private void sort() {
+        if (ordered)
+            return;
+
+        if (sorted == null || sorted.length < size)
+            sorted = new int[counts.length];
+        int[] h = new int[size];
+        System.arraycopy(heap, 0, h, 0, size);
+        for (int n = size; n > 0; n--) {
+            sorted[n - 1] = h[0];
+            int slot = h[n - 1];
+            double count = counts[slot];
+            int pos = 0;
+            int half = (n - 1) >>> 1;
+            while (pos < half) {
+                int child = 2 * pos + 1;
+                if (child + 1 < n - 1 && counts[h[child + 1]] < counts[h[child]])
+                    child++;
+                if (count <= counts[h[child]])
+                    break;
+                h[pos] = h[child];
+                pos = child;
+            }
+            h[pos] = slot;
+        }
+        ordered = true;
+    }
+
+    @Override
+    public void retain(int newCapacity) {
+        this.capacity = newCapacity;
+        retainTop(newCapacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Counter<ByteArray> newCounter(int slot) {
+        return new Counter<ByteArray>(new ByteArray(keys, slot * keyLength, keyLength), counts[slot]);
+    }
+
+    @Override
+    public List<Counter<ByteArray>> topK(int k) {
+        sortAndRetain();
+        int n = Math.min(k, size);
+        List<Counter<ByteArray>> topK = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            topK.add(newCounter(sorted[i]));
+        }
+        return topK;
+    }
+
+    @Override
+    public LinkedList<Counter<ByteArray>> getCounterList() {
+        sort();
+        LinkedList<Counter<ByteArray>> list = new LinkedList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(newCounter(sorted[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Get the counter values in ascending order
+     */
+    @Override
+    public double[] getCounters() {
+        sort();
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = counts[sorted[size - 1 - i]];
+        }
+        return result;
+    }
+
+    /**
+     * Iterates the counters in ascending order, as TopNCounter does
+     */
+    @Override
+    public Iterator<Counter<ByteArray>> iterator() {
+        sort();
+        return new Iterator<Counter<ByteArray>>() {
+            int i = size - 1;
+
+            @Override
+            public boolean hasNext() {
+                return i >= 0;
+            }
+
+            @Override
+            public Counter<ByteArray> next() {
+                if (i < 0)
+                    throw new NoSuchElementException();
+                return newCounter(sorted[i--]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        sort();
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < size; i++) {
+            int slot = sorted[i];
+            sb.append(new ByteArray(keys, slot * keyLength, keyLength));
+            sb.append(':');
+            sb.append(counts[slot]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    // ============================================================================
+    // for TopNCounterSerializer, no Counter objects in between
+
+    /** writes the keys in ascending order of the counts */
+    void writeKeys(ByteBuffer out) {
+        sort();
+        for (int i = size - 1; i >= 0; i--) {
+            out.put(keys, sorted[i] * keyLength, keyLength);
+        }
+    }
+
+    /** loads the counters written in ascending order into an empty counter */
+    void readKeys(ByteBuffer in, int n, int length, double[] ascendingCounts) {
+        if (n == 0)
+            return;
+
+        checkKeyLength(length);
+        while (counts.length < n) {
+            grow();
+        }
+        // the largest count goes to slot 0, so the slots are in descending order already
+        for (int slot = 0; slot < n; slot++) {
+            in.get(keys, (n - 1 - slot) * keyLength, keyLength);
+        }
+        for (int slot = 0; slot < n; slot++) {
+            counts[slot] = ascendingCounts[n - 1 - slot];
+            index[findBucket(keys, slot * keyLength)] = slot + 1;
+        }
+        // a descending array reversed is a valid min-heap
+        size = n;
+        for (int pos = 0; pos < n; pos++) {
+            heap[pos] = n - 1 - pos;
+            heapPos[n - 1 - pos] = pos;
+        }
+        if (sorted == null || sorted.length < n)
+            sorted = new int[counts.length];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+        }
+        ordered = true;
+    }
+}
@@ -25,7 +25,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -59,6 +58,12 @@ public class TopNCounter<T> implements Iterable<Counter<T>>, java.io.Serializabl
         counterList = Lists.newLinkedList();
     }
 
+    /**
+     * For subclasses that keep the counters in their own structure
+     */
+    protected TopNCounter() {
+    }
+
     public int getCapacity() {
         return capacity;
     }
@@ -158,7 +163,8 @@ public class TopNCounter<T> implements Iterable<Counter<T>>, java.io.Serializabl
         boolean thisFull = this.size() >= this.capacity;
         boolean anotherFull = another.size() >= another.capacity;
         double m1 = thisFull ? this.counterList.getLast().count : 0.0;
-        double m2 = anotherFull ? another.counterList.getLast().count : 0.0;
+        LinkedList<Counter<T>> anotherList = another.getCounterList();
+        double m2 = anotherFull ? anotherList.getLast().count : 0.0;
 
         if (anotherFull == true) {
             for (Counter<T> entry : this.counterMap.values()) {
@@ -166,11 +172,11 @@ public class TopNCounter<T> implements Iterable<Counter<T>>, java.io.Serializabl
             }
         }
 
-        for (Map.Entry<T, Counter<T>> entry : another.counterMap.entrySet()) {
-            if (this.counterMap.containsKey(entry.getKey())) {
-                this.offer(entry.getValue().getItem(), (entry.getValue().count - m2));
+        for (Counter<T> entry : anotherList) {
+            if (this.counterMap.containsKey(entry.getItem())) {
+                this.offer(entry.getItem(), (entry.count - m2));
             } else {
-                this.offer(entry.getValue().getItem(), entry.getValue().count + m1);
+                this.offer(entry.getItem(), entry.count + m1);
             }
         }
 
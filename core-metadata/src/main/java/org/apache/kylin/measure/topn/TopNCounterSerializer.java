@@ -71,6 +71,11 @@ public class TopNCounterSerializer extends DataTypeSerializer<TopNCounter<ByteAr
 
     @Override
     public void serialize(TopNCounter<ByteArray> value, ByteBuffer out) {
+        if (value instanceof ByteArrayTopNCounter) {
+            serialize((ByteArrayTopNCounter) value, out);
+            return;
+        }
+
         double[] counters = value.getCounters();
         List<Counter<ByteArray>> peek = value.topK(1);
         int keyLength = peek.size() > 0 ? peek.get(0).getItem().length() : 0;
@@ -86,6 +91,16 @@ public class TopNCounterSerializer extends DataTypeSerializer<TopNCounter<ByteAr
         }
     }
 
+    // same layout, the keys go from the key array of the counter to the buffer directly
+    private void serialize(ByteArrayTopNCounter value, ByteBuffer out) {
+        double[] counters = value.getCounters();
+        out.putInt(value.getCapacity());
+        out.putInt(value.size());
+        out.putInt(value.size() > 0 ? value.getKeyLength() : 0);
+        dds.serialize(counters, out);
+        value.writeKeys(out);
+    }
+
     @Override
     public TopNCounter<ByteArray> deserialize(ByteBuffer in) {
         int capacity = in.getInt();
@@ -93,17 +108,8 @@ public class TopNCounterSerializer extends DataTypeSerializer<TopNCounter<ByteAr
         int keyLength = in.getInt();
         double[] counters = dds.deserialize(in);
 
-        TopNCounter<ByteArray> counter = new TopNCounter<ByteArray>(capacity);
-        ByteArray byteArray;
-        byte[] keyArray = new byte[size * keyLength];
-        int offset = 0;
-        for (int i = 0; i < size; i++) {
-            in.get(keyArray, offset, keyLength);
-            byteArray = new ByteArray(keyArray, offset, keyLength);
-            counter.offerToHead(byteArray, counters[i]);
-            offset += keyLength;
-        }
-
+        ByteArrayTopNCounter counter = new ByteArrayTopNCounter(capacity);
+        counter.readKeys(in, size, keyLength, counters);
         return counter;
     }
 
@@ -156,7 +156,7 @@ public class TopNMeasureType extends MeasureType<TopNCounter<ByteArray>> {
                     offset += dimensionEncodings[i].getLengthOfEncoding();
                 }
 
-                TopNCounter<ByteArray> topNCounter = new TopNCounter<ByteArray>(
+                TopNCounter<ByteArray> topNCounter = new ByteArrayTopNCounter(
                         dataType.getPrecision() * TopNCounter.EXTRA_SPACE_RATE);
                 topNCounter.offer(key, counter);
                 return topNCounter;
@@ -193,25 +193,23 @@ public class TopNMeasureType extends MeasureType<TopNCounter<ByteArray>> {
                     return topNCounter;
                 }
 
-                int topNSize = topNCounter.size();
-                byte[] newIdBuf = new byte[topNSize * newKeyLength];
-
-                int bufOffset = 0;
+                // the items of a ByteArrayTopNCounter are views, so re-encode into a new counter
+                TopNCounter<ByteArray> reEncoded = new ByteArrayTopNCounter(topNCounter.getCapacity());
+                ByteArray newId = new ByteArray(newKeyLength);
                 for (Counter<ByteArray> c : topNCounter) {
                     int offset = c.getItem().offset();
                     int innerBuffOffset = 0;
                     for (int i = 0; i < dimensionEncodings.length; i++) {
                         String dimValue = dimensionEncodings[i].decode(c.getItem().array(), offset,
                                 dimensionEncodings[i].getLengthOfEncoding());
-                        newDimensionEncodings[i].encode(dimValue, newIdBuf, bufOffset + innerBuffOffset);
+                        newDimensionEncodings[i].encode(dimValue, newId.array(), innerBuffOffset);
                         innerBuffOffset += newDimensionEncodings[i].getLengthOfEncoding();
                         offset += dimensionEncodings[i].getLengthOfEncoding();
                     }
 
-                    c.getItem().reset(newIdBuf, bufOffset, newKeyLength);
-                    bufOffset += newKeyLength;
+                    reEncoded.offer(newId, c.getCount()); // the key bytes are copied in
                 }
-                return topNCounter;
+                return reEncoded;
             }
         };
     }
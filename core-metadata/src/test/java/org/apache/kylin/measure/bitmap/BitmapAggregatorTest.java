@@ -25,6 +25,7 @@ import java.nio.ByteBuffer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class BitmapAggregatorTest {
     private static final BitmapCounterFactory factory = RoaringBitmapCounterFactory.INSTANCE;
@@ -87,4 +88,47 @@ public class BitmapAggregatorTest {
 
 
     }
+
+    @Test
+    public void testAggregateSerialized() throws IOException {
+        BitmapCounter counter1 = factory.newBitmap(1, 3, 5);
+        BitmapCounter counter2 = factory.newBitmap(1, 2, 4, 6, 100000);
+        BitmapCounter counter3 = factory.newBitmap(1, 5, 7);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        counter1.write(buffer);
+        counter2.write(buffer);
+        counter3.write(buffer);
+        buffer.flip();
+
+        BitmapAggregator aggregator = new BitmapAggregator();
+        assertTrue(aggregator.supportAggregateSerialized());
+        aggregator.aggregateSerialized(buffer);
+        assertEquals(counter1, aggregator.getState());
+        aggregator.aggregateSerialized(buffer);
+        aggregator.aggregateSerialized(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+
+        // the state doesn't refer to the buffer
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        assertEquals(factory.newBitmap(1, 2, 3, 4, 5, 6, 7, 100000), aggregator.getState());
+    }
+
+    @Test
+    public void testAggregateSerializedResult() {
+        BitmapSerializer serializer = new BitmapSerializer(null);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        serializer.serialize(factory.newBitmap(1, 3, 5), buffer);
+        buffer.flip();
+        ByteBuffer result = serializer.getFinalResult(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+
+        BitmapAggregator aggregator = new BitmapAggregator();
+        aggregator.aggregateSerialized(result);
+        assertEquals(3, aggregator.getState().getCount());
+        assertEquals(result.limit(), result.position());
+    }
 }
\ No newline at end of file
@@ -20,6 +20,11 @@ package org.apache.kylin.measure.bitmap;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -56,4 +61,44 @@ public class BitmapCounterTest {
         assertEquals(0, counter2.getCount());
     }
 
+    @Test
+    public void testMapBitmap() throws IOException {
+        BitmapCounter counter1 = factory.newBitmap(1, 3, 5, 100000);
+        BitmapCounter counter2 = factory.newBitmap(2, 3);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        counter1.write(buffer);
+        counter2.write(buffer);
+        buffer.flip();
+
+        BitmapCounter mapped1 = factory.mapBitmap(buffer);
+        BitmapCounter mapped2 = factory.mapBitmap(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+        assertEquals(counter1, mapped1);
+        assertEquals(counter2, mapped2);
+
+        // a change to the mapped bitmap doesn't write through to the buffer
+        mapped1.add(7);
+        assertEquals(5, mapped1.getCount());
+        buffer.rewind();
+        assertEquals(counter1, factory.newBitmap(buffer));
+    }
+
+    @Test
+    public void testUnionAndIntersection() {
+        BitmapCounter counter1 = factory.newBitmap(1, 2, 3, 100000);
+        BitmapCounter counter2 = factory.newBitmap(2, 3, 4, 100000);
+        BitmapCounter counter3 = factory.newBitmap(3, 100000, 200000);
+
+        BitmapCounter union = factory.union(Arrays.asList(counter1, counter2, counter3));
+        assertEquals(factory.newBitmap(1, 2, 3, 4, 100000, 200000), union);
+        assertEquals(4, counter1.getCount()); // not modified
+
+        assertEquals(2, factory.intersectionCount(Arrays.asList(counter1, counter2, counter3)));
+        assertEquals(3, factory.intersectionCount(Arrays.asList(counter1, counter2)));
+        assertEquals(4, factory.intersectionCount(Collections.singletonList(counter1)));
+        assertEquals(0, factory.intersectionCount(Collections.<BitmapCounter> emptyList()));
+        assertEquals(4, counter1.getCount());
+    }
+
 }
\ No newline at end of file
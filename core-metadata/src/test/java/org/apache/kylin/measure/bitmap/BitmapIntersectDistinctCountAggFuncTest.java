@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.measure.bitmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.measure.bitmap.BitmapIntersectDistinctCountAggFunc.RetentionPartialResult;
+import org.junit.Test;
+
+public class BitmapIntersectDistinctCountAggFuncTest {
+    private static final BitmapCounterFactory factory = RoaringBitmapCounterFactory.INSTANCE;
+
+    @Test
+    public void testIntersectCount() {
+        List<String> keyList = Arrays.asList("A", "B");
+        RetentionPartialResult result = BitmapIntersectDistinctCountAggFunc.init();
+
+        // many values for key A, users 0 to 100
+        for (int i = 0; i < 100; i++) {
+            BitmapIntersectDistinctCountAggFunc.add(result, factory.newBitmap(i, i + 1), "A", keyList);
+        }
+        BitmapIntersectDistinctCountAggFunc.add(result, factory.newBitmap(1, 50, 100, 101), "B", keyList);
+        BitmapIntersectDistinctCountAggFunc.add(result, factory.newBitmap(2, 200), "B", keyList);
+        BitmapIntersectDistinctCountAggFunc.add(result, factory.newBitmap(1, 2), "C", keyList);
+
+        assertEquals(4, BitmapIntersectDistinctCountAggFunc.result(result));
+    }
+
+    @Test
+    public void testMissingKey() {
+        List<String> keyList = Arrays.asList("A", "B");
+        RetentionPartialResult result = BitmapIntersectDistinctCountAggFunc.init();
+        BitmapIntersectDistinctCountAggFunc.add(result, factory.newBitmap(1, 2), "A", keyList);
+
+        assertEquals(0, BitmapIntersectDistinctCountAggFunc.result(result));
+    }
+}
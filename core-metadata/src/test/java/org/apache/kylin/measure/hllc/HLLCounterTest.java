@@ -178,6 +178,40 @@ public class HLLCounterTest {
         buf.clear();
     }
 
+    @Test
+    public void testMergeRegisters() throws IOException {
+        int p = 10;
+        // cardinalities of single value, sparse and dense registers
+        int[] cards = new int[] { 0, 1, 2, 5, 100, 5000 };
+        for (int card1 : cards) {
+            for (int card2 : cards) {
+                HLLCounter c1 = new HLLCounter(p);
+                HLLCounter c2 = new HLLCounter(p);
+                for (int i = 0; i < card1; i++)
+                    c1.add(rand1.nextInt());
+                for (int i = 0; i < card2; i++)
+                    c2.add(rand1.nextInt());
+
+                buf.clear();
+                c2.writeRegisters(buf);
+                int len = buf.position();
+                buf.flip();
+
+                HLLCounter expected = new HLLCounter(c1);
+                HLLCounter deserialized = new HLLCounter(p);
+                deserialized.readRegisters(buf);
+                expected.merge(deserialized);
+
+                buf.rewind();
+                c1.mergeRegisters(buf);
+                assertEquals(len, buf.position());
+                assertEquals(expected.getRegisterType(), c1.getRegisterType());
+                assertEquals(expected, c1);
+            }
+        }
+        buf.clear();
+    }
+
     @Test
     public void testEquivalence() {
         //test single
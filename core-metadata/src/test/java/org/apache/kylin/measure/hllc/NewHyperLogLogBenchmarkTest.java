@@ -297,6 +297,49 @@ public class NewHyperLogLogBenchmarkTest {
         }
     }
 
+    // Aggregates serialized counters as the cuboid reducers and the coprocessor do, by deserialize and merge
+    // against merging straight from the serialized registers.
+    @Test
+    public void aggregateSerializedBenchmark() throws Exception {
+        final int rows = 100000;
+        for (int p = 10; p <= 16; p++) {
+            final int m = 1 << p;
+            final HLLCSerializer ser = new HLLCSerializer(DataType.getType("hllc(" + p + ")"));
+            System.out.println("aggregateSerializedBenchmark(), p : " + p);
+            System.out.println("----------------------------");
+
+            for (int cardinality : new int[] { 1, 10, m / 20, m }) {
+                final ByteBuffer buf = ByteBuffer.allocate(ser.maxLength());
+                ser.serialize(getRandNewCounter(p, cardinality), buf);
+                buf.flip();
+
+                final HLLCAggregator oldAggr = new HLLCAggregator(p);
+                long oldTime = runTestCase(new TestCase() {
+                    @Override
+                    public void run() throws Exception {
+                        for (int i = 0; i < rows; i++) {
+                            buf.rewind();
+                            oldAggr.aggregate(ser.deserialize(buf));
+                        }
+                    }
+                });
+                final HLLCAggregator newAggr = new HLLCAggregator(p);
+                long newTime = runTestCase(new TestCase() {
+                    @Override
+                    public void run() throws Exception {
+                        for (int i = 0; i < rows; i++) {
+                            buf.rewind();
+                            newAggr.aggregateSerialized(buf);
+                        }
+                    }
+                });
+                assertEquals(oldAggr.getState(), newAggr.getState());
+                System.out.println("cardinality : " + cardinality + ", deserialize and aggregate time : " + oldTime
+                        + ", aggregate serialized time : " + newTime);
+            }
+        }
+    }
+
     interface TestCase {
         void run() throws Exception;
     }
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.measure.topn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class ByteArrayTopNCounterTest {
+
+    private static ByteArray key(int i) {
+        return new ByteArray(Bytes.toBytes(i));
+    }
+
+    // counts with no ties, so the counters to drop are the same for any order
+    private static double randomCount(Random rand) {
+        return 1 + rand.nextInt(1 << 20) / 1024.0;
+    }
+
+    private static Set<String> entries(TopNCounter<ByteArray> counter) {
+        Set<String> result = Sets.newHashSet();
+        for (Counter<ByteArray> c : counter) {
+            result.add(c.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void testOffer() {
+        Random rand = new Random(1);
+        ByteArrayTopNCounter counter = new ByteArrayTopNCounter(1000);
+        Map<Integer, Double> expected = Maps.newHashMap();
+        for (int i = 0; i < 10000; i++) {
+            int k = rand.nextInt(500);
+            double v = rand.nextInt(10);
+            counter.offer(key(k), v);
+            expected.put(k, expected.containsKey(k) ? expected.get(k) + v : v);
+        }
+
+        assertEquals(expected.size(), counter.size());
+        List<Counter<ByteArray>> topK = counter.topK(counter.size());
+        for (int i = 0; i < topK.size(); i++) {
+            Counter<ByteArray> c = topK.get(i);
+            assertEquals(expected.get(Bytes.toInt(c.getItem().array(), c.getItem().offset())), c.getCount(), 0.0);
+            assertTrue(i == 0 || topK.get(i - 1).getCount() >= c.getCount());
+        }
+    }
+
+    @Test
+    public void testRetain() {
+        ByteArrayTopNCounter counter = new ByteArrayTopNCounter(10);
+        for (int i = 0; i < 100; i++) {
+            counter.offer(key(i), i);
+        }
+        counter.sortAndRetain();
+
+        assertEquals(10, counter.size());
+        assertEquals(99.0, counter.topK(1).get(0).getCount(), 0.0);
+        assertEquals(90.0, counter.getCounters()[0], 0.0);
+
+        counter.retain(5);
+        assertEquals(5, counter.size());
+        assertEquals(95.0, counter.getCounters()[0], 0.0);
+    }
+
+    @Test
+    public void testRetainAfterSortedRead() {
+        ByteArrayTopNCounter counter = new ByteArrayTopNCounter(10);
+        for (int i = 0; i < 100; i++) {
+            counter.offer(key(i), i);
+        }
+        // reading sorts all the 100 counters before any is dropped
+        assertEquals(100, counter.getCounters().length);
+        counter.toString();
+
+        // the retained counters are read from the live slots, not from where a previous sort left them
+        List<Counter<ByteArray>> topK = counter.topK(10);
+        assertEquals(10, counter.size());
+        assertEquals(10, topK.size());
+        for (int i = 0; i < topK.size(); i++) {
+            ByteArray item = topK.get(i).getItem();
+            assertEquals(key(99 - i), item);
+            assertEquals(99.0 - i, topK.get(i).getCount(), 0.0);
+            assertTrue(item.offset() < counter.size() * counter.getKeyLength());
+        }
+
+        for (int i = 100; i < 200; i++) {
+            counter.offer(key(i), i);
+        }
+        assertTrue(counter.iterator().hasNext());
+        counter.sortAndRetain();
+        double[] counters = counter.getCounters();
+        assertEquals(10, counters.length);
+        for (int i = 0; i < counters.length; i++) {
+            assertEquals(190.0 + i, counters[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testMergeSameAsTopNCounter() {
+        Random rand = new Random(2);
+        for (int round = 0; round < 100; round++) {
+            int capacity = 1 + rand.nextInt(50);
+            TopNCounter<ByteArray> expected = new TopNCounter<>(capacity * 10);
+            ByteArrayTopNCounter actual = new ByteArrayTopNCounter(capacity * 10);
+
+            for (int part = 0; part < 30; part++) {
+                TopNCounter<ByteArray> p1 = new TopNCounter<>(capacity);
+                ByteArrayTopNCounter p2 = new ByteArrayTopNCounter(capacity);
+                for (int i = 0, n = rand.nextInt(100); i < n; i++) {
+                    int k = (int) Math.abs(rand.nextGaussian() * 40);
+                    double v = randomCount(rand);
+                    p1.offer(key(k), v);
+                    p2.offer(key(k), v);
+                }
+                p1.sortAndRetain();
+                p2.sortAndRetain();
+                assertEquals(entries(p1), entries(p2));
+
+                expected.merge(p1);
+                actual.merge(part % 2 == 0 ? p2 : p1); // from both kinds of counter
+                assertArrayEquals(expected.getCounters(), actual.getCounters(), 0.0);
+            }
+
+            expected.retain(capacity);
+            actual.retain(capacity);
+            assertEquals(entries(expected), entries(actual));
+        }
+    }
+}
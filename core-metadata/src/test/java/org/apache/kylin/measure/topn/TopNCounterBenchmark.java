@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.measure.topn;
+
+import java.util.Random;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares TopNCounter and ByteArrayTopNCounter on the offer and merge patterns of the TopN measure, at the
+ * capacities of topn(2), topn(20) and topn(200).
+ */
+@Ignore("Save UT time")
+public class TopNCounterBenchmark {
+
+    static final int[] CAPACITIES = { 100, 1000, 10000 };
+
+    interface CounterFactory {
+        TopNCounter<ByteArray> newCounter(int capacity);
+    }
+
+    static final CounterFactory OLD = new CounterFactory() {
+        @Override
+        public TopNCounter<ByteArray> newCounter(int capacity) {
+            return new TopNCounter<ByteArray>(capacity);
+        }
+
+        @Override
+        public String toString() {
+            return "TopNCounter";
+        }
+    };
+
+    static final CounterFactory NEW = new CounterFactory() {
+        @Override
+        public TopNCounter<ByteArray> newCounter(int capacity) {
+            return new ByteArrayTopNCounter(capacity);
+        }
+
+        @Override
+        public String toString() {
+            return "ByteArrayTopNCounter";
+        }
+    };
+
+    // keys of 4 bytes, like two dictionary ids, the smaller ones more frequent
+    private static ByteArray[] randomKeys(int n, int keySpace, Random rand) {
+        ByteArray[] keys = new ByteArray[n];
+        for (int i = 0; i < n; i++) {
+            double d = rand.nextDouble();
+            keys[i] = new ByteArray(Bytes.toBytes((int) (d * d * keySpace)));
+        }
+        return keys;
+    }
+
+    @Test
+    public void offerBenchmark() throws Exception {
+        final int rows = 2000000;
+        for (int capacity : CAPACITIES) {
+            final ByteArray[] keys = randomKeys(rows, capacity * 2, new Random(1));
+            for (CounterFactory factory : new CounterFactory[] { OLD, NEW, OLD, NEW }) {
+                final TopNCounter<ByteArray> counter = factory.newCounter(capacity);
+                long time = runTestCase(new TestCase() {
+                    @Override
+                    public void run() {
+                        for (ByteArray key : keys) {
+                            counter.offer(key, 1.0);
+                        }
+                        counter.sortAndRetain();
+                    }
+                });
+                System.out.println("offer, capacity " + capacity + ", " + factory + " : " + time + " ms");
+            }
+        }
+    }
+
+    /**
+     * Merges the single row counters from the ingester, as the aggregation of the base cuboid does.
+     */
+    @Test
+    public void mergeRowsBenchmark() throws Exception {
+        final int rows = 50000;
+        for (int capacity : CAPACITIES) {
+            ByteArray[] keys = randomKeys(rows, capacity * 20, new Random(2));
+            for (CounterFactory factory : new CounterFactory[] { OLD, NEW, OLD, NEW }) {
+                final TopNCounter<ByteArray>[] inputs = newCounters(factory, rows, capacity, keys, 1);
+                final TopNCounter<ByteArray> sum = factory.newCounter(capacity * 10);
+                long time = runTestCase(new TestCase() {
+                    @Override
+                    public void run() {
+                        for (TopNCounter<ByteArray> input : inputs) {
+                            sum.merge(input);
+                        }
+                        sum.retain(inputs[0].getCapacity());
+                    }
+                });
+                System.out.println("merge rows, capacity " + capacity + ", " + factory + " : " + time + " ms");
+            }
+        }
+    }
+
+    /**
+     * Merges full counters, as the coprocessor and the reducers of the cuboid layers do.
+     */
+    @Test
+    public void mergeCountersBenchmark() throws Exception {
+        final int n = 200;
+        for (int capacity : CAPACITIES) {
+            ByteArray[] keys = randomKeys(n * capacity, capacity * 5, new Random(3));
+            for (CounterFactory factory : new CounterFactory[] { OLD, NEW, OLD, NEW }) {
+                final TopNCounter<ByteArray>[] inputs = newCounters(factory, n, capacity, keys, capacity);
+                final TopNCounter<ByteArray> sum = factory.newCounter(capacity * 10);
+                long time = runTestCase(new TestCase() {
+                    @Override
+                    public void run() {
+                        for (TopNCounter<ByteArray> input : inputs) {
+                            sum.merge(input);
+                        }
+                        sum.retain(inputs[0].getCapacity());
+                    }
+                });
+                System.out.println("merge counters, capacity " + capacity + ", " + factory + " : " + time + " ms");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TopNCounter<ByteArray>[] newCounters(CounterFactory factory, int n, int capacity, ByteArray[] keys,
+            int keysPerCounter) {
+        Random rand = new Random(4);
+        TopNCounter<ByteArray>[] counters = new TopNCounter[n];
+        for (int i = 0; i < n; i++) {
+            counters[i] = factory.newCounter(capacity);
+            for (int j = 0; j < keysPerCounter; j++) {
+                counters[i].offer(keys[i * keysPerCounter + j], 1 + rand.nextInt(100));
+            }
+            counters[i].sortAndRetain();
+        }
+        return counters;
+    }
+
+    interface TestCase {
+        void run() throws Exception;
+    }
+
+    public long runTestCase(TestCase testCase) throws Exception {
+        long startTime = System.currentTimeMillis();
+        testCase.run();
+        return System.currentTimeMillis() - startTime;
+    }
+}
@@ -67,6 +67,31 @@ public class TopNCounterSerializerTest extends LocalFileMetadataTestCase {
 
     }
 
+    @Test
+    public void testSerializationOfByteArrayCounter() {
+        TopNCounter<ByteArray> vs = new TopNCounter<ByteArray>(50);
+        TopNCounter<ByteArray> vsArray = new ByteArrayTopNCounter(50);
+        Integer[] stream = { 1, 1, 2, 9, 1, 2, 3, 7, 7, 1, 3, 1, 1 };
+        for (Integer i : stream) {
+            vs.offer(new ByteArray(Bytes.toBytes(i)));
+            vsArray.offer(new ByteArray(Bytes.toBytes(i)), 1.0);
+        }
+        vs.sortAndRetain();
+
+        // both write the same bytes
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        serializer.serialize(vs, out);
+        ByteBuffer outArray = ByteBuffer.allocate(1024);
+        serializer.serialize(vsArray, outArray);
+        Assert.assertEquals(out.position(), outArray.position());
+
+        outArray.flip();
+        TopNCounter<ByteArray> vsNew = serializer.deserialize(outArray);
+        Assert.assertTrue(vsNew instanceof ByteArrayTopNCounter);
+        Assert.assertArrayEquals(vs.getCounters(), vsNew.getCounters(), 0.0);
+        Assert.assertEquals(vsArray.toString(), vsNew.toString());
+    }
+
     @Test
     public void testValueOf() {
         // FIXME need a good unit test for valueOf()
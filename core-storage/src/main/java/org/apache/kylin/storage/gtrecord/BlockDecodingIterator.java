@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.cube.gridtable.CubeCodeSystem;
+import org.apache.kylin.dimension.DictionaryDimEnc;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTCodeSystem;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * Decodes GTRecords a block at a time. The IDs of each dictionary encoded column are collected for the whole block
+ * and decoded by one Dictionary.getValuesFromIds() call, instead of a dictionary lookup per value. The codes of the
+ * other columns are copied aside and decoded row by row as before.
+ */
+class BlockDecodingIterator extends UnmodifiableIterator<Object[]> {
+
+    /** returns the dictionary encodings of the given columns, or null if none of them is dictionary encoded */
+    static DictionaryDimEnc[] getDictionaryEncodings(GTInfo info, int[] colIdx) {
+        IGTCodeSystem codeSystem = info.getCodeSystem();
+        if (!(codeSystem instanceof CubeCodeSystem))
+            return null;
+
+        DictionaryDimEnc[] dictEncs = new DictionaryDimEnc[colIdx.length];
+        boolean found = false;
+        for (int i = 0; i < colIdx.length; i++) {
+            DimensionEncoding dimEnc = ((CubeCodeSystem) codeSystem).getDimEnc(colIdx[i]);
+            if (dimEnc instanceof DictionaryDimEnc) {
+                dictEncs[i] = (DictionaryDimEnc) dimEnc;
+                found = true;
+            }
+        }
+        return found ? dictEncs : null;
+    }
+
+    private final Iterator<GTRecord> records;
+    private final IGTCodeSystem codeSystem;
+    private final int[] colIdx;
+    private final DictionaryDimEnc[] dictEncs;
+    private final int blockSize;
+
+    // dictionary columns, by column then row
+    private final int[][] ids;
+    private final String[][] values;
+
+    // other columns, codes copied into the arena, by row then column
+    private byte[] arena = new byte[4096];
+    private final int[][] offsets;
+    private final int[][] lengths;
+
+    private final Object[] result;
+    private int rows;
+    private int cursor;
+
+    BlockDecodingIterator(Iterator<GTRecord> records, GTInfo info, int[] colIdx, DictionaryDimEnc[] dictEncs,
+            int blockSize) {
+        this.records = records;
+        this.codeSystem = info.getCodeSystem();
+        this.colIdx = colIdx;
+        this.dictEncs = dictEncs;
+        this.blockSize = blockSize;
+        this.ids = new int[colIdx.length][];
+        this.values = new String[colIdx.length][];
+        for (int i = 0; i < colIdx.length; i++) {
+            if (dictEncs[i] != null) {
+                ids[i] = new int[blockSize];
+                values[i] = new String[blockSize];
+            }
+        }
+        this.offsets = new int[blockSize][colIdx.length];
+        this.lengths = new int[blockSize][colIdx.length];
+        this.result = new Object[colIdx.length];
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < rows || fillBlock();
+    }
+
+    @Override
+    public Object[] next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        for (int i = 0; i < colIdx.length; i++) {
+            if (dictEncs[i] != null) {
+                result[i] = values[i][cursor];
+            } else if (lengths[cursor][i] < 0) {
+                result[i] = null;
+            } else {
+                result[i] = codeSystem.decodeColumnValue(colIdx[i],
+                        ByteBuffer.wrap(arena, offsets[cursor][i], lengths[cursor][i]));
+            }
+        }
+        cursor++;
+        return result;
+    }
+
+    private boolean fillBlock() {
+        rows = 0;
+        cursor = 0;
+        int arenaSize = 0;
+        while (rows < blockSize && records.hasNext()) {
+            GTRecord record = records.next();
+            for (int i = 0; i < colIdx.length; i++) {
+                ByteArray col = record.get(colIdx[i]);
+                if (col == null || col.array() == null) {
+                    if (dictEncs[i] != null)
+                        ids[i][rows] = dictEncs[i].getDictionary().nullId();
+                    else
+                        lengths[rows][i] = -1;
+                } else if (dictEncs[i] != null) {
+                    ids[i][rows] = BytesUtil.readUnsigned(col.array(), col.offset(), col.length());
+                } else {
+                    if (arenaSize + col.length() > arena.length) {
+                        arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + col.length()));
+                    }
+                    System.arraycopy(col.array(), col.offset(), arena, arenaSize, col.length());
+                    offsets[rows][i] = arenaSize;
+                    lengths[rows][i] = col.length();
+                    arenaSize += col.length();
+                }
+            }
+            rows++;
+        }
+
+        for (int i = 0; i < colIdx.length; i++) {
+            if (dictEncs[i] != null) {
+                dictEncs[i].decode(ids[i], rows, values[i]);
+            }
+        }
+        return rows > 0;
+    }
+}
@@ -175,6 +175,7 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
                     .setExprsPushDown(tupleExpressionMap)//
                     .setAllowStorageAggregation(context.isNeedStorageAggregation())
                     .setAggCacheMemThreshold(cubeSegment.getConfig().getQueryCoprocessorMemGB())//
+                    .setFlatAggregationEnabled(cubeSegment.getConfig().getQueryCoprocessorFlatAggrEnabled())//
                     .setStoragePushDownLimit(context.getFinalPushDownLimit())
                     .setStorageLimitLevel(context.getStorageLimitLevel()).setHavingFilterPushDown(havingFilter)
                     .createGTScanRequest();
@@ -54,11 +54,19 @@ public class ScannerWorker {
 
         final GTInfo info = scanRequest.getInfo();
 
+        String cacheKey = SegmentResultCache.getKey(segment, gtStorage, scanRequest);
+        IGTScanner cached = cacheKey == null ? null : SegmentResultCache.getInstance().get(cacheKey, scanRequest);
+        if (cached != null) {
+            internal = cached;
+            return;
+        }
+
         try {
             IGTStorage rpc = (IGTStorage) Class.forName(gtStorage)
                     .getConstructor(ISegment.class, Cuboid.class, GTInfo.class, StorageContext.class)
                     .newInstance(segment, cuboid, info, context); // default behavior
-            internal = rpc.getGTScanner(scanRequest);
+            IGTScanner scanner = rpc.getGTScanner(scanRequest);
+            internal = cacheKey == null ? scanner : SegmentResultCache.getInstance().put(cacheKey, scanRequest, scanner);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
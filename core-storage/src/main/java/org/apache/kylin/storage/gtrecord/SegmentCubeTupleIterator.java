@@ -27,6 +27,7 @@ import java.util.Set;
 import com.google.common.collect.UnmodifiableIterator;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.gridtable.CuboidToGridTableMapping;
+import org.apache.kylin.dimension.DictionaryDimEnc;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
@@ -108,6 +109,18 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
             return aggregator.valuesIterator(gtDimsIdx, gtMetricsIdx);
         }
 
+        // decode dictionary columns of a block of records at once
+        int blockSize = scanner.cubeSeg.getConfig().getQueryDictionaryDecodeBatchSize();
+        if (blockSize > 1) {
+            int[] gtColIdx = new int[gtDimsIdx.length + gtMetricsIdx.length];
+            System.arraycopy(gtDimsIdx, 0, gtColIdx, 0, gtDimsIdx.length);
+            System.arraycopy(gtMetricsIdx, 0, gtColIdx, gtDimsIdx.length, gtMetricsIdx.length);
+            DictionaryDimEnc[] dictEncs = BlockDecodingIterator.getDictionaryEncodings(scanRequest.getInfo(), gtColIdx);
+            if (dictEncs != null) {
+                return new BlockDecodingIterator(records, scanRequest.getInfo(), gtColIdx, dictEncs, blockSize);
+            }
+        }
+
         // simply decode records
         return new UnmodifiableIterator<Object[]>() {
             Object[] result = new Object[gtDimsIdx.length + gtMetricsIdx.length];
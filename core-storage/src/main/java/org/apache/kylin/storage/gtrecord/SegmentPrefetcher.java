@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.KylinConfig.SetAndUnsetThreadLocalConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.QueryContextFacade;
+import org.apache.kylin.common.exceptions.KylinTimeoutException;
+import org.apache.kylin.common.util.LoggableCachedThreadPool;
+import org.apache.kylin.metadata.tuple.ITuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * Reads the tuples of several segments ahead on background threads, each into a bounded buffer.
+ *
+ * At most parallelism segments are read ahead at a time, the next one starts when one is done. A segment
+ * the consumer asks for is always started at once, so consumers that need the head of every segment, like
+ * SortedIteratorMergerWithLimit, never wait on a segment that is not running. Each segment keeps its own
+ * order, tuples are copied since the segment iterators reuse theirs.
+ *
+ * The background threads run with the given config and the query context of the thread creating the prefetcher.
+ * close() waits for them to stop, so the segment iterators can be closed after it.
+ */
+public class SegmentPrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentPrefetcher.class);
+
+    private static final ExecutorService executorService = new LoggableCachedThreadPool();
+
+    private static final Object END = new Object();
+
+    // a segment iterator blocked beyond this is left to the interrupt
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private final List<Prefetch> prefetches = Lists.newArrayList();
+    private final int parallelism;
+    private final KylinConfig config;
+    private final QueryContext queryContext;
+    private int nextToStart = 0;
+    private int running = 0;
+    private volatile boolean closed = false; // set guarded by this
+    private long waitMillis = 0;
+
+    /**
+     * @param config the thread local config of the background threads, null for none
+     */
+    public SegmentPrefetcher(List<? extends Iterator<ITuple>> segments, KylinConfig config, int parallelism,
+            int bufferSize) {
+        this.parallelism = parallelism;
+        this.config = config;
+        this.queryContext = QueryContextFacade.current();
+        for (Iterator<ITuple> segment : segments) {
+            prefetches.add(new Prefetch(segment, bufferSize));
+        }
+        synchronized (this) {
+            startMore();
+        }
+    }
+
+    /** the consumer side of each segment, in the order of the input */
+    public List<Iterator<ITuple>> getIterators() {
+        List<Iterator<ITuple>> iterators = Lists.newArrayListWithCapacity(prefetches.size());
+        for (Prefetch prefetch : prefetches) {
+            iterators.add(prefetch.consumer());
+        }
+        return iterators;
+    }
+
+    /** total time the consumer waited for tuples that were not read ahead yet */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /** stops reading ahead, and waits for the background threads to leave the segment iterators */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (Prefetch prefetch : prefetches) {
+            prefetch.cancel();
+        }
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+        for (Prefetch prefetch : prefetches) {
+            if (!prefetch.awaitStopped(deadline)) {
+                logger.warn("Segment is still read in background after {} ms since close", CLOSE_TIMEOUT_MILLIS);
+            }
+        }
+    }
+
+    // guarded by this
+    private void startMore() {
+        while (running < parallelism && nextToStart < prefetches.size()) {
+            prefetches.get(nextToStart++).start();
+        }
+    }
+
+    private synchronized void startNow(Prefetch prefetch) {
+        if (prefetch.future == null) {
+            logger.debug("Segment is asked for before its turn, start reading it now");
+            prefetch.start();
+        }
+    }
+
+    private synchronized void finished() {
+        running--;
+        startMore();
+    }
+
+    private class Prefetch implements Runnable {
+        final Iterator<ITuple> segment;
+        final BlockingQueue<Object> buffer;
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Future<?> future = null; // guarded by SegmentPrefetcher.this
+        boolean entered = false; // guarded by SegmentPrefetcher.this, run() reads the segment
+
+        Prefetch(Iterator<ITuple> segment, int bufferSize) {
+            this.segment = segment;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        // guarded by SegmentPrefetcher.this
+        void start() {
+            if (future != null)
+                return;
+            running++;
+            future = executorService.submit(this);
+        }
+
+        void cancel() {
+            synchronized (SegmentPrefetcher.this) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+            buffer.clear();
+        }
+
+        boolean awaitStopped(long deadline) {
+            synchronized (SegmentPrefetcher.this) {
+                if (!entered)
+                    return true;
+            }
+            try {
+                return stopped.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (SegmentPrefetcher.this) {
+                if (closed) {
+                    finished();
+                    return;
+                }
+                entered = true;
+            }
+            try (SetAndUnsetThreadLocalConfig autoUnset = KylinConfig.setAndUnsetThreadLocalConfig(config)) {
+                QueryContextFacade.setCurrent(queryContext);
+                while (!closed && segment.hasNext()) {
+                    offer(segment.next().makeCopy());
+                }
+                offer(END);
+            } catch (InterruptedException e) {
+                // closed by the consumer
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                try {
+                    offer(t);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                QueryContextFacade.removeCurrent();
+                stopped.countDown();
+                finished();
+            }
+        }
+
+        private void offer(Object item) throws InterruptedException {
+            while (!closed && !buffer.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                // the consumer is busy with earlier segments
+            }
+        }
+
+        Iterator<ITuple> consumer() {
+            return new UnmodifiableIterator<ITuple>() {
+                Object next = null;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null) {
+                        next = take();
+                    }
+                    if (next instanceof Throwable) {
+                        Throwable t = (Throwable) next;
+                        if (t instanceof RuntimeException)
+                            throw (RuntimeException) t;
+                        throw new RuntimeException("Error when reading segment", t);
+                    }
+                    return next != END;
+                }
+
+                @Override
+                public ITuple next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    ITuple result = (ITuple) next;
+                    next = null;
+                    return result;
+                }
+            };
+        }
+
+        private Object take() {
+            Object item = buffer.poll();
+            if (item != null)
+                return item;
+
+            startNow(this);
+            long start = System.currentTimeMillis();
+            try {
+                return buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KylinTimeoutException("Query timeout");
+            } finally {
+                waitMillis += System.currentTimeMillis() - start;
+            }
+        }
+    }
+}
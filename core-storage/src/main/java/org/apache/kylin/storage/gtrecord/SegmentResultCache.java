@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.metadata.model.ISegment;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.hash.Hashing;
+
+/**
+ * Storage results of segments, kept across queries.
+ *
+ * A ready segment never changes, so the records a GTScanRequest returns from it can be reused until the segment
+ * is refreshed or merged, which gives it a new uuid. Unlike the query cache the entries survive project data
+ * updates, when a query runs again after a new segment is built, only the new segment goes to storage and the
+ * cached segments are replayed into the same aggregation as before.
+ */
+public class SegmentResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentResultCache.class);
+
+    private static volatile SegmentResultCache instance = null;
+
+    public static SegmentResultCache getInstance() {
+        if (instance != null) {
+            return instance;
+        }
+
+        synchronized (SegmentResultCache.class) {
+            if (instance == null) {
+                instance = new SegmentResultCache(KylinConfig.getInstanceFromEnv().getQuerySegmentCacheMaxBytes());
+            }
+            return instance;
+        }
+    }
+
+    private final Cache<String, byte[]> cache;
+    private final long maxEntryBytes;
+
+    SegmentResultCache(long maxBytes) {
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(new Weigher<String, byte[]>() {
+            @Override
+            public int weigh(String key, byte[] value) {
+                return key.length() + value.length;
+            }
+        }).build();
+        // one big result should not push out all others
+        this.maxEntryBytes = maxBytes / 8;
+    }
+
+    /** return null if the results of the segment should not be cached */
+    public static String getKey(ISegment segment, String gtStorage, GTScanRequest scanRequest) {
+        if (!(segment instanceof CubeSegment) || segment.getStatus() != SegmentStatusEnum.READY
+                || !segment.getConfig().isQuerySegmentCacheEnabled()) {
+            return null;
+        }
+
+        CubeSegment cubeSeg = (CubeSegment) segment;
+        return cubeSeg.getCubeInstance().getName() + "/" + cubeSeg.getUuid() + "/" + cubeSeg.getLastBuildTime() + "/"
+                + gtStorage + "/" + Hashing.sha256().hashBytes(scanRequest.toResultKey()).toString();
+    }
+
+    /** return the cached results as a scanner, or null on cache miss */
+    public IGTScanner get(String key, final GTScanRequest scanRequest) {
+        final byte[] data = cache.getIfPresent(key);
+        if (data == null) {
+            return null;
+        }
+
+        logger.info("Segment result cache hit, {} bytes for {}", data.length, key);
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return scanRequest.getInfo();
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return new PartitionResultIterator(data, scanRequest.getInfo(), scanRequest.getColumns());
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    /** pass through the records of the scanner, and cache them once it is read to the end */
+    public IGTScanner put(final String key, final GTScanRequest scanRequest, final IGTScanner scanner) {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return scanner.getInfo();
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return new RecordingIterator(key, scanRequest.getColumns(), scanner.iterator());
+            }
+
+            @Override
+            public void close() throws IOException {
+                scanner.close();
+            }
+        };
+    }
+
+    private class RecordingIterator extends UnmodifiableIterator<GTRecord> {
+        private final String key;
+        private final ImmutableBitSet columns;
+        private final Iterator<GTRecord> input;
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+        RecordingIterator(String key, ImmutableBitSet columns, Iterator<GTRecord> input) {
+            this.key = key;
+            this.columns = columns;
+            this.input = input;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = input.hasNext();
+            if (!hasNext && recorded != null) {
+                cache.put(key, recorded.toByteArray());
+                logger.info("Segment result cached, {} bytes for {}", recorded.size(), key);
+                recorded = null;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public GTRecord next() {
+            GTRecord record = input.next();
+            if (recorded != null) {
+                // same layout as the storage response, so PartitionResultIterator can replay it
+                for (int i = 0; i < columns.trueBitCount(); i++) {
+                    ByteArray col = record.get(columns.trueBitAt(i));
+                    recorded.write(col.array(), col.offset(), col.length());
+                }
+                if (recorded.size() > maxEntryBytes) {
+                    logger.info("Segment result is over {} bytes, not cached: {}", maxEntryBytes, key);
+                    recorded = null;
+                }
+            }
+            return record;
+        }
+    }
+}
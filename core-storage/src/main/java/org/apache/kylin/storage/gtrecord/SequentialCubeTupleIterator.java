@@ -26,6 +26,7 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import com.google.common.collect.Sets;
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.QueryContextFacade;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.metadata.model.FunctionDesc;
@@ -50,6 +51,7 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
     protected List<SegmentCubeTupleIterator> segmentCubeTupleIterators;
     protected Iterator<ITuple> tupleIterator;
     protected StorageContext context;
+    protected SegmentPrefetcher prefetcher;
 
     private int scanCount;
     private int scanCountDelta;
@@ -68,15 +70,26 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
             segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(scanner, cuboid, selectedDims, selectedMetrics, returnTupleInfo, context));
         }
 
+        List<Iterator<ITuple>> segmentIterators = Lists.<Iterator<ITuple>> newArrayList(segmentCubeTupleIterators);
+        if (scanners.size() > 1) {
+            KylinConfig cubeConfig = scanners.get(0).cubeSeg.getConfig();
+            int parallelism = cubeConfig.getQuerySegmentScanParallelism();
+            if (parallelism > 1) {
+                logger.info("Scanning {} segments with parallelism {}", scanners.size(), parallelism);
+                prefetcher = new SegmentPrefetcher(segmentCubeTupleIterators, KylinConfig.getInstanceFromEnv(), parallelism,
+                        cubeConfig.getQuerySegmentPrefetchSize());
+                segmentIterators = prefetcher.getIterators();
+            }
+        }
+
         if (context.mergeSortPartitionResults() && !sqlDigest.isRawQuery) {
             //query with limit
             logger.info("Using SortedIteratorMergerWithLimit to merge segment results");
-            Iterator<Iterator<ITuple>> transformed = (Iterator<Iterator<ITuple>>) (Iterator<?>) segmentCubeTupleIterators.iterator();
-            tupleIterator = new SortedIteratorMergerWithLimit<ITuple>(transformed, context.getFinalPushDownLimit(), getTupleDimensionComparator(cuboid, groups, returnTupleInfo)).getIterator();
+            tupleIterator = new SortedIteratorMergerWithLimit<ITuple>(segmentIterators.iterator(), context.getFinalPushDownLimit(), getTupleDimensionComparator(cuboid, groups, returnTupleInfo)).getIterator();
         } else {
             //normal case
             logger.info("Using Iterators.concat to merge segment results");
-            tupleIterator = Iterators.concat(segmentCubeTupleIterators.iterator());
+            tupleIterator = Iterators.concat(segmentIterators.iterator());
         }
     }
 
@@ -166,6 +179,13 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         // close all the remaining segmentIterator
         flushScanCountDelta();
 
+        if (prefetcher != null) {
+            // waits for the background threads, before the segment iterators they read are closed
+            prefetcher.close();
+            QueryContextFacade.current().addAndGetSegmentWaitMillis(prefetcher.getWaitMillis());
+            logger.info("Waited {} ms for segments scanned in parallel", prefetcher.getWaitMillis());
+        }
+
         for (SegmentCubeTupleIterator iterator : segmentCubeTupleIterators) {
             iterator.close();
         }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dimension.DictionaryDimEnc;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.GridTable;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class BlockDecodingIteratorTest extends LocalFileMetadataTestCase {
+
+    private GridTable table;
+    private GTInfo info;
+
+    @Before
+    public void setup() throws IOException {
+        this.createTestMetadata();
+        table = DictGridTableTest.newTestTable();
+        info = table.getInfo();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testSameAsRecordByRecord() throws IOException {
+        int[] colIdx = new int[] { 2, 0, 1, 3, 4 };
+        DictionaryDimEnc[] dictEncs = BlockDecodingIterator.getDictionaryEncodings(info, colIdx);
+        assertNotNull(dictEncs[0]);
+        assertNull(dictEncs[1]);
+        assertNotNull(dictEncs[2]);
+
+        List<String> expected = Lists.newArrayList();
+        try (IGTScanner scanner = scan()) {
+            for (GTRecord record : scanner) {
+                expected.add(Arrays.toString(record.getValues(colIdx, new Object[colIdx.length])));
+            }
+        }
+        assertEquals(10, expected.size());
+
+        // block sizes that divide the records evenly or not
+        for (int blockSize : new int[] { 2, 3, 100 }) {
+            List<String> actual = Lists.newArrayList();
+            try (IGTScanner scanner = scan()) {
+                BlockDecodingIterator it = new BlockDecodingIterator(scanner.iterator(), info, colIdx, dictEncs,
+                        blockSize);
+                while (it.hasNext()) {
+                    actual.add(Arrays.toString(it.next()));
+                }
+                assertFalse(it.hasNext());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testNoDictionaryColumn() {
+        assertNull(BlockDecodingIterator.getDictionaryEncodings(info, new int[] { 0, 3 }));
+    }
+
+    private IGTScanner scan() throws IOException {
+        return table.scan(new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null)
+                .setFilterPushDown(null).createGTScanRequest());
+    }
+}
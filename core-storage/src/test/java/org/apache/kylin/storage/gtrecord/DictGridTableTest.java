@@ -19,6 +19,8 @@
 package org.apache.kylin.storage.gtrecord;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -39,10 +41,12 @@ import org.apache.kylin.dict.TrieDictionaryBuilder;
 import org.apache.kylin.dimension.DictionaryDimEnc;
 import org.apache.kylin.dimension.DimensionEncoding;
 import org.apache.kylin.gridtable.GTBuilder;
+import org.apache.kylin.gridtable.GTCompiledFilter;
 import org.apache.kylin.gridtable.GTFilterScanner.FilterResultCache;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTInfo.Builder;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTRecordBlock;
 import org.apache.kylin.gridtable.GTScanRange;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
@@ -359,6 +363,71 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
                 "[null, 30, null, null, 52.5]");
     }
 
+    @Test
+    public void verifyCompiledFilter() throws IOException {
+        GTInfo info = table.getInfo();
+
+        TupleFilter[] filters = new TupleFilter[] { //
+                or(compare(info.colRef(0), FilterOperatorEnum.EQ, enc(info, 0, "2015-01-15")),
+                        compare(info.colRef(1), FilterOperatorEnum.IN, enc(info, 1, "10"), enc(info, 1, "30"))), //
+                not(compare(info.colRef(1), FilterOperatorEnum.LTE, enc(info, 1, "20"))), //
+                and(compare(info.colRef(0), FilterOperatorEnum.NEQ, enc(info, 0, "2015-01-16")),
+                        compare(info.colRef(2), FilterOperatorEnum.ISNOTNULL)), //
+                and(compare(info.colRef(0), FilterOperatorEnum.GTE, enc(info, 0, "2015-01-15")),
+                        compare(info.colRef(1), FilterOperatorEnum.NOTIN, enc(info, 1, "20"))) };
+
+        for (TupleFilter filter : filters) {
+            GTScanRequest req = useDeserializedGTScanRequest(new GTScanRequestBuilder().setInfo(info).setRanges(null)
+                    .setDimensions(null).setFilterPushDown(filter).createGTScanRequest());
+            assertNotNull(GTCompiledFilter.compile(req.getFilterPushDown(), info));
+
+            GTCompiledFilter.ENABLED = false;
+            List<String> interpreted = scanToStrings(table, req);
+            GTCompiledFilter.ENABLED = true;
+            List<String> compiled = scanToStrings(table, req);
+
+            assertFalse(interpreted.isEmpty());
+            assertEquals(interpreted, compiled);
+        }
+    }
+
+    @Test
+    public void verifyBlockScan() throws IOException {
+        GTInfo info = table.getInfo();
+
+        LogicalTupleFilter filter = and(compare(info.colRef(0), FilterOperatorEnum.GT, enc(info, 0, "2015-01-14")),
+                compare(info.colRef(1), FilterOperatorEnum.GT, enc(info, 1, "10")));
+
+        GTScanRequest[] reqs = new GTScanRequest[] { //
+                new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setFilterPushDown(filter)
+                        .createGTScanRequest(), //
+                new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null)
+                        .setAggrGroupBy(setOf(0)).setAggrMetrics(setOf(3)).setAggrMetricsFuncs(new String[] { "sum" })
+                        .setFilterPushDown(filter).createGTScanRequest() };
+
+        for (GTScanRequest req : reqs) {
+            req = useDeserializedGTScanRequest(req);
+
+            GTRecordBlock.ENABLED = false;
+            List<String> byRows = scanToStrings(table, req);
+            GTRecordBlock.ENABLED = true;
+            List<String> byBlocks = scanToStrings(table, req);
+
+            assertFalse(byRows.isEmpty());
+            assertEquals(byRows, byBlocks);
+        }
+    }
+
+    private List<String> scanToStrings(GridTable table, GTScanRequest req) throws IOException {
+        List<String> result = Lists.newArrayList();
+        IGTScanner scanner = table.scan(req);
+        for (GTRecord r : scanner) {
+            result.add(r.toString());
+        }
+        scanner.close();
+        return result;
+    }
+
     @Test
     @Ignore
     public void testFilterScannerPerf() throws IOException {
@@ -369,6 +438,7 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
         CompareTupleFilter fComp2 = compare(info.colRef(1), FilterOperatorEnum.GT, enc(info, 1, "10"));
         LogicalTupleFilter filter = and(fComp1, fComp2);
 
+        GTCompiledFilter.ENABLED = false;
         FilterResultCache.ENABLED = false;
         testFilterScannerPerfInner(table, info, filter);
         FilterResultCache.ENABLED = true;
@@ -377,6 +447,9 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
         testFilterScannerPerfInner(table, info, filter);
         FilterResultCache.ENABLED = true;
         testFilterScannerPerfInner(table, info, filter);
+        GTCompiledFilter.ENABLED = true;
+        testFilterScannerPerfInner(table, info, filter);
+        testFilterScannerPerfInner(table, info, filter);
     }
 
     @SuppressWarnings("unused")
@@ -393,7 +466,8 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
         scanner.close();
         long end = System.currentTimeMillis();
         System.out.println(
-                (end - start) + "ms with filter cache enabled=" + FilterResultCache.ENABLED + ", " + i + " rows");
+                (end - start) + "ms with filter cache enabled=" + FilterResultCache.ENABLED + ", compiled filter enabled="
+                        + GTCompiledFilter.ENABLED + ", " + i + " rows");
     }
 
     @Test
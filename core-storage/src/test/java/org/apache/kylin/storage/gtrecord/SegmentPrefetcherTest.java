@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.QueryContextFacade;
+import org.apache.kylin.metadata.tuple.ITuple;
+import org.apache.kylin.metadata.tuple.Tuple;
+import org.apache.kylin.metadata.tuple.TupleInfo;
+import org.junit.Test;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
+
+public class SegmentPrefetcherTest {
+
+    private final TupleInfo info;
+
+    public SegmentPrefetcherTest() {
+        info = new TupleInfo();
+        info.setField("V", null, 0);
+    }
+
+    /** like the segment iterators, reuses one tuple for all values */
+    private Iterator<ITuple> segment(final int start, final int step, final int count) {
+        return new UnmodifiableIterator<ITuple>() {
+            final Tuple tuple = new Tuple(info);
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            public ITuple next() {
+                tuple.getAllValues()[0] = start + step * i++;
+                return tuple;
+            }
+        };
+    }
+
+    private List<Integer> read(Iterator<ITuple> iterator) {
+        List<Integer> result = Lists.newArrayList();
+        while (iterator.hasNext()) {
+            result.add((Integer) iterator.next().getValue("V"));
+        }
+        return result;
+    }
+
+    @Test
+    public void testConcat() {
+        List<Iterator<ITuple>> segments = Lists.newArrayList();
+        for (int s = 0; s < 5; s++) {
+            segments.add(segment(s * 1000, 1, 1000));
+        }
+        SegmentPrefetcher prefetcher = new SegmentPrefetcher(segments, null, 2, 10);
+        List<Integer> result = read(Iterators.concat(prefetcher.getIterators().iterator()));
+        prefetcher.close();
+
+        assertEquals(5000, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i, (int) result.get(i));
+        }
+    }
+
+    @Test
+    public void testSortedMerge() {
+        // the merger needs the head of every segment, more segments than parallelism must not block
+        List<Iterator<ITuple>> segments = Lists.newArrayList();
+        for (int s = 0; s < 5; s++) {
+            segments.add(segment(s, 5, 200));
+        }
+        SegmentPrefetcher prefetcher = new SegmentPrefetcher(segments, null, 2, 10);
+        Comparator<ITuple> comparator = new Comparator<ITuple>() {
+            @Override
+            public int compare(ITuple o1, ITuple o2) {
+                return ((Integer) o1.getValue("V")).compareTo((Integer) o2.getValue("V"));
+            }
+        };
+        List<Integer> result = read(new SortedIteratorMergerWithLimit<ITuple>(prefetcher.getIterators().iterator(),
+                1000, comparator).getIterator());
+        prefetcher.close();
+
+        assertEquals(1000, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i, (int) result.get(i));
+        }
+    }
+
+    @Test
+    public void testError() {
+        Iterator<ITuple> broken = new UnmodifiableIterator<ITuple>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public ITuple next() {
+                throw new IllegalStateException("broken segment");
+            }
+        };
+        List<Iterator<ITuple>> segments = Lists.newArrayList(segment(0, 1, 10), broken);
+        SegmentPrefetcher prefetcher = new SegmentPrefetcher(segments, null, 2, 10);
+        try {
+            read(Iterators.concat(prefetcher.getIterators().iterator()));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken segment", e.getMessage());
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForBackground() {
+        final AtomicBoolean reading = new AtomicBoolean();
+        final AtomicReference<QueryContext> context = new AtomicReference<>();
+        Iterator<ITuple> slow = new UnmodifiableIterator<ITuple>() {
+            final Iterator<ITuple> values = segment(0, 1, 1000);
+
+            @Override
+            public boolean hasNext() {
+                reading.set(true);
+                context.set(QueryContextFacade.current());
+                // not interruptible, like a scanner busy decoding
+                long end = System.currentTimeMillis() + 20;
+                while (System.currentTimeMillis() < end) {
+                }
+                reading.set(false);
+                return values.hasNext();
+            }
+
+            @Override
+            public ITuple next() {
+                return values.next();
+            }
+        };
+        SegmentPrefetcher prefetcher = new SegmentPrefetcher(Lists.<Iterator<ITuple>> newArrayList(slow), null, 2,
+                10);
+        Iterator<ITuple> iterator = prefetcher.getIterators().get(0);
+        iterator.hasNext();
+        prefetcher.close();
+
+        // the segment may be closed now
+        assertFalse(reading.get());
+        assertSame(QueryContextFacade.current(), context.get());
+    }
+}
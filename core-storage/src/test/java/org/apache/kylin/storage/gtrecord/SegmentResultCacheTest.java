@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SegmentResultCacheTest {
+
+    private final GTInfo info;
+    private final GTScanRequest scanRequest;
+    private final List<GTRecord> records = Lists.newArrayList();
+
+    public SegmentResultCacheTest() {
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        builder.setColumns(DataType.getType("varchar(10)"), DataType.getType("long8"));
+        builder.setPrimaryKey(ImmutableBitSet.valueOf(0));
+        info = builder.build();
+        scanRequest = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null)
+                .createGTScanRequest();
+
+        for (int i = 0; i < 100; i++) {
+            GTRecord record = new GTRecord(info);
+            record.setValues("seg-" + i, Long.valueOf(i * 10));
+            records.add(record);
+        }
+    }
+
+    private IGTScanner storage() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return info;
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return records.iterator();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    private List<String> read(IGTScanner scanner) {
+        List<String> result = Lists.newArrayList();
+        for (GTRecord record : scanner) {
+            result.add(record.getValue(0) + ":" + record.getValue(1));
+        }
+        return result;
+    }
+
+    @Test
+    public void testReplay() {
+        SegmentResultCache cache = new SegmentResultCache(1024 * 1024);
+        assertNull(cache.get("k1", scanRequest));
+
+        List<String> expected = read(cache.put("k1", scanRequest, storage()));
+        assertEquals(100, expected.size());
+
+        IGTScanner cached = cache.get("k1", scanRequest);
+        assertNotNull(cached);
+        assertEquals(expected, read(cached));
+        // can be read again
+        assertEquals(expected, read(cache.get("k1", scanRequest)));
+    }
+
+    @Test
+    public void testNotCached() {
+        SegmentResultCache cache = new SegmentResultCache(1024 * 1024);
+
+        // not read to the end
+        Iterator<GTRecord> iterator = cache.put("k1", scanRequest, storage()).iterator();
+        iterator.next();
+        assertNull(cache.get("k1", scanRequest));
+
+        // over the max entry size
+        SegmentResultCache small = new SegmentResultCache(1000);
+        read(small.put("k2", scanRequest, storage()));
+        assertNull(small.get("k2", scanRequest));
+    }
+}
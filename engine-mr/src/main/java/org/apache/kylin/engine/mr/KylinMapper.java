@@ -24,16 +24,20 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.kylin.common.util.HadoopUtil;
 import org.apache.kylin.common.util.MemoryBudgetController;
+import org.apache.kylin.dict.global.AppendDictSliceCache;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheStats;
+
 /**
  */
 public class KylinMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT> extends Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
     private static final Logger logger = LoggerFactory.getLogger(KylinMapper.class);
 
     protected int mapCounter = 0;
+    private CacheStats sliceCacheStatsAtSetup;
 
     protected void bindCurrentConfiguration(Configuration conf) {
         logger.info("The conf for current mapper will be " + System.identityHashCode(conf));
@@ -45,6 +49,7 @@ public class KylinMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT> extends Mapper<KEYIN,
             throws IOException, InterruptedException {
         try {
             logger.info("Do setup, available memory: {}m", MemoryBudgetController.getSystemAvailMB());
+            sliceCacheStatsAtSetup = AppendDictSliceCache.getTotalStats();
             doSetup(context);
         } catch (IOException ex) { // KYLIN-2170
             logger.error("", ex);
@@ -101,6 +106,7 @@ public class KylinMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT> extends Mapper<KEYIN,
         try {
             logger.info("Do cleanup, available memory: {}m", MemoryBudgetController.getSystemAvailMB());
             doCleanup(context);
+            reportSliceCacheStats(context);
             logger.info("Total rows: {}", mapCounter);
         } catch (IOException ex) { // KYLIN-2170
             logger.error("", ex);
@@ -120,4 +126,19 @@ public class KylinMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT> extends Mapper<KEYIN,
     protected void doCleanup(Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context context)
             throws IOException, InterruptedException {
     }
+
+    // the stats of the global dictionary slice cache are process wide, and a JVM may run several tasks in uber mode
+    // or by reuse, so the task reports the difference since its setup
+    private void reportSliceCacheStats(Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context context) {
+        CacheStats stats = AppendDictSliceCache.getTotalStats().minus(sliceCacheStatsAtSetup);
+        if (stats.requestCount() == 0)
+            return;
+
+        logger.info("Global dictionary slice cache: {}", stats);
+        String group = BatchConstants.MAPREDUCE_COUNTER_GROUP_NAME;
+        context.getCounter(group, "Global dict slice hits").increment(stats.hitCount());
+        context.getCounter(group, "Global dict slice loads").increment(stats.loadCount());
+        context.getCounter(group, "Global dict slice evictions").increment(stats.evictionCount());
+        context.getCounter(group, "Global dict slice load millis").increment(stats.totalLoadTime() / 1000000);
+    }
 }
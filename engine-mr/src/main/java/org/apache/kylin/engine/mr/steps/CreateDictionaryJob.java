@@ -31,8 +31,10 @@ import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.lock.DistributedLock;
 import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.ByteBufferBackedInputStream;
+import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.HadoopUtil;
@@ -41,6 +43,7 @@ import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.cli.DictionaryGeneratorCLI;
 import org.apache.kylin.dict.DictionaryProvider;
 import org.apache.kylin.dict.DistinctColumnValuesProvider;
+import org.apache.kylin.dict.global.AppendTrieDictionaryShards;
 import org.apache.kylin.engine.mr.SortedColumnDFSFile;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -91,16 +94,16 @@ public class CreateDictionaryJob extends AbstractHadoopJob {
 
                 Path dictFile = HadoopUtil.getFilterOnlyPath(fs, colDir, col.getName() + FactDistinctColumnsReducer.DICT_FILE_POSTFIX);
                 if (dictFile == null) {
+                    Path shardsFile = HadoopUtil.getFilterOnlyPath(fs, colDir, col.getName() + UHCDictionaryReducer.SHARDS_FILE_POSTFIX);
+                    if (shardsFile != null) {
+                        return commitShards(shardsFile);
+                    }
                     logger.info("Dict for '" + col.getName() + "' not pre-built.");
                     return null;
                 }
 
                 try (SequenceFile.Reader reader = new SequenceFile.Reader(HadoopUtil.getCurrentConfiguration(), SequenceFile.Reader.file(dictFile))) {
-                    NullWritable key = NullWritable.get();
-                    ArrayPrimitiveWritable value = new ArrayPrimitiveWritable();
-                    reader.next(key, value);
-
-                    ByteBuffer buffer = new ByteArray((byte[]) value.get()).asBuffer();
+                    ByteBuffer buffer = new ByteArray(readBytes(reader)).asBuffer();
                     try (DataInputStream is = new DataInputStream(new ByteBufferBackedInputStream(buffer))) {
                         String dictClassName = is.readUTF();
                         Dictionary<String> dict = (Dictionary<String>) ClassUtil.newInstance(dictClassName);
@@ -115,6 +118,29 @@ public class CreateDictionaryJob extends AbstractHadoopJob {
         return 0;
     }
 
+    private static byte[] readBytes(SequenceFile.Reader reader) throws IOException {
+        NullWritable key = NullWritable.get();
+        ArrayPrimitiveWritable value = new ArrayPrimitiveWritable();
+        reader.next(key, value);
+        return (byte[]) value.get();
+    }
+
+    // the global dict built in shards by UHCDictionaryReducer
+    private static Dictionary<String> commitShards(Path shardsFile) throws IOException {
+        try (SequenceFile.Reader reader = new SequenceFile.Reader(HadoopUtil.getCurrentConfiguration(), SequenceFile.Reader.file(shardsFile))) {
+            AppendTrieDictionaryShards shards = AppendTrieDictionaryShards.deserialize(Bytes.toString(readBytes(reader)));
+            logger.info("DictionaryProvider commit " + shards + " from file: " + shardsFile);
+
+            DistributedLock lock = KylinConfig.getInstanceFromEnv().getDistributedLockFactory().lockForCurrentThread();
+            lock.lock(shards.getLockPath(), Long.MAX_VALUE);
+            try {
+                return shards.commit();
+            } finally {
+                lock.unlock(shards.getLockPath());
+            }
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         int exitCode = ToolRunner.run(new CreateDictionaryJob(), args);
         System.exit(exitCode);
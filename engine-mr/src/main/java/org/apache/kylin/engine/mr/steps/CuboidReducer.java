@@ -103,8 +103,8 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
             if (vcounter++ % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
                 logger.info("Handling value with ordinal (This is not KV number!): " + vcounter);
             }
-            codec.decode(ByteBuffer.wrap(value.getBytes(), 0, value.getLength()), input);
-            aggs.aggregate(input, needAggrMeasures);
+            aggs.aggregate(ByteBuffer.wrap(value.getBytes(), 0, value.getLength()), codec.getCodec(), input,
+                    needAggrMeasures);
         }
         aggs.collectStates(result);
 
@@ -35,6 +35,7 @@ import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.CuboidScheduler;
 import org.apache.kylin.cube.inmemcubing.ConsumeBlockingQueueController;
 import org.apache.kylin.cube.inmemcubing.InputConverterUnit;
+import org.apache.kylin.cube.inmemcubing.MappedChunkStore;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
 import org.apache.kylin.engine.EngineFactory;
@@ -72,6 +73,7 @@ public abstract class InMemCuboidMapperBase<KEYIN, VALUEIN, KEYOUT, VALUEOUT, T>
     protected BlockingQueue<T> queue = new LinkedBlockingQueue<>(2000);
     protected InputConverterUnit<T> inputConverterUnit;
     private Future<?> future;
+    private MappedChunkStore.IOStats chunkStoreStatsAtSetup;
 
     protected abstract InputConverterUnit<T> getInputConverterUnit(Context context);
 
@@ -83,6 +85,7 @@ public abstract class InMemCuboidMapperBase<KEYIN, VALUEIN, KEYOUT, VALUEOUT, T>
     @Override
     protected void doSetup(Context context) throws IOException {
         super.bindCurrentConfiguration(context.getConfiguration());
+        chunkStoreStatsAtSetup = MappedChunkStore.getTotalStats();
 
         Configuration conf = context.getConfiguration();
 
@@ -166,6 +169,23 @@ public abstract class InMemCuboidMapperBase<KEYIN, VALUEIN, KEYOUT, VALUEOUT, T>
 
         futureGet(context);
         queue.clear();
+        reportChunkStoreStats(context);
+    }
+
+    // the stats of the chunk stores are process wide, and a JVM may run several tasks in uber mode or by reuse,
+    // so the task reports the difference since its setup
+    private void reportChunkStoreStats(Context context) {
+        MappedChunkStore.IOStats stats = MappedChunkStore.getTotalStats().since(chunkStoreStatsAtSetup);
+        if (stats.rawBytes == 0)
+            return;
+
+        logger.info("In-mem cuboid chunk I/O: {}", stats);
+        String group = BatchConstants.MAPREDUCE_COUNTER_GROUP_NAME;
+        context.getCounter(group, "In-mem chunk raw bytes").increment(stats.rawBytes);
+        context.getCounter(group, "In-mem chunk bytes written").increment(stats.writtenBytes);
+        context.getCounter(group, "In-mem chunk write millis").increment(stats.writeMillis);
+        context.getCounter(group, "In-mem chunk bytes read").increment(stats.readBytes);
+        context.getCounter(group, "In-mem chunk read millis").increment(stats.readMillis);
     }
 
     private boolean shouldCutSplit(int nSplit, long splitRowCount) {
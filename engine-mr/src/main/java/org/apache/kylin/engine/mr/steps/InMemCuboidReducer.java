@@ -82,8 +82,7 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
             if (vcounter++ % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
                 logger.info("Handling value with ordinal (This is not KV number!): " + vcounter);
             }
-            codec.decode(value.asBuffer(), input);
-            aggs.aggregate(input);
+            aggs.aggregate(value.asBuffer(), codec.getCodec(), input, null);
         }
         aggs.collectStates(result);
 
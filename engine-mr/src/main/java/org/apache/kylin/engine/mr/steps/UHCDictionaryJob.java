@@ -52,6 +52,8 @@ public class UHCDictionaryJob extends AbstractHadoopJob {
     @Override
     public int run(String[] args) throws Exception {
         Options options = new Options();
+        UHCDictionaryReducerMapping reducerMapping = null;
+        boolean succeeded = false;
 
         try {
             options.addOption(OPTION_JOB_NAME);
@@ -73,7 +75,6 @@ public class UHCDictionaryJob extends AbstractHadoopJob {
             attachCubeMetadata(cube, job.getConfiguration());
 
             List<TblColRef> uhcColumns = cube.getDescriptor().getAllUHCColumns();
-            int reducerCount = uhcColumns.size();
 
             //Note! handle uhc columns is null.
             boolean hasUHCValue = false;
@@ -90,13 +91,17 @@ public class UHCDictionaryJob extends AbstractHadoopJob {
                 return 0;
             }
 
+            String hdfsDir = KylinConfig.getInstanceFromEnv().getHdfsWorkingDirectory();
+            reducerMapping = UHCDictionaryReducerMapping.plan(cube.getDescriptor(), uhcColumns, hdfsDir, cube.getConfig().getUHCGlobalDictShards());
+            reducerMapping.writeTo(job.getConfiguration());
+
             setJobClasspath(job, cube.getConfig());
             setupMapper();
-            setupReducer(output, reducerCount);
+            setupReducer(output, reducerMapping.getReducerCount());
 
             job.getConfiguration().set(BatchConstants.CFG_CUBE_NAME, cubeName);
             job.getConfiguration().set(BatchConstants.ARG_CUBING_JOB_ID, job_id);
-            job.getConfiguration().set(BatchConstants.CFG_GLOBAL_DICT_BASE_DIR, KylinConfig.getInstanceFromEnv().getHdfsWorkingDirectory());
+            job.getConfiguration().set(BatchConstants.CFG_GLOBAL_DICT_BASE_DIR, hdfsDir);
             job.getConfiguration().set(BatchConstants.CFG_MAPRED_OUTPUT_COMPRESS, "false");
 
             //8G memory is enough for all global dict, because the input is sequential and we handle global dict slice by slice
@@ -111,11 +116,27 @@ public class UHCDictionaryJob extends AbstractHadoopJob {
             for (Map.Entry<String, String> entry : cube.getConfig().getUHCMRConfigOverride().entrySet()) {
                 job.getConfiguration().set(entry.getKey(), entry.getValue());
             }
+            //the reducers of a sharded global dict write their shard to a fixed working dir with no lock, so two attempts
+            //of one reducer must never run at the same time, regardless of the overrides above
+            job.getConfiguration().setBoolean("mapreduce.reduce.speculative", false);
 
-            return waitForCompletion(job);
+            int retVal = waitForCompletion(job);
+            succeeded = retVal == 0;
+            return retVal;
         } finally {
             if (job != null)
                 cleanupTempConfFile(job.getConfiguration());
+            //the shards of a failed job are never committed, and a retry plans new ones
+            if (reducerMapping != null && !succeeded)
+                abortShards(reducerMapping);
+        }
+    }
+
+    private void abortShards(UHCDictionaryReducerMapping reducerMapping) {
+        try {
+            reducerMapping.abortShards();
+        } catch (IOException e) {
+            logger.warn("Failed to delete the working dirs of the global dict shards", e);
         }
     }
 
@@ -43,6 +43,7 @@ public class UHCDictionaryMapper extends KylinMapper<NullWritable, Text, SelfDef
 
     protected int index;
     protected DataType type;
+    protected UHCDictionaryReducerMapping reducerMapping;
 
     protected Text outputKey = new Text();
     private ByteBuffer tmpBuf;
@@ -69,6 +70,7 @@ public class UHCDictionaryMapper extends KylinMapper<NullWritable, Text, SelfDef
             }
         }
         type = uhcColumns.get(index).getType();
+        reducerMapping = UHCDictionaryReducerMapping.readFrom(conf, uhcColumns.size());
 
         //for debug
         logger.info("column name: " + colName);
@@ -83,7 +85,8 @@ public class UHCDictionaryMapper extends KylinMapper<NullWritable, Text, SelfDef
         if (size >= tmpBuf.capacity()) {
             tmpBuf = ByteBuffer.allocate(countNewSize(tmpBuf.capacity(), size));
         }
-        tmpBuf.put(Bytes.toBytes(index)[3]);
+        int reducerId = reducerMapping.getShards(index) == null ? reducerMapping.getFirstReducerId(index) : reducerMapping.getReducerId(index, value.toString());
+        tmpBuf.put(Bytes.toBytes(reducerId)[3]);
         tmpBuf.put(value.getBytes(), 0, value.getLength());
         outputKey.set(tmpBuf.array(), 0, tmpBuf.position());
 
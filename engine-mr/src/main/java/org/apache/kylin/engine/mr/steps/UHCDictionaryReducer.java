@@ -41,6 +41,8 @@ import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.dict.DictionaryGenerator;
 import org.apache.kylin.dict.DictionaryInfo;
 import org.apache.kylin.dict.IDictionaryBuilder;
+import org.apache.kylin.dict.global.AppendTrieDictionaryBuilder;
+import org.apache.kylin.dict.global.AppendTrieDictionaryShards;
 import org.apache.kylin.engine.mr.KylinReducer;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
@@ -51,9 +53,16 @@ import org.slf4j.LoggerFactory;
 public class UHCDictionaryReducer extends KylinReducer<SelfDefineSortableKey, NullWritable, NullWritable, BytesWritable> {
     private static final Logger logger = LoggerFactory.getLogger(UHCDictionaryReducer.class);
 
+    public static final String SHARDS_FILE_POSTFIX = ".shards";
+
     private IDictionaryBuilder builder;
     private TblColRef col;
 
+    // for a shard of a global dict, which is committed by CreateDictionaryJob
+    private AppendTrieDictionaryShards shards;
+    private int shard;
+    private AppendTrieDictionaryBuilder shardBuilder;
+
     private MultipleOutputs mos;
 
     @Override
@@ -69,10 +78,17 @@ public class UHCDictionaryReducer extends KylinReducer<SelfDefineSortableKey, Nu
         List<TblColRef> uhcColumns = cubeDesc.getAllUHCColumns();
 
         int taskId = context.getTaskAttemptID().getTaskID().getId();
-        col = uhcColumns.get(taskId);
+        UHCDictionaryReducerMapping reducerMapping = UHCDictionaryReducerMapping.readFrom(conf, uhcColumns.size());
+        int colIdx = reducerMapping.getColumnIndex(taskId);
+        col = uhcColumns.get(colIdx);
         logger.info("column name: " + col.getIdentity());
 
-        if (cube.getDescriptor().getShardByColumns().contains(col)) {
+        shards = reducerMapping.getShards(colIdx);
+        if (shards != null) {
+            shard = taskId - reducerMapping.getFirstReducerId(colIdx);
+            logger.info("shard " + shard + " of " + shards);
+            shardBuilder = shards.newShardBuilder(shard);
+        } else if (cube.getDescriptor().getShardByColumns().contains(col)) {
             //for ShardByColumns
             builder = DictionaryGenerator.newDictionaryBuilder(col.getType());
             builder.init(null, 0, null);
@@ -90,15 +106,34 @@ public class UHCDictionaryReducer extends KylinReducer<SelfDefineSortableKey, Nu
     public void doReduce(SelfDefineSortableKey skey, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
         Text key = skey.getText();
         String value = Bytes.toString(key.getBytes(), 1, key.getLength() - 1);
-        builder.addValue(value);
+        if (shardBuilder != null) {
+            shardBuilder.addValue(value);
+        } else {
+            builder.addValue(value);
+        }
     }
 
     @Override
     protected void doCleanup(Context context) throws IOException, InterruptedException {
+        if (shardBuilder != null) {
+            shardBuilder.buildShard();
+            if (shard == 0) {
+                outputShards(col, shards);
+            }
+            mos.close();
+            return;
+        }
+
         Dictionary<String> dict = builder.build();
         outputDict(col, dict);
     }
 
+    private void outputShards(TblColRef col, AppendTrieDictionaryShards shards) throws IOException, InterruptedException {
+        // the shards to commit instead of a dict, written to baseDir/colName/colName.shards-r-00000
+        String shardsFileName = col.getIdentity() + "/" + col.getName() + SHARDS_FILE_POSTFIX;
+        mos.write(BatchConstants.CFG_OUTPUT_DICT, NullWritable.get(), new ArrayPrimitiveWritable(Bytes.toBytes(shards.serialize())), shardsFileName);
+    }
+
     private void outputDict(TblColRef col, Dictionary<String> dict) throws IOException, InterruptedException {
         // output written to baseDir/colName/colName.rldict-r-00000 (etc)
         String dictFileName = col.getIdentity() + "/" + col.getName() + DICT_FILE_POSTFIX;
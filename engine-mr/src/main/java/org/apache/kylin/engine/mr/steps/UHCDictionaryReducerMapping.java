@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.mr.steps;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.dict.DictionaryInfo;
+import org.apache.kylin.dict.global.AppendTrieDictionaryShards;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reducers of the UHC dictionary step. A column gets one reducer, or one per shard if its global dictionary is
+ * built by {@link AppendTrieDictionaryShards}. The reducer id goes into the first byte of the mapper output key, so
+ * there are at most 256 reducers.
+ */
+public class UHCDictionaryReducerMapping {
+    private static final Logger logger = LoggerFactory.getLogger(UHCDictionaryReducerMapping.class);
+
+    public static final int MAX_REDUCERS = 256;
+
+    public static UHCDictionaryReducerMapping plan(CubeDesc cubeDesc, List<TblColRef> uhcColumns, String hdfsDir, int maxShards) throws IOException {
+        AppendTrieDictionaryShards[] shards = new AppendTrieDictionaryShards[uhcColumns.size()];
+        int extraReducers = MAX_REDUCERS - uhcColumns.size();
+        for (int i = 0; i < uhcColumns.size() && maxShards > 1; i++) {
+            TblColRef col = uhcColumns.get(i);
+            if (cubeDesc.getShardByColumns().contains(col) || !BatchConstants.GLOBAL_DICTIONNARY_CLASS.equals(cubeDesc.getDictionaryBuilderClass(col))) {
+                continue;
+            }
+
+            int nShards = Math.min(maxShards, extraReducers + 1);
+            if (nShards < 2) {
+                logger.info("No reducer left to shard global dict of {}", col.getIdentity());
+                break;
+            }
+            DictionaryInfo dictInfo = new DictionaryInfo(col.getColumnDesc(), col.getDatatype());
+            shards[i] = AppendTrieDictionaryShards.plan(dictInfo, hdfsDir, nShards);
+            if (shards[i] != null) {
+                logger.info("Build global dict of {} with {}", col.getIdentity(), shards[i]);
+                extraReducers -= shards[i].getShardCount() - 1;
+            }
+        }
+        return new UHCDictionaryReducerMapping(shards);
+    }
+
+    public static UHCDictionaryReducerMapping readFrom(Configuration conf, int nColumns) throws IOException {
+        AppendTrieDictionaryShards[] shards = new AppendTrieDictionaryShards[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            String str = conf.get(BatchConstants.CFG_GLOBAL_DICT_SHARDS + "." + i);
+            if (str != null) {
+                shards[i] = AppendTrieDictionaryShards.deserialize(str);
+            }
+        }
+        return new UHCDictionaryReducerMapping(shards);
+    }
+
+    // ============================================================================
+
+    private final AppendTrieDictionaryShards[] shards; // by column, null if not sharded
+    private final int[] firstReducers; // by column
+    private final int nReducers;
+
+    private UHCDictionaryReducerMapping(AppendTrieDictionaryShards[] shards) {
+        this.shards = shards;
+        this.firstReducers = new int[shards.length];
+        int reducerId = 0;
+        for (int i = 0; i < shards.length; i++) {
+            firstReducers[i] = reducerId;
+            reducerId += shards[i] == null ? 1 : shards[i].getShardCount();
+        }
+        this.nReducers = reducerId;
+    }
+
+    public void writeTo(Configuration conf) throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] != null) {
+                conf.set(BatchConstants.CFG_GLOBAL_DICT_SHARDS + "." + i, shards[i].serialize());
+            }
+        }
+    }
+
+    public int getReducerCount() {
+        return nReducers;
+    }
+
+    public int getFirstReducerId(int colIdx) {
+        return firstReducers[colIdx];
+    }
+
+    public int getReducerId(int colIdx, String value) {
+        return shards[colIdx] == null ? firstReducers[colIdx] : firstReducers[colIdx] + shards[colIdx].getShard(value);
+    }
+
+    public int getColumnIndex(int reducerId) {
+        int colIdx = 0;
+        while (colIdx + 1 < firstReducers.length && firstReducers[colIdx + 1] <= reducerId) {
+            colIdx++;
+        }
+        return colIdx;
+    }
+
+    /** @return the shards of the column, or null if it's built by one reducer */
+    public AppendTrieDictionaryShards getShards(int colIdx) {
+        return shards[colIdx];
+    }
+
+    /** Deletes the working dirs of all shards, for a build that will not commit them */
+    public void abortShards() throws IOException {
+        for (AppendTrieDictionaryShards s : shards) {
+            if (s != null) {
+                s.abort();
+            }
+        }
+    }
+}
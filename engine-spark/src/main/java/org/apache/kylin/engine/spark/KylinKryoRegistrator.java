@@ -21,6 +21,8 @@ package org.apache.kylin.engine.spark;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import org.apache.hadoop.io.Text;
+import org.apache.kylin.engine.spark.util.CuboidRowKey;
+import org.apache.kylin.engine.spark.util.CuboidRowKeySerializer;
 import org.apache.kylin.engine.spark.util.PercentileCounterSerializer;
 import org.apache.kylin.measure.percentile.PercentileCounter;
 import org.apache.spark.serializer.KryoRegistrator;
@@ -108,6 +110,7 @@ public class KylinKryoRegistrator implements KryoRegistrator {
         }
 
         kryo.register(PercentileCounter.class, new PercentileCounterSerializer());
+        kryo.register(CuboidRowKey.class, new CuboidRowKeySerializer());
     }
 
     /**
@@ -186,6 +189,7 @@ public class KylinKryoRegistrator implements KryoRegistrator {
         kyroClasses.add(org.apache.kylin.engine.mr.common.BaseCuboidBuilder.class);
         kyroClasses.add(org.apache.kylin.engine.mr.common.NDCuboidBuilder.class);
         kyroClasses.add(org.apache.kylin.engine.spark.SparkCubingByLayer.class);
+        kyroClasses.add(org.apache.kylin.engine.spark.SparkCubingInMem.class);
         kyroClasses.add(org.apache.kylin.job.JobInstance.class);
         kyroClasses.add(org.apache.kylin.job.dao.ExecutableOutputPO.class);
         kyroClasses.add(org.apache.kylin.job.dao.ExecutablePO.class);
@@ -199,6 +203,7 @@ public class KylinKryoRegistrator implements KryoRegistrator {
         kyroClasses.add(org.apache.kylin.measure.BufferedMeasureCodec.class);
         kyroClasses.add(org.apache.kylin.measure.MeasureAggregator.class);
         kyroClasses.add(org.apache.kylin.measure.MeasureAggregators.class);
+        kyroClasses.add(org.apache.kylin.measure.MeasureBlockMerger.class);
         kyroClasses.add(org.apache.kylin.measure.MeasureCodec.class);
         kyroClasses.add(org.apache.kylin.measure.MeasureIngester.class);
         kyroClasses.add(org.apache.kylin.measure.MeasureType.class);
@@ -240,6 +245,7 @@ public class KylinKryoRegistrator implements KryoRegistrator {
         kyroClasses.add(org.apache.kylin.measure.raw.RawAggregator.class);
         kyroClasses.add(org.apache.kylin.measure.raw.RawMeasureType.class);
         kyroClasses.add(org.apache.kylin.measure.raw.RawSerializer.class);
+        kyroClasses.add(org.apache.kylin.measure.topn.ByteArrayTopNCounter.class);
         kyroClasses.add(org.apache.kylin.measure.topn.Counter.class);
         kyroClasses.add(org.apache.kylin.measure.topn.DoubleDeltaSerializer.class);
         kyroClasses.add(org.apache.kylin.measure.topn.TopNAggregator.class);
@@ -90,7 +90,11 @@ public class SparkBatchCubingJobBuilder2 extends JobBuilderSupport {
 
     protected void addLayerCubingSteps(final CubingJob result, final String jobId, final String cuboidRootPath) {
         final SparkExecutable sparkExecutable = new SparkExecutable();
-        sparkExecutable.setClassName(SparkCubingByLayer.class.getName());
+        if (seg.getConfig().isSparkInMemCubingEnabled()) {
+            sparkExecutable.setClassName(SparkCubingInMem.class.getName());
+        } else {
+            sparkExecutable.setClassName(SparkCubingByLayer.class.getName());
+        }
         configureSparkJob(seg, sparkExecutable, jobId, cuboidRootPath);
         result.addTask(sparkExecutable);
     }
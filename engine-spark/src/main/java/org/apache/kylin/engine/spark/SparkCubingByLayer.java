@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -41,7 +42,6 @@ import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.HadoopUtil;
 import org.apache.kylin.common.util.OptionsHelper;
 import org.apache.kylin.common.util.Pair;
-import org.apache.kylin.cube.CubeDescManager;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
@@ -62,13 +62,15 @@ import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.engine.mr.common.CubeStatsReader;
 import org.apache.kylin.engine.mr.common.NDCuboidBuilder;
 import org.apache.kylin.engine.mr.common.SerializableConfiguration;
+import org.apache.kylin.engine.spark.util.CuboidRowKey;
 import org.apache.kylin.job.JoinedFlatTable;
-import org.apache.kylin.measure.BufferedMeasureCodec;
-import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.measure.MeasureBlockMerger;
 import org.apache.kylin.measure.MeasureIngester;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
 import org.apache.kylin.metadata.model.MeasureDesc;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.Function2;
@@ -144,7 +146,6 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         KylinConfig envConfig = AbstractHadoopJob.loadKylinConfigFromHdfs(sConf, metaUrl);
 
         final CubeInstance cubeInstance = CubeManager.getInstance(envConfig).getCube(cubeName);
-        final CubeDesc cubeDesc = cubeInstance.getDescriptor();
         final CubeSegment cubeSegment = cubeInstance.getSegmentById(segmentId);
 
         Configuration confOverwrite = new Configuration(sc.hadoopConfiguration());
@@ -155,41 +156,28 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         logger.info("RDD Output path: {}", outputPath);
         setHadoopConf(job, cubeSegment, metaUrl);
 
-        int countMeasureIndex = 0;
-        for (MeasureDesc measureDesc : cubeDesc.getMeasures()) {
-            if (measureDesc.getFunction().isCount() == true) {
-                break;
-            } else {
-                countMeasureIndex++;
-            }
-        }
-        final CubeStatsReader cubeStatsReader = new CubeStatsReader(cubeSegment, envConfig);
-        boolean[] needAggr = new boolean[cubeDesc.getMeasures().size()];
-        boolean allNormalMeasure = true;
-        for (int i = 0; i < cubeDesc.getMeasures().size(); i++) {
-            needAggr[i] = !cubeDesc.getMeasures().get(i).getFunction().getMeasureType().onlyAggrInBaseCuboid();
-            allNormalMeasure = allNormalMeasure && needAggr[i];
-        }
-        logger.info("All measure are normal (agg on all cuboids) ? : " + allNormalMeasure);
-        StorageLevel storageLevel = StorageLevel.fromString(envConfig.getSparkStorageLevel());
+        JavaRDD<String[]> flatTableRDD = getFlatTableRDD(sc, conf, envConfig, hiveTable, inputPath);
+        buildCube(flatTableRDD, cubeSegment, metaUrl, sConf, outputPath, job, envConfig);
+        //        deleteHDFSMeta(metaUrl);
+    }
 
+    protected JavaRDD<String[]> getFlatTableRDD(JavaSparkContext sc, SparkConf conf, KylinConfig envConfig,
+            String hiveTable, String inputPath) {
         boolean isSequenceFile = JoinedFlatTable.SEQUENCEFILE.equalsIgnoreCase(envConfig.getFlatTableStorageFormat());
 
-        final JavaPairRDD<ByteArray, Object[]> encodedBaseRDD;
-
         if (isSequenceFile) {
-            encodedBaseRDD = sc.sequenceFile(inputPath, BytesWritable.class, Text.class).values()
+            return sc.sequenceFile(inputPath, BytesWritable.class, Text.class).values()
                     .map(new Function<Text, String[]>() {
                         @Override
                         public String[] call(Text text) throws Exception {
                             String s = Bytes.toString(text.getBytes(), 0, text.getLength());
                             return s.split(BatchConstants.SEQUENCE_FILE_DEFAULT_DELIMITER);
                         }
-                    }).mapToPair(new EncodeBaseCuboid(cubeName, segmentId, metaUrl, sConf));
+                    });
         } else {
             SparkSession sparkSession = SparkSession.builder().config(conf).enableHiveSupport().getOrCreate();
             final Dataset intermediateTable = sparkSession.table(hiveTable);
-            encodedBaseRDD = intermediateTable.javaRDD().map(new Function<Row, String[]>() {
+            return intermediateTable.javaRDD().map(new Function<Row, String[]>() {
                 @Override
                 public String[] call(Row row) throws Exception {
                     String[] result = new String[row.size()];
@@ -203,9 +191,31 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
                     }
                     return result;
                 }
-            }).mapToPair(new EncodeBaseCuboid(cubeName, segmentId, metaUrl, sConf));
+            });
+        }
+    }
 
+    /**
+     * Builds all cuboids of the segment from the flat table, layer by layer.
+     */
+    protected void buildCube(JavaRDD<String[]> flatTableRDD, CubeSegment cubeSegment, String metaUrl,
+            SerializableConfiguration sConf, String outputPath, Job job, KylinConfig envConfig) throws Exception {
+        final CubeDesc cubeDesc = cubeSegment.getCubeDesc();
+        final String cubeName = cubeSegment.getCubeInstance().getName();
+        final String segmentId = cubeSegment.getUuid();
+
+        final CubeStatsReader cubeStatsReader = new CubeStatsReader(cubeSegment, envConfig);
+        boolean[] needAggr = new boolean[cubeDesc.getMeasures().size()];
+        boolean allNormalMeasure = true;
+        for (int i = 0; i < cubeDesc.getMeasures().size(); i++) {
+            needAggr[i] = !cubeDesc.getMeasures().get(i).getFunction().getMeasureType().onlyAggrInBaseCuboid();
+            allNormalMeasure = allNormalMeasure && needAggr[i];
         }
+        logger.info("All measure are normal (agg on all cuboids) ? : " + allNormalMeasure);
+        StorageLevel storageLevel = StorageLevel.fromString(envConfig.getSparkStorageLevel());
+
+        final JavaPairRDD<CuboidRowKey, byte[]> encodedBaseRDD = flatTableRDD
+                .mapToPair(new EncodeBaseCuboid(cubeName, segmentId, metaUrl, sConf));
 
         Long totalCount = 0L;
         if (envConfig.isSparkSanityCheckEnabled()) {
@@ -219,7 +229,7 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         }
 
         final int totalLevels = cubeSegment.getCuboidScheduler().getBuildLevel();
-        JavaPairRDD<ByteArray, Object[]>[] allRDDs = new JavaPairRDD[totalLevels + 1];
+        JavaPairRDD<CuboidRowKey, byte[]>[] allRDDs = new JavaPairRDD[totalLevels + 1];
         int level = 0;
         int partition = estimateRDDPartitionNum(level, cubeStatsReader, envConfig);
 
@@ -234,14 +244,25 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
             allRDDs[level] = allRDDs[level - 1].flatMapToPair(new CuboidFlatMap(cubeName, segmentId, metaUrl, sConf))
                     .reduceByKey(reducerFunction2, partition).persist(storageLevel);
             if (envConfig.isSparkSanityCheckEnabled() == true) {
-                sanityCheck(allRDDs[level], totalCount, level, cubeStatsReader, countMeasureIndex);
+                sanityCheck(allRDDs[level], totalCount, level, cubeStatsReader, cubeDesc);
             }
             saveToHDFS(allRDDs[level], metaUrl, cubeName, cubeSegment, outputPath, level, job, envConfig);
             allRDDs[level - 1].unpersist();
         }
         allRDDs[totalLevels].unpersist();
         logger.info("Finished on calculating all level cuboids.");
-        //        deleteHDFSMeta(metaUrl);
+    }
+
+    protected int getCountMeasureIndex(CubeDesc cubeDesc) {
+        int countMeasureIndex = 0;
+        for (MeasureDesc measureDesc : cubeDesc.getMeasures()) {
+            if (measureDesc.getFunction().isCount() == true) {
+                break;
+            } else {
+                countMeasureIndex++;
+            }
+        }
+        return countMeasureIndex;
     }
 
     protected void setHadoopConf(Job job, CubeSegment segment, String metaUrl) throws Exception {
@@ -259,51 +280,38 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         return partition;
     }
 
-    protected JavaPairRDD<ByteArray, Object[]> prepareOutput(JavaPairRDD<ByteArray, Object[]> rdd, KylinConfig config,
+    protected JavaPairRDD<CuboidRowKey, byte[]> prepareOutput(JavaPairRDD<CuboidRowKey, byte[]> rdd, KylinConfig config,
             CubeSegment segment, int level) {
         return rdd;
     }
 
-    protected void saveToHDFS(final JavaPairRDD<ByteArray, Object[]> rdd, final String metaUrl, final String cubeName,
+    protected void saveToHDFS(final JavaPairRDD<CuboidRowKey, byte[]> rdd, final String metaUrl, final String cubeName,
             final CubeSegment cubeSeg, final String hdfsBaseLocation, final int level, final Job job,
             final KylinConfig kylinConfig) throws Exception {
         final String cuboidOutputPath = BatchCubingJobBuilder2.getCuboidOutputPathsByLevel(hdfsBaseLocation, level);
-        final SerializableConfiguration sConf = new SerializableConfiguration(job.getConfiguration());
+        saveToPath(rdd, cubeSeg, cuboidOutputPath, level, job, kylinConfig);
+    }
 
+    protected void saveToPath(final JavaPairRDD<CuboidRowKey, byte[]> rdd, final CubeSegment cubeSeg,
+            final String cuboidOutputPath, final int level, final Job job, final KylinConfig kylinConfig)
+            throws Exception {
         IMROutput2.IMROutputFormat outputFormat = MRUtil.getBatchCubingOutputSide2(cubeSeg).getOuputFormat();
         outputFormat.configureJobOutput(job, cuboidOutputPath, cubeSeg, cubeSeg.getCuboidScheduler(), level);
 
         prepareOutput(rdd, kylinConfig, cubeSeg, level).mapToPair(
-                new PairFunction<Tuple2<ByteArray, Object[]>, org.apache.hadoop.io.Text, org.apache.hadoop.io.Text>() {
-                    private volatile transient boolean initialized = false;
-                    BufferedMeasureCodec codec;
-
+                new PairFunction<Tuple2<CuboidRowKey, byte[]>, org.apache.hadoop.io.Text, org.apache.hadoop.io.Text>() {
                     @Override
                     public Tuple2<org.apache.hadoop.io.Text, org.apache.hadoop.io.Text> call(
-                            Tuple2<ByteArray, Object[]> tuple2) throws Exception {
-
-                        if (initialized == false) {
-                            synchronized (SparkCubingByLayer.class) {
-                                if (initialized == false) {
-                                    KylinConfig kylinConfig = AbstractHadoopJob.loadKylinConfigFromHdfs(sConf, metaUrl);
-                                    CubeDesc desc = CubeDescManager.getInstance(kylinConfig).getCubeDesc(cubeName);
-                                    codec = new BufferedMeasureCodec(desc.getMeasures());
-                                    initialized = true;
-                                }
-                            }
-                        }
-                        ByteBuffer valueBuf = codec.encode(tuple2._2());
-                        byte[] encodedBytes = new byte[valueBuf.position()];
-                        System.arraycopy(valueBuf.array(), 0, encodedBytes, 0, valueBuf.position());
-                        return new Tuple2<>(new org.apache.hadoop.io.Text(tuple2._1().array()),
-                                new org.apache.hadoop.io.Text(encodedBytes));
+                            Tuple2<CuboidRowKey, byte[]> tuple2) throws Exception {
+                        return new Tuple2<>(new org.apache.hadoop.io.Text(tuple2._1().getBytes()),
+                                new org.apache.hadoop.io.Text(tuple2._2()));
                     }
 
                 }).saveAsNewAPIHadoopDataset(job.getConfiguration());
         logger.info("Persisting RDD for level " + level + " into " + cuboidOutputPath);
     }
 
-    static public class EncodeBaseCuboid implements PairFunction<String[], ByteArray, Object[]> {
+    static public class EncodeBaseCuboid implements PairFunction<String[], CuboidRowKey, byte[]> {
         private volatile transient boolean initialized = false;
         private BaseCuboidBuilder baseCuboidBuilder = null;
         private String cubeName;
@@ -319,7 +327,7 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         }
 
         @Override
-        public Tuple2<ByteArray, Object[]> call(String[] rowArray) throws Exception {
+        public Tuple2<CuboidRowKey, byte[]> call(String[] rowArray) throws Exception {
             if (initialized == false) {
                 synchronized (SparkCubingByLayer.class) {
                     if (initialized == false) {
@@ -340,17 +348,16 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
             }
             baseCuboidBuilder.resetAggrs();
             byte[] rowKey = baseCuboidBuilder.buildKey(rowArray);
-            Object[] result = baseCuboidBuilder.buildValueObjects(rowArray);
-            return new Tuple2<>(new ByteArray(rowKey), result);
+            ByteBuffer valueBuf = baseCuboidBuilder.buildValue(rowArray);
+            return new Tuple2<>(new CuboidRowKey(rowKey), Arrays.copyOf(valueBuf.array(), valueBuf.position()));
         }
     }
 
-    static public class BaseCuboidReducerFunction2 implements Function2<Object[], Object[], Object[]> {
+    static public class BaseCuboidReducerFunction2 implements Function2<byte[], byte[], byte[]> {
         protected String cubeName;
         protected String metaUrl;
         protected CubeDesc cubeDesc;
-        protected int measureNum;
-        protected MeasureAggregators aggregators;
+        protected MeasureBlockMerger merger;
         protected volatile transient boolean initialized = false;
         protected SerializableConfiguration conf;
 
@@ -364,12 +371,11 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
             KylinConfig kConfig = AbstractHadoopJob.loadKylinConfigFromHdfs(conf, metaUrl);
             CubeInstance cubeInstance = CubeManager.getInstance(kConfig).getCube(cubeName);
             cubeDesc = cubeInstance.getDescriptor();
-            aggregators = new MeasureAggregators(cubeDesc.getMeasures());
-            measureNum = cubeDesc.getMeasures().size();
+            merger = new MeasureBlockMerger(cubeDesc.getMeasures());
         }
 
         @Override
-        public Object[] call(Object[] input1, Object[] input2) throws Exception {
+        public byte[] call(byte[] input1, byte[] input2) throws Exception {
             if (initialized == false) {
                 synchronized (SparkCubingByLayer.class) {
                     if (initialized == false) {
@@ -378,9 +384,7 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
                     }
                 }
             }
-            Object[] result = new Object[measureNum];
-            aggregators.aggregate(input1, input2, result);
-            return result;
+            return merger.merge(input1, input2);
         }
     }
 
@@ -393,24 +397,15 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         }
 
         @Override
-        public Object[] call(Object[] input1, Object[] input2) throws Exception {
-            if (initialized == false) {
-                synchronized (SparkCubingByLayer.class) {
-                    if (initialized == false) {
-                        init();
-                        initialized = true;
-                    }
-                }
-            }
-            Object[] result = new Object[measureNum];
-            aggregators.aggregate(input1, input2, result, needAggr);
-            return result;
+        public void init() {
+            super.init();
+            merger = new MeasureBlockMerger(cubeDesc.getMeasures(), needAggr);
         }
     }
 
-    private static final java.lang.Iterable<Tuple2<ByteArray, Object[]>> EMTPY_ITERATOR = new ArrayList(0);
+    private static final java.lang.Iterable<Tuple2<CuboidRowKey, byte[]>> EMTPY_ITERATOR = new ArrayList(0);
 
-    static public class CuboidFlatMap implements PairFlatMapFunction<Tuple2<ByteArray, Object[]>, ByteArray, Object[]> {
+    static public class CuboidFlatMap implements PairFlatMapFunction<Tuple2<CuboidRowKey, byte[]>, CuboidRowKey, byte[]> {
 
         private String cubeName;
         private String segmentId;
@@ -441,7 +436,7 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         }
 
         @Override
-        public Iterator<Tuple2<ByteArray, Object[]>> call(Tuple2<ByteArray, Object[]> tuple2) throws Exception {
+        public Iterator<Tuple2<CuboidRowKey, byte[]>> call(Tuple2<CuboidRowKey, byte[]> tuple2) throws Exception {
             if (initialized == false) {
                 synchronized (SparkCubingByLayer.class) {
                     if (initialized == false) {
@@ -451,7 +446,7 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
                 }
             }
 
-            byte[] key = tuple2._1().array();
+            byte[] key = tuple2._1().getBytes();
             long cuboidId = rowKeySplitter.split(key);
             Cuboid parentCuboid = Cuboid.findForMandatory(cubeDesc, cuboidId);
 
@@ -462,7 +457,7 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
                 return EMTPY_ITERATOR.iterator();
             }
 
-            List<Tuple2<ByteArray, Object[]>> tuples = new ArrayList(myChildren.size());
+            List<Tuple2<CuboidRowKey, byte[]>> tuples = new ArrayList(myChildren.size());
             for (Long child : myChildren) {
                 Cuboid childCuboid = Cuboid.findForMandatory(cubeDesc, child);
                 Pair<Integer, ByteArray> result = ndCuboidBuilder.buildKey(parentCuboid, childCuboid,
@@ -471,17 +466,17 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
                 byte[] newKey = new byte[result.getFirst()];
                 System.arraycopy(result.getSecond().array(), 0, newKey, 0, result.getFirst());
 
-                tuples.add(new Tuple2<>(new ByteArray(newKey), tuple2._2()));
+                tuples.add(new Tuple2<>(new CuboidRowKey(newKey), tuple2._2()));
             }
 
             return tuples.iterator();
         }
     }
 
-    protected void sanityCheck(JavaPairRDD<ByteArray, Object[]> rdd, Long totalCount, int thisLevel,
-            CubeStatsReader cubeStatsReader, final int countMeasureIndex) {
+    protected void sanityCheck(JavaPairRDD<CuboidRowKey, byte[]> rdd, Long totalCount, int thisLevel,
+            CubeStatsReader cubeStatsReader, CubeDesc cubeDesc) {
         int thisCuboidNum = cubeStatsReader.getCuboidsByLayer(thisLevel).size();
-        Long count2 = getRDDCountSum(rdd, countMeasureIndex);
+        Long count2 = getRDDCountSum(rdd, cubeDesc);
         if (count2 != totalCount * thisCuboidNum) {
             throw new IllegalStateException(
                     String.format("Sanity check failed, level %s, total count(*) is %s; cuboid number %s", thisLevel,
@@ -491,20 +486,37 @@ public class SparkCubingByLayer extends AbstractApplication implements Serializa
         }
     }
 
-    private Long getRDDCountSum(JavaPairRDD<ByteArray, Object[]> rdd, final int countMeasureIndex) {
-        final ByteArray ONE = new ByteArray();
-        Long count = rdd.mapValues(new Function<Object[], Long>() {
+    protected Long getRDDCountSum(JavaPairRDD<CuboidRowKey, byte[]> rdd, CubeDesc cubeDesc) {
+        final int countMeasureIndex = getCountMeasureIndex(cubeDesc);
+        final String[] dataTypes = new String[countMeasureIndex + 1];
+        for (int i = 0; i <= countMeasureIndex; i++) {
+            dataTypes[i] = cubeDesc.getMeasures().get(i).getFunction().getReturnType();
+        }
+
+        Long count = rdd.values().map(new Function<byte[], Long>() {
+            private transient DataTypeSerializer[] serializers;
+
             @Override
-            public Long call(Object[] objects) throws Exception {
-                return (Long) objects[countMeasureIndex];
+            public Long call(byte[] value) throws Exception {
+                if (serializers == null) {
+                    serializers = new DataTypeSerializer[dataTypes.length];
+                    for (int i = 0; i < dataTypes.length; i++) {
+                        serializers[i] = DataTypeSerializer.create(dataTypes[i]);
+                    }
+                }
+                // skip the measures before count(*)
+                ByteBuffer buf = ByteBuffer.wrap(value);
+                for (int i = 0; i < countMeasureIndex; i++) {
+                    buf.position(buf.position() + serializers[i].peekLength(buf));
+                }
+                return (Long) serializers[countMeasureIndex].deserialize(buf);
             }
-        }).reduce(new Function2<Tuple2<ByteArray, Long>, Tuple2<ByteArray, Long>, Tuple2<ByteArray, Long>>() {
+        }).reduce(new Function2<Long, Long, Long>() {
             @Override
-            public Tuple2<ByteArray, Long> call(Tuple2<ByteArray, Long> longTuple2, Tuple2<ByteArray, Long> longTuple22)
-                    throws Exception {
-                return new Tuple2<>(ONE, longTuple2._2() + longTuple22._2());
+            public Long call(Long count1, Long count2) throws Exception {
+                return count1 + count2;
             }
-        })._2();
+        });
         return count;
     }
 
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.engine.spark;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.MemoryBudgetController;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.inmemcubing.ConsumeBlockingQueueController;
+import org.apache.kylin.cube.inmemcubing.DoggedCubeBuilder;
+import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
+import org.apache.kylin.cube.inmemcubing.InputConverterUnit;
+import org.apache.kylin.cube.inmemcubing.InputConverterUnitForRawData;
+import org.apache.kylin.cube.kv.AbstractRowKeyEncoder;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.engine.EngineFactory;
+import org.apache.kylin.engine.mr.BatchCubingJobBuilder2;
+import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
+import org.apache.kylin.engine.mr.common.CubeStatsReader;
+import org.apache.kylin.engine.mr.common.SerializableConfiguration;
+import org.apache.kylin.engine.spark.util.CuboidRowKey;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.measure.BufferedMeasureCodec;
+import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.storage.StorageLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import scala.Tuple2;
+
+/**
+ * Spark application to build cube with the "in-mem" algorithm, like InMemCuboidJob of the MR engine. Each partition
+ * of the flat table builds all its cuboids with {@link DoggedCubeBuilder}, and the partial cuboids of all partitions
+ * are merged by a single shuffle.
+ * <p>
+ * Falls back to the "by-layer" algorithm if the statistics estimate a partition outputs more than
+ * kylin.engine.spark.inmem-cubing-partition-mb, or the cube has memory hungry measures.
+ */
+public class SparkCubingInMem extends SparkCubingByLayer {
+
+    protected static final Logger logger = LoggerFactory.getLogger(SparkCubingInMem.class);
+
+    @Override
+    protected void buildCube(JavaRDD<String[]> flatTableRDD, CubeSegment cubeSegment, String metaUrl,
+            SerializableConfiguration sConf, String outputPath, Job job, KylinConfig envConfig) throws Exception {
+        final CubeDesc cubeDesc = cubeSegment.getCubeDesc();
+        final String cubeName = cubeSegment.getCubeInstance().getName();
+        final String segmentId = cubeSegment.getUuid();
+
+        final CubeStatsReader cubeStatsReader = new CubeStatsReader(cubeSegment, envConfig);
+        int inputPartitions = flatTableRDD.getNumPartitions();
+        double partitionMB = estimatePartitionCuboidsMB(cubeSegment, cubeStatsReader, inputPartitions);
+        int partitionBudgetMB = envConfig.getSparkInMemCubingPartitionMB();
+        logger.info("Estimated cuboids of one of the " + inputPartitions + " partitions: " + partitionMB
+                + " MB, budget " + partitionBudgetMB + " MB");
+
+        if (cubeDesc.hasMemoryHungryMeasures()) {
+            logger.info("Cube has memory hungry measures, fall back to layer cubing");
+            super.buildCube(flatTableRDD, cubeSegment, metaUrl, sConf, outputPath, job, envConfig);
+            return;
+        }
+        if (partitionMB > partitionBudgetMB) {
+            logger.info("Partition exceeds the in-mem cubing budget, fall back to layer cubing");
+            super.buildCube(flatTableRDD, cubeSegment, metaUrl, sConf, outputPath, job, envConfig);
+            return;
+        }
+
+        int executorCores = flatTableRDD.context().getConf().getInt("spark.executor.cores", 1);
+        final JavaPairRDD<CuboidRowKey, byte[]> cuboidRDD = flatTableRDD
+                .mapPartitionsToPair(new InMemCubingFunction(cubeName, segmentId, metaUrl, sConf, executorCores))
+                .reduceByKey(new BaseCuboidReducerFunction2(cubeName, metaUrl, sConf),
+                        estimateRDDPartitionNum(cubeStatsReader, envConfig));
+
+        if (envConfig.isSparkSanityCheckEnabled()) {
+            cuboidRDD.persist(StorageLevel.fromString(envConfig.getSparkStorageLevel()));
+            sanityCheck(cuboidRDD, flatTableRDD.count(), cubeSegment.getCuboidScheduler().getCuboidCount(), cubeDesc);
+        }
+
+        String cuboidOutputPath = BatchCubingJobBuilder2.getInMemCuboidPath(outputPath);
+        saveToPath(cuboidRDD, cubeSegment, cuboidOutputPath, 0, job, envConfig);
+        cuboidRDD.unpersist();
+        logger.info("Finished on calculating all cuboids in memory.");
+    }
+
+    /**
+     * Estimates the cuboids of a partition from the statistics. A partition of 1/n of the flat table is taken to have
+     * 1/n of the base cuboid rows that all mappers of the statistics step have, and no more rows in a cuboid than
+     * the whole segment has.
+     */
+    protected double estimatePartitionCuboidsMB(CubeSegment cubeSegment, CubeStatsReader statsReader,
+            int nPartitions) {
+        Map<Long, Long> cuboidRows = statsReader.getCuboidRowEstimatesHLL();
+        Map<Long, Double> cuboidSizes = statsReader.getCuboidSizeMap();
+        long baseCuboidId = cubeSegment.getCuboidScheduler().getBaseCuboidId();
+        Long baseRows = cuboidRows.get(baseCuboidId);
+        if (baseRows == null || baseRows == 0) {
+            return 0;
+        }
+
+        double partitionBaseRows = baseRows * Math.max(statsReader.getMapperOverlapRatioOfFirstBuild(), 1.0)
+                / Math.max(nPartitions, 1);
+        double ret = 0;
+        for (Long cuboidId : cubeSegment.getCuboidScheduler().getAllCuboidIds()) {
+            Long rows = cuboidRows.get(cuboidId);
+            Double size = cuboidSizes.get(cuboidId);
+            if (rows == null || size == null || rows == 0) {
+                continue;
+            }
+            ret += size * Math.min(1.0, partitionBaseRows / rows);
+        }
+        return ret;
+    }
+
+    protected int estimateRDDPartitionNum(CubeStatsReader statsReader, KylinConfig kylinConfig) {
+        int partition = (int) (statsReader.estimateCubeSize() / kylinConfig.getSparkRDDPartitionCutMB());
+        partition = Math.max(kylinConfig.getSparkMinPartition(), partition);
+        partition = Math.min(kylinConfig.getSparkMaxPartition(), partition);
+        logger.info("Partition for spark cubing: {}", partition);
+        return partition;
+    }
+
+    protected void sanityCheck(JavaPairRDD<CuboidRowKey, byte[]> rdd, Long totalCount, int cuboidNum,
+            CubeDesc cubeDesc) {
+        Long count2 = getRDDCountSum(rdd, cubeDesc);
+        if (count2 != totalCount * cuboidNum) {
+            throw new IllegalStateException(String.format(
+                    "Sanity check failed, total count(*) is %s; cuboid number %s", count2, cuboidNum));
+        } else {
+            logger.info("sanity check success, count(*) is " + (count2 / cuboidNum));
+        }
+    }
+
+    /**
+     * Builds all cuboids of a partition. The rows go to a cubing thread, whose cuboids are then returned as they are
+     * merged and written out by {@link DoggedCubeBuilder} after the last row.
+     */
+    static public class InMemCubingFunction
+            implements PairFlatMapFunction<Iterator<String[]>, CuboidRowKey, byte[]> {
+
+        private String cubeName;
+        private String segmentId;
+        private String metaUrl;
+        private int executorCores;
+        private CubeSegment cubeSegment;
+        private IJoinedFlatTableDesc flatDesc;
+        private Map<TblColRef, Dictionary<String>> dictionaryMap;
+        private int taskThreadCount;
+        private volatile transient boolean initialized = false;
+        private SerializableConfiguration conf;
+
+        public InMemCubingFunction(String cubeName, String segmentId, String metaUrl, SerializableConfiguration conf,
+                int executorCores) {
+            this.cubeName = cubeName;
+            this.segmentId = segmentId;
+            this.metaUrl = metaUrl;
+            this.conf = conf;
+            this.executorCores = executorCores;
+        }
+
+        public void init() {
+            KylinConfig kConfig = AbstractHadoopJob.loadKylinConfigFromHdfs(conf, metaUrl);
+            CubeInstance cubeInstance = CubeManager.getInstance(kConfig).getCube(cubeName);
+            this.cubeSegment = cubeInstance.getSegmentById(segmentId);
+            this.flatDesc = EngineFactory.getJoinedFlatTableDesc(cubeSegment);
+            this.dictionaryMap = cubeSegment.buildDictionaryMap();
+            this.taskThreadCount = kConfig.getCubeAlgorithmInMemConcurrentThreads();
+        }
+
+        @Override
+        public Iterator<Tuple2<CuboidRowKey, byte[]>> call(Iterator<String[]> rows) throws Exception {
+            if (initialized == false) {
+                synchronized (SparkCubingByLayer.class) {
+                    if (initialized == false) {
+                        init();
+                        initialized = true;
+                    }
+                }
+            }
+
+            CubeDesc cubeDesc = cubeSegment.getCubeDesc();
+            int reserveMemoryMB = calculateReserveMB();
+            DoggedCubeBuilder cubeBuilder = new DoggedCubeBuilder(cubeSegment.getCuboidScheduler(), flatDesc,
+                    dictionaryMap);
+            cubeBuilder.setReserveMemoryMB(reserveMemoryMB);
+            cubeBuilder.setConcurrentThreads(taskThreadCount);
+
+            BlockingQueue<String[]> input = new LinkedBlockingQueue<>(2000);
+            BlockingQueue<Tuple2<CuboidRowKey, byte[]>> output = new LinkedBlockingQueue<>(2000);
+            InputConverterUnit<String[]> inputConverterUnit = new InputConverterUnitForRawData(cubeDesc, flatDesc,
+                    dictionaryMap);
+            ExecutorService executorService = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true).setNameFormat("inmemory-cube-building-partition-%d").build());
+            Future<?> future = executorService.submit(cubeBuilder.buildAsRunnable(input, inputConverterUnit,
+                    new QueueCuboidWriter(cubeSegment, output)));
+            executorService.shutdown();
+
+            // the builder outputs nothing before the end row, so all rows can go in before the output is read
+            int unitRows = ConsumeBlockingQueueController.DEFAULT_BATCH_SIZE;
+            if (cubeDesc.hasMemoryHungryMeasures()) {
+                unitRows /= 10;
+            }
+            long counter = 0;
+            while (rows.hasNext()) {
+                offer(input, rows.next(), future);
+                counter++;
+                if (counter % unitRows == 0 && MemoryBudgetController.getSystemAvailMB() <= reserveMemoryMB) {
+                    logger.info("Split cut after " + counter + " rows due to hitting memory threshold "
+                            + reserveMemoryMB + " MB");
+                    offer(input, inputConverterUnit.getCutRow(), future);
+                }
+            }
+            offer(input, inputConverterUnit.getEndRow(), future);
+            logger.info("Totally handled " + counter + " records of the partition");
+
+            return new CuboidIterator(output, future);
+        }
+
+        // other tasks of the executor build their partitions at the same time
+        private int calculateReserveMB() {
+            int sysAvailMB = MemoryBudgetController.getSystemAvailMB();
+            int sysReserve = Math.max(sysAvailMB / 10, 100);
+            int otherTasksReserve = sysAvailMB * (executorCores - 1) / Math.max(executorCores, 1);
+            int reserveMB = sysReserve + otherTasksReserve;
+            logger.info("Reserve " + reserveMB + " MB = " + otherTasksReserve + " (other tasks) + " + sysReserve
+                    + " (SYS reserve)");
+            return reserveMB;
+        }
+
+        private static void offer(BlockingQueue<String[]> input, String[] row, Future<?> future) throws IOException,
+                InterruptedException {
+            while (!input.offer(row, 1, TimeUnit.SECONDS)) {
+                if (future.isDone()) {
+                    futureGet(future);
+                    throw new IOException("Failed to build cube in partition due to cubing thread exit unexpectedly");
+                }
+            }
+        }
+    }
+
+    private static void futureGet(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to build cube in partition", e.getCause());
+        }
+    }
+
+    private static final Tuple2<CuboidRowKey, byte[]> END_TUPLE = new Tuple2<>(new CuboidRowKey(new byte[0]), new byte[0]);
+
+    private static class QueueCuboidWriter implements ICuboidWriter {
+
+        private final CubeSegment cubeSegment;
+        private final CubeDesc cubeDesc;
+        private final int measureCount;
+        private final BlockingQueue<Tuple2<CuboidRowKey, byte[]>> output;
+
+        private long lastCuboidId = -1;
+        private AbstractRowKeyEncoder rowKeyEncoder;
+        private ImmutableBitSet measureColumns;
+        private ByteBuffer valueBuf = ByteBuffer.allocate(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);
+
+        QueueCuboidWriter(CubeSegment cubeSegment, BlockingQueue<Tuple2<CuboidRowKey, byte[]>> output) {
+            this.cubeSegment = cubeSegment;
+            this.cubeDesc = cubeSegment.getCubeDesc();
+            this.measureCount = cubeDesc.getMeasures().size();
+            this.output = output;
+        }
+
+        @Override
+        public void write(long cuboidId, GTRecord record) throws IOException {
+            if (cuboidId != lastCuboidId) {
+                rowKeyEncoder = AbstractRowKeyEncoder.createInstance(cubeSegment,
+                        Cuboid.findForMandatory(cubeDesc, cuboidId));
+                int dimensions = Long.bitCount(cuboidId);
+                measureColumns = new ImmutableBitSet(dimensions, dimensions + measureCount);
+                lastCuboidId = cuboidId;
+            }
+
+            // the record is reused by the builder, the key and measures must be copied out
+            byte[] key = rowKeyEncoder.createBuf();
+            rowKeyEncoder.encode(record, record.getInfo().getPrimaryKey(), key);
+            valueBuf.clear();
+            try {
+                record.exportColumns(measureColumns, valueBuf);
+            } catch (BufferOverflowException boe) {
+                valueBuf = ByteBuffer.allocate((int) (record.sizeOf(measureColumns) * 1.5));
+                record.exportColumns(measureColumns, valueBuf);
+            }
+            put(new Tuple2<>(new CuboidRowKey(key), Arrays.copyOf(valueBuf.array(), valueBuf.position())));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            put(END_TUPLE);
+        }
+
+        private void put(Tuple2<CuboidRowKey, byte[]> tuple) throws IOException {
+            try {
+                output.put(tuple);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private static class CuboidIterator implements Iterator<Tuple2<CuboidRowKey, byte[]>> {
+
+        private final BlockingQueue<Tuple2<CuboidRowKey, byte[]>> output;
+        private final Future<?> future;
+        private Tuple2<CuboidRowKey, byte[]> next;
+
+        CuboidIterator(BlockingQueue<Tuple2<CuboidRowKey, byte[]>> output, Future<?> future) {
+            this.output = output;
+            this.future = future;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = output.take();
+                    if (next == END_TUPLE) {
+                        futureGet(future);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return next != END_TUPLE;
+        }
+
+        @Override
+        public Tuple2<CuboidRowKey, byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple2<CuboidRowKey, byte[]> ret = next;
+            next = null;
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
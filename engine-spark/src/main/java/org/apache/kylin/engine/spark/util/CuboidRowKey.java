@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.spark.util;
+
+import java.io.Serializable;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.BytesUtil;
+
+/**
+ * The rowkey of a cuboid row in the cubing RDDs, whose value is the measures encoded by BufferedMeasureCodec.
+ * Unlike ByteArray it always owns its whole array, so that {@link CuboidRowKeySerializer} writes just the bytes.
+ */
+@SuppressWarnings("serial")
+public final class CuboidRowKey implements Comparable<CuboidRowKey>, Serializable {
+
+    private final byte[] bytes;
+    private transient int hash;
+
+    public CuboidRowKey(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Bytes.hashCode(bytes, 0, bytes.length);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        CuboidRowKey o = (CuboidRowKey) obj;
+        return Bytes.equals(bytes, o.bytes);
+    }
+
+    @Override
+    public int compareTo(CuboidRowKey o) {
+        return Bytes.compareTo(bytes, o.bytes);
+    }
+
+    @Override
+    public String toString() {
+        return BytesUtil.toHex(bytes);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.spark.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+public class CuboidRowKeySerializer extends Serializer<CuboidRowKey> {
+
+    @Override
+    public void write(Kryo kryo, Output output, CuboidRowKey key) {
+        byte[] bytes = key.getBytes();
+        output.writeVarInt(bytes.length, true);
+        output.writeBytes(bytes);
+    }
+
+    @Override
+    public CuboidRowKey read(Kryo kryo, Input input, Class type) {
+        int length = input.readVarInt(true);
+        return new CuboidRowKey(input.readBytes(length));
+    }
+}
@@ -83,6 +83,15 @@ public class ITDoggedCubeBuilderTest extends LocalFileMetadataTestCase {
 
     @Test
     public void test() throws Exception {
+        testCompareWithInMem(false);
+    }
+
+    @Test
+    public void testAdaptiveSplit() throws Exception {
+        testCompareWithInMem(true);
+    }
+
+    private void testCompareWithInMem(boolean adaptiveSplit) throws Exception {
 
         ArrayBlockingQueue<String[]> queue = new ArrayBlockingQueue<String[]>(1000);
         ExecutorService executorService = Executors.newSingleThreadExecutor();
@@ -91,6 +100,7 @@ public class ITDoggedCubeBuilderTest extends LocalFileMetadataTestCase {
         IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cube.getDescriptor());
         DoggedCubeBuilder doggedBuilder = new DoggedCubeBuilder(cube.getCuboidScheduler(), flatDesc, dictionaryMap);
         doggedBuilder.setConcurrentThreads(THREADS);
+        doggedBuilder.setAdaptiveSplit(adaptiveSplit);
         FileRecordWriter doggedResult = new FileRecordWriter();
 
         {
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.response;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Query results kept column by column. Integer and double columns are held as primitive arrays with a null bitmap,
+ * other columns as strings shared between equal values, so a large result is neither formatted nor boxed
+ * until somebody really reads it.
+ *
+ * {@link #asRows()} gives the legacy List&lt;List&lt;String&gt;&gt; view, formatting each cell when it is read.
+ */
+public class ColumnarResults implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int rowCount;
+    private final Column[] columns;
+
+    private ColumnarResults(int rowCount, Column[] columns) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getString(int row, int column) {
+        return columns[column].getString(row);
+    }
+
+    /** read-only row view, cells are formatted to strings on access */
+    public List<List<String>> asRows() {
+        return new AbstractList<List<String>>() {
+            @Override
+            public List<String> get(final int row) {
+                if (row < 0 || row >= rowCount)
+                    throw new IndexOutOfBoundsException("row " + row + " of " + rowCount);
+
+                return new AbstractList<String>() {
+                    @Override
+                    public String get(int column) {
+                        return columns[column].getString(row);
+                    }
+
+                    @Override
+                    public int size() {
+                        return columns.length;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    // ============================================================================
+
+    private interface Column extends Serializable {
+        String getString(int row);
+    }
+
+    private static class LongColumn implements Column {
+        private static final long serialVersionUID = 1L;
+
+        final long[] values;
+        final BitSet nulls;
+
+        LongColumn(long[] values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        public String getString(int row) {
+            return nulls.get(row) ? null : Long.toString(values[row]);
+        }
+    }
+
+    private static class DoubleColumn implements Column {
+        private static final long serialVersionUID = 1L;
+
+        final double[] values;
+        final BitSet nulls;
+
+        DoubleColumn(double[] values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        public String getString(int row) {
+            return nulls.get(row) ? null : Double.toString(values[row]);
+        }
+    }
+
+    private static class StringColumn implements Column {
+        private static final long serialVersionUID = 1L;
+
+        final String[] values;
+
+        StringColumn(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public String getString(int row) {
+            return values[row];
+        }
+    }
+
+    // ============================================================================
+
+    /**
+     * Reads the rows of a ResultSet into columns by their JDBC types.
+     *
+     * A typed column only stays typed while the driver returns values of the expected class, and its first value
+     * formats the same as ResultSet.getString(). Otherwise it turns into a string column, so the legacy view is
+     * always identical to what getString() would have returned.
+     */
+    public static class Builder {
+        private final ColumnBuilder[] builders;
+        private int rowCount = 0;
+
+        public Builder(int[] sqlTypes) {
+            builders = new ColumnBuilder[sqlTypes.length];
+            for (int i = 0; i < sqlTypes.length; i++) {
+                switch (sqlTypes[i]) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    builders[i] = new LongColumnBuilder();
+                    break;
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    builders[i] = new DoubleColumnBuilder();
+                    break;
+                default:
+                    builders[i] = new StringColumnBuilder(0);
+                    break;
+                }
+            }
+        }
+
+        /** append the current row of the result set */
+        public void addRow(ResultSet resultSet) throws SQLException {
+            for (int i = 0; i < builders.length; i++) {
+                if (!builders[i].add(rowCount, resultSet, i + 1)) {
+                    StringColumnBuilder demoted = new StringColumnBuilder(rowCount);
+                    for (int row = 0; row < rowCount; row++) {
+                        demoted.values[row] = demoted.share(builders[i].getString(row));
+                    }
+                    builders[i] = demoted;
+                    builders[i].add(rowCount, resultSet, i + 1);
+                }
+            }
+            rowCount++;
+        }
+
+        public ColumnarResults build() {
+            Column[] columns = new Column[builders.length];
+            for (int i = 0; i < builders.length; i++) {
+                columns[i] = builders[i].build(rowCount);
+            }
+            return new ColumnarResults(rowCount, columns);
+        }
+    }
+
+    private static abstract class ColumnBuilder {
+        /** return false if the value does not fit this column */
+        abstract boolean add(int row, ResultSet resultSet, int index) throws SQLException;
+
+        abstract String getString(int row);
+
+        abstract Column build(int rowCount);
+    }
+
+    private static class LongColumnBuilder extends ColumnBuilder {
+        long[] values = new long[16];
+        final BitSet nulls = new BitSet();
+        boolean verified = false;
+
+        @Override
+        boolean add(int row, ResultSet resultSet, int index) throws SQLException {
+            Object value = resultSet.getObject(index);
+            if (value == null) {
+                nulls.set(row);
+                return true;
+            }
+            if (!(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte))
+                return false;
+
+            long v = ((Number) value).longValue();
+            if (!verified) {
+                if (!Long.toString(v).equals(resultSet.getString(index)))
+                    return false;
+                verified = true;
+            }
+            if (row >= values.length)
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            values[row] = v;
+            return true;
+        }
+
+        @Override
+        String getString(int row) {
+            return nulls.get(row) ? null : Long.toString(values[row]);
+        }
+
+        @Override
+        Column build(int rowCount) {
+            return new LongColumn(Arrays.copyOf(values, rowCount), nulls);
+        }
+    }
+
+    private static class DoubleColumnBuilder extends ColumnBuilder {
+        double[] values = new double[16];
+        final BitSet nulls = new BitSet();
+        boolean verified = false;
+
+        @Override
+        boolean add(int row, ResultSet resultSet, int index) throws SQLException {
+            Object value = resultSet.getObject(index);
+            if (value == null) {
+                nulls.set(row);
+                return true;
+            }
+            if (!(value instanceof Double))
+                return false;
+
+            double v = (Double) value;
+            if (!verified) {
+                if (!Double.toString(v).equals(resultSet.getString(index)))
+                    return false;
+                verified = true;
+            }
+            if (row >= values.length)
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            values[row] = v;
+            return true;
+        }
+
+        @Override
+        String getString(int row) {
+            return nulls.get(row) ? null : Double.toString(values[row]);
+        }
+
+        @Override
+        Column build(int rowCount) {
+            return new DoubleColumn(Arrays.copyOf(values, rowCount), nulls);
+        }
+    }
+
+    private static class StringColumnBuilder extends ColumnBuilder {
+        private static final int MAX_SHARED = 10000;
+
+        String[] values;
+        // equal strings share one instance, dimension values usually repeat a lot
+        final Map<String, String> shared = Maps.newHashMap();
+
+        StringColumnBuilder(int rowCount) {
+            values = new String[Math.max(16, rowCount)];
+        }
+
+        String share(String value) {
+            if (value == null)
+                return null;
+            String existing = shared.get(value);
+            if (existing != null)
+                return existing;
+            if (shared.size() < MAX_SHARED)
+                shared.put(value, value);
+            return value;
+        }
+
+        @Override
+        boolean add(int row, ResultSet resultSet, int index) throws SQLException {
+            if (row >= values.length)
+                values = Arrays.copyOf(values, Math.max(values.length * 2, row + 1));
+            values[row] = share(resultSet.getString(index));
+            return true;
+        }
+
+        @Override
+        String getString(int row) {
+            return values[row];
+        }
+
+        @Override
+        Column build(int rowCount) {
+            return new StringColumn(Arrays.copyOf(values, rowCount));
+        }
+    }
+}
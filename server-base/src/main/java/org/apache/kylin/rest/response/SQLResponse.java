@@ -41,6 +41,9 @@ public class SQLResponse implements Serializable {
     // the results rows, each row contains several columns
     protected List<List<String>> results;
 
+    // the results column by column, used instead of results when set
+    protected ColumnarResults columnarResults;
+
     /**
      * for historical reasons it is named "cube", however it might also refer to any realizations like hybrid, II or etc.
      */
@@ -105,11 +108,25 @@ public class SQLResponse implements Serializable {
     }
 
     public List<List<String>> getResults() {
+        if (results == null && columnarResults != null) {
+            return columnarResults.asRows();
+        }
         return results;
     }
 
     public void setResults(List<List<String>> results) {
         this.results = results;
+        this.columnarResults = null;
+    }
+
+    @JsonIgnore
+    public ColumnarResults getColumnarResults() {
+        return columnarResults;
+    }
+
+    public void setColumnarResults(ColumnarResults columnarResults) {
+        this.columnarResults = columnarResults;
+        this.results = null;
     }
 
     public String getCube() {
@@ -96,6 +96,7 @@ import org.apache.kylin.rest.msg.Message;
 import org.apache.kylin.rest.msg.MsgPicker;
 import org.apache.kylin.rest.request.PrepareSqlRequest;
 import org.apache.kylin.rest.request.SQLRequest;
+import org.apache.kylin.rest.response.ColumnarResults;
 import org.apache.kylin.rest.response.SQLResponse;
 import org.apache.kylin.rest.util.AclEvaluate;
 import org.apache.kylin.rest.util.AclPermissionUtil;
@@ -304,6 +305,12 @@ public class QueryService extends BasicService {
         stringBuilder.append("Cuboid Ids: ").append(cuboidIds).append(newLine);
         stringBuilder.append("Total scan count: ").append(response.getTotalScanCount()).append(newLine);
         stringBuilder.append("Total scan bytes: ").append(response.getTotalScanBytes()).append(newLine);
+        stringBuilder.append("Total spilled bytes: ").append(QueryContextFacade.current().getSpilledBytes())
+                .append(newLine);
+        stringBuilder.append("RPC queue time: ").append(QueryContextFacade.current().getRpcQueueMillis())
+                .append(newLine);
+        stringBuilder.append("Segment wait time: ").append(QueryContextFacade.current().getSegmentWaitMillis())
+                .append(newLine);
         stringBuilder.append("Result row count: ").append(resultRowCount).append(newLine);
         stringBuilder.append("Accept Partial: ").append(request.isAcceptPartial()).append(newLine);
         stringBuilder.append("Is Partial Result: ").append(response.isPartial()).append(newLine);
@@ -789,6 +796,7 @@ public class QueryService extends BasicService {
         boolean isPushDown = false;
 
         List<List<String>> results = Lists.newArrayList();
+        ColumnarResults columnarResults = null;
         List<SelectedColumnMeta> columnMetas = Lists.newArrayList();
 
         try {
@@ -828,13 +836,25 @@ public class QueryService extends BasicService {
             }
 
             // fill in results
-            while (resultSet.next()) {
-                List<String> oneRow = Lists.newArrayListWithCapacity(columnCount);
+            if (KylinConfig.getInstanceFromEnv().isColumnarQueryResultEnabled()) {
+                int[] columnTypes = new int[columnCount];
                 for (int i = 0; i < columnCount; i++) {
-                    oneRow.add((resultSet.getString(i + 1)));
+                    columnTypes[i] = metaData.getColumnType(i + 1);
                 }
+                ColumnarResults.Builder builder = new ColumnarResults.Builder(columnTypes);
+                while (resultSet.next()) {
+                    builder.addRow(resultSet);
+                }
+                columnarResults = builder.build();
+            } else {
+                while (resultSet.next()) {
+                    List<String> oneRow = Lists.newArrayListWithCapacity(columnCount);
+                    for (int i = 0; i < columnCount; i++) {
+                        oneRow.add((resultSet.getString(i + 1)));
+                    }
 
-                results.add(oneRow);
+                    results.add(oneRow);
+                }
             }
 
         } catch (SQLException sqlException) {
@@ -859,7 +879,11 @@ public class QueryService extends BasicService {
             close(resultSet, stat, null); //conn is passed in, not my duty to close
         }
 
-        return buildSqlResponse(isPushDown, results, columnMetas);
+        SQLResponse response = buildSqlResponse(isPushDown, results, columnMetas);
+        if (columnarResults != null) {
+            response.setColumnarResults(columnarResults);
+        }
+        return response;
     }
 
     protected String makeErrorMsgUserFriendly(Throwable e) {
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ColumnarResultsTest {
+
+    private void addRow(ColumnarResults.Builder builder, ResultSet resultSet, Object... values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            when(resultSet.getObject(i + 1)).thenReturn(values[i]);
+            when(resultSet.getString(i + 1)).thenReturn(values[i] == null ? null : values[i].toString());
+        }
+        builder.addRow(resultSet);
+    }
+
+    @Test
+    public void testTypedColumns() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ColumnarResults.Builder builder = new ColumnarResults.Builder(
+                new int[] { Types.VARCHAR, Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.DECIMAL });
+        List<List<String>> expected = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            Object[] row = { "seller-" + (i % 3), (long) i * 1000000000L, i % 7 == 0 ? null : i, i / 4.0,
+                    new BigDecimal("1.50").multiply(BigDecimal.valueOf(i)) };
+            addRow(builder, resultSet, row);
+            expected.add(Arrays.asList(toStrings(row)));
+        }
+        ColumnarResults results = builder.build();
+
+        assertEquals(100, results.getRowCount());
+        assertEquals(5, results.getColumnCount());
+        assertNull(results.getString(0, 2));
+        assertEquals(expected, results.asRows());
+
+        ColumnarResults copy = SerializationUtils.clone(results);
+        assertEquals(expected, copy.asRows());
+    }
+
+    @Test
+    public void testDemoteToString() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ColumnarResults.Builder builder = new ColumnarResults.Builder(new int[] { Types.BIGINT, Types.DOUBLE });
+        addRow(builder, resultSet, 1L, null);
+        addRow(builder, resultSet, null, 2.5);
+        // the driver returns a value of unexpected type
+        addRow(builder, resultSet, new BigDecimal("3"), 1.0f);
+        // or formats the first value differently
+        ResultSet other = mock(ResultSet.class);
+        ColumnarResults.Builder otherBuilder = new ColumnarResults.Builder(new int[] { Types.DOUBLE });
+        when(other.getObject(1)).thenReturn(1e20);
+        when(other.getString(1)).thenReturn("100000000000000000000");
+        otherBuilder.addRow(other);
+
+        List<List<String>> rows = builder.build().asRows();
+        assertEquals(Arrays.asList("1", null), rows.get(0));
+        assertEquals(Arrays.asList(null, "2.5"), rows.get(1));
+        assertEquals(Arrays.asList("3", "1.0"), rows.get(2));
+        assertEquals("100000000000000000000", otherBuilder.build().getString(0, 0));
+    }
+
+    @Test
+    public void testSQLResponse() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ColumnarResults.Builder builder = new ColumnarResults.Builder(new int[] { Types.BIGINT });
+        addRow(builder, resultSet, 7L);
+
+        SQLResponse response = new SQLResponse();
+        response.setColumnarResults(builder.build());
+        assertEquals(1, response.getResults().size());
+        assertEquals("7", response.getResults().get(0).get(0));
+
+        List<List<String>> legacy = Lists.newArrayList();
+        response.setResults(legacy);
+        assertNull(response.getColumnarResults());
+        assertEquals(legacy, response.getResults());
+    }
+
+    private String[] toStrings(Object[] row) {
+        String[] result = new String[row.length];
+        for (int i = 0; i < row.length; i++) {
+            result[i] = row[i] == null ? null : row[i].toString();
+        }
+        return result;
+    }
+}
@@ -22,10 +22,16 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.DataFormatException;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Connection;
@@ -43,7 +49,6 @@ import org.apache.kylin.common.util.BytesSerializer;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.CompressionUtils;
 import org.apache.kylin.common.util.ImmutableBitSet;
-import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.gridtable.GTInfo;
@@ -54,6 +59,8 @@ import org.apache.kylin.storage.StorageContext;
 import org.apache.kylin.storage.gtrecord.DummyPartitionStreamer;
 import org.apache.kylin.storage.gtrecord.StorageResponseGTScatter;
 import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.ResultChunks;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.ResultCodec;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.IntList;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse;
@@ -63,6 +70,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.HBaseZeroCopyByteString;
 
@@ -70,7 +78,12 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
     private static final Logger logger = LoggerFactory.getLogger(CubeHBaseEndpointRPC.class);
 
-    private static ExecutorService executorService = new LoggableCachedThreadPool();
+    // ids of the zstd dictionaries by local path, read once per query server
+    private static final ConcurrentMap<String, String> resultCodecDictIds = Maps.newConcurrentMap();
+
+    // dictionaries to send with the next request, not yet sent or missed by some region server
+    private static final Set<String> resultCodecDictsToSend = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public CubeHBaseEndpointRPC(ISegment segment, Cuboid cuboid, GTInfo fullGTInfo, StorageContext context) {
         super(segment, cuboid, fullGTInfo, context);
@@ -176,11 +189,20 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         builder.setSpillEnabled(cubeSeg.getConfig().getQueryCoprocessorSpillEnabled());
         builder.setMaxScanBytes(cubeSeg.getConfig().getPartitionMaxScanBytes());
         builder.setIsExactAggregate(storageContext.isExactAggregation());
+        builder.setResultChunkSize(cubeSeg.getConfig().getEndpointResultChunkSize());
+        builder.setResultCodec(compressionResult ? cubeSeg.getConfig().getEndpointResultCodec() : ResultCodec.NONE);
+        final String resultCodecDictId = getResultCodecDictId(cubeSeg.getConfig().getEndpointResultCodecDict());
+        if (resultCodecDictId != null) {
+            builder.setResultCodecDictId(resultCodecDictId);
+            if (resultCodecDictsToSend.remove(resultCodecDictId)) {
+                builder.setResultCodecDict(HBaseZeroCopyByteString.wrap(ResultCodec.getDict(resultCodecDictId)));
+            }
+        }
 
         final String logHeader = String.format("<sub-thread for Query %s GTScanRequest %s>", queryContext.getQueryId(),
                 Integer.toHexString(System.identityHashCode(scanRequest)));
         for (final Pair<byte[], byte[]> epRange : getEPKeyRanges(cuboidBaseShard, shardNum, totalShards)) {
-            executorService.submit(new Runnable() {
+            EndpointRPCExecutor.getInstance().submit(queryContext, new Runnable() {
                 @Override
                 public void run() {
                     runEPRange(queryContext, logHeader, compressionResult, builder.build(), conn, epRange.getFirst(),
@@ -286,6 +308,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
                             Stats stats = result.getStats();
                             queryContext.addAndGetScannedRows(stats.getScannedRowCount());
                             queryContext.addAndGetScannedBytes(stats.getScannedBytes());
+                            queryContext.addAndGetSpilledBytes(stats.getSpilledBytes());
                             queryContext.addAndGetReturnedRows(stats.getScannedRowCount()
                                     - stats.getAggregatedRowCount() - stats.getFilteredRowCount());
 
@@ -319,7 +342,25 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
                             }
 
                             try {
-                                if (compressionResult) {
+                                if (result.getChunkedRows()) {
+                                    String dictId = result.hasResultCodecDictId() ? result.getResultCodecDictId()
+                                            : null;
+                                    ResultCodec codec = result.hasResultCodec()
+                                            ? ResultCodec.get(result.getResultCodec(), dictId)
+                                            : ResultCodec.negotiate(null, null, compressionResult);
+                                    if (codec == null || (dictId != null && !dictId.equals(codec.getDictId()))) {
+                                        throw new IOException("Result codec " + result.getResultCodec()
+                                                + " of region server is not available on query server");
+                                    }
+                                    if (request.hasResultCodecDictId() && dictId == null
+                                            && ResultCodec.ZSTD.equals(result.getResultCodec())) {
+                                        // the region server has not got the dictionary yet
+                                        resultCodecDictsToSend.add(request.getResultCodecDictId());
+                                    }
+                                    // blocks are inflated lazily by the query thread
+                                    epResultItr.append(ResultChunks.iterator(
+                                            HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()), codec));
+                                } else if (compressionResult) {
                                     epResultItr.append(CompressionUtils.decompress(
                                             HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
                                 } else {
@@ -380,6 +421,25 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         return rawScanByteString;
     }
 
+    private static String getResultCodecDictId(String path) {
+        if (StringUtils.isEmpty(path))
+            return null;
+
+        String dictId = resultCodecDictIds.get(path);
+        if (dictId == null) {
+            try {
+                dictId = ResultCodec.addDict(Files.readAllBytes(Paths.get(path)));
+            } catch (IOException e) {
+                logger.warn("Failed to read result codec dictionary " + path + ", query without it", e);
+                return null;
+            }
+            if (resultCodecDictIds.putIfAbsent(path, dictId) == null) {
+                resultCodecDictsToSend.add(dictId);
+            }
+        }
+        return dictId;
+    }
+
     private String getStatsString(byte[] region, CubeVisitResponse result) {
         StringBuilder sb = new StringBuilder();
         Stats stats = result.getStats();
@@ -390,6 +450,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         sb.append("Total scanned bytes: ").append(stats.getScannedBytes()).append(". ");
         sb.append("Total filtered row: ").append(stats.getFilteredRowCount()).append(". ");
         sb.append("Total aggred row: ").append(stats.getAggregatedRowCount()).append(". ");
+        sb.append("Total spilled bytes: ").append(stats.getSpilledBytes()).append(". ");
         sb.append("Time elapsed in EP: ").append(stats.getServiceEndTime() - stats.getServiceStartTime()).append("(ms). ");
         sb.append("Server CPU usage: ").append(stats.getSystemCpuLoad()).append(", server physical mem left: ").append(stats.getFreePhysicalMemorySize()).append(", server swap mem left:").append(stats.getFreeSwapSpaceSize()).append(".");
         sb.append("Etc message: ").append(stats.getEtcMsg()).append(".");
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Threads;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Runs the endpoint RPCs of all queries on a bounded number of threads.
+ *
+ * Each query has its own queue and may run at most maxThreadsPerQuery RPCs at a time. Free threads are handed
+ * to the waiting queries round robin, so a query touching hundreds of shards does not hold back the small ones.
+ * The time a RPC waits for its thread is added to the query's QueryContext.
+ */
+public class EndpointRPCExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndpointRPCExecutor.class);
+
+    private static volatile EndpointRPCExecutor instance = null;
+
+    public static EndpointRPCExecutor getInstance() {
+        if (instance != null) {
+            return instance;
+        }
+
+        synchronized (EndpointRPCExecutor.class) {
+            if (instance == null) {
+                KylinConfig config = KylinConfig.getInstanceFromEnv();
+                instance = new EndpointRPCExecutor(config.getEndpointRPCMaxThreads(),
+                        config.getEndpointRPCMaxThreadsPerQuery());
+                logger.info("Creating endpoint rpc executor with max of {} threads, {} per query",
+                        config.getEndpointRPCMaxThreads(), config.getEndpointRPCMaxThreadsPerQuery());
+            }
+            return instance;
+        }
+    }
+
+    private final int maxThreads;
+    private final int maxThreadsPerQuery;
+    private final ThreadPoolExecutor pool;
+
+    // guarded by this
+    private final Map<String, QueryTasks> queries = Maps.newHashMap();
+    private final Deque<QueryTasks> ready = new ArrayDeque<>();
+    private int running = 0;
+
+    EndpointRPCExecutor(int maxThreads, int maxThreadsPerQuery) {
+        this.maxThreads = maxThreads;
+        this.maxThreadsPerQuery = maxThreadsPerQuery;
+        // never more than maxThreads tasks are handed over, so the pool queue stays empty
+        this.pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), Threads.newDaemonThreadFactory("kylin-endpoint-rpc-"));
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public void submit(QueryContext queryContext, Runnable task) {
+        synchronized (this) {
+            QueryTasks query = queries.get(queryContext.getQueryId());
+            if (query == null) {
+                query = new QueryTasks(queryContext);
+                queries.put(queryContext.getQueryId(), query);
+            }
+            query.pending.add(new QueuedTask(query, task));
+            if (!query.isReady && query.running < maxThreadsPerQuery) {
+                query.isReady = true;
+                ready.add(query);
+            }
+            dispatch();
+        }
+    }
+
+    // hand the free threads to ready queries, one task each in turn
+    private void dispatch() {
+        while (running < maxThreads && !ready.isEmpty()) {
+            QueryTasks query = ready.poll();
+            QueuedTask task = query.pending.poll();
+            running++;
+            query.running++;
+            if (!query.pending.isEmpty() && query.running < maxThreadsPerQuery) {
+                ready.add(query);
+            } else {
+                query.isReady = false;
+            }
+            pool.execute(task);
+        }
+    }
+
+    private synchronized void finished(QueryTasks query) {
+        running--;
+        query.running--;
+        if (!query.isReady && !query.pending.isEmpty()) {
+            query.isReady = true;
+            ready.add(query);
+        } else if (query.running == 0 && query.pending.isEmpty()) {
+            queries.remove(query.queryContext.getQueryId());
+        }
+        dispatch();
+    }
+
+    synchronized int getRunningCount() {
+        return running;
+    }
+
+    synchronized int getQueuedCount() {
+        int count = 0;
+        for (QueryTasks query : queries.values()) {
+            count += query.pending.size();
+        }
+        return count;
+    }
+
+    private static class QueryTasks {
+        final QueryContext queryContext;
+        final Deque<QueuedTask> pending = new ArrayDeque<>();
+        int running = 0;
+        boolean isReady = false;
+
+        QueryTasks(QueryContext queryContext) {
+            this.queryContext = queryContext;
+        }
+    }
+
+    private class QueuedTask implements Runnable {
+        final QueryTasks query;
+        final Runnable task;
+        final long queuedTime = System.currentTimeMillis();
+
+        QueuedTask(QueryTasks query, Runnable task) {
+            this.query = query;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                query.queryContext.addAndGetRpcQueueMillis(System.currentTimeMillis() - queuedTime);
+                // a stopped query no longer needs its rpc
+                if (!query.queryContext.isStopped()) {
+                    task.run();
+                }
+            } catch (Throwable t) {
+                logger.error("Caught exception in thread " + Thread.currentThread().getName() + ": ", t);
+            } finally {
+                finished(query);
+            }
+        }
+    }
+}
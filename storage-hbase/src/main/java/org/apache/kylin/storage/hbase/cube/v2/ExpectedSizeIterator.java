@@ -18,6 +18,7 @@
 
 package org.apache.kylin.storage.hbase.cube.v2;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -28,19 +29,24 @@ import org.apache.kylin.common.QueryContext;
 import org.apache.kylin.gridtable.GTScanRequest;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
 
+/**
+ * Waits for the result of expectedSize regions, each region contributes one or more blocks.
+ */
 class ExpectedSizeIterator implements Iterator<byte[]> {
     private final QueryContext queryContext;
     private final int expectedSize;
-    private final BlockingQueue<byte[]> queue;
+    private final BlockingQueue<Iterator<byte[]>> queue;
     private final long coprocessorTimeout;
     private final long deadline;
     private int current = 0;
+    private Iterator<byte[]> currentBlocks = Collections.emptyIterator();
 
     public ExpectedSizeIterator(QueryContext queryContext, int expectedSize, long coprocessorTimeout) {
         this.queryContext = queryContext;
         this.expectedSize = expectedSize;
-        this.queue = new ArrayBlockingQueue<byte[]>(expectedSize);
+        this.queue = new ArrayBlockingQueue<Iterator<byte[]>>(expectedSize);
 
         this.coprocessorTimeout = coprocessorTimeout;
         //longer timeout than coprocessor so that query thread will not timeout faster than coprocessor
@@ -49,17 +55,27 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
 
     @Override
     public boolean hasNext() {
-        return (current < expectedSize);
+        while (!currentBlocks.hasNext()) {
+            if (current >= expectedSize) {
+                return false;
+            }
+            currentBlocks = nextRegion();
+        }
+        return true;
     }
 
     @Override
     public byte[] next() {
-        if (current >= expectedSize) {
+        if (!hasNext()) {
             throw new IllegalStateException("Won't have more data");
         }
+        return currentBlocks.next();
+    }
+
+    private Iterator<byte[]> nextRegion() {
         try {
             current++;
-            byte[] ret = null;
+            Iterator<byte[]> ret = null;
 
             while (ret == null && deadline > System.currentTimeMillis()) {
                 checkState();
@@ -84,10 +100,14 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
     }
 
     public void append(byte[] data) {
+        append(Iterators.singletonIterator(data));
+    }
+
+    public void append(Iterator<byte[]> blocks) {
         checkState();
 
         try {
-            queue.put(data);
+            queue.put(blocks);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("error when waiting queue", e);
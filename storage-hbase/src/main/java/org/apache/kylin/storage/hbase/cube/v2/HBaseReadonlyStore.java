@@ -29,7 +29,9 @@ import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTRecordBlock;
 import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTBlockScanner;
 import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.gridtable.IGTWriter;
@@ -88,7 +90,7 @@ public class HBaseReadonlyStore implements IGTStore {
 
     @Override
     public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
-        return new IGTScanner() {
+        return new IGTBlockScanner() {
             int count;
 
             @Override
@@ -103,84 +105,102 @@ public class HBaseReadonlyStore implements IGTStore {
 
                     @Override
                     public boolean hasNext() {
-                        if (withDelay) {
-                            try {
-                                Thread.sleep(10);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                        }
+                        delayIfToggled();
                         return cellListIterator.hasNext();
                     }
 
                     @Override
                     public GTRecord next() {
                         count++;
-                        List<Cell> oneRow = cellListIterator.next();
-                        if (oneRow.size() < 1) {
-                            throw new IllegalStateException("cell list's size less than 1");
-                        }
-
-                        // dimensions, set to primary key, also the 0th column block
-                        Cell firstCell = oneRow.get(0);
-                        ByteBuffer buf = byteBuffer(firstCell.getRowArray(), rowkeyPreambleSize + firstCell.getRowOffset(), firstCell.getRowLength() - rowkeyPreambleSize);
-                        oneRecord.loadCellBlock(0, buf);
-
-                        // metrics
-                        for (int i = 0; i < hbaseColumns.size(); i++) {
-                            Pair<byte[], byte[]> hbaseColumn = hbaseColumns.get(i);
-                            Cell cell = findCell(oneRow, hbaseColumn.getFirst(), hbaseColumn.getSecond());
-                            Preconditions.checkNotNull(cell);
-                            buf = byteBuffer(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
-                            oneRecord.loadColumns(hbaseColumnsToGT.get(i), buf);
-                        }
-
-
-                        if (isExactAggregation && getDirectReturnResultColumns().size() > 0) {
-                            trimGTRecord(oneRecord);
-                        }
-
+                        loadRow(cellListIterator.next(), oneRecord);
                         return oneRecord;
-
                     }
 
                     @Override
                     public void remove() {
                         throw new UnsupportedOperationException();
                     }
-
-                    private ByteBuffer byteBuffer(byte[] array, int offset, int length) {
-                        return ByteBuffer.wrap(array, offset, length);
-                    }
-
-                    private List<Integer> getDirectReturnResultColumns() {
-                        List<Integer> columns = new ArrayList<>();
-                        for (int i = 0; i < info.getColumnCount(); i++) {
-                            if (info.getCodeSystem().getSerializer(i).supportDirectReturnResult()) {
-                                columns.add(i);
-                            }
-                        }
-                        return columns;
-                    }
-
-                    private void trimGTRecord(GTRecord record) {
-                        List<Integer> directReturnResultColumns = getDirectReturnResultColumns();
-                        for (Integer i : directReturnResultColumns) {
-                            ByteBuffer recordBuffer = record.get(i).asBuffer();
-                            if (recordBuffer!= null) {
-                                ByteBuffer trimmedBuffer = info.getCodeSystem().getSerializer(i).getFinalResult(recordBuffer);
-                                record.loadColumns(i, trimmedBuffer);
-                            }
-                        }
-                    }
-
                 };
             }
 
+            @Override
+            public boolean nextBlock(GTRecordBlock block) {
+                // the loaded rows slice the cells, which stay valid after the cell list is reused for the next row
+                block.clear();
+                while (!block.isFull()) {
+                    delayIfToggled();
+                    if (!cellListIterator.hasNext())
+                        break;
+                    count++;
+                    loadRow(cellListIterator.next(), block.append());
+                }
+                return block.size() > 0;
+            }
+
             @Override
             public GTInfo getInfo() {
                 return info;
             }
         };
     }
+
+    private void delayIfToggled() {
+        if (withDelay) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void loadRow(List<Cell> oneRow, GTRecord record) {
+        if (oneRow.size() < 1) {
+            throw new IllegalStateException("cell list's size less than 1");
+        }
+
+        // dimensions, set to primary key, also the 0th column block
+        Cell firstCell = oneRow.get(0);
+        ByteBuffer buf = byteBuffer(firstCell.getRowArray(), rowkeyPreambleSize + firstCell.getRowOffset(), firstCell.getRowLength() - rowkeyPreambleSize);
+        record.loadCellBlock(0, buf);
+
+        // metrics
+        for (int i = 0; i < hbaseColumns.size(); i++) {
+            Pair<byte[], byte[]> hbaseColumn = hbaseColumns.get(i);
+            Cell cell = findCell(oneRow, hbaseColumn.getFirst(), hbaseColumn.getSecond());
+            Preconditions.checkNotNull(cell);
+            buf = byteBuffer(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+            record.loadColumns(hbaseColumnsToGT.get(i), buf);
+        }
+
+
+        if (isExactAggregation && getDirectReturnResultColumns().size() > 0) {
+            trimGTRecord(record);
+        }
+    }
+
+    private ByteBuffer byteBuffer(byte[] array, int offset, int length) {
+        return ByteBuffer.wrap(array, offset, length);
+    }
+
+    private List<Integer> getDirectReturnResultColumns() {
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < info.getColumnCount(); i++) {
+            if (info.getCodeSystem().getSerializer(i).supportDirectReturnResult()) {
+                columns.add(i);
+            }
+        }
+        return columns;
+    }
+
+    private void trimGTRecord(GTRecord record) {
+        List<Integer> directReturnResultColumns = getDirectReturnResultColumns();
+        for (Integer i : directReturnResultColumns) {
+            ByteBuffer recordBuffer = record.get(i).asBuffer();
+            if (recordBuffer!= null) {
+                ByteBuffer trimmedBuffer = info.getCodeSystem().getSerializer(i).getFinalResult(recordBuffer);
+                record.loadColumns(i, trimmedBuffer);
+            }
+        }
+    }
 }
@@ -235,7 +235,6 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
         HRegion region = null;
 
         StringBuilder sb = new StringBuilder();
-        byte[] allRows;
         String debugGitTag = "";
 
         CubeVisitProtos.CubeVisitResponse.ErrorInfo errorInfo = null;
@@ -322,7 +321,21 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
 
             ByteBuffer buffer = ByteBuffer.allocate(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);//ByteArrayOutputStream will auto grow
+            // old clients don't ask for chunks, they get all rows in one block
+            // the dictionary is sent until the region servers have it, then only its id
+            String resultCodecDictId = request.hasResultCodecDictId() ? request.getResultCodecDictId() : null;
+            if (request.hasResultCodecDict() && !ResultCodec.hasDict(resultCodecDictId)) {
+                resultCodecDictId = ResultCodec
+                        .addDict(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getResultCodecDict()));
+            }
+            final ResultCodec resultCodec = ResultCodec.negotiate(
+                    request.hasResultCodec() ? request.getResultCodec() : null, resultCodecDictId,
+                    kylinConfig.getCompressionResult());
+            final ResultChunks.Writer chunkWriter = request.getResultChunkSize() > 0
+                    ? new ResultChunks.Writer(request.getResultChunkSize(), resultCodec)
+                    : null;
+            ByteArrayOutputStream outputStream = chunkWriter != null ? null
+                    : new ByteArrayOutputStream(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);//ByteArrayOutputStream will auto grow
             long finalRowCount = 0L;
 
             try {
@@ -335,7 +348,11 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                         oneRecord.exportColumns(scanReq.getColumns(), buffer);
                     }
 
-                    outputStream.write(buffer.array(), 0, buffer.position());
+                    if (chunkWriter != null) {
+                        chunkWriter.write(buffer.array(), 0, buffer.position());
+                    } else {
+                        outputStream.write(buffer.array(), 0, buffer.position());
+                    }
 
                     finalRowCount++;
 
@@ -365,26 +382,42 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             long rowCountBeforeAggr = finalScanner instanceof GTAggregateScanner
                     ? ((GTAggregateScanner) finalScanner).getInputRowCount()
                     : finalRowCount;
+            long spilledBytes = finalScanner instanceof GTAggregateScanner
+                    ? ((GTAggregateScanner) finalScanner).getSpilledBytes()
+                    : 0;
 
             appendProfileInfo(sb, "agg done", serviceStartTime);
+            if (spilledBytes > 0) {
+                logger.info("Aggregation spilled {} bytes to disk", spilledBytes);
+            }
             logger.info("Total scanned {} rows and {} bytes", cellListIterator.getTotalScannedRowCount(),
                     cellListIterator.getTotalScannedRowBytes());
 
             //outputStream.close() is not necessary
             byte[] compressedAllRows;
-            if (errorInfo == null) {
-                allRows = outputStream.toByteArray();
-            } else {
-                allRows = new byte[0];
-            }
-            if (!kylinConfig.getCompressionResult()) {
-                compressedAllRows = allRows;
+            long rawSize;
+            if (chunkWriter != null) {
+                compressedAllRows = errorInfo == null ? chunkWriter.finish() : new byte[0];
+                rawSize = chunkWriter.getRawSize();
             } else {
-                compressedAllRows = CompressionUtils.compress(allRows);
+                byte[] allRows;
+                if (errorInfo == null) {
+                    allRows = outputStream.toByteArray();
+                } else {
+                    allRows = new byte[0];
+                }
+                if (!kylinConfig.getCompressionResult()) {
+                    compressedAllRows = allRows;
+                } else {
+                    compressedAllRows = CompressionUtils.compress(allRows);
+                }
+                rawSize = allRows.length;
             }
 
             appendProfileInfo(sb, "compress done", serviceStartTime);
-            logger.info("Size of final result = {} ({} before compressing)", compressedAllRows.length, allRows.length);
+            logger.info("Size of final result = {} ({} before compressing, {} chunks by {})", compressedAllRows.length,
+                    rawSize, chunkWriter == null ? 1 : chunkWriter.getChunkCount(),
+                    chunkWriter == null ? "legacy codec" : resultCodec.getName());
 
             OperatingSystemMXBean operatingSystemMXBean = (OperatingSystemMXBean) ManagementFactory
                     .getOperatingSystemMXBean();
@@ -399,6 +432,12 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             if (errorInfo != null) {
                 responseBuilder.setErrorInfo(errorInfo);
             }
+            if (chunkWriter != null) {
+                responseBuilder.setChunkedRows(true).setResultCodec(resultCodec.getName());
+                if (resultCodec.getDictId() != null) {
+                    responseBuilder.setResultCodecDictId(resultCodec.getDictId());
+                }
+            }
             done.run(responseBuilder.//
                     setCompressedRows(HBaseZeroCopyByteString.wrap(compressedAllRows)).//too many array copies 
                     setStats(CubeVisitProtos.CubeVisitResponse.Stats.newBuilder()
@@ -406,6 +445,7 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                             .setAggregatedRowCount(rowCountBeforeAggr - finalRowCount)
                             .setScannedRowCount(cellListIterator.getTotalScannedRowCount())
                             .setScannedBytes(cellListIterator.getTotalScannedRowBytes())
+                            .setSpilledBytes(spilledBytes)
                             .setServiceStartTime(serviceStartTime).setServiceEndTime(System.currentTimeMillis())
                             .setSystemCpuLoad(systemCpuLoad).setFreePhysicalMemorySize(freePhysicalMemorySize)
                             .setFreeSwapSpaceSize(freeSwapSpaceSize)
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Coprocessor result rows cut into blocks of bounded size, laid out as [int length][block] one after another.
+ * Each block is compressed on its own by the negotiated {@link ResultCodec}, so the region server keeps at most one
+ * uncompressed block and the query server inflates the blocks one at a time while consuming them.
+ *
+ * A block only ever ends on a row boundary.
+ */
+public class ResultChunks {
+
+    public static class Writer {
+        private final int chunkSize;
+        private final ResultCodec codec;
+        private final ByteArrayOutputStream chunk;
+        private final ByteArrayOutputStream output;
+        private final DataOutputStream dataOutput;
+        private long rawSize = 0;
+        private int chunkCount = 0;
+
+        public Writer(int chunkSize, ResultCodec codec) {
+            this.chunkSize = chunkSize;
+            this.codec = codec;
+            this.chunk = new ByteArrayOutputStream(Math.min(chunkSize, 1024 * 1024) + 1024);
+            this.output = new ByteArrayOutputStream(1024);
+            this.dataOutput = new DataOutputStream(output);
+        }
+
+        /** append one row, a block is closed once it reaches the chunk size */
+        public void write(byte[] row, int offset, int length) throws IOException {
+            chunk.write(row, offset, length);
+            rawSize += length;
+            if (chunk.size() >= chunkSize) {
+                flushChunk();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (chunk.size() == 0)
+                return;
+
+            byte[] block = codec.compress(chunk.toByteArray());
+            chunk.reset();
+            dataOutput.writeInt(block.length);
+            dataOutput.write(block);
+            chunkCount++;
+        }
+
+        public byte[] finish() throws IOException {
+            flushChunk();
+            dataOutput.flush();
+            return output.toByteArray();
+        }
+
+        public long getRawSize() {
+            return rawSize;
+        }
+
+        public int getChunkCount() {
+            return chunkCount;
+        }
+    }
+
+    /** iterate the blocks of a chunked result, inflating each only when it is reached */
+    public static Iterator<byte[]> iterator(byte[] chunks, final ResultCodec codec) {
+        final ByteBuffer buffer = ByteBuffer.wrap(chunks);
+        return new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return buffer.hasRemaining();
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                byte[] block = new byte[buffer.getInt()];
+                buffer.get(block);
+                try {
+                    return codec.decompress(block);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error when decompressing result chunk with " + codec.getName(), e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.CompressionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Compression codec of coprocessor result chunks.
+ *
+ * The query server asks for a codec by name in CubeVisitRequest, the region server replies with the name of the
+ * codec it really used, which falls back to deflate (or none) when the asked one is not available on that server,
+ * e.g. zstd without its native library.
+ *
+ * A dictionary is known by its id, a hash of its bytes, and digested once per JVM. Requests carry the id, and the
+ * bytes only until the region servers have them, see {@link #addDict(byte[])}.
+ */
+public abstract class ResultCodec {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultCodec.class);
+
+    public static final String NONE = "none";
+    public static final String DEFLATE = "deflate";
+    public static final String LZ4 = "lz4";
+    public static final String ZSTD = "zstd";
+
+    private static final ConcurrentMap<String, Dict> dicts = Maps.newConcurrentMap();
+
+    /** make a dictionary known to this JVM, return its id */
+    public static String addDict(byte[] dict) {
+        String id = Hashing.sha256().hashBytes(dict).toString();
+        if (!dicts.containsKey(id)) {
+            dicts.putIfAbsent(id, new Dict(id, dict));
+        }
+        return id;
+    }
+
+    public static boolean hasDict(String dictId) {
+        return dictId != null && dicts.containsKey(dictId);
+    }
+
+    /** return the bytes of a dictionary known to this JVM */
+    public static byte[] getDict(String dictId) {
+        Dict dict = dicts.get(dictId);
+        if (dict == null)
+            throw new IllegalArgumentException("Result codec dictionary " + dictId + " is unknown");
+        return dict.bytes;
+    }
+
+    /**
+     * return the named codec, or null if it is unknown or not available in this JVM. A codec supporting dictionaries
+     * uses the identified one if it is known to this JVM, see {@link #getDictId()}.
+     */
+    public static ResultCodec get(String name, String dictId) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+        case NONE:
+            return new NoneCodec();
+        case DEFLATE:
+            return new DeflateCodec();
+        case LZ4:
+            return Lz4Codec.isAvailable() ? new Lz4Codec() : null;
+        case ZSTD:
+            return ZstdCodec.isAvailable() ? new ZstdCodec(dictId == null ? null : dicts.get(dictId)) : null;
+        default:
+            return null;
+        }
+    }
+
+    /** the codec a region server uses for a request, name is null for clients that don't ask for one */
+    public static ResultCodec negotiate(String name, String dictId, boolean compress) {
+        if (name != null) {
+            ResultCodec codec = get(name, dictId);
+            if (codec != null)
+                return codec;
+            logger.warn("Result codec {} is not available, fall back to {}", name, compress ? DEFLATE : NONE);
+        }
+        return compress ? new DeflateCodec() : new NoneCodec();
+    }
+
+    public abstract String getName();
+
+    /** the id of the dictionary the codec really uses, null if none */
+    public String getDictId() {
+        return null;
+    }
+
+    public abstract byte[] compress(byte[] data) throws IOException;
+
+    public abstract byte[] decompress(byte[] data) throws IOException;
+
+    // ============================================================================
+
+    private static class NoneCodec extends ResultCodec {
+        @Override
+        public String getName() {
+            return NONE;
+        }
+
+        @Override
+        public byte[] compress(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) {
+            return data;
+        }
+    }
+
+    /** same format as CompressionUtils, which older servers and clients use */
+    private static class DeflateCodec extends ResultCodec {
+        @Override
+        public String getName() {
+            return DEFLATE;
+        }
+
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return CompressionUtils.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            try {
+                return CompressionUtils.decompress(data);
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /** LZ4 block of the pure java implementation, prefixed by the uncompressed length */
+    private static class Lz4Codec extends ResultCodec {
+        // not static, so isAvailable() works without the lz4 jar
+        private final LZ4Factory factory = LZ4Factory.fastestJavaInstance();
+
+        static boolean isAvailable() {
+            try {
+                Class.forName("net.jpountz.lz4.LZ4Factory");
+                return true;
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return LZ4;
+        }
+
+        @Override
+        public byte[] compress(byte[] data) {
+            return withLength(data.length, factory.fastCompressor().compress(data));
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) {
+            int rawLength = BytesUtil.readUnsigned(data, 0, 4);
+            return factory.fastDecompressor().decompress(data, 4, rawLength);
+        }
+    }
+
+    /** a dictionary, digested when a codec first uses it */
+    private static class Dict {
+        final String id;
+        final byte[] bytes;
+        private ZstdDictCompress zstdCompress;
+        private ZstdDictDecompress zstdDecompress;
+
+        Dict(String id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+
+        synchronized ZstdDictCompress getZstdCompress() {
+            if (zstdCompress == null) {
+                zstdCompress = new ZstdDictCompress(bytes, ZstdCodec.LEVEL);
+            }
+            return zstdCompress;
+        }
+
+        synchronized ZstdDictDecompress getZstdDecompress() {
+            if (zstdDecompress == null) {
+                zstdDecompress = new ZstdDictDecompress(bytes);
+            }
+            return zstdDecompress;
+        }
+    }
+
+    /** zstd frame prefixed by the uncompressed length, with an optional dictionary trained by "zstd --train" */
+    private static class ZstdCodec extends ResultCodec {
+        private static final int LEVEL = 1;
+
+        private final Dict dict;
+
+        static boolean isAvailable() {
+            try {
+                com.github.luben.zstd.util.Native.load();
+                return true;
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+
+        ZstdCodec(Dict dict) {
+            this.dict = dict != null && dict.bytes.length > 0 ? dict : null;
+        }
+
+        @Override
+        public String getName() {
+            return ZSTD;
+        }
+
+        @Override
+        public String getDictId() {
+            return dict == null ? null : dict.id;
+        }
+
+        @Override
+        public byte[] compress(byte[] data) {
+            byte[] compressed = dict == null ? Zstd.compress(data, LEVEL)
+                    : Zstd.compress(data, dict.getZstdCompress());
+            return withLength(data.length, compressed);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) {
+            int rawLength = BytesUtil.readUnsigned(data, 0, 4);
+            byte[] src = new byte[data.length - 4];
+            System.arraycopy(data, 4, src, 0, src.length);
+            return dict == null ? Zstd.decompress(src, rawLength)
+                    : Zstd.decompress(src, dict.getZstdDecompress(), rawLength);
+        }
+    }
+
+    private static byte[] withLength(int rawLength, byte[] compressed) {
+        byte[] result = new byte[compressed.length + 4];
+        BytesUtil.writeUnsigned(rawLength, result, 0, 4);
+        System.arraycopy(compressed, 0, result, 4, compressed.length);
+        return result;
+    }
+}
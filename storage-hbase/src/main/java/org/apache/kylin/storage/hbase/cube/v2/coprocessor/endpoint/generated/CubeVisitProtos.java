@@ -145,6 +145,96 @@ public final class CubeVisitProtos {
      * <code>optional bool isExactAggregate = 9 [default = false];</code>
      */
     boolean getIsExactAggregate();
+
+    // optional int32 resultChunkSize = 10;
+    /**
+     * <code>optional int32 resultChunkSize = 10;</code>
+     *
+     * <pre>
+     * bytes of rows per result chunk, 0 means no chunking
+     * </pre>
+     */
+    boolean hasResultChunkSize();
+    /**
+     * <code>optional int32 resultChunkSize = 10;</code>
+     *
+     * <pre>
+     * bytes of rows per result chunk, 0 means no chunking
+     * </pre>
+     */
+    int getResultChunkSize();
+
+    // optional string resultCodec = 11;
+    /**
+     * <code>optional string resultCodec = 11;</code>
+     *
+     * <pre>
+     * codec of result chunks: deflate, lz4, zstd or none
+     * </pre>
+     */
+    boolean hasResultCodec();
+    /**
+     * <code>optional string resultCodec = 11;</code>
+     *
+     * <pre>
+     * codec of result chunks: deflate, lz4, zstd or none
+     * </pre>
+     */
+    java.lang.String getResultCodec();
+    /**
+     * <code>optional string resultCodec = 11;</code>
+     *
+     * <pre>
+     * codec of result chunks: deflate, lz4, zstd or none
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getResultCodecBytes();
+
+    // optional bytes resultCodecDict = 12;
+    /**
+     * <code>optional bytes resultCodecDict = 12;</code>
+     *
+     * <pre>
+     * dictionary for codecs supporting it
+     * </pre>
+     */
+    boolean hasResultCodecDict();
+    /**
+     * <code>optional bytes resultCodecDict = 12;</code>
+     *
+     * <pre>
+     * dictionary for codecs supporting it
+     * </pre>
+     */
+    com.google.protobuf.ByteString getResultCodecDict();
+
+    // optional string resultCodecDictId = 13;
+    /**
+     * <code>optional string resultCodecDictId = 13;</code>
+     *
+     * <pre>
+     * hash of the dictionary, the dictionary itself is only sent to servers missing it
+     * </pre>
+     */
+    boolean hasResultCodecDictId();
+    /**
+     * <code>optional string resultCodecDictId = 13;</code>
+     *
+     * <pre>
+     * hash of the dictionary, the dictionary itself is only sent to servers missing it
+     * </pre>
+     */
+    java.lang.String getResultCodecDictId();
+    /**
+     * <code>optional string resultCodecDictId = 13;</code>
+     *
+     * <pre>
+     * hash of the dictionary, the dictionary itself is only sent to servers missing it
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getResultCodecDictIdBytes();
   }
   /**
    * Protobuf type {@code CubeVisitRequest}
@@ -245,6 +335,26 @@ public final class CubeVisitProtos {
               isExactAggregate_ = input.readBool();
               break;
             }
+            case 80: {
+              bitField0_ |= 0x00000100;
+              resultChunkSize_ = input.readInt32();
+              break;
+            }
+            case 90: {
+              bitField0_ |= 0x00000200;
+              resultCodec_ = input.readBytes();
+              break;
+            }
+            case 98: {
+              bitField0_ |= 0x00000400;
+              resultCodecDict_ = input.readBytes();
+              break;
+            }
+            case 106: {
+              bitField0_ |= 0x00000800;
+              resultCodecDictId_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -1030,6 +1140,160 @@ public final class CubeVisitProtos {
       return isExactAggregate_;
     }
 
+    // optional int32 resultChunkSize = 10;
+    public static final int RESULTCHUNKSIZE_FIELD_NUMBER = 10;
+    private int resultChunkSize_;
+    /**
+     * <code>optional int32 resultChunkSize = 10;</code>
+     *
+     * <pre>
+     * bytes of rows per result chunk, 0 means no chunking
+     * </pre>
+     */
+    public boolean hasResultChunkSize() {
+      return ((bitField0_ & 0x00000100) == 0x00000100);
+    }
+    /**
+     * <code>optional int32 resultChunkSize = 10;</code>
+     *
+     * <pre>
+     * bytes of rows per result chunk, 0 means no chunking
+     * </pre>
+     */
+    public int getResultChunkSize() {
+      return resultChunkSize_;
+    }
+    // optional string resultCodec = 11;
+    public static final int RESULTCODEC_FIELD_NUMBER = 11;
+    private java.lang.Object resultCodec_;
+    /**
+     * <code>optional string resultCodec = 11;</code>
+     *
+     * <pre>
+     * codec of result chunks: deflate, lz4, zstd or none
+     * </pre>
+     */
+    public boolean hasResultCodec() {
+      return ((bitField0_ & 0x00000200) == 0x00000200);
+    }
+    /**
+     * <code>optional string resultCodec = 11;</code>
+     *
+     * <pre>
+     * codec of result chunks: deflate, lz4, zstd or none
+     * </pre>
+     */
+    public java.lang.String getResultCodec() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs =
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          resultCodec_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string resultCodec = 11;</code>
+     *
+     * <pre>
+     * codec of result chunks: deflate, lz4, zstd or none
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getResultCodecBytes() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b =
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        resultCodec_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+    // optional bytes resultCodecDict = 12;
+    public static final int RESULTCODECDICT_FIELD_NUMBER = 12;
+    private com.google.protobuf.ByteString resultCodecDict_;
+    /**
+     * <code>optional bytes resultCodecDict = 12;</code>
+     *
+     * <pre>
+     * dictionary for codecs supporting it
+     * </pre>
+     */
+    public boolean hasResultCodecDict() {
+      return ((bitField0_ & 0x00000400) == 0x00000400);
+    }
+    /**
+     * <code>optional bytes resultCodecDict = 12;</code>
+     *
+     * <pre>
+     * dictionary for codecs supporting it
+     * </pre>
+     */
+    public com.google.protobuf.ByteString getResultCodecDict() {
+      return resultCodecDict_;
+    }
+    // optional string resultCodecDictId = 13;
+    public static final int RESULTCODECDICTID_FIELD_NUMBER = 13;
+    private java.lang.Object resultCodecDictId_;
+    /**
+     * <code>optional string resultCodecDictId = 13;</code>
+     *
+     * <pre>
+     * hash of the dictionary, the dictionary itself is only sent to servers missing it
+     * </pre>
+     */
+    public boolean hasResultCodecDictId() {
+      return ((bitField0_ & 0x00000800) == 0x00000800);
+    }
+    /**
+     * <code>optional string resultCodecDictId = 13;</code>
+     *
+     * <pre>
+     * hash of the dictionary, the dictionary itself is only sent to servers missing it
+     * </pre>
+     */
+    public java.lang.String getResultCodecDictId() {
+      java.lang.Object ref = resultCodecDictId_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs =
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          resultCodecDictId_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string resultCodecDictId = 13;</code>
+     *
+     * <pre>
+     * hash of the dictionary, the dictionary itself is only sent to servers missing it
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getResultCodecDictIdBytes() {
+      java.lang.Object ref = resultCodecDictId_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b =
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        resultCodecDictId_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
     private void initFields() {
       gtScanRequest_ = com.google.protobuf.ByteString.EMPTY;
       hbaseRawScan_ = com.google.protobuf.ByteString.EMPTY;
@@ -1040,6 +1304,10 @@ public final class CubeVisitProtos {
       spillEnabled_ = true;
       maxScanBytes_ = 0L;
       isExactAggregate_ = false;
+      resultChunkSize_ = 0;
+      resultCodec_ = "";
+      resultCodecDict_ = com.google.protobuf.ByteString.EMPTY;
+      resultCodecDictId_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -1096,6 +1364,18 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000080) == 0x00000080)) {
         output.writeBool(9, isExactAggregate_);
       }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        output.writeInt32(10, resultChunkSize_);
+      }
+      if (((bitField0_ & 0x00000200) == 0x00000200)) {
+        output.writeBytes(11, getResultCodecBytes());
+      }
+      if (((bitField0_ & 0x00000400) == 0x00000400)) {
+        output.writeBytes(12, resultCodecDict_);
+      }
+      if (((bitField0_ & 0x00000800) == 0x00000800)) {
+        output.writeBytes(13, getResultCodecDictIdBytes());
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -1141,6 +1421,22 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeBoolSize(9, isExactAggregate_);
       }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(10, resultChunkSize_);
+      }
+      if (((bitField0_ & 0x00000200) == 0x00000200)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(11, getResultCodecBytes());
+      }
+      if (((bitField0_ & 0x00000400) == 0x00000400)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(12, resultCodecDict_);
+      }
+      if (((bitField0_ & 0x00000800) == 0x00000800)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(13, getResultCodecDictIdBytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -1206,6 +1502,26 @@ public final class CubeVisitProtos {
         result = result && (getIsExactAggregate()
             == other.getIsExactAggregate());
       }
+      result = result && (hasResultChunkSize() == other.hasResultChunkSize());
+      if (hasResultChunkSize()) {
+        result = result && (getResultChunkSize()
+            == other.getResultChunkSize());
+      }
+      result = result && (hasResultCodec() == other.hasResultCodec());
+      if (hasResultCodec()) {
+        result = result && getResultCodec()
+            .equals(other.getResultCodec());
+      }
+      result = result && (hasResultCodecDict() == other.hasResultCodecDict());
+      if (hasResultCodecDict()) {
+        result = result && getResultCodecDict()
+            .equals(other.getResultCodecDict());
+      }
+      result = result && (hasResultCodecDictId() == other.hasResultCodecDictId());
+      if (hasResultCodecDictId()) {
+        result = result && getResultCodecDictId()
+            .equals(other.getResultCodecDictId());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -1255,6 +1571,22 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + ISEXACTAGGREGATE_FIELD_NUMBER;
         hash = (53 * hash) + hashBoolean(getIsExactAggregate());
       }
+      if (hasResultChunkSize()) {
+        hash = (37 * hash) + RESULTCHUNKSIZE_FIELD_NUMBER;
+        hash = (53 * hash) + getResultChunkSize();
+      }
+      if (hasResultCodec()) {
+        hash = (37 * hash) + RESULTCODEC_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodec().hashCode();
+      }
+      if (hasResultCodecDict()) {
+        hash = (37 * hash) + RESULTCODECDICT_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodecDict().hashCode();
+      }
+      if (hasResultCodecDictId()) {
+        hash = (37 * hash) + RESULTCODECDICTID_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodecDictId().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -1387,6 +1719,14 @@ public final class CubeVisitProtos {
         bitField0_ = (bitField0_ & ~0x00000080);
         isExactAggregate_ = false;
         bitField0_ = (bitField0_ & ~0x00000100);
+        resultChunkSize_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000200);
+        resultCodec_ = "";
+        bitField0_ = (bitField0_ & ~0x00000400);
+        resultCodecDict_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000800);
+        resultCodecDictId_ = "";
+        bitField0_ = (bitField0_ & ~0x00001000);
         return this;
       }
 
@@ -1456,6 +1796,22 @@ public final class CubeVisitProtos {
           to_bitField0_ |= 0x00000080;
         }
         result.isExactAggregate_ = isExactAggregate_;
+        if (((from_bitField0_ & 0x00000200) == 0x00000200)) {
+          to_bitField0_ |= 0x00000100;
+        }
+        result.resultChunkSize_ = resultChunkSize_;
+        if (((from_bitField0_ & 0x00000400) == 0x00000400)) {
+          to_bitField0_ |= 0x00000200;
+        }
+        result.resultCodec_ = resultCodec_;
+        if (((from_bitField0_ & 0x00000800) == 0x00000800)) {
+          to_bitField0_ |= 0x00000400;
+        }
+        result.resultCodecDict_ = resultCodecDict_;
+        if (((from_bitField0_ & 0x00001000) == 0x00001000)) {
+          to_bitField0_ |= 0x00000800;
+        }
+        result.resultCodecDictId_ = resultCodecDictId_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -1526,6 +1882,22 @@ public final class CubeVisitProtos {
         if (other.hasIsExactAggregate()) {
           setIsExactAggregate(other.getIsExactAggregate());
         }
+        if (other.hasResultChunkSize()) {
+          setResultChunkSize(other.getResultChunkSize());
+        }
+        if (other.hasResultCodec()) {
+          bitField0_ |= 0x00000400;
+          resultCodec_ = other.resultCodec_;
+          onChanged();
+        }
+        if (other.hasResultCodecDict()) {
+          setResultCodecDict(other.getResultCodecDict());
+        }
+        if (other.hasResultCodecDictId()) {
+          bitField0_ |= 0x00001000;
+          resultCodecDictId_ = other.resultCodecDictId_;
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -2201,73 +2573,438 @@ public final class CubeVisitProtos {
         return this;
       }
 
-      // @@protoc_insertion_point(builder_scope:CubeVisitRequest)
-    }
-
-    static {
-      defaultInstance = new CubeVisitRequest(true);
-      defaultInstance.initFields();
-    }
-
-    // @@protoc_insertion_point(class_scope:CubeVisitRequest)
-  }
-
-  public interface CubeVisitResponseOrBuilder
-      extends com.google.protobuf.MessageOrBuilder {
-
-    // required bytes compressedRows = 1;
-    /**
-     * <code>required bytes compressedRows = 1;</code>
-     */
-    boolean hasCompressedRows();
-    /**
-     * <code>required bytes compressedRows = 1;</code>
-     */
-    com.google.protobuf.ByteString getCompressedRows();
-
-    // required .CubeVisitResponse.Stats stats = 2;
-    /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
-     */
-    boolean hasStats();
-    /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
-     */
-    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats getStats();
-    /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
-     */
-    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder();
-
-    // optional .CubeVisitResponse.ErrorInfo errorInfo = 3;
-    /**
-     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
-     *
-     * <pre>
-     * should be set when stats.normalComplete == false
-     * </pre>
-     */
-    boolean hasErrorInfo();
-    /**
-     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
-     *
-     * <pre>
-     * should be set when stats.normalComplete == false
-     * </pre>
-     */
-    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo getErrorInfo();
-    /**
-     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
-     *
-     * <pre>
-     * should be set when stats.normalComplete == false
-     * </pre>
-     */
-    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfoOrBuilder getErrorInfoOrBuilder();
-  }
-  /**
-   * Protobuf type {@code CubeVisitResponse}
-   */
+      // optional int32 resultChunkSize = 10;
+      private int resultChunkSize_ ;
+      /**
+       * <code>optional int32 resultChunkSize = 10;</code>
+       *
+       * <pre>
+       * bytes of rows per result chunk, 0 means no chunking
+       * </pre>
+       */
+      public boolean hasResultChunkSize() {
+        return ((bitField0_ & 0x00000200) == 0x00000200);
+      }
+      /**
+       * <code>optional int32 resultChunkSize = 10;</code>
+       *
+       * <pre>
+       * bytes of rows per result chunk, 0 means no chunking
+       * </pre>
+       */
+      public int getResultChunkSize() {
+        return resultChunkSize_;
+      }
+      /**
+       * <code>optional int32 resultChunkSize = 10;</code>
+       *
+       * <pre>
+       * bytes of rows per result chunk, 0 means no chunking
+       * </pre>
+       */
+      public Builder setResultChunkSize(int value) {
+        bitField0_ |= 0x00000200;
+        resultChunkSize_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int32 resultChunkSize = 10;</code>
+       *
+       * <pre>
+       * bytes of rows per result chunk, 0 means no chunking
+       * </pre>
+       */
+      public Builder clearResultChunkSize() {
+        bitField0_ = (bitField0_ & ~0x00000200);
+        resultChunkSize_ = 0;
+        onChanged();
+        return this;
+      }
+      // optional string resultCodec = 11;
+      private java.lang.Object resultCodec_ = "";
+      /**
+       * <code>optional string resultCodec = 11;</code>
+       *
+       * <pre>
+       * codec of result chunks: deflate, lz4, zstd or none
+       * </pre>
+       */
+      public boolean hasResultCodec() {
+        return ((bitField0_ & 0x00000400) == 0x00000400);
+      }
+      /**
+       * <code>optional string resultCodec = 11;</code>
+       *
+       * <pre>
+       * codec of result chunks: deflate, lz4, zstd or none
+       * </pre>
+       */
+      public java.lang.String getResultCodec() {
+        java.lang.Object ref = resultCodec_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          resultCodec_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 11;</code>
+       *
+       * <pre>
+       * codec of result chunks: deflate, lz4, zstd or none
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getResultCodecBytes() {
+        java.lang.Object ref = resultCodec_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b =
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          resultCodec_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 11;</code>
+       *
+       * <pre>
+       * codec of result chunks: deflate, lz4, zstd or none
+       * </pre>
+       */
+      public Builder setResultCodec(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000400;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 11;</code>
+       *
+       * <pre>
+       * codec of result chunks: deflate, lz4, zstd or none
+       * </pre>
+       */
+      public Builder clearResultCodec() {
+        bitField0_ = (bitField0_ & ~0x00000400);
+        resultCodec_ = getDefaultInstance().getResultCodec();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 11;</code>
+       *
+       * <pre>
+       * codec of result chunks: deflate, lz4, zstd or none
+       * </pre>
+       */
+      public Builder setResultCodecBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000400;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+      // optional bytes resultCodecDict = 12;
+      private com.google.protobuf.ByteString resultCodecDict_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes resultCodecDict = 12;</code>
+       *
+       * <pre>
+       * dictionary for codecs supporting it
+       * </pre>
+       */
+      public boolean hasResultCodecDict() {
+        return ((bitField0_ & 0x00000800) == 0x00000800);
+      }
+      /**
+       * <code>optional bytes resultCodecDict = 12;</code>
+       *
+       * <pre>
+       * dictionary for codecs supporting it
+       * </pre>
+       */
+      public com.google.protobuf.ByteString getResultCodecDict() {
+        return resultCodecDict_;
+      }
+      /**
+       * <code>optional bytes resultCodecDict = 12;</code>
+       *
+       * <pre>
+       * dictionary for codecs supporting it
+       * </pre>
+       */
+      public Builder setResultCodecDict(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000800;
+        resultCodecDict_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes resultCodecDict = 12;</code>
+       *
+       * <pre>
+       * dictionary for codecs supporting it
+       * </pre>
+       */
+      public Builder clearResultCodecDict() {
+        bitField0_ = (bitField0_ & ~0x00000800);
+        resultCodecDict_ = getDefaultInstance().getResultCodecDict();
+        onChanged();
+        return this;
+      }
+      // optional string resultCodecDictId = 13;
+      private java.lang.Object resultCodecDictId_ = "";
+      /**
+       * <code>optional string resultCodecDictId = 13;</code>
+       *
+       * <pre>
+       * hash of the dictionary, the dictionary itself is only sent to servers missing it
+       * </pre>
+       */
+      public boolean hasResultCodecDictId() {
+        return ((bitField0_ & 0x00001000) == 0x00001000);
+      }
+      /**
+       * <code>optional string resultCodecDictId = 13;</code>
+       *
+       * <pre>
+       * hash of the dictionary, the dictionary itself is only sent to servers missing it
+       * </pre>
+       */
+      public java.lang.String getResultCodecDictId() {
+        java.lang.Object ref = resultCodecDictId_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          resultCodecDictId_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodecDictId = 13;</code>
+       *
+       * <pre>
+       * hash of the dictionary, the dictionary itself is only sent to servers missing it
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getResultCodecDictIdBytes() {
+        java.lang.Object ref = resultCodecDictId_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b =
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          resultCodecDictId_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodecDictId = 13;</code>
+       *
+       * <pre>
+       * hash of the dictionary, the dictionary itself is only sent to servers missing it
+       * </pre>
+       */
+      public Builder setResultCodecDictId(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00001000;
+        resultCodecDictId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodecDictId = 13;</code>
+       *
+       * <pre>
+       * hash of the dictionary, the dictionary itself is only sent to servers missing it
+       * </pre>
+       */
+      public Builder clearResultCodecDictId() {
+        bitField0_ = (bitField0_ & ~0x00001000);
+        resultCodecDictId_ = getDefaultInstance().getResultCodecDictId();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodecDictId = 13;</code>
+       *
+       * <pre>
+       * hash of the dictionary, the dictionary itself is only sent to servers missing it
+       * </pre>
+       */
+      public Builder setResultCodecDictIdBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00001000;
+        resultCodecDictId_ = value;
+        onChanged();
+        return this;
+      }
+      // @@protoc_insertion_point(builder_scope:CubeVisitRequest)
+    }
+
+    static {
+      defaultInstance = new CubeVisitRequest(true);
+      defaultInstance.initFields();
+    }
+
+    // @@protoc_insertion_point(class_scope:CubeVisitRequest)
+  }
+
+  public interface CubeVisitResponseOrBuilder
+      extends com.google.protobuf.MessageOrBuilder {
+
+    // required bytes compressedRows = 1;
+    /**
+     * <code>required bytes compressedRows = 1;</code>
+     */
+    boolean hasCompressedRows();
+    /**
+     * <code>required bytes compressedRows = 1;</code>
+     */
+    com.google.protobuf.ByteString getCompressedRows();
+
+    // required .CubeVisitResponse.Stats stats = 2;
+    /**
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    boolean hasStats();
+    /**
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats getStats();
+    /**
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder();
+
+    // optional .CubeVisitResponse.ErrorInfo errorInfo = 3;
+    /**
+     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     *
+     * <pre>
+     * should be set when stats.normalComplete == false
+     * </pre>
+     */
+    boolean hasErrorInfo();
+    /**
+     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     *
+     * <pre>
+     * should be set when stats.normalComplete == false
+     * </pre>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo getErrorInfo();
+    /**
+     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     *
+     * <pre>
+     * should be set when stats.normalComplete == false
+     * </pre>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfoOrBuilder getErrorInfoOrBuilder();
+
+    // optional bool chunkedRows = 4;
+    /**
+     * <code>optional bool chunkedRows = 4;</code>
+     *
+     * <pre>
+     * compressedRows is a sequence of [int length][chunk]
+     * </pre>
+     */
+    boolean hasChunkedRows();
+    /**
+     * <code>optional bool chunkedRows = 4;</code>
+     *
+     * <pre>
+     * compressedRows is a sequence of [int length][chunk]
+     * </pre>
+     */
+    boolean getChunkedRows();
+
+    // optional string resultCodec = 5;
+    /**
+     * <code>optional string resultCodec = 5;</code>
+     *
+     * <pre>
+     * codec actually used for result chunks
+     * </pre>
+     */
+    boolean hasResultCodec();
+    /**
+     * <code>optional string resultCodec = 5;</code>
+     *
+     * <pre>
+     * codec actually used for result chunks
+     * </pre>
+     */
+    java.lang.String getResultCodec();
+    /**
+     * <code>optional string resultCodec = 5;</code>
+     *
+     * <pre>
+     * codec actually used for result chunks
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getResultCodecBytes();
+
+    // optional string resultCodecDictId = 6;
+    /**
+     * <code>optional string resultCodecDictId = 6;</code>
+     *
+     * <pre>
+     * hash of the dictionary actually used for result chunks, not set if none
+     * </pre>
+     */
+    boolean hasResultCodecDictId();
+    /**
+     * <code>optional string resultCodecDictId = 6;</code>
+     *
+     * <pre>
+     * hash of the dictionary actually used for result chunks, not set if none
+     * </pre>
+     */
+    java.lang.String getResultCodecDictId();
+    /**
+     * <code>optional string resultCodecDictId = 6;</code>
+     *
+     * <pre>
+     * hash of the dictionary actually used for result chunks, not set if none
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getResultCodecDictIdBytes();
+  }
+  /**
+   * Protobuf type {@code CubeVisitResponse}
+   */
   public static final class CubeVisitResponse extends
       com.google.protobuf.GeneratedMessage
       implements CubeVisitResponseOrBuilder {
@@ -2347,6 +3084,21 @@ public final class CubeVisitProtos {
               bitField0_ |= 0x00000004;
               break;
             }
+            case 32: {
+              bitField0_ |= 0x00000008;
+              chunkedRows_ = input.readBool();
+              break;
+            }
+            case 42: {
+              bitField0_ |= 0x00000010;
+              resultCodec_ = input.readBytes();
+              break;
+            }
+            case 50: {
+              bitField0_ |= 0x00000020;
+              resultCodecDictId_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2609,6 +3361,24 @@ public final class CubeVisitProtos {
        * <code>optional int64 filteredRowCount = 12;</code>
        */
       long getFilteredRowCount();
+
+      // optional int64 spilledBytes = 13;
+      /**
+       * <code>optional int64 spilledBytes = 13;</code>
+       *
+       * <pre>
+       * bytes of aggregation state spilled to disk
+       * </pre>
+       */
+      boolean hasSpilledBytes();
+      /**
+       * <code>optional int64 spilledBytes = 13;</code>
+       *
+       * <pre>
+       * bytes of aggregation state spilled to disk
+       * </pre>
+       */
+      long getSpilledBytes();
     }
     /**
      * Protobuf type {@code CubeVisitResponse.Stats}
@@ -2721,6 +3491,11 @@ public final class CubeVisitProtos {
                 filteredRowCount_ = input.readInt64();
                 break;
               }
+              case 104: {
+                bitField0_ |= 0x00001000;
+                spilledBytes_ = input.readInt64();
+                break;
+              }
             }
           }
         } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -3007,6 +3782,29 @@ public final class CubeVisitProtos {
         return filteredRowCount_;
       }
 
+      // optional int64 spilledBytes = 13;
+      public static final int SPILLEDBYTES_FIELD_NUMBER = 13;
+      private long spilledBytes_;
+      /**
+       * <code>optional int64 spilledBytes = 13;</code>
+       *
+       * <pre>
+       * bytes of aggregation state spilled to disk
+       * </pre>
+       */
+      public boolean hasSpilledBytes() {
+        return ((bitField0_ & 0x00001000) == 0x00001000);
+      }
+      /**
+       * <code>optional int64 spilledBytes = 13;</code>
+       *
+       * <pre>
+       * bytes of aggregation state spilled to disk
+       * </pre>
+       */
+      public long getSpilledBytes() {
+        return spilledBytes_;
+      }
       private void initFields() {
         serviceStartTime_ = 0L;
         serviceEndTime_ = 0L;
@@ -3069,6 +3867,9 @@ public final class CubeVisitProtos {
         if (((bitField0_ & 0x00000800) == 0x00000800)) {
           output.writeInt64(12, filteredRowCount_);
         }
+        if (((bitField0_ & 0x00001000) == 0x00001000)) {
+          output.writeInt64(13, spilledBytes_);
+        }
         getUnknownFields().writeTo(output);
       }
 
@@ -3126,6 +3927,10 @@ public final class CubeVisitProtos {
           size += com.google.protobuf.CodedOutputStream
             .computeInt64Size(12, filteredRowCount_);
         }
+        if (((bitField0_ & 0x00001000) == 0x00001000)) {
+          size += com.google.protobuf.CodedOutputStream
+            .computeInt64Size(13, spilledBytes_);
+        }
         size += getUnknownFields().getSerializedSize();
         memoizedSerializedSize = size;
         return size;
@@ -3206,6 +4011,11 @@ public final class CubeVisitProtos {
           result = result && (getFilteredRowCount()
               == other.getFilteredRowCount());
         }
+        result = result && (hasSpilledBytes() == other.hasSpilledBytes());
+        if (hasSpilledBytes()) {
+          result = result && (getSpilledBytes()
+              == other.getSpilledBytes());
+        }
         result = result &&
             getUnknownFields().equals(other.getUnknownFields());
         return result;
@@ -3270,6 +4080,10 @@ public final class CubeVisitProtos {
           hash = (37 * hash) + FILTEREDROWCOUNT_FIELD_NUMBER;
           hash = (53 * hash) + hashLong(getFilteredRowCount());
         }
+        if (hasSpilledBytes()) {
+          hash = (37 * hash) + SPILLEDBYTES_FIELD_NUMBER;
+          hash = (53 * hash) + hashLong(getSpilledBytes());
+        }
         hash = (29 * hash) + getUnknownFields().hashCode();
         memoizedHashCode = hash;
         return hash;
@@ -3403,6 +4217,8 @@ public final class CubeVisitProtos {
           bitField0_ = (bitField0_ & ~0x00000400);
           filteredRowCount_ = 0L;
           bitField0_ = (bitField0_ & ~0x00000800);
+          spilledBytes_ = 0L;
+          bitField0_ = (bitField0_ & ~0x00001000);
           return this;
         }
 
@@ -3479,6 +4295,10 @@ public final class CubeVisitProtos {
             to_bitField0_ |= 0x00000800;
           }
           result.filteredRowCount_ = filteredRowCount_;
+          if (((from_bitField0_ & 0x00001000) == 0x00001000)) {
+            to_bitField0_ |= 0x00001000;
+          }
+          result.spilledBytes_ = spilledBytes_;
           result.bitField0_ = to_bitField0_;
           onBuilt();
           return result;
@@ -3535,6 +4355,9 @@ public final class CubeVisitProtos {
           if (other.hasFilteredRowCount()) {
             setFilteredRowCount(other.getFilteredRowCount());
           }
+          if (other.hasSpilledBytes()) {
+            setSpilledBytes(other.getSpilledBytes());
+          }
           this.mergeUnknownFields(other.getUnknownFields());
           return this;
         }
@@ -4040,6 +4863,54 @@ public final class CubeVisitProtos {
           return this;
         }
 
+        // optional int64 spilledBytes = 13;
+        private long spilledBytes_ ;
+        /**
+         * <code>optional int64 spilledBytes = 13;</code>
+         *
+         * <pre>
+         * bytes of aggregation state spilled to disk
+         * </pre>
+         */
+        public boolean hasSpilledBytes() {
+          return ((bitField0_ & 0x00001000) == 0x00001000);
+        }
+        /**
+         * <code>optional int64 spilledBytes = 13;</code>
+         *
+         * <pre>
+         * bytes of aggregation state spilled to disk
+         * </pre>
+         */
+        public long getSpilledBytes() {
+          return spilledBytes_;
+        }
+        /**
+         * <code>optional int64 spilledBytes = 13;</code>
+         *
+         * <pre>
+         * bytes of aggregation state spilled to disk
+         * </pre>
+         */
+        public Builder setSpilledBytes(long value) {
+          bitField0_ |= 0x00001000;
+          spilledBytes_ = value;
+          onChanged();
+          return this;
+        }
+        /**
+         * <code>optional int64 spilledBytes = 13;</code>
+         *
+         * <pre>
+         * bytes of aggregation state spilled to disk
+         * </pre>
+         */
+        public Builder clearSpilledBytes() {
+          bitField0_ = (bitField0_ & ~0x00001000);
+          spilledBytes_ = 0L;
+          onChanged();
+          return this;
+        }
         // @@protoc_insertion_point(builder_scope:CubeVisitResponse.Stats)
       }
 
@@ -4089,6 +4960,7 @@ public final class CubeVisitProtos {
       private ErrorInfo(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
         super(builder);
         this.unknownFields = builder.getUnknownFields();
+        spilledBytes_ = 0L;
       }
       private ErrorInfo(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
 
@@ -4708,50 +5580,184 @@ public final class CubeVisitProtos {
       return stats_;
     }
     /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder() {
+      return stats_;
+    }
+
+    // optional .CubeVisitResponse.ErrorInfo errorInfo = 3;
+    public static final int ERRORINFO_FIELD_NUMBER = 3;
+    private org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo errorInfo_;
+    /**
+     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     *
+     * <pre>
+     * should be set when stats.normalComplete == false
+     * </pre>
+     */
+    public boolean hasErrorInfo() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     *
+     * <pre>
+     * should be set when stats.normalComplete == false
+     * </pre>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo getErrorInfo() {
+      return errorInfo_;
+    }
+    /**
+     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     *
+     * <pre>
+     * should be set when stats.normalComplete == false
+     * </pre>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfoOrBuilder getErrorInfoOrBuilder() {
+      return errorInfo_;
+    }
+
+    // optional bool chunkedRows = 4;
+    public static final int CHUNKEDROWS_FIELD_NUMBER = 4;
+    private boolean chunkedRows_;
+    /**
+     * <code>optional bool chunkedRows = 4;</code>
+     *
+     * <pre>
+     * compressedRows is a sequence of [int length][chunk]
+     * </pre>
+     */
+    public boolean hasChunkedRows() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+    /**
+     * <code>optional bool chunkedRows = 4;</code>
+     *
+     * <pre>
+     * compressedRows is a sequence of [int length][chunk]
+     * </pre>
+     */
+    public boolean getChunkedRows() {
+      return chunkedRows_;
+    }
+    // optional string resultCodec = 5;
+    public static final int RESULTCODEC_FIELD_NUMBER = 5;
+    private java.lang.Object resultCodec_;
+    /**
+     * <code>optional string resultCodec = 5;</code>
+     *
+     * <pre>
+     * codec actually used for result chunks
+     * </pre>
+     */
+    public boolean hasResultCodec() {
+      return ((bitField0_ & 0x00000010) == 0x00000010);
+    }
+    /**
+     * <code>optional string resultCodec = 5;</code>
+     *
+     * <pre>
+     * codec actually used for result chunks
+     * </pre>
+     */
+    public java.lang.String getResultCodec() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs =
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          resultCodec_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string resultCodec = 5;</code>
+     *
+     * <pre>
+     * codec actually used for result chunks
+     * </pre>
      */
-    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder() {
-      return stats_;
+    public com.google.protobuf.ByteString
+        getResultCodecBytes() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b =
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        resultCodec_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
     }
-
-    // optional .CubeVisitResponse.ErrorInfo errorInfo = 3;
-    public static final int ERRORINFO_FIELD_NUMBER = 3;
-    private org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo errorInfo_;
+    // optional string resultCodecDictId = 6;
+    public static final int RESULTCODECDICTID_FIELD_NUMBER = 6;
+    private java.lang.Object resultCodecDictId_;
     /**
-     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     * <code>optional string resultCodecDictId = 6;</code>
      *
      * <pre>
-     * should be set when stats.normalComplete == false
+     * hash of the dictionary actually used for result chunks, not set if none
      * </pre>
      */
-    public boolean hasErrorInfo() {
-      return ((bitField0_ & 0x00000004) == 0x00000004);
+    public boolean hasResultCodecDictId() {
+      return ((bitField0_ & 0x00000020) == 0x00000020);
     }
     /**
-     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     * <code>optional string resultCodecDictId = 6;</code>
      *
      * <pre>
-     * should be set when stats.normalComplete == false
+     * hash of the dictionary actually used for result chunks, not set if none
      * </pre>
      */
-    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo getErrorInfo() {
-      return errorInfo_;
+    public java.lang.String getResultCodecDictId() {
+      java.lang.Object ref = resultCodecDictId_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs =
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          resultCodecDictId_ = s;
+        }
+        return s;
+      }
     }
     /**
-     * <code>optional .CubeVisitResponse.ErrorInfo errorInfo = 3;</code>
+     * <code>optional string resultCodecDictId = 6;</code>
      *
      * <pre>
-     * should be set when stats.normalComplete == false
+     * hash of the dictionary actually used for result chunks, not set if none
      * </pre>
      */
-    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfoOrBuilder getErrorInfoOrBuilder() {
-      return errorInfo_;
+    public com.google.protobuf.ByteString
+        getResultCodecDictIdBytes() {
+      java.lang.Object ref = resultCodecDictId_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b =
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        resultCodecDictId_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
     }
-
     private void initFields() {
       compressedRows_ = com.google.protobuf.ByteString.EMPTY;
       stats_ = org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.getDefaultInstance();
       errorInfo_ = org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.ErrorInfo.getDefaultInstance();
+      chunkedRows_ = false;
+      resultCodec_ = "";
+      resultCodecDictId_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -4788,6 +5794,15 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         output.writeMessage(3, errorInfo_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeBool(4, chunkedRows_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        output.writeBytes(5, getResultCodecBytes());
+      }
+      if (((bitField0_ & 0x00000020) == 0x00000020)) {
+        output.writeBytes(6, getResultCodecDictIdBytes());
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -4809,6 +5824,18 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(3, errorInfo_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBoolSize(4, chunkedRows_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(5, getResultCodecBytes());
+      }
+      if (((bitField0_ & 0x00000020) == 0x00000020)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(6, getResultCodecDictIdBytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -4847,6 +5874,21 @@ public final class CubeVisitProtos {
         result = result && getErrorInfo()
             .equals(other.getErrorInfo());
       }
+      result = result && (hasChunkedRows() == other.hasChunkedRows());
+      if (hasChunkedRows()) {
+        result = result && (getChunkedRows()
+            == other.getChunkedRows());
+      }
+      result = result && (hasResultCodec() == other.hasResultCodec());
+      if (hasResultCodec()) {
+        result = result && getResultCodec()
+            .equals(other.getResultCodec());
+      }
+      result = result && (hasResultCodecDictId() == other.hasResultCodecDictId());
+      if (hasResultCodecDictId()) {
+        result = result && getResultCodecDictId()
+            .equals(other.getResultCodecDictId());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -4872,6 +5914,18 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + ERRORINFO_FIELD_NUMBER;
         hash = (53 * hash) + getErrorInfo().hashCode();
       }
+      if (hasChunkedRows()) {
+        hash = (37 * hash) + CHUNKEDROWS_FIELD_NUMBER;
+        hash = (53 * hash) + hashBoolean(getChunkedRows());
+      }
+      if (hasResultCodec()) {
+        hash = (37 * hash) + RESULTCODEC_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodec().hashCode();
+      }
+      if (hasResultCodecDictId()) {
+        hash = (37 * hash) + RESULTCODECDICTID_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodecDictId().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -4997,6 +6051,12 @@ public final class CubeVisitProtos {
           errorInfoBuilder_.clear();
         }
         bitField0_ = (bitField0_ & ~0x00000004);
+        chunkedRows_ = false;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        resultCodec_ = "";
+        bitField0_ = (bitField0_ & ~0x00000010);
+        resultCodecDictId_ = "";
+        bitField0_ = (bitField0_ & ~0x00000020);
         return this;
       }
 
@@ -5045,6 +6105,18 @@ public final class CubeVisitProtos {
         } else {
           result.errorInfo_ = errorInfoBuilder_.build();
         }
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.chunkedRows_ = chunkedRows_;
+        if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          to_bitField0_ |= 0x00000010;
+        }
+        result.resultCodec_ = resultCodec_;
+        if (((from_bitField0_ & 0x00000020) == 0x00000020)) {
+          to_bitField0_ |= 0x00000020;
+        }
+        result.resultCodecDictId_ = resultCodecDictId_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -5070,6 +6142,19 @@ public final class CubeVisitProtos {
         if (other.hasErrorInfo()) {
           mergeErrorInfo(other.getErrorInfo());
         }
+        if (other.hasChunkedRows()) {
+          setChunkedRows(other.getChunkedRows());
+        }
+        if (other.hasResultCodec()) {
+          bitField0_ |= 0x00000010;
+          resultCodec_ = other.resultCodec_;
+          onChanged();
+        }
+        if (other.hasResultCodecDictId()) {
+          bitField0_ |= 0x00000020;
+          resultCodecDictId_ = other.resultCodecDictId_;
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -5417,6 +6502,248 @@ public final class CubeVisitProtos {
         return errorInfoBuilder_;
       }
 
+      // optional bool chunkedRows = 4;
+      private boolean chunkedRows_ ;
+      /**
+       * <code>optional bool chunkedRows = 4;</code>
+       *
+       * <pre>
+       * compressedRows is a sequence of [int length][chunk]
+       * </pre>
+       */
+      public boolean hasChunkedRows() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      /**
+       * <code>optional bool chunkedRows = 4;</code>
+       *
+       * <pre>
+       * compressedRows is a sequence of [int length][chunk]
+       * </pre>
+       */
+      public boolean getChunkedRows() {
+        return chunkedRows_;
+      }
+      /**
+       * <code>optional bool chunkedRows = 4;</code>
+       *
+       * <pre>
+       * compressedRows is a sequence of [int length][chunk]
+       * </pre>
+       */
+      public Builder setChunkedRows(boolean value) {
+        bitField0_ |= 0x00000008;
+        chunkedRows_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bool chunkedRows = 4;</code>
+       *
+       * <pre>
+       * compressedRows is a sequence of [int length][chunk]
+       * </pre>
+       */
+      public Builder clearChunkedRows() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        chunkedRows_ = false;
+        onChanged();
+        return this;
+      }
+      // optional string resultCodec = 5;
+      private java.lang.Object resultCodec_ = "";
+      /**
+       * <code>optional string resultCodec = 5;</code>
+       *
+       * <pre>
+       * codec actually used for result chunks
+       * </pre>
+       */
+      public boolean hasResultCodec() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
+      }
+      /**
+       * <code>optional string resultCodec = 5;</code>
+       *
+       * <pre>
+       * codec actually used for result chunks
+       * </pre>
+       */
+      public java.lang.String getResultCodec() {
+        java.lang.Object ref = resultCodec_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          resultCodec_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 5;</code>
+       *
+       * <pre>
+       * codec actually used for result chunks
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getResultCodecBytes() {
+        java.lang.Object ref = resultCodec_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b =
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          resultCodec_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 5;</code>
+       *
+       * <pre>
+       * codec actually used for result chunks
+       * </pre>
+       */
+      public Builder setResultCodec(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000010;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 5;</code>
+       *
+       * <pre>
+       * codec actually used for result chunks
+       * </pre>
+       */
+      public Builder clearResultCodec() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        resultCodec_ = getDefaultInstance().getResultCodec();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 5;</code>
+       *
+       * <pre>
+       * codec actually used for result chunks
+       * </pre>
+       */
+      public Builder setResultCodecBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000010;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+      // optional string resultCodecDictId = 6;
+      private java.lang.Object resultCodecDictId_ = "";
+      /**
+       * <code>optional string resultCodecDictId = 6;</code>
+       *
+       * <pre>
+       * hash of the dictionary actually used for result chunks, not set if none
+       * </pre>
+       */
+      public boolean hasResultCodecDictId() {
+        return ((bitField0_ & 0x00000020) == 0x00000020);
+      }
+      /**
+       * <code>optional string resultCodecDictId = 6;</code>
+       *
+       * <pre>
+       * hash of the dictionary actually used for result chunks, not set if none
+       * </pre>
+       */
+      public java.lang.String getResultCodecDictId() {
+        java.lang.Object ref = resultCodecDictId_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          resultCodecDictId_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodecDictId = 6;</code>
+       *
+       * <pre>
+       * hash of the dictionary actually used for result chunks, not set if none
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getResultCodecDictIdBytes() {
+        java.lang.Object ref = resultCodecDictId_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b =
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          resultCodecDictId_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodecDictId = 6;</code>
+       *
+       * <pre>
+       * hash of the dictionary actually used for result chunks, not set if none
+       * </pre>
+       */
+      public Builder setResultCodecDictId(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000020;
+        resultCodecDictId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodecDictId = 6;</code>
+       *
+       * <pre>
+       * hash of the dictionary actually used for result chunks, not set if none
+       * </pre>
+       */
+      public Builder clearResultCodecDictId() {
+        bitField0_ = (bitField0_ & ~0x00000020);
+        resultCodecDictId_ = getDefaultInstance().getResultCodecDictId();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodecDictId = 6;</code>
+       *
+       * <pre>
+       * hash of the dictionary actually used for result chunks, not set if none
+       * </pre>
+       */
+      public Builder setResultCodecDictIdBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000020;
+        resultCodecDictId_ = value;
+        onChanged();
+        return this;
+      }
       // @@protoc_insertion_point(builder_scope:CubeVisitResponse)
     }
 
@@ -5696,34 +7023,39 @@ public final class CubeVisitProtos {
     java.lang.String[] descriptorData = {
       "\npstorage-hbase/src/main/java/org/apache" +
       "/kylin/storage/hbase/cube/v2/coprocessor" +
-      "/endpoint/protobuf/CubeVisit.proto\"\246\002\n\020C" +
+      "/endpoint/protobuf/CubeVisit.proto\"\210\003\n\020C" +
       "ubeVisitRequest\022\025\n\rgtScanRequest\030\001 \002(\014\022\024" +
       "\n\014hbaseRawScan\030\002 \002(\014\022\032\n\022rowkeyPreambleSi" +
       "ze\030\003 \002(\005\0223\n\020hbaseColumnsToGT\030\004 \003(\0132\031.Cub" +
       "eVisitRequest.IntList\022\027\n\017kylinProperties" +
       "\030\005 \002(\t\022\017\n\007queryId\030\006 \001(\t\022\032\n\014spillEnabled\030" +
       "\007 \001(\010:\004true\022\024\n\014maxScanBytes\030\010 \001(\003\022\037\n\020isE" +
-      "xactAggregate\030\t \001(\010:\005false\032\027\n\007IntList\022\014\n",
-      "\004ints\030\001 \003(\005\"\305\004\n\021CubeVisitResponse\022\026\n\016com" +
-      "pressedRows\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.CubeV" +
-      "isitResponse.Stats\022/\n\terrorInfo\030\003 \001(\0132\034." +
-      "CubeVisitResponse.ErrorInfo\032\252\002\n\005Stats\022\030\n" +
-      "\020serviceStartTime\030\001 \001(\003\022\026\n\016serviceEndTim" +
-      "e\030\002 \001(\003\022\027\n\017scannedRowCount\030\003 \001(\003\022\032\n\022aggr" +
-      "egatedRowCount\030\004 \001(\003\022\025\n\rsystemCpuLoad\030\005 " +
-      "\001(\001\022\036\n\026freePhysicalMemorySize\030\006 \001(\001\022\031\n\021f" +
-      "reeSwapSpaceSize\030\007 \001(\001\022\020\n\010hostname\030\010 \001(\t" +
-      "\022\016\n\006etcMsg\030\t \001(\t\022\026\n\016normalComplete\030\n \001(\005",
-      "\022\024\n\014scannedBytes\030\013 \001(\003\022\030\n\020filteredRowCou" +
-      "nt\030\014 \001(\003\032H\n\tErrorInfo\022*\n\004type\030\001 \002(\0162\034.Cu" +
-      "beVisitResponse.ErrorType\022\017\n\007message\030\002 \002" +
-      "(\t\"G\n\tErrorType\022\020\n\014UNKNOWN_TYPE\020\000\022\013\n\007TIM" +
-      "EOUT\020\001\022\033\n\027RESOURCE_LIMIT_EXCEEDED\020\0022F\n\020C" +
-      "ubeVisitService\0222\n\tvisitCube\022\021.CubeVisit" +
-      "Request\032\022.CubeVisitResponseB`\nEorg.apach" +
-      "e.kylin.storage.hbase.cube.v2.coprocesso" +
-      "r.endpoint.generatedB\017CubeVisitProtosH\001\210" +
-      "\001\001\240\001\001"
+      "xactAggregate\030\t \001(\010:\005false\022\027\n\017resultChun",
+      "kSize\030\n \001(\005\022\023\n\013resultCodec\030\013 \001(\t\022\027\n\017resu" +
+      "ltCodecDict\030\014 \001(\014\022\031\n\021resultCodecDictId\030\r \001(\t" +
+      "\032\027\n\007IntList\022\014\n\004ints\030\001 \003" +
+      "(\005\"\240\005\n\021CubeVisitResponse\022\026\n\016compressedRo" +
+      "ws\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.CubeVisitRespo" +
+      "nse.Stats\022/\n\terrorInfo\030\003 \001(\0132\034.CubeVisit" +
+      "Response.ErrorInfo\022\023\n\013chunkedRows\030\004 \001(\010\022" +
+      "\023\n\013resultCodec\030\005 \001(\t\022\031\n\021resultCodecDictId\030\006 \001(\t" +
+      "\032\300\002\n\005Stats\022\030\n\020servic" +
+      "eStartTime\030\001 \001(\003\022\026\n\016serviceEndTime\030\002 \001(\003" +
+      "\022\027\n\017scannedRowCount\030\003 \001(\003\022\032\n\022aggregatedR" +
+      "owCount\030\004 \001(\003\022\025\n\rsystemCpuLoad\030\005 \001(\001\022\036\n\026",
+      "freePhysicalMemorySize\030\006 \001(\001\022\031\n\021freeSwap" +
+      "SpaceSize\030\007 \001(\001\022\020\n\010hostname\030\010 \001(\t\022\016\n\006etc" +
+      "Msg\030\t \001(\t\022\026\n\016normalComplete\030\n \001(\005\022\024\n\014sca" +
+      "nnedBytes\030\013 \001(\003\022\030\n\020filteredRowCount\030\014 \001(" +
+      "\003\022\024\n\014spilledBytes\030\r \001(\003\032H\n\tErrorInfo\022*\n\004" +
+      "type\030\001 \002(\0162\034.CubeVisitResponse.ErrorType" +
+      "\022\017\n\007message\030\002 \002(\t\"G\n\tErrorType\022\020\n\014UNKNOW" +
+      "N_TYPE\020\000\022\013\n\007TIMEOUT\020\001\022\033\n\027RESOURCE_LIMIT_" +
+      "EXCEEDED\020\0022F\n\020CubeVisitService\0222\n\tvisitC" +
+      "ube\022\021.CubeVisitRequest\032\022.CubeVisitRespon",
+      "seB`\nEorg.apache.kylin.storage.hbase.cub" +
+      "e.v2.coprocessor.endpoint.generatedB\017Cub" +
+      "eVisitProtosH\001\210\001\001\240\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -5735,7 +7067,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitRequest_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitRequest_descriptor,
-              new java.lang.String[] { "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "KylinProperties", "QueryId", "SpillEnabled", "MaxScanBytes", "IsExactAggregate", });
+              new java.lang.String[] { "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "KylinProperties", "QueryId", "SpillEnabled", "MaxScanBytes", "IsExactAggregate", "ResultChunkSize", "ResultCodec", "ResultCodecDict", "ResultCodecDictId", });
           internal_static_CubeVisitRequest_IntList_descriptor =
             internal_static_CubeVisitRequest_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitRequest_IntList_fieldAccessorTable = new
@@ -5747,13 +7079,13 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitResponse_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_descriptor,
-              new java.lang.String[] { "CompressedRows", "Stats", "ErrorInfo", });
+              new java.lang.String[] { "CompressedRows", "Stats", "ErrorInfo", "ChunkedRows", "ResultCodec", "ResultCodecDictId", });
           internal_static_CubeVisitResponse_Stats_descriptor =
             internal_static_CubeVisitResponse_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitResponse_Stats_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_Stats_descriptor,
-              new java.lang.String[] { "ServiceStartTime", "ServiceEndTime", "ScannedRowCount", "AggregatedRowCount", "SystemCpuLoad", "FreePhysicalMemorySize", "FreeSwapSpaceSize", "Hostname", "EtcMsg", "NormalComplete", "ScannedBytes", "FilteredRowCount", });
+              new java.lang.String[] { "ServiceStartTime", "ServiceEndTime", "ScannedRowCount", "AggregatedRowCount", "SystemCpuLoad", "FreePhysicalMemorySize", "FreeSwapSpaceSize", "Hostname", "EtcMsg", "NormalComplete", "ScannedBytes", "FilteredRowCount", "SpilledBytes", });
           internal_static_CubeVisitResponse_ErrorInfo_descriptor =
             internal_static_CubeVisitResponse_descriptor.getNestedTypes().get(1);
           internal_static_CubeVisitResponse_ErrorInfo_fieldAccessorTable = new
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.QueryContextFacade;
+import org.junit.Test;
+
+public class EndpointRPCExecutorTest {
+
+    private QueryContext newQuery() {
+        QueryContext query = QueryContextFacade.current();
+        QueryContextFacade.resetCurrent();
+        return query;
+    }
+
+    @Test
+    public void testQuotaAndFairness() throws InterruptedException {
+        EndpointRPCExecutor executor = new EndpointRPCExecutor(2, 1);
+        QueryContext big = newQuery();
+        QueryContext small = newQuery();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch smallStarted = new CountDownLatch(1);
+        final AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            executor.submit(big, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.incrementAndGet();
+                }
+            });
+        }
+        executor.submit(small, new Runnable() {
+            @Override
+            public void run() {
+                smallStarted.countDown();
+                done.incrementAndGet();
+            }
+        });
+
+        // the big query holds only one of the two threads, the small one is not queued behind it
+        assertTrue(smallStarted.await(10, TimeUnit.SECONDS));
+        assertEquals(2, executor.getQueuedCount());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (done.get() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, done.get());
+        assertEquals(0, executor.getQueuedCount());
+        assertTrue(big.getRpcQueueMillis() >= 0);
+    }
+
+    @Test
+    public void testStoppedQuery() throws InterruptedException {
+        EndpointRPCExecutor executor = new EndpointRPCExecutor(1, 1);
+        QueryContext query = newQuery();
+        query.stopEarly("test");
+
+        final AtomicInteger runs = new AtomicInteger();
+        executor.submit(query, new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getRunningCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, runs.get());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.kylin.common.util.Bytes;
+import org.junit.Test;
+
+public class ResultChunksTest {
+
+    private void roundTrip(String codecName) throws IOException {
+        ResultCodec codec = ResultCodec.get(codecName, null);
+        assumeNotNull(codec); // zstd needs its native library
+        ResultChunks.Writer writer = new ResultChunks.Writer(1000, codec);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++) {
+            byte[] row = Bytes.toBytes("row-" + i);
+            writer.write(row, 0, row.length);
+            expected.write(row);
+        }
+        byte[] chunks = writer.finish();
+        assertEquals(expected.size(), writer.getRawSize());
+        assertTrue(writer.getChunkCount() > 1);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        Iterator<byte[]> it = ResultChunks.iterator(chunks, codec);
+        int count = 0;
+        while (it.hasNext()) {
+            byte[] block = it.next();
+            // a block only ends when it reaches the chunk size, or at the end
+            assertTrue(block.length >= 1000 || !it.hasNext());
+            actual.write(block);
+            count++;
+        }
+        assertEquals(writer.getChunkCount(), count);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        roundTrip(ResultCodec.DEFLATE);
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        roundTrip(ResultCodec.NONE);
+    }
+
+    @Test
+    public void testLz4() throws IOException {
+        roundTrip(ResultCodec.LZ4);
+    }
+
+    @Test
+    public void testZstd() throws IOException {
+        roundTrip(ResultCodec.ZSTD);
+    }
+
+    @Test
+    public void testZstdDictionary() throws IOException {
+        String dictId = ResultCodec.addDict(Bytes.toBytes("row-row-row-0123456789"));
+        assertEquals(dictId, ResultCodec.addDict(Bytes.toBytes("row-row-row-0123456789")));
+        ResultCodec codec = ResultCodec.get(ResultCodec.ZSTD, dictId);
+        assumeNotNull(codec);
+        assertEquals(dictId, codec.getDictId());
+        byte[] data = Bytes.toBytes("row-1,row-2,row-3,row-4,row-5");
+        assertArrayEquals(data, ResultCodec.get(ResultCodec.ZSTD, dictId).decompress(codec.compress(data)));
+
+        // a dictionary unknown to the JVM is not used
+        assertNull(ResultCodec.get(ResultCodec.ZSTD, "unknown").getDictId());
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals(ResultCodec.LZ4, ResultCodec.negotiate("LZ4", null, true).getName());
+        assertEquals(ResultCodec.DEFLATE, ResultCodec.negotiate("snappy", null, true).getName());
+        assertEquals(ResultCodec.DEFLATE, ResultCodec.negotiate(null, null, true).getName());
+        assertEquals(ResultCodec.NONE, ResultCodec.negotiate(null, null, false).getName());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ResultCodec codec = ResultCodec.get(ResultCodec.DEFLATE, null);
+        ResultChunks.Writer writer = new ResultChunks.Writer(1000, codec);
+        byte[] chunks = writer.finish();
+        assertEquals(0, chunks.length);
+        assertEquals(0, writer.getChunkCount());
+        assertFalse(ResultChunks.iterator(chunks, codec).hasNext());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compression ratio and speed of the result codecs, on result blocks of 1 million GTRecords
+ * (5 dimensions of type int4, 2 measures of type long8) exported the same way as CubeVisitService.
+ */
+@Ignore("Save UT time")
+public class ResultCodecBenchmark {
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+
+    private List<byte[]> blocks;
+    private long rawSize;
+
+    @Before
+    public void before() throws IOException {
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        DataType tint = DataType.getType("int4");
+        DataType tlong = DataType.getType("long8");
+        builder.setColumns(tint, tint, tint, tint, tint, tlong, tlong);
+        builder.setPrimaryKey(ImmutableBitSet.valueOf(0, 1, 2, 3, 4));
+        GTInfo info = builder.build();
+
+        SortedGTRecordGenerator gen = new SortedGTRecordGenerator(info);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(100, 4, null);
+        gen.addMeasure(8);
+        gen.addMeasure(8);
+
+        blocks = Lists.newArrayList();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + info.getMaxRecordLength());
+        try (IGTScanner scanner = gen.generate(1000000)) {
+            for (GTRecord rec : scanner) {
+                rec.exportColumns(info.getAllColumns(), buffer);
+                if (buffer.position() >= CHUNK_SIZE) {
+                    addBlock(buffer);
+                }
+            }
+        }
+        addBlock(buffer);
+    }
+
+    private void addBlock(ByteBuffer buffer) {
+        byte[] block = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, block, 0, block.length);
+        blocks.add(block);
+        rawSize += block.length;
+        buffer.clear();
+    }
+
+    @Test
+    public void testAll() throws IOException {
+        for (String name : new String[] { ResultCodec.NONE, ResultCodec.DEFLATE, ResultCodec.LZ4, ResultCodec.ZSTD }) {
+            ResultCodec codec = ResultCodec.get(name, null);
+            if (codec == null) {
+                System.out.println(name + " is not available, skipped");
+                continue;
+            }
+            benchmark(codec);
+        }
+    }
+
+    private void benchmark(ResultCodec codec) throws IOException {
+        List<byte[]> compressed = Lists.newArrayListWithCapacity(blocks.size());
+        long compressedSize = 0;
+        long compressTime = 0;
+        long decompressTime = 0;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            compressed.clear();
+            compressedSize = 0;
+            long t = System.nanoTime();
+            for (byte[] block : blocks) {
+                byte[] c = codec.compress(block);
+                compressed.add(c);
+                compressedSize += c.length;
+            }
+            compressTime += System.nanoTime() - t;
+
+            t = System.nanoTime();
+            for (byte[] c : compressed) {
+                codec.decompress(c);
+            }
+            decompressTime += System.nanoTime() - t;
+        }
+
+        System.out.println(String.format("%-8s ratio %.2f, compress %.1f MB/s, decompress %.1f MB/s", codec.getName(),
+                (double) rawSize / compressedSize, mbPerSecond(compressTime), mbPerSecond(decompressTime)));
+    }
+
+    private double mbPerSecond(long nanos) {
+        return (double) rawSize * ROUNDS / 1024 / 1024 / (nanos / 1e9);
+    }
+}